@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.oltpbenchmark.jmh;
+
+import com.oltpbenchmark.LatencyRecord;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cost of recording one sample, which every worker pays after every transaction. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyRecordBenchmark {
+
+  /**
+   * A worker keeps every sample of the run. Start over after this many so the benchmark measures
+   * the amortized cost of growing the record instead of running out of memory.
+   */
+  private static final int SAMPLES_PER_RECORD = 1000000;
+
+  private LatencyRecord record;
+  private int samples;
+  private long now;
+
+  @Setup
+  public void setUp() {
+    now = System.nanoTime();
+    record = new LatencyRecord(now);
+    samples = 0;
+  }
+
+  @Benchmark
+  public LatencyRecord addLatency() {
+    if (++samples == SAMPLES_PER_RECORD) {
+      record = new LatencyRecord(now);
+      samples = 0;
+    }
+    now += 1000;
+    record.addLatency(1, now, now + 250000, 0, 0);
+    return record;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.oltpbenchmark.jmh;
+
+import com.oltpbenchmark.Phase;
+import com.oltpbenchmark.Results;
+import com.oltpbenchmark.ThreadBench;
+import com.oltpbenchmark.WorkloadConfiguration;
+import com.oltpbenchmark.api.BenchmarkModule;
+import com.oltpbenchmark.api.TransactionType;
+import com.oltpbenchmark.api.TransactionTypes;
+import com.oltpbenchmark.api.Worker;
+import com.oltpbenchmark.benchmarks.noop.NoOpBenchmark;
+import com.oltpbenchmark.types.DatabaseType;
+import com.oltpbenchmark.util.ImmutableMonitorInfo;
+import com.oltpbenchmark.util.MonitorInfo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end throughput of the noop benchmark against an in-memory HSQLDB database. The database
+ * does almost no work, so the result is dominated by the per-transaction overhead of the framework:
+ * fetching work, running the procedure, committing and recording the sample.
+ *
+ * <p>Every invocation is a complete unlimited-rate run of {@link #RUN_SECONDS} seconds. The number
+ * to watch is the {@code transactions} counter, reported in transactions per second; the primary
+ * score only counts the runs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class NoOpThroughputBenchmark {
+
+  static final int RUN_SECONDS = 5;
+
+  @State(Scope.Benchmark)
+  public static class Database {
+    @Param({"1", "8"})
+    public int terminals;
+
+    NoOpBenchmark benchmark;
+    MonitorInfo monitorInfo;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      WorkloadConfiguration conf = new WorkloadConfiguration();
+      conf.setBenchmarkName("noop");
+      conf.setDatabaseType(DatabaseType.HSQLDB);
+      conf.setUrl("jdbc:hsqldb:mem:noop;sql.syntax_mys=true");
+      conf.setScaleFactor(1);
+      conf.setTerminals(terminals);
+      conf.setBatchSize(128);
+
+      benchmark = new NoOpBenchmark(conf);
+      TransactionType noop = benchmark.initTransactionType("NoOp", 1, 0, 0);
+      conf.setTransTypes(
+          new TransactionTypes(new ArrayList<>(List.of(TransactionType.INVALID, noop))));
+      // Unlimited phases keep a rate of 1, like DBWorkload sets them; it only paces the controller
+      conf.addPhase(
+          1,
+          RUN_SECONDS,
+          0,
+          1,
+          List.of(100.0),
+          false,
+          false,
+          false,
+          true,
+          terminals,
+          Phase.Arrival.REGULAR);
+      benchmark.createDatabase();
+      monitorInfo = ImmutableMonitorInfo.builder().build();
+    }
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Counters {
+    public long transactions;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      transactions = 0;
+    }
+  }
+
+  @Benchmark
+  public Results run(Database db, Counters counters) throws Exception {
+    List<Worker<? extends BenchmarkModule>> workers = db.benchmark.makeWorkers();
+    Results results =
+        ThreadBench.runRateLimitedBenchmark(
+            workers, List.of(db.benchmark.getWorkloadConfiguration()), db.monitorInfo);
+    counters.transactions += results.getMeasuredRequests();
+    return results;
+  }
+}
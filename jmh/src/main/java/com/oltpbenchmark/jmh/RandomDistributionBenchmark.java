@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.oltpbenchmark.jmh;
+
+import com.oltpbenchmark.distributions.ZipfianGenerator;
+import com.oltpbenchmark.util.Histogram;
+import com.oltpbenchmark.util.RandomDistribution;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Drawing keys from the skewed distributions the benchmarks use to pick rows. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomDistributionBenchmark {
+
+  private static final int ITEMS = 1000000;
+
+  private RandomDistribution.Zipf zipf;
+  private RandomDistribution.FlatHistogram<Integer> flatHistogram;
+  private ZipfianGenerator zipfian;
+
+  @Setup
+  public void setUp() {
+    Random rng = new Random(0);
+    zipf = new RandomDistribution.Zipf(rng, 0, ITEMS, 1.001);
+
+    Histogram<Integer> histogram = new Histogram<>();
+    for (int i = 0; i < 1000; i++) {
+      histogram.put(i, 1 + rng.nextInt(100));
+    }
+    flatHistogram = new RandomDistribution.FlatHistogram<>(rng, histogram);
+
+    zipfian = new ZipfianGenerator(rng, ITEMS);
+  }
+
+  @Benchmark
+  public int zipf() {
+    return zipf.nextInt();
+  }
+
+  @Benchmark
+  public Integer flatHistogram() {
+    return flatHistogram.nextValue();
+  }
+
+  @Benchmark
+  public int zipfianGenerator() {
+    return zipfian.nextInt();
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.oltpbenchmark.jmh;
+
+import com.oltpbenchmark.BenchmarkState;
+import com.oltpbenchmark.Phase;
+import com.oltpbenchmark.SubmittedProcedure;
+import com.oltpbenchmark.WorkloadConfiguration;
+import com.oltpbenchmark.WorkloadState;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Handing out work to the workers: choosing a transaction type by phase weight and passing it
+ * through the work queue of a rate-limited phase, or directly to the workers of an unlimited one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkloadStateBenchmark {
+
+  /** The TPC-C mix. */
+  private static final List<Double> WEIGHTS = List.of(45.0, 43.0, 4.0, 4.0, 4.0);
+
+  @State(Scope.Benchmark)
+  public static class Workload {
+    @Param({"false", "true"})
+    public boolean rateLimited;
+
+    WorkloadState state;
+    Phase phase;
+
+    @Setup
+    public void setUp() {
+      WorkloadConfiguration conf = new WorkloadConfiguration();
+      conf.setBenchmarkName("tpcc");
+      conf.setTerminals(Runtime.getRuntime().availableProcessors());
+      phase =
+          conf.addPhase(
+              1,
+              60,
+              0,
+              rateLimited ? 1000 : 0,
+              WEIGHTS,
+              rateLimited,
+              false,
+              false,
+              true,
+              conf.getTerminals(),
+              Phase.Arrival.REGULAR);
+      BenchmarkState benchmarkState = new BenchmarkState(1);
+      benchmarkState.startMeasure();
+      conf.initializeState(benchmarkState);
+      state = conf.getWorkloadState();
+      state.switchToNextPhase();
+    }
+  }
+
+  @Benchmark
+  public int chooseTransaction(Workload workload) {
+    return workload.phase.chooseTransaction();
+  }
+
+  /**
+   * One producer tick of one transaction followed by one worker picking it up, on a single thread
+   * so the queue never runs dry.
+   */
+  @Benchmark
+  public SubmittedProcedure addToQueueAndFetchWork(Workload workload) {
+    workload.state.addToQueue(1, false);
+    SubmittedProcedure work = workload.state.fetchWork();
+    workload.state.finishedWork();
+    return work;
+  }
+
+  /**
+   * Workers contending for the workload state. In the rate-limited phase every worker queues the
+   * transaction it is about to take, so the queue never runs dry.
+   */
+  @Benchmark
+  @Threads(4)
+  public SubmittedProcedure fetchWorkContended(Workload workload) {
+    if (workload.rateLimited) {
+      workload.state.addToQueue(1, false);
+    }
+    SubmittedProcedure work = workload.state.fetchWork();
+    workload.state.finishedWork();
+    return work;
+  }
+}
@@ -31,6 +31,7 @@ public final class BenchmarkState {
   private final CountDownLatch startBarrier;
   private final AtomicInteger notDoneCount;
   private volatile State state = State.WARMUP;
+  private volatile long measureStartNs = -1;
 
   /**
    * @param numThreads number of threads involved in the test: including the master thread.
@@ -48,10 +49,13 @@ public final class BenchmarkState {
     return testStartNs;
   }
 
+  /** System.nanoTime() at which the measurement started, -1 before that. */
+  public long getMeasureStartNs() {
+    return measureStartNs;
+  }
+
   public State getState() {
-    synchronized (this) {
-      return state;
-    }
+    return state;
   }
 
   /** Wait for all threads to call this. Returns once all the threads have entered. */
@@ -66,6 +70,9 @@ public final class BenchmarkState {
   }
 
   public void startMeasure() {
+    if (measureStartNs < 0) {
+      measureStartNs = System.nanoTime();
+    }
     state = State.MEASURE;
   }
 
@@ -91,6 +98,14 @@ public final class BenchmarkState {
     state = State.ERROR;
   }
 
+  /**
+   * Fails the run without a thread of the count having died, for example when a helper thread
+   * such as a trace replay cannot go on.
+   */
+  public void signalFailure() {
+    state = State.ERROR;
+  }
+
   public void startCoolDown() {
     state = State.DONE;
 
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import com.oltpbenchmark.util.Timeline;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Samples the load of the benchmark client itself once per second: process CPU usage, GC pause
+ * time, allocation rate and the rate injector's schedule lag, plus the number of runnable threads
+ * if a limit is set on it. The samples are recorded in the {@link Timeline} of every run, so they
+ * appear next to the throughput in the results, and are checked against the {@link Limits} if any
+ * are configured. A client that exceeds its limits while measuring is itself the bottleneck, so its
+ * results describe the client rather than the database.
+ *
+ * <p>The monitor samples on its own daemon thread, so it does not delay the rate injector.
+ * Counting runnable threads inspects every platform thread, which takes milliseconds with
+ * thousands of terminals, and does not see virtual threads; it is only done when the {@code
+ * runnableThreads} limit is set.
+ */
+public final class ClientMonitor {
+  private static final Logger LOG = LoggerFactory.getLogger(ClientMonitor.class);
+
+  static final String CPU = "Client CPU (fraction)";
+  static final String GC_PAUSE = "Client GC Pause (milliseconds/second)";
+  static final String ALLOCATION = "Client Allocation Rate (MB/second)";
+  static final String RUNNABLE_THREADS = "Client Runnable Threads";
+
+  private static final long SECOND_NS = 1000000000L;
+
+  /** Thresholds above which the client is considered saturated. Zero disables a threshold. */
+  public static final class Limits {
+
+    public enum Action {
+      /** Log a warning and flag the results. */
+      WARN,
+      /** Also end the run with an error once the results are written. */
+      FAIL,
+    }
+
+    private final Action action;
+    private final double cpu;
+    private final double gcPauseMs;
+    private final double scheduleLagUs;
+    private final int runnableThreads;
+
+    /**
+     * @param action what to do when a limit is exceeded
+     * @param cpu process CPU usage as a fraction of all cores
+     * @param gcPauseMs GC pause time in milliseconds per second
+     * @param scheduleLagUs mean schedule error of the rate injector in microseconds
+     * @param runnableThreads number of runnable threads
+     */
+    public Limits(
+        Action action, double cpu, double gcPauseMs, double scheduleLagUs, int runnableThreads) {
+      this.action = action;
+      this.cpu = cpu;
+      this.gcPauseMs = gcPauseMs;
+      this.scheduleLagUs = scheduleLagUs;
+      this.runnableThreads = runnableThreads;
+    }
+
+    public Action getAction() {
+      return action;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s[cpu=%s, gcPause=%sms/s, scheduleLag=%sus, runnableThreads=%d]",
+          action, cpu, gcPauseMs, scheduleLagUs, runnableThreads);
+    }
+  }
+
+  private final Timeline timeline;
+  private final Limits limits;
+  private final com.sun.management.OperatingSystemMXBean os;
+  private final com.sun.management.ThreadMXBean threads;
+  private final List<GarbageCollectorMXBean> collectors;
+  private final int processors = Runtime.getRuntime().availableProcessors();
+  private final boolean countThreads;
+  private Thread thread;
+
+  private long lastNs = -1;
+  private long lastCpuNs;
+  private long lastGcMs;
+  private long lastAllocated;
+
+  private int samples = 0;
+  private double cpuSum = 0;
+  private double maxCpu = 0;
+  private double maxGcPause = 0;
+  private double allocationSum = 0;
+  private int maxRunnable = 0;
+  private int saturatedSeconds = 0;
+  private final List<String> exceeded = new ArrayList<>();
+
+  /** @param limits thresholds to check, or null if none are configured */
+  ClientMonitor(Timeline timeline, Limits limits) {
+    this.timeline = timeline;
+    this.limits = limits;
+    this.os =
+        (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    this.collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    this.countThreads = limits != null && limits.runnableThreads > 0;
+  }
+
+  /**
+   * Starts sampling once per second on a daemon thread until {@link #stop()}.
+   *
+   * @param scheduleLagUs mean schedule error of the rate injector over the last second
+   * @param measuring whether the benchmark is measuring
+   */
+  void start(DoubleSupplier scheduleLagUs, BooleanSupplier measuring) {
+    thread =
+        new Thread(
+            () -> {
+              try {
+                while (true) {
+                  sample(System.nanoTime(), scheduleLagUs.getAsDouble(), measuring.getAsBoolean());
+                  Thread.sleep(SECOND_NS / 1000000);
+                }
+              } catch (InterruptedException ex) {
+                // stopped
+              }
+            },
+            "ClientMonitor");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Stops sampling and waits for the sampling thread to end. */
+  void stop() {
+    if (thread == null) {
+      return;
+    }
+    thread.interrupt();
+    try {
+      thread.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Takes a sample once a second has passed since the previous one.
+   *
+   * @param scheduleLagUs mean schedule error of the rate injector over the last second
+   * @param measuring whether the benchmark is measuring, only then are the limits checked
+   */
+  synchronized void sample(long now, double scheduleLagUs, boolean measuring) {
+    if (lastNs >= 0 && now - lastNs < SECOND_NS) {
+      return;
+    }
+    long cpuNs = os.getProcessCpuTime();
+    long gcMs = gcTime();
+    long allocated = threads.getTotalThreadAllocatedBytes();
+    if (lastNs < 0) {
+      lastNs = now;
+      lastCpuNs = cpuNs;
+      lastGcMs = gcMs;
+      lastAllocated = allocated;
+      return;
+    }
+
+    double seconds = (now - lastNs) / 1e9;
+    double cpu = (cpuNs - lastCpuNs) / 1e9 / seconds / processors;
+    double gcPause = (gcMs - lastGcMs) / seconds;
+    double allocation = (allocated - lastAllocated) / seconds / 1e6;
+    int runnable = countThreads ? countRunnableThreads() : 0;
+
+    timeline.record(CPU, lastNs, cpu);
+    timeline.record(GC_PAUSE, lastNs, gcPause);
+    if (allocated >= 0) {
+      timeline.record(ALLOCATION, lastNs, allocation);
+    }
+    if (countThreads) {
+      timeline.record(RUNNABLE_THREADS, lastNs, runnable);
+    }
+
+    lastNs = now;
+    lastCpuNs = cpuNs;
+    lastGcMs = gcMs;
+    lastAllocated = allocated;
+
+    if (!measuring) {
+      return;
+    }
+    samples++;
+    cpuSum += cpu;
+    maxCpu = Math.max(maxCpu, cpu);
+    maxGcPause = Math.max(maxGcPause, gcPause);
+    allocationSum += allocation;
+    maxRunnable = Math.max(maxRunnable, runnable);
+    if (limits != null) {
+      check(cpu, gcPause, scheduleLagUs, runnable);
+    }
+  }
+
+  private void check(double cpu, double gcPause, double scheduleLagUs, int runnable) {
+    List<String> violations = new ArrayList<>();
+    if (limits.cpu > 0 && cpu > limits.cpu) {
+      exceed("cpu");
+      violations.add(String.format("CPU %.2f > %.2f", cpu, limits.cpu));
+    }
+    if (limits.gcPauseMs > 0 && gcPause > limits.gcPauseMs) {
+      exceed("gcPause");
+      violations.add(String.format("GC pause %.1fms/s > %.1fms/s", gcPause, limits.gcPauseMs));
+    }
+    if (limits.scheduleLagUs > 0 && scheduleLagUs > limits.scheduleLagUs) {
+      exceed("scheduleLag");
+      violations.add(
+          String.format("schedule lag %.0fus > %.0fus", scheduleLagUs, limits.scheduleLagUs));
+    }
+    if (limits.runnableThreads > 0 && runnable > limits.runnableThreads) {
+      exceed("runnableThreads");
+      violations.add(String.format("runnable threads %d > %d", runnable, limits.runnableThreads));
+    }
+    if (!violations.isEmpty()) {
+      saturatedSeconds++;
+      LOG.warn("Benchmark client is saturated: {}", String.join(", ", violations));
+    }
+  }
+
+  private void exceed(String limit) {
+    if (!exceeded.contains(limit)) {
+      exceeded.add(limit);
+    }
+  }
+
+  private long gcTime() {
+    long total = 0;
+    for (GarbageCollectorMXBean gc : collectors) {
+      total += Math.max(0, gc.getCollectionTime());
+    }
+    return total;
+  }
+
+  private int countRunnableThreads() {
+    int runnable = 0;
+    for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds(), 0)) {
+      if (info != null && info.getThreadState() == Thread.State.RUNNABLE) {
+        runnable++;
+      }
+    }
+    return runnable;
+  }
+
+  /** Whether the client exceeded a limit in any second of the measurement. */
+  public synchronized boolean isSaturated() {
+    return saturatedSeconds > 0;
+  }
+
+  /** Whether the run should fail because the client was saturated. */
+  public synchronized boolean shouldFail() {
+    return isSaturated() && limits != null && limits.getAction() == Limits.Action.FAIL;
+  }
+
+  public synchronized Map<String, Object> toMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("Samples", samples);
+    map.put("Average CPU (fraction)", samples == 0 ? 0 : cpuSum / samples);
+    map.put("Maximum CPU (fraction)", maxCpu);
+    map.put("Maximum GC Pause (milliseconds/second)", maxGcPause);
+    map.put("Average Allocation Rate (MB/second)", samples == 0 ? 0 : allocationSum / samples);
+    if (countThreads) {
+      map.put("Maximum Runnable Threads", maxRunnable);
+    }
+    if (limits != null) {
+      map.put("Limits", limits.toString());
+      map.put("Saturated Seconds", saturatedSeconds);
+      map.put("Exceeded", exceeded);
+    }
+    return map;
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import com.oltpbenchmark.api.Worker;
+import com.oltpbenchmark.util.LatencyHistogram;
+import com.oltpbenchmark.util.UniversalScalabilityLaw;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Steps the number of active terminals of a phase through a sequence, to measure the throughput
+ * curve of the database in one run instead of one run per concurrency. Every step first lets the
+ * new terminals settle, then measures the throughput and latency of the transactions completed in
+ * the rest of the step. After the last step a {@link UniversalScalabilityLaw} model is fitted to
+ * the throughput of the steps.
+ */
+public class ConcurrencySweep {
+  private static final Logger LOG = LoggerFactory.getLogger(ConcurrencySweep.class);
+
+  /** The measurements of one step. */
+  public static final class Step {
+    private final int terminals;
+    private final double throughput;
+    private final LatencyHistogram latencies;
+
+    Step(int terminals, double throughput, LatencyHistogram latencies) {
+      this.terminals = terminals;
+      this.throughput = throughput;
+      this.latencies = latencies;
+    }
+
+    public int getTerminals() {
+      return terminals;
+    }
+
+    /** Completed transactions per second. */
+    public double getThroughput() {
+      return throughput;
+    }
+
+    /** Latencies in microseconds of the transactions completed in the step. */
+    public LatencyHistogram getLatencies() {
+      return latencies;
+    }
+
+    public Map<String, Object> toMap() {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("Terminals", terminals);
+      map.put("Throughput (requests/second)", throughput);
+      map.put("Average Latency (microseconds)", latencies.getMean());
+      map.put("Median Latency (microseconds)", latencies.getValueAtPercentile(0.5));
+      map.put("95th Percentile Latency (microseconds)", latencies.getValueAtPercentile(0.95));
+      map.put("99th Percentile Latency (microseconds)", latencies.getValueAtPercentile(0.99));
+      map.put("Maximum Latency (microseconds)", latencies.getMaximum());
+      return map;
+    }
+  }
+
+  private final int[] terminals;
+  private final long stepNs;
+  private final long settleNs;
+
+  private final List<Step> steps = new ArrayList<>();
+  private UniversalScalabilityLaw model = null;
+
+  private int index = -1;
+  private long stepStart;
+  private long measureStart = -1;
+  private volatile long dueNs;
+  private volatile boolean started = false;
+  private volatile boolean finished = false;
+  private LatencyHistogram measureLatencies;
+
+  /**
+   * @param terminals the active terminals of each step
+   * @param stepSeconds length of each step
+   * @param settleSeconds time at the start of each step that is not measured
+   */
+  public ConcurrencySweep(int[] terminals, int stepSeconds, int settleSeconds) {
+    if (terminals.length == 0) {
+      throw new IllegalArgumentException("A sweep needs at least one step");
+    }
+    for (int t : terminals) {
+      if (t < 1) {
+        throw new IllegalArgumentException("Sweep terminals must be positive: " + t);
+      }
+    }
+    if (settleSeconds < 0 || stepSeconds <= settleSeconds) {
+      throw new IllegalArgumentException(
+          String.format(
+              "A sweep step of %ds must be longer than its settle time of %ds",
+              stepSeconds, settleSeconds));
+    }
+    this.terminals = terminals.clone();
+    this.stepNs = stepSeconds * 1000000000L;
+    this.settleNs = settleSeconds * 1000000000L;
+  }
+
+  /** The largest number of active terminals of any step. */
+  public int getMaxTerminals() {
+    return Arrays.stream(terminals).max().getAsInt();
+  }
+
+  /** Time the sweep needs to complete all steps. */
+  public int getDurationSeconds() {
+    return (int) (terminals.length * stepNs / 1000000000L);
+  }
+
+  /** Whether {@link #tick} has anything to do: the sweep has to start, settle or change step. */
+  boolean isDue(long now) {
+    return !finished && (!started || now - dueNs >= 0);
+  }
+
+  /**
+   * Called by the rate controller while the phase is measuring. Moves to the next step when it is
+   * time, after evaluating the step that just ended.
+   */
+  synchronized void tick(WorkloadState workState, List<? extends Worker<?>> workers, long now) {
+    if (index >= terminals.length) {
+      return;
+    }
+    if (index < 0) {
+      beginStep(workState, 0, now);
+      return;
+    }
+    if (measureStart < 0 && now - stepStart >= settleNs) {
+      measureStart = now;
+      measureLatencies = collect(workers);
+      dueNs = stepStart + stepNs;
+    }
+    if (now - stepStart < stepNs) {
+      return;
+    }
+
+    LatencyHistogram delta = collect(workers).minus(measureLatencies);
+    double throughput = delta.getCount() / ((now - measureStart) / 1e9);
+    Step step = new Step(terminals[index], throughput, delta);
+    steps.add(step);
+    LOG.info(
+        "Concurrency sweep: terminals={} throughput={} p99={}us",
+        step.getTerminals(),
+        String.format("%.1f", throughput),
+        delta.getValueAtPercentile(0.99));
+
+    if (index + 1 < terminals.length) {
+      beginStep(workState, index + 1, now);
+    } else {
+      index = terminals.length;
+      finished = true;
+      fit();
+    }
+  }
+
+  private void beginStep(WorkloadState workState, int index, long now) {
+    this.index = index;
+    this.stepStart = now;
+    this.measureStart = -1;
+    this.dueNs = now + settleNs;
+    this.started = true;
+    workState.setActiveTerminals(terminals[index]);
+  }
+
+  private static LatencyHistogram collect(List<? extends Worker<?>> workers) {
+    LatencyHistogram latencies = new LatencyHistogram();
+    for (Worker<?> w : workers) {
+      latencies.add(w.getLatencyHistogram());
+    }
+    return latencies;
+  }
+
+  private void fit() {
+    double[] n = new double[steps.size()];
+    double[] x = new double[steps.size()];
+    for (int i = 0; i < steps.size(); i++) {
+      n[i] = steps.get(i).getTerminals();
+      x[i] = steps.get(i).getThroughput();
+    }
+    try {
+      model = UniversalScalabilityLaw.fit(n, x);
+      LOG.info("Concurrency sweep: scalability model {}", model);
+    } catch (IllegalArgumentException ex) {
+      LOG.warn("Concurrency sweep: cannot fit a scalability model: {}", ex.getMessage());
+    }
+  }
+
+  public synchronized List<Step> getSteps() {
+    return Collections.unmodifiableList(new ArrayList<>(steps));
+  }
+
+  /** The model fitted to the steps, or null if the sweep did not finish or could not be fitted. */
+  public synchronized UniversalScalabilityLaw getModel() {
+    return model;
+  }
+
+  public synchronized Map<String, Object> toMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    List<Map<String, Object>> list = new ArrayList<>();
+    for (Step step : steps) {
+      list.add(step.toMap());
+    }
+    map.put("Steps", list);
+    if (model != null) {
+      map.put("Model", model.toMap());
+    }
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "terminals=%s, step=%ds, settle=%ds",
+        Arrays.toString(terminals), stepNs / 1000000000L, settleNs / 1000000000L);
+  }
+}
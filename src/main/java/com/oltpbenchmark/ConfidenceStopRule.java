@@ -0,0 +1,337 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import com.oltpbenchmark.api.Worker;
+import com.oltpbenchmark.util.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ends the measurement of a phase once its results are precise enough, instead of after a fixed
+ * time. The measurement is cut into batches of equal length, and the throughput and the selected
+ * latency percentiles of each batch are its batch means. With batches long enough to be nearly
+ * independent, the confidence interval of a metric is
+ *
+ * <pre>
+ *   mean +/- t(1 - (1 - confidence) / 2, n - 1) * stddev / sqrt(n)
+ * </pre>
+ *
+ * over its {@code n} batch means. The phase ends once the half-width of every interval is within
+ * the relative error of its mean, after at least the minimum number of batches. The configured
+ * time of the phase remains the upper bound.
+ */
+public class ConfidenceStopRule {
+  private static final Logger LOG = LoggerFactory.getLogger(ConfidenceStopRule.class);
+
+  static final String THROUGHPUT = "Throughput (requests/second)";
+
+  /** Statistics over the batch means of one metric. */
+  public static final class Interval {
+    private final double mean;
+    private final double halfWidth;
+    private final double autocorrelation;
+
+    Interval(double mean, double halfWidth, double autocorrelation) {
+      this.mean = mean;
+      this.halfWidth = halfWidth;
+      this.autocorrelation = autocorrelation;
+    }
+
+    public double getMean() {
+      return mean;
+    }
+
+    public double getHalfWidth() {
+      return halfWidth;
+    }
+
+    /** The half-width relative to the mean, infinity if the mean is zero. */
+    public double getRelativeError() {
+      return mean > 0 ? halfWidth / mean : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Lag-1 autocorrelation of the batch means. Values well above zero mean the batches are too
+     * short to be independent and the interval is too narrow.
+     */
+    public double getAutocorrelation() {
+      return autocorrelation;
+    }
+
+    public Map<String, Object> toMap() {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("Mean", mean);
+      map.put("Half Width", halfWidth);
+      map.put("Relative Error", getRelativeError());
+      map.put("Lag-1 Autocorrelation", autocorrelation);
+      return map;
+    }
+  }
+
+  private final int phaseId;
+  private final double error;
+  private final double confidence;
+  private final long batchNs;
+  private final int minBatches;
+  private final double[] percentiles;
+
+  private final List<Double> throughputs = new ArrayList<>();
+  private final List<long[]> latencies = new ArrayList<>();
+
+  private long measureStart = -1;
+  private volatile long batchStart = -1;
+  private LatencyHistogram batchLatencies;
+  private volatile long stoppedMs = -1;
+
+  /**
+   * @param phaseId the phase whose measurement is watched
+   * @param error largest half-width of every interval relative to its mean
+   * @param confidence confidence level of the intervals, such as 0.95
+   * @param batchSeconds length of each batch
+   * @param minBatches fewest batches before the phase may end
+   * @param percentiles latency percentiles in (0, 1) whose intervals must also be narrow enough
+   */
+  public ConfidenceStopRule(
+      int phaseId,
+      double error,
+      double confidence,
+      int batchSeconds,
+      int minBatches,
+      double[] percentiles) {
+    if (!(error > 0) || !(confidence > 0 && confidence < 1)) {
+      throw new IllegalArgumentException(
+          String.format("Invalid stop rule: error=%s, confidence=%s", error, confidence));
+    }
+    if (batchSeconds < 1 || minBatches < 5) {
+      throw new IllegalArgumentException(
+          String.format(
+              "A stop rule needs batches of at least 1s and at least 5 of them: batch=%ds,"
+                  + " minBatches=%d",
+              batchSeconds, minBatches));
+    }
+    for (double p : percentiles) {
+      if (!(p > 0 && p < 1)) {
+        throw new IllegalArgumentException("Invalid stop rule percentile: " + p * 100);
+      }
+    }
+    this.phaseId = phaseId;
+    this.error = error;
+    this.confidence = confidence;
+    this.batchNs = batchSeconds * 1000000000L;
+    this.minBatches = minBatches;
+    this.percentiles = percentiles.clone();
+  }
+
+  /** Whether {@link #tick} has anything to do: the rule has not started or a batch ended. */
+  boolean isDue(long now) {
+    long start = batchStart;
+    return stoppedMs < 0 && (start < 0 || now - start >= batchNs);
+  }
+
+  /** Whether the rule has ended the phase. */
+  boolean isStopped() {
+    return stoppedMs >= 0;
+  }
+
+  /**
+   * Called by ThreadBench while the phase measures. Evaluates the batch that just ended.
+   *
+   * @return whether every interval is narrow enough and the phase can end
+   */
+  synchronized boolean tick(List<? extends Worker<?>> workers, long now) {
+    if (stoppedMs >= 0) {
+      return true;
+    }
+    if (measureStart < 0) {
+      measureStart = now;
+      batchStart = now;
+      batchLatencies = collect(workers);
+      return false;
+    }
+    if (now - batchStart < batchNs) {
+      return false;
+    }
+
+    LatencyHistogram current = collect(workers);
+    LatencyHistogram delta = current.minus(batchLatencies);
+    long[] values = new long[percentiles.length];
+    for (int i = 0; i < percentiles.length; i++) {
+      values[i] = delta.getValueAtPercentile(percentiles[i]);
+    }
+    throughputs.add(delta.getCount() / ((now - batchStart) / 1e9));
+    latencies.add(values);
+    batchStart = now;
+    batchLatencies = current;
+
+    if (throughputs.size() < minBatches) {
+      return false;
+    }
+    for (Interval interval : getIntervals().values()) {
+      if (!(interval.getRelativeError() <= error)) {
+        return false;
+      }
+    }
+    stoppedMs = (now - measureStart) / 1000000L;
+    LOG.info(
+        "Phase {} reached a relative error of {}% at {}% confidence after {} batches, ending it",
+        phaseId,
+        error * 100,
+        confidence * 100,
+        throughputs.size());
+    return true;
+  }
+
+  private static LatencyHistogram collect(List<? extends Worker<?>> workers) {
+    LatencyHistogram latencies = new LatencyHistogram();
+    for (Worker<?> w : workers) {
+      latencies.add(w.getLatencyHistogram());
+    }
+    return latencies;
+  }
+
+  /** The interval of the throughput and each percentile over the batches so far. */
+  public synchronized Map<String, Interval> getIntervals() {
+    Map<String, Interval> intervals = new LinkedHashMap<>();
+    if (throughputs.size() < 2) {
+      return intervals;
+    }
+    double[] values = new double[throughputs.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = throughputs.get(i);
+    }
+    intervals.put(THROUGHPUT, interval(values, confidence));
+    for (int p = 0; p < percentiles.length; p++) {
+      for (int i = 0; i < values.length; i++) {
+        values[i] = latencies.get(i)[p];
+      }
+      intervals.put(
+          String.format("%s Percentile Latency (microseconds)", format(percentiles[p])),
+          interval(values, confidence));
+    }
+    return intervals;
+  }
+
+  private static String format(double percentile) {
+    double p = percentile * 100;
+    return p == Math.rint(p) ? String.format("%dth", (long) p) : String.format("%sth", p);
+  }
+
+  /** The confidence interval of the mean of the batch means. */
+  static Interval interval(double[] values, double confidence) {
+    int n = values.length;
+    double mean = Arrays.stream(values).average().orElse(0);
+    double variance = 0;
+    double covariance = 0;
+    for (int i = 0; i < n; i++) {
+      variance += (values[i] - mean) * (values[i] - mean);
+      if (i > 0) {
+        covariance += (values[i] - mean) * (values[i - 1] - mean);
+      }
+    }
+    double halfWidth =
+        tQuantile(1 - (1 - confidence) / 2, n - 1) * Math.sqrt(variance / (n - 1) / n);
+    return new Interval(mean, halfWidth, variance > 0 ? covariance / variance : 0);
+  }
+
+  /**
+   * Quantile of Student's t distribution, by the Cornish-Fisher expansion around the normal
+   * quantile. Accurate to about 1e-3 from 5 degrees of freedom.
+   */
+  static double tQuantile(double p, int df) {
+    double z = normalQuantile(p);
+    double z2 = z * z;
+    double g1 = (z2 + 1) * z / 4;
+    double g2 = ((5 * z2 + 16) * z2 + 3) * z / 96;
+    double g3 = (((3 * z2 + 19) * z2 + 17) * z2 - 15) * z / 384;
+    double g4 = ((((79 * z2 + 776) * z2 + 1482) * z2 - 1920) * z2 - 945) * z / 92160;
+    return z + g1 / df + g2 / Math.pow(df, 2) + g3 / Math.pow(df, 3) + g4 / Math.pow(df, 4);
+  }
+
+  /** Quantile of the standard normal distribution, by Acklam's rational approximation. */
+  static double normalQuantile(double p) {
+    double[] a = {
+      -3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+      1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00
+    };
+    double[] b = {
+      -5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+      6.680131188771972e+01, -1.328068155288572e+01
+    };
+    double[] c = {
+      -7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+      -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00
+    };
+    double[] d = {
+      7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00, 3.754408661907416e+00
+    };
+    if (p < 0.02425) {
+      double q = Math.sqrt(-2 * Math.log(p));
+      return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+          / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+    }
+    if (p > 1 - 0.02425) {
+      return -normalQuantile(1 - p);
+    }
+    double q = p - 0.5;
+    double r = q * q;
+    return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5])
+        * q
+        / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+  }
+
+  public int getPhaseId() {
+    return phaseId;
+  }
+
+  /** Milliseconds the phase measured before the rule ended it, -1 if it ran its full time. */
+  public long getStoppedMs() {
+    return stoppedMs;
+  }
+
+  public synchronized Map<String, Object> toMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("Phase", phaseId);
+    map.put("Confidence", confidence);
+    map.put("Target Relative Error", error);
+    map.put("Batch (seconds)", batchNs / 1000000000L);
+    map.put("Batches", throughputs.size());
+    map.put("Stopped Early", stoppedMs >= 0);
+    if (stoppedMs >= 0) {
+      map.put("Measured (milliseconds)", stoppedMs);
+    }
+    Map<String, Object> intervals = new LinkedHashMap<>();
+    for (Map.Entry<String, Interval> e : getIntervals().entrySet()) {
+      intervals.put(e.getKey(), e.getValue().toMap());
+    }
+    map.put("Intervals", intervals);
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "error=%s, confidence=%s, batch=%ds, minBatches=%d, percentiles=%s",
+        error, confidence, batchNs / 1000000000L, minBatches, Arrays.toString(percentiles));
+  }
+}
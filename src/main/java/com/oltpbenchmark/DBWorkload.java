@@ -18,17 +18,33 @@
 package com.oltpbenchmark;
 
 import com.oltpbenchmark.api.BenchmarkModule;
+import com.oltpbenchmark.api.CircuitBreaker;
+import com.oltpbenchmark.api.ConnectionRotation;
+import com.oltpbenchmark.api.EndpointRouter;
+import com.oltpbenchmark.api.RetryPolicy;
 import com.oltpbenchmark.api.TransactionType;
 import com.oltpbenchmark.api.TransactionTypes;
 import com.oltpbenchmark.api.Worker;
+import com.oltpbenchmark.distributed.Agent;
+import com.oltpbenchmark.distributed.AgentAssignment;
+import com.oltpbenchmark.distributed.AgentReport;
+import com.oltpbenchmark.distributed.Coordinator;
+import com.oltpbenchmark.jfr.Events;
+import com.oltpbenchmark.proxy.LatencyProxy;
+import com.oltpbenchmark.stub.PgStubServer;
 import com.oltpbenchmark.types.DatabaseType;
 import com.oltpbenchmark.types.State;
 import com.oltpbenchmark.util.*;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.*;
+import jdk.jfr.Recording;
 import org.apache.commons.cli.*;
 import org.apache.commons.collections4.map.ListOrderedMap;
 import org.apache.commons.configuration2.HierarchicalConfiguration;
@@ -39,6 +55,7 @@ import org.apache.commons.configuration2.convert.DisabledListDelimiterHandler;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.apache.commons.configuration2.tree.ImmutableNode;
 import org.apache.commons.configuration2.tree.xpath.XPathExpressionEngine;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,11 +68,30 @@ public class DBWorkload {
   private static final String RATE_DISABLED = "disabled";
   private static final String RATE_UNLIMITED = "unlimited";
 
+  private static final long COORDINATOR_START_DELAY_MS = 5000;
+
   /**
    * @param args
    * @throws Exception
    */
   public static void main(String[] args) throws Exception {
+    // The servers started for the run keep the JVM alive, close them on every way out
+    List<AutoCloseable> servers = new ArrayList<>();
+    try {
+      run(args, servers);
+    } finally {
+      // in reverse order, the proxy forwards to the stub
+      for (int i = servers.size() - 1; i >= 0; i--) {
+        try {
+          servers.get(i).close();
+        } catch (Exception ex) {
+          LOG.warn("Failed to close {}", servers.get(i), ex);
+        }
+      }
+    }
+  }
+
+  private static void run(String[] args, List<AutoCloseable> servers) throws Exception {
 
     // create the command line parser
     CommandLineParser parser = new DefaultParser();
@@ -69,6 +105,9 @@ public class DBWorkload {
     if (argsLine.hasOption("h")) {
       printUsage(options);
       return;
+    } else if (argsLine.hasOption("recover-spill")) {
+      recoverSpill(argsLine);
+      return;
     } else if (!argsLine.hasOption("c")) {
       LOG.error("Missing Configuration file");
       printUsage(options);
@@ -101,6 +140,26 @@ public class DBWorkload {
     }
     MonitorInfo monitorInfo = builder.build();
 
+    // Distributed load generation
+    if (argsLine.hasOption("coordinator") && argsLine.hasOption("agent")) {
+      LOG.error("A process can either be the coordinator or an agent, not both");
+      printUsage(options);
+      return;
+    } else if (argsLine.hasOption("coordinator") && !argsLine.hasOption("agents")) {
+      LOG.error("Missing number of agents for the coordinator");
+      printUsage(options);
+      return;
+    }
+    Agent agent = null;
+    if (argsLine.hasOption("agent")) {
+      String address = argsLine.getOptionValue("agent");
+      int sep = address.lastIndexOf(':');
+      if (sep <= 0) {
+        throw new ParseException("Agent option must be <host>:<port>, got '" + address + "'");
+      }
+      agent = new Agent(address.substring(0, sep), Integer.parseInt(address.substring(sep + 1)));
+    }
+
     // -------------------------------------------------------------------
     // GET PLUGIN LIST
     // -------------------------------------------------------------------
@@ -117,6 +176,52 @@ public class DBWorkload {
 
     XMLConfiguration xmlConfig = buildConfiguration(configFile);
 
+    // Run against the in-process PostgreSQL stub instead of the configured database
+    PgStubServer stubServer = null;
+    if (!xmlConfig.configurationsAt("stubServer").isEmpty()) {
+      stubServer = startStubServer(xmlConfig.configurationAt("stubServer"));
+      servers.add(stubServer);
+    }
+    String url = stubServer != null ? stubServer.getUrl() : xmlConfig.getString("url");
+
+    // Route the connections through the latency proxy
+    LatencyProxy proxy = null;
+    if (!xmlConfig.configurationsAt("proxy").isEmpty()) {
+      proxy = startProxy(xmlConfig.configurationAt("proxy"), url);
+      servers.add(proxy);
+      url = proxy.proxyUrl(url);
+    }
+
+    // Pace the connections to the database
+    if (!xmlConfig.configurationsAt("connectionRamp").isEmpty()) {
+      ConnectionUtil.setRamp(buildConnectionRamp(xmlConfig.configurationAt("connectionRamp")));
+    }
+
+    // Pace the reconnects of all workers while the database is unreachable
+    CircuitBreaker circuitBreaker = null;
+    if (!xmlConfig.configurationsAt("circuitBreaker").isEmpty()) {
+      circuitBreaker = buildCircuitBreaker(xmlConfig.configurationAt("circuitBreaker"));
+    }
+
+    // Let the rate, the terminals and the mix be changed while the benchmark runs
+    RuntimeControl control = null;
+    if (!xmlConfig.configurationsAt("control").isEmpty()) {
+      control = new RuntimeControl(xmlConfig.getInt("control/@port", 8090));
+      servers.add(control);
+    }
+
+    // Write the raw samples to disk while the benchmark runs instead of keeping them in memory
+    String spillDirectory = null;
+    if (xmlConfig.getBoolean("spillSamples", false)) {
+      spillDirectory =
+          FileUtil.joinPath(
+              argsLine.getOptionValue("d", "results"), "spill_" + TimeUtil.getCurrentTimeString());
+      FileUtil.makeDirIfNotExists(spillDirectory);
+      LOG.info(
+          "Spilling raw samples into {}, use --recover-spill on it if the run crashes",
+          spillDirectory);
+    }
+
     // Load the configuration for each benchmark
     int lastTxnId = 0;
     for (String plugin : targetList) {
@@ -133,20 +238,55 @@ public class DBWorkload {
       // Pull in database configuration
       wrkld.setDatabaseType(DatabaseType.get(xmlConfig.getString("type")));
       wrkld.setDriverClass(xmlConfig.getString("driver"));
-      wrkld.setUrl(xmlConfig.getString("url"));
+      wrkld.setUrl(url);
       wrkld.setUsername(xmlConfig.getString("username"));
       wrkld.setPassword(xmlConfig.getString("password"));
       wrkld.setRandomSeed(xmlConfig.getInt("randomSeed", -1));
       wrkld.setBatchSize(xmlConfig.getInt("batchsize", 128));
       wrkld.setMaxRetries(xmlConfig.getInt("retries", 3));
+      if (!xmlConfig.configurationsAt("retry").isEmpty()) {
+        wrkld.setRetryPolicy(buildRetryPolicy(xmlConfig.configurationAt("retry")));
+      }
+      if (!xmlConfig.configurationsAt("clientLimits").isEmpty()) {
+        wrkld.setClientLimits(buildClientLimits(xmlConfig.configurationAt("clientLimits")));
+      }
+      if (!xmlConfig.configurationsAt("endpoints").isEmpty()) {
+        wrkld.setEndpointRouter(buildEndpointRouter(xmlConfig.configurationAt("endpoints")));
+      }
+      if (!xmlConfig.configurationsAt("connectionRotation").isEmpty()) {
+        wrkld.setConnectionRotation(
+            buildConnectionRotation(xmlConfig.configurationAt("connectionRotation")));
+      }
+      wrkld.setCircuitBreaker(circuitBreaker);
+      wrkld.setRuntimeControl(control);
       wrkld.setNewConnectionPerTxn(xmlConfig.getBoolean("newConnectionPerTxn", false));
+      wrkld.setVirtualThreads(xmlConfig.getBoolean("virtualThreads", false));
+      wrkld.setSpillDirectory(spillDirectory);
+      wrkld.setConnectThreads(
+          xmlConfig.getInt("connectionRamp/@threads", wrkld.getConnectThreads()));
+      // failing over and waiting for the circuit breaker require reconnecting
       wrkld.setReconnectOnConnectionFailure(
-          xmlConfig.getBoolean("reconnectOnConnectionFailure", false));
+          xmlConfig.getBoolean(
+              "reconnectOnConnectionFailure",
+              wrkld.getEndpointRouter() != null || circuitBreaker != null));
+      wrkld.setProfileStatements(xmlConfig.getBoolean("profileStatements", false));
 
       int terminals = xmlConfig.getInt("terminals[not(@bench)]", 0);
       terminals = xmlConfig.getInt("terminals" + pluginTest, terminals);
       wrkld.setTerminals(terminals);
 
+      // Agents only run their share of the terminals
+      AgentAssignment assignment = agent == null ? null : agent.getAssignment();
+      if (assignment != null) {
+        wrkld.setAgentAssignment(assignment);
+        wrkld.setTerminals(assignment.getCount(terminals));
+        if (wrkld.getTerminals() <= 0) {
+          LOG.error(
+              String.format("%s has no terminals, use at most %d agents", assignment, terminals));
+          System.exit(-1);
+        }
+      }
+
       if (xmlConfig.containsKey("loaderThreads")) {
         int loaderThreads = xmlConfig.getInt("loaderThreads");
         wrkld.setLoaderThreads(loaderThreads);
@@ -199,7 +339,22 @@ public class DBWorkload {
       initDebug.put("Scale Factor", wrkld.getScaleFactor());
       initDebug.put("Terminals", wrkld.getTerminals());
       initDebug.put("New Connection Per Txn", wrkld.getNewConnectionPerTxn());
+      initDebug.put("Connect Threads", wrkld.getConnectThreads());
+      initDebug.put("Virtual Threads", wrkld.getVirtualThreads());
       initDebug.put("Reconnect on Connection Failure", wrkld.getReconnectOnConnectionFailure());
+      initDebug.put("Retry Policy", wrkld.getRetryPolicy());
+      if (wrkld.getClientLimits() != null) {
+        initDebug.put("Client Limits", wrkld.getClientLimits());
+      }
+      if (wrkld.getEndpointRouter() != null) {
+        initDebug.put("Endpoints", wrkld.getEndpointRouter());
+      }
+      if (wrkld.getConnectionRotation() != null) {
+        initDebug.put("Connection Rotation", wrkld.getConnectionRotation());
+      }
+      if (wrkld.getCircuitBreaker() != null) {
+        initDebug.put("Circuit Breaker", wrkld.getCircuitBreaker());
+      }
 
       if (selectivity != -1) {
         initDebug.put("Selectivity", selectivity);
@@ -327,6 +482,16 @@ public class DBWorkload {
           weight_strings = Arrays.asList(work.getString("weights[not(@bench)]").split("\\s*,\\s*"));
         }
 
+        Phase.Arrival arrival = Phase.Arrival.REGULAR;
+        String arrive = work.getString("@arrival", "regular");
+        if (arrive.equalsIgnoreCase("POISSON")) {
+          arrival = Phase.Arrival.POISSON;
+        } else if (arrive.equalsIgnoreCase("TRACE")) {
+          arrival = Phase.Arrival.TRACE;
+        }
+
+        boolean scheduled = !work.configurationsAt("schedule").isEmpty();
+
         double rate = 1;
         boolean rateLimited = true;
         boolean disabled = false;
@@ -340,6 +505,12 @@ public class DBWorkload {
           disabled = true;
         } else if (rate_string.equals(RATE_UNLIMITED)) {
           rateLimited = false;
+        } else if (rate_string.isEmpty() && arrival == Phase.Arrival.TRACE) {
+          // Trace phases are paced by the trace file, the rate is only used as the queue tick
+          rate = 1;
+        } else if (rate_string.isEmpty() && scheduled) {
+          // Set from the schedule below
+          rate = 1;
         } else if (rate_string.isEmpty()) {
           LOG.error(
               String.format("Please specify the rate for phase %d and workload %s", i, plugin));
@@ -351,6 +522,10 @@ public class DBWorkload {
               LOG.error("Rate limit must be at least 0. Use unlimited or disabled values instead.");
               System.exit(-1);
             }
+            if (assignment != null) {
+              // The configured rate is the rate of the whole distributed run
+              rate *= assignment.getShare(terminals);
+            }
           } catch (NumberFormatException e) {
             LOG.error(
                 String.format(
@@ -358,12 +533,6 @@ public class DBWorkload {
             System.exit(-1);
           }
         }
-        Phase.Arrival arrival = Phase.Arrival.REGULAR;
-        String arrive = work.getString("@arrival", "regular");
-        if (arrive.equalsIgnoreCase("POISSON")) {
-          arrival = Phase.Arrival.POISSON;
-        }
-
         // We now have the option to run all queries exactly once in
         // a serial (rather than random) order.
         boolean serial = Boolean.parseBoolean(work.getString("serial", Boolean.FALSE.toString()));
@@ -384,6 +553,9 @@ public class DBWorkload {
                   i));
           System.exit(-1);
         }
+        if (assignment != null) {
+          activeTerminals = assignment.getCount(activeTerminals);
+        }
 
         int time = work.getInt("/time", 0);
         int warmup = work.getInt("/warmup", 0);
@@ -427,18 +599,173 @@ public class DBWorkload {
               totalWeight);
         }
 
-        wrkld.addPhase(
-            i,
-            time,
-            warmup,
-            rate,
-            weights,
-            rateLimited,
-            disabled,
-            serial,
-            timed,
-            activeTerminals,
-            arrival);
+        Phase phase =
+            wrkld.addPhase(
+                i,
+                time,
+                warmup,
+                rate,
+                weights,
+                rateLimited,
+                disabled,
+                serial,
+                timed,
+                activeTerminals,
+                arrival);
+
+        if (arrival == Phase.Arrival.TRACE) {
+          String tracePath = work.getString("trace", "");
+          if (tracePath.isEmpty()) {
+            LOG.error(String.format("Phase %d uses trace arrival but does not specify a trace", i));
+            System.exit(-1);
+          }
+          if (!rateLimited || disabled || serial) {
+            LOG.error(String.format("Phase %d: trace arrival requires a rate-limited phase", i));
+            System.exit(-1);
+          }
+          double speedup = work.getDouble("trace/@speedup", 1.0);
+          try {
+            phase.setTrace(new TraceReplay(tracePath, speedup, wrkld.getTransTypes()));
+          } catch (IllegalArgumentException ex) {
+            LOG.error(String.format("Phase %d: %s", i, ex.getMessage()));
+            System.exit(-1);
+          }
+        }
+
+        if (scheduled) {
+          if (!rateLimited || disabled || serial || arrival == Phase.Arrival.TRACE) {
+            LOG.error(String.format("Phase %d: a rate schedule requires a rate-limited phase", i));
+            System.exit(-1);
+          }
+          double share = assignment == null ? 1 : assignment.getShare(terminals);
+          try {
+            RateSchedule schedule = buildRateSchedule(work, warmup + time, share);
+            phase.setRateSchedule(schedule);
+            phase.setRate(schedule.getRate(0));
+          } catch (IllegalArgumentException | IOException ex) {
+            LOG.error(String.format("Phase %d: %s", i, ex.getMessage()));
+            System.exit(-1);
+          }
+        }
+
+        // Closed-loop search for the maximum rate that meets an SLO, starting at <rate>
+        if (!work.configurationsAt("search").isEmpty()) {
+          if (!rateLimited || disabled || serial || scheduled || arrival == Phase.Arrival.TRACE) {
+            LOG.error(String.format("Phase %d: rate search requires a fixed starting rate", i));
+            System.exit(-1);
+          }
+          double share = assignment == null ? 1 : assignment.getShare(terminals);
+          double increase = rate;
+          if (work.containsKey("search/@increase")) {
+            increase = work.getDouble("search/@increase") * share;
+          }
+          try {
+            phase.setRateSearch(
+                new RateSearch(
+                    RateSearch.Algorithm.valueOf(
+                        work.getString("search/@algorithm", "binary").toUpperCase()),
+                    work.getInt("search/@interval", 10),
+                    work.getDouble("search/@p99", 0),
+                    work.getDouble("search/@abortRate", -1),
+                    work.getDouble("search/@minRate", 1) * share,
+                    work.getDouble("search/@maxRate", 1000000) * share,
+                    increase,
+                    work.getDouble("search/@decrease", 0.5),
+                    work.getDouble("search/@tolerance", 0.05)));
+          } catch (IllegalArgumentException ex) {
+            LOG.error(String.format("Phase %d: %s", i, ex.getMessage()));
+            System.exit(-1);
+          }
+        }
+
+        // End the warmup once throughput and latency are stable
+        if (work.getBoolean("warmup/@adaptive", false)) {
+          if (warmup == 0 || serial) {
+            LOG.error(
+                String.format(
+                    "Phase %d: an adaptive warmup requires a throughput phase with a warmup", i));
+            System.exit(-1);
+          }
+          try {
+            phase.setWarmupDetector(
+                new SteadyStateDetector(
+                    i,
+                    warmup,
+                    work.getInt("warmup/@min", 0),
+                    work.getInt("warmup/@window", 10),
+                    work.getInt("warmup/@windows", 6),
+                    work.getDouble("warmup/@tolerance", 0.05)));
+          } catch (IllegalArgumentException ex) {
+            LOG.error(String.format("Phase %d: %s", i, ex.getMessage()));
+            System.exit(-1);
+          }
+        }
+
+        // Step the active terminals through a sequence to measure the scalability curve
+        if (!work.configurationsAt("sweep").isEmpty()) {
+          if (disabled || serial || !timed) {
+            LOG.error(String.format("Phase %d: a sweep requires a timed throughput phase", i));
+            System.exit(-1);
+          }
+          try {
+            ConcurrencySweep sweep = buildSweep(work.configurationAt("sweep"));
+            if (sweep.getMaxTerminals() > terminals) {
+              throw new IllegalArgumentException(
+                  String.format(
+                      "the sweep needs %d terminals but only %d are configured",
+                      sweep.getMaxTerminals(), terminals));
+            }
+            if (sweep.getDurationSeconds() > time) {
+              throw new IllegalArgumentException(
+                  String.format(
+                      "the sweep needs %ds but the phase measures for %ds",
+                      sweep.getDurationSeconds(), time));
+            }
+            phase.setSweep(sweep);
+          } catch (IllegalArgumentException ex) {
+            LOG.error(String.format("Phase %d: %s", i, ex.getMessage()));
+            System.exit(-1);
+          }
+        }
+
+        // Fault injected into the phase to measure failover and recovery
+        if (!work.configurationsAt("fault").isEmpty()) {
+          if (disabled || !timed) {
+            LOG.error(String.format("Phase %d: a fault requires a timed phase", i));
+            System.exit(-1);
+          }
+          try {
+            phase.setFault(buildFault(work.configurationAt("fault"), i, warmup + time, proxy));
+          } catch (IllegalArgumentException ex) {
+            LOG.error(String.format("Phase %d: %s", i, ex.getMessage()));
+            System.exit(-1);
+          }
+        }
+
+        // End the phase once the confidence intervals of its results are narrow enough
+        if (!work.configurationsAt("stop").isEmpty()) {
+          if (disabled || serial || !timed) {
+            LOG.error(String.format("Phase %d: a stop rule requires a timed throughput phase", i));
+            System.exit(-1);
+          }
+          if (phase.getRateSchedule() != null
+              || phase.getRateSearch() != null
+              || phase.getSweep() != null
+              || phase.getFault() != null) {
+            LOG.error(
+                String.format(
+                    "Phase %d: a stop rule needs a steady workload, without a rate schedule,"
+                        + " search, sweep or fault",
+                    i));
+            System.exit(-1);
+          }
+          try {
+            phase.setStopRule(buildStopRule(work.configurationAt("stop"), i));
+          } catch (IllegalArgumentException ex) {
+            LOG.error(String.format("Phase %d: %s", i, ex.getMessage()));
+            System.exit(-1);
+          }
+        }
       }
 
       // CHECKING INPUT PHASES
@@ -462,6 +789,21 @@ public class DBWorkload {
       wrkld.init();
     }
 
+    // The coordinator does not execute anything itself, it only merges the agents' results
+    if (argsLine.hasOption("coordinator")) {
+      try {
+        Results r = runCoordinator(argsLine, xmlConfig, activeTXTypes);
+        if (r.getState() == State.ERROR) {
+          throw new RuntimeException(
+              "Errors encountered during distributed execution. See agent output for details.");
+        }
+      } catch (Throwable ex) {
+        LOG.error("Unexpected error when coordinating agents.", ex);
+        System.exit(1);
+      }
+      return;
+    }
+
     // Export StatementDialects
     if (isBooleanOptionSet(argsLine, "dialects-export")) {
       BenchmarkModule bench = benchList.get(0);
@@ -522,6 +864,7 @@ public class DBWorkload {
     // Execute Loader
     if (isBooleanOptionSet(argsLine, "load")) {
       try {
+        Recording recording = argsLine.hasOption("jfr") ? Events.startRecording() : null;
         for (BenchmarkModule benchmark : benchList) {
           LOG.info("Loading data into {} database...", benchmark.getBenchmarkName().toUpperCase());
           runLoader(benchmark);
@@ -529,6 +872,9 @@ public class DBWorkload {
               "Finished loading data into {} database...",
               benchmark.getBenchmarkName().toUpperCase());
         }
+        if (recording != null) {
+          writeLoadRecording(argsLine, recording);
+        }
       } catch (Throwable ex) {
         LOG.error("Unexpected error when loading benchmark database records.", ex);
         System.exit(1);
@@ -556,9 +902,24 @@ public class DBWorkload {
     if (isBooleanOptionSet(argsLine, "execute")) {
       // Bombs away!
       try {
-        Results r = runWorkload(benchList, monitorInfo);
-        writeOutputs(r, activeTXTypes, argsLine, xmlConfig);
+        Recording recording = argsLine.hasOption("jfr") ? Events.startRecording() : null;
+        Results r = runWorkload(benchList, monitorInfo, agent);
+        if (control != null) {
+          control.close();
+        }
+        if (proxy != null) {
+          r.getProxyConnections().addAll(proxy.getConnections());
+        }
+        writeOutputs(r, activeTXTypes, argsLine, xmlConfig, recording);
         writeHistograms(r);
+        if (agent != null) {
+          agent.sendReport(r);
+          agent.close();
+        }
+        // The spilled samples are in the raw output now; they are only kept if the run crashed
+        if (spillDirectory != null) {
+          FileUtils.deleteDirectory(new File(spillDirectory));
+        }
 
         if (argsLine.hasOption("json-histograms")) {
           String histogram_json = writeJSONHistograms(r);
@@ -581,6 +942,16 @@ public class DBWorkload {
     }
   }
 
+  /** Turns the spill directory left behind by a crashed run into a raw sample file next to it. */
+  private static void recoverSpill(CommandLine argsLine) throws IOException {
+    Path directory = Paths.get(argsLine.getOptionValue("recover-spill"));
+    Path output = directory.resolveSibling(directory.getFileName() + ".raw.csv");
+    try (PrintStream ps = new PrintStream(Files.newOutputStream(output))) {
+      long samples = SampleSpill.recover(directory, ps);
+      LOG.info("Recovered {} samples from {} into {}", samples, directory, output);
+    }
+  }
+
   private static Options buildOptions(XMLConfiguration pluginConfig) {
     Options options = new Options();
     options.addOption(
@@ -607,6 +978,24 @@ public class DBWorkload {
         "Base directory for the result files, default is current directory");
     options.addOption(null, "dialects-export", true, "Export benchmark SQL to a dialects file");
     options.addOption("jh", "json-histograms", true, "Export histograms to JSON file");
+    options.addOption(
+        null,
+        "coordinator",
+        true,
+        "Coordinate a distributed run: listen on this port and merge the agents' results");
+    options.addOption(
+        null,
+        "jfr",
+        false,
+        "Record Java Flight Recorder events of the load into <results>.load.jfr and of the run"
+            + " into <results>.jfr");
+    options.addOption(null, "agents", true, "Number of agents taking part in a distributed run");
+    options.addOption(null, "agent", true, "Run as an agent of the coordinator at <host>:<port>");
+    options.addOption(
+        null,
+        "recover-spill",
+        true,
+        "Write the samples spilled by a crashed run in this directory to <directory>.raw.csv");
     return options;
   }
 
@@ -678,6 +1067,17 @@ public class DBWorkload {
     return JSONUtil.toJSONString(map);
   }
 
+  /** Writes the flight recording of the loaders, which the run's recording does not include. */
+  private static void writeLoadRecording(CommandLine argsLine, Recording recording)
+      throws IOException {
+    String outputDirectory = argsLine.getOptionValue("d", "results");
+    FileUtil.makeDirIfNotExists(outputDirectory);
+    String name = StringUtils.join(StringUtils.split(argsLine.getOptionValue("b"), ','), '-');
+    String recordingFileName = name + "_" + TimeUtil.getCurrentTimeString() + ".load.jfr";
+    LOG.info("Output loader flight recording into file: {}", recordingFileName);
+    Events.stopRecording(recording, Paths.get(outputDirectory, recordingFileName));
+  }
+
   /**
    * Write out the results for a benchmark run to a bunch of files
    *
@@ -685,13 +1085,15 @@ public class DBWorkload {
    * @param activeTXTypes
    * @param argsLine
    * @param xmlConfig
+   * @param recording flight recording to stop and write out, or null
    * @throws Exception
    */
   private static void writeOutputs(
       Results r,
       List<TransactionType> activeTXTypes,
       CommandLine argsLine,
-      XMLConfiguration xmlConfig)
+      XMLConfiguration xmlConfig,
+      Recording recording)
       throws Exception {
 
     // If an output directory is used, store the information
@@ -760,6 +1162,474 @@ public class DBWorkload {
         rw.writeResults(windowSize, ps, t);
       }
     }
+
+    if (recording != null) {
+      String recordingFileName = baseFileName + ".jfr";
+      LOG.info("Output flight recording into file: {}", recordingFileName);
+      Events.stopRecording(recording, Paths.get(outputDirectory, recordingFileName));
+    }
+
+    if (!r.getErrorCounts().isEmpty()) {
+      String errorsFileName = baseFileName + ".errors.csv";
+      try (PrintStream ps = new PrintStream(FileUtil.joinPath(outputDirectory, errorsFileName))) {
+        LOG.info("Output errors into file: {} with window size {}", errorsFileName, windowSize);
+        rw.writeErrors(windowSize, ps);
+      }
+    }
+
+    if (!r.getProxyConnections().isEmpty()) {
+      String proxyFileName = baseFileName + ".proxy.csv";
+      try (PrintStream ps = new PrintStream(FileUtil.joinPath(outputDirectory, proxyFileName))) {
+        LOG.info("Output latency proxy connections into file: {}", proxyFileName);
+        rw.writeProxyConnections(ps);
+      }
+    }
+
+    if (!r.getSweeps().isEmpty()) {
+      String sweepFileName = baseFileName + ".sweep.csv";
+      try (PrintStream ps = new PrintStream(FileUtil.joinPath(outputDirectory, sweepFileName))) {
+        LOG.info("Output concurrency sweep into file: {}", sweepFileName);
+        rw.writeSweeps(ps);
+      }
+    }
+
+    if (!r.getFaults().isEmpty()) {
+      String faultFileName = baseFileName + ".fault.csv";
+      try (PrintStream ps = new PrintStream(FileUtil.joinPath(outputDirectory, faultFileName))) {
+        LOG.info("Output fault injection series into file: {}", faultFileName);
+        rw.writeFaults(ps);
+      }
+    }
+
+    if (!r.getConnectionRotations().isEmpty()) {
+      String rotationsFileName = baseFileName + ".rotations.csv";
+      try (PrintStream ps =
+          new PrintStream(FileUtil.joinPath(outputDirectory, rotationsFileName))) {
+        LOG.info("Output connection rotations into file: {}", rotationsFileName);
+        rw.writeConnectionRotations(ps);
+      }
+    }
+
+    if (!r.getStatementProfile().isEmpty()) {
+      String statementsFileName = baseFileName + ".statements.csv";
+      try (PrintStream ps =
+          new PrintStream(FileUtil.joinPath(outputDirectory, statementsFileName))) {
+        LOG.info("Output per-statement latencies into file: {}", statementsFileName);
+        rw.writeStatements(ps);
+      }
+    }
+  }
+
+  /**
+   * Builds the retry policy from the {@code <retry>} element:
+   *
+   * <pre>
+   *   &lt;retry policy="com.example.MyRetryPolicy" baseBackoff="5" maxBackoff="500"
+   *          rerandomize="false"&gt;
+   *     &lt;budget txn="NewOrder" attempts="10"/&gt;
+   *   &lt;/retry&gt;
+   * </pre>
+   *
+   * Backoffs are in milliseconds. Transaction types without a budget use {@code <retries>}.
+   */
+  private static RetryPolicy buildRetryPolicy(HierarchicalConfiguration<ImmutableNode> retry) {
+    String policyClass = retry.getString("@policy", RetryPolicy.class.getName());
+    RetryPolicy policy = ClassUtil.newInstance(policyClass, new Object[0], new Class<?>[0]);
+    long baseBackoff = retry.getLong("@baseBackoff", 0);
+    policy.setBackoff(baseBackoff, retry.getLong("@maxBackoff", Math.max(1000, baseBackoff)));
+    policy.setRerandomize(retry.getBoolean("@rerandomize", true));
+    for (HierarchicalConfiguration<ImmutableNode> budget : retry.configurationsAt("budget")) {
+      policy.setBudget(budget.getString("@txn"), budget.getInt("@attempts"));
+    }
+    return policy;
+  }
+
+  /**
+   * Starts the PostgreSQL stub server described by the {@code <stubServer>} element:
+   *
+   * <pre>
+   *   &lt;stubServer port="0" auth="password" serverTime="100"/&gt;
+   * </pre>
+   *
+   * Port 0 picks an ephemeral port. {@code auth} is {@code trust} (the default) or {@code
+   * password}, which accepts any password as Aurora DSQL clients send their IAM tokens. The server
+   * time is in microseconds per statement. The configured {@code <url>} is replaced by one pointing
+   * at the stub; the driver must be the PostgreSQL JDBC driver.
+   */
+  private static PgStubServer startStubServer(HierarchicalConfiguration<ImmutableNode> stub)
+      throws IOException {
+    return new PgStubServer(
+        stub.getInt("@port", 0),
+        PgStubServer.Auth.valueOf(stub.getString("@auth", "trust").toUpperCase()),
+        stub.getLong("@serverTime", 0));
+  }
+
+  /**
+   * Starts the latency proxy described by the {@code <proxy>} element:
+   *
+   * <pre>
+   *   &lt;proxy port="0" target="db.example.com:5432"&gt;
+   *     &lt;upstream delay="25" jitter="2" distribution="normal" bandwidth="100"/&gt;
+   *     &lt;downstream delay="25" jitter="2" distribution="normal"/&gt;
+   *   &lt;/proxy&gt;
+   * </pre>
+   *
+   * Delays and jitter are in milliseconds, bandwidth in megabits per second. The distribution is
+   * {@code constant} (the default), {@code uniform}, {@code normal} or {@code exponential}. A
+   * direction without an element is not delayed. The target defaults to the host and port of the
+   * URL, which is then pointed at the proxy.
+   */
+  private static LatencyProxy startProxy(
+      HierarchicalConfiguration<ImmutableNode> proxy, String url) throws IOException {
+    InetSocketAddress target;
+    String address = proxy.getString("@target", "");
+    if (address.isEmpty()) {
+      target = LatencyProxy.targetOf(url);
+    } else {
+      int sep = address.lastIndexOf(':');
+      target =
+          InetSocketAddress.createUnresolved(
+              address.substring(0, sep), Integer.parseInt(address.substring(sep + 1)));
+    }
+    return new LatencyProxy(
+        proxy.getInt("@port", 0),
+        target,
+        buildLink(proxy, "upstream"),
+        buildLink(proxy, "downstream"));
+  }
+
+  private static LatencyProxy.Link buildLink(
+      HierarchicalConfiguration<ImmutableNode> proxy, String direction) {
+    if (proxy.configurationsAt(direction).isEmpty()) {
+      return LatencyProxy.Link.NONE;
+    }
+    HierarchicalConfiguration<ImmutableNode> link = proxy.configurationAt(direction);
+    return new LatencyProxy.Link(
+        link.getDouble("@delay", 0),
+        link.getDouble("@jitter", 0),
+        LatencyProxy.Distribution.valueOf(
+            link.getString("@distribution", "constant").toUpperCase()),
+        link.getDouble("@bandwidth", 0));
+  }
+
+  /**
+   * Builds the router that spreads the workers over the endpoints in the {@code <endpoints>}
+   * element:
+   *
+   * <pre>
+   *   &lt;endpoints policy="affinity" cooldown="30000" degradeFactor="3"&gt;
+   *     &lt;endpoint name="us-east-1"&gt;jdbc:postgresql://a.us-east-1/postgres&lt;/endpoint&gt;
+   *     &lt;endpoint name="us-east-2"&gt;jdbc:postgresql://b.us-east-2/postgres&lt;/endpoint&gt;
+   *   &lt;/endpoints&gt;
+   * </pre>
+   *
+   * The policy is {@code round-robin} (the default), {@code affinity} or {@code latency}. The
+   * cooldown is in milliseconds; a degradation factor of zero (the default) disables marking
+   * endpoints down for their latency. Endpoints without a name are named by their URL. The {@code
+   * <url>} is still used to create and load the database.
+   */
+  private static EndpointRouter buildEndpointRouter(
+      HierarchicalConfiguration<ImmutableNode> endpoints) {
+    EndpointRouter router =
+        new EndpointRouter(
+            EndpointRouter.Policy.valueOf(
+                endpoints.getString("@policy", "round-robin").replace('-', '_').toUpperCase()),
+            endpoints.getLong("@cooldown", 30000),
+            endpoints.getDouble("@degradeFactor", 0));
+    for (HierarchicalConfiguration<ImmutableNode> endpoint :
+        endpoints.configurationsAt("endpoint")) {
+      String url = endpoint.getString("");
+      router.addEndpoint(endpoint.getString("@name", url), url);
+    }
+    if (router.size() == 0) {
+      throw new IllegalArgumentException("<endpoints> needs at least one <endpoint>");
+    }
+    return router;
+  }
+
+  /**
+   * Builds the stop rule of a phase from its {@code <stop>} element:
+   *
+   * <pre>
+   *   &lt;stop error="0.02" confidence="0.95" batch="30" minBatches="10" percentiles="95,99"/&gt;
+   * </pre>
+   *
+   * The phase ends once the throughput and the latency percentiles are known to within the
+   * relative error at the given confidence, over batches of {@code batch} seconds.
+   */
+  private static ConfidenceStopRule buildStopRule(
+      HierarchicalConfiguration<ImmutableNode> stop, int phaseId) {
+    String list = stop.getString("@percentiles", "");
+    String[] values = list.isBlank() ? new String[0] : list.split("\\s*,\\s*");
+    double[] percentiles = new double[values.length];
+    try {
+      for (int i = 0; i < values.length; i++) {
+        percentiles[i] = Double.parseDouble(values[i]) / 100;
+      }
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Invalid stop rule percentiles: " + list);
+    }
+    return new ConfidenceStopRule(
+        phaseId,
+        stop.getDouble("@error", 0.02),
+        stop.getDouble("@confidence", 0.95),
+        stop.getInt("@batch", 30),
+        stop.getInt("@minBatches", 10),
+        percentiles);
+  }
+
+  /**
+   * Builds the concurrency sweep of a phase from its {@code <sweep>} element:
+   *
+   * <pre>
+   *   &lt;sweep terminals="1,2,4,8,16,32,64" step="60" settle="15"/&gt;
+   * </pre>
+   *
+   * Each step runs with the given number of active terminals for {@code step} seconds, of which
+   * the first {@code settle} seconds are not measured.
+   */
+  private static ConcurrencySweep buildSweep(HierarchicalConfiguration<ImmutableNode> sweep) {
+    String[] values = sweep.getString("@terminals", "").split("\\s*,\\s*");
+    int[] terminals = new int[values.length];
+    try {
+      for (int i = 0; i < values.length; i++) {
+        terminals[i] = Integer.parseInt(values[i]);
+      }
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException(
+          "Invalid sweep terminals: " + sweep.getString("@terminals"));
+    }
+    return new ConcurrencySweep(terminals, sweep.getInt("@step", 60), sweep.getInt("@settle", 10));
+  }
+
+  /**
+   * Builds the fault injected into a phase from its {@code <fault>} element:
+   *
+   * <pre>
+   *   &lt;fault at="60" duration="20" baseline="30"
+   *          command="scripts/interrupt-docker-db-service.sh postgres"/&gt;
+   *   &lt;fault at="60" duration="5" proxy="disconnect"/&gt;
+   * </pre>
+   *
+   * Times are in seconds. The fault runs {@code command} through the shell and/or, with {@code
+   * proxy="disconnect"}, drops the connections of the latency proxy and refuses new ones for the
+   * duration. {@code recover} is a command run once the duration has passed. The baseline
+   * throughput is measured over {@code baseline} seconds before the injection, 10 by default.
+   */
+  private static FaultInjection buildFault(
+      HierarchicalConfiguration<ImmutableNode> fault,
+      int phaseId,
+      int phaseSeconds,
+      LatencyProxy proxy) {
+    if (!fault.containsKey("@at")) {
+      throw new IllegalArgumentException("A fault needs the time it is injected at");
+    }
+    String disconnect = fault.getString("@proxy", "");
+    if (!disconnect.isEmpty() && !disconnect.equalsIgnoreCase("disconnect")) {
+      throw new IllegalArgumentException("Unknown proxy fault: " + disconnect);
+    }
+    if (!disconnect.isEmpty() && proxy == null) {
+      throw new IllegalArgumentException("A proxy fault requires a <proxy>");
+    }
+    return new FaultInjection(
+        phaseId,
+        phaseSeconds,
+        fault.getInt("@at"),
+        fault.getInt("@duration", 0),
+        fault.getInt("@baseline", 10),
+        fault.getString("@command", ""),
+        fault.getString("@recover", ""),
+        disconnect.isEmpty() ? null : proxy);
+  }
+
+  /**
+   * Builds the pace at which connections are opened from the {@code <connectionRamp>} element:
+   *
+   * <pre>
+   *   &lt;connectionRamp threads="64" rate="200"/&gt;
+   *   &lt;connectionRamp threads="64"&gt;
+   *     &lt;schedule type="linear" from="50" to="500" duration="10"/&gt;
+   *   &lt;/connectionRamp&gt;
+   * </pre>
+   *
+   * Rates are in connections per second, 10 by default; {@code rate="unlimited"} removes the limit.
+   * The schedule takes the same forms as the rate schedule of a phase, with time measured from the
+   * first connection. {@code threads} is the number of worker connections opened concurrently.
+   *
+   * @return the schedule, or null for no limit
+   */
+  private static RateSchedule buildConnectionRamp(HierarchicalConfiguration<ImmutableNode> ramp)
+      throws IOException {
+    if (!ramp.configurationsAt("schedule").isEmpty()) {
+      return buildRateSchedule(ramp, 0, 1);
+    }
+    String rate =
+        ramp.getString("@rate", String.valueOf(ConnectionUtil.DEFAULT_CONNECTION_RATE_LIMIT));
+    if (rate.equalsIgnoreCase(RATE_UNLIMITED)) {
+      return null;
+    }
+    return RateSchedule.step(new double[] {0}, new double[] {Double.parseDouble(rate)});
+  }
+
+  /**
+   * Builds the circuit breaker shared by all workers from the {@code <circuitBreaker>} element:
+   *
+   * <pre>
+   *   &lt;circuitBreaker failures="5" cooldown="1000" maxCooldown="30000" probes="2"/&gt;
+   * </pre>
+   *
+   * The breaker opens after the given number of consecutive connection failures and lets {@code
+   * probes} workers try to reconnect after the cooldown, in milliseconds, which doubles after every
+   * failed probe up to the maximum. It does not apply to {@code <endpoints>}, which fail over
+   * instead, and implies {@code reconnectOnConnectionFailure}.
+   */
+  private static CircuitBreaker buildCircuitBreaker(
+      HierarchicalConfiguration<ImmutableNode> breaker) {
+    return new CircuitBreaker(
+        breaker.getInt("@failures", 5),
+        breaker.getLong("@cooldown", 1000),
+        breaker.getLong("@maxCooldown", 30000),
+        breaker.getInt("@probes", 2));
+  }
+
+  /**
+   * Builds the rotation of worker connections from the {@code <connectionRotation>} element:
+   *
+   * <pre>
+   *   &lt;connectionRotation maxAge="3300" jitter="0.2" lead="10"/&gt;
+   * </pre>
+   *
+   * Ages are in seconds. Each connection is replaced at a random time between {@code (1 - jitter)
+   * * maxAge} and {@code maxAge}; the replacement is opened {@code lead} seconds earlier.
+   */
+  private static ConnectionRotation buildConnectionRotation(
+      HierarchicalConfiguration<ImmutableNode> rotation) {
+    return new ConnectionRotation(
+        (long) (rotation.getDouble("@maxAge") * 1000),
+        rotation.getDouble("@jitter", 0.1),
+        (long) (rotation.getDouble("@lead", 10) * 1000));
+  }
+
+  /**
+   * Builds the limits on the load of the benchmark client from the {@code <clientLimits>} element:
+   *
+   * <pre>
+   *   &lt;clientLimits action="fail" cpu="0.8" gcPause="50" scheduleLag="1000"
+   *                 runnableThreads="64"/&gt;
+   * </pre>
+   *
+   * The CPU limit is a fraction of all cores, the GC pause limit is in milliseconds per second and
+   * the schedule lag limit is in microseconds. Omitted limits are not checked. With {@code
+   * action="warn"} (the default) an exceeded limit is only reported. The load of the client is
+   * sampled in every run; threads are only counted when {@code runnableThreads} is set.
+   */
+  private static ClientMonitor.Limits buildClientLimits(
+      HierarchicalConfiguration<ImmutableNode> limits) {
+    return new ClientMonitor.Limits(
+        ClientMonitor.Limits.Action.valueOf(limits.getString("@action", "warn").toUpperCase()),
+        limits.getDouble("@cpu", 0),
+        limits.getDouble("@gcPause", 0),
+        limits.getDouble("@scheduleLag", 0),
+        limits.getInt("@runnableThreads", 0));
+  }
+
+  /**
+   * Builds the rate schedule of a phase from its {@code <schedule>} element:
+   *
+   * <pre>
+   *   &lt;schedule type="linear" from="100" to="1000" duration="300"/&gt;
+   *   &lt;schedule type="step"&gt;0:100,60:200,120:400&lt;/schedule&gt;
+   *   &lt;schedule type="sine" base="500" amplitude="200" period="60"/&gt;
+   *   &lt;schedule type="csv"&gt;path/to/schedule.csv&lt;/schedule&gt;
+   * </pre>
+   *
+   * Times are seconds since the start of the phase; a linear ramp lasts the whole phase by default.
+   */
+  private static RateSchedule buildRateSchedule(
+      HierarchicalConfiguration<ImmutableNode> work, int phaseSeconds, double share)
+      throws IOException {
+    String type = work.getString("schedule/@type", "");
+    RateSchedule schedule;
+    switch (type.toLowerCase()) {
+      case "linear":
+        schedule =
+            RateSchedule.linear(
+                work.getDouble("schedule/@from") * share,
+                work.getDouble("schedule/@to") * share,
+                work.getDouble("schedule/@duration", phaseSeconds));
+        break;
+      case "step":
+        String[] steps = work.getString("schedule", "").split("\\s*,\\s*");
+        double[] times = new double[steps.length];
+        double[] rates = new double[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+          String[] step = steps[i].split(":");
+          if (step.length != 2) {
+            throw new IllegalArgumentException("Invalid schedule step '" + steps[i] + "'");
+          }
+          times[i] = Double.parseDouble(step[0]);
+          rates[i] = Double.parseDouble(step[1]) * share;
+        }
+        schedule = RateSchedule.step(times, rates);
+        break;
+      case "sine":
+        schedule =
+            RateSchedule.sine(
+                work.getDouble("schedule/@base") * share,
+                work.getDouble("schedule/@amplitude") * share,
+                work.getDouble("schedule/@period"));
+        break;
+      case "csv":
+        schedule = RateSchedule.csv(work.getString("schedule")).scale(share);
+        break;
+      default:
+        throw new IllegalArgumentException(
+            "Unknown schedule type '" + type + "', allowed values are linear/step/sine/csv");
+    }
+    return schedule;
+  }
+
+  private static Results runCoordinator(
+      CommandLine argsLine, XMLConfiguration xmlConfig, List<TransactionType> activeTXTypes)
+      throws Exception {
+    int port = Integer.parseInt(argsLine.getOptionValue("coordinator"));
+    int agents = Integer.parseInt(argsLine.getOptionValue("agents"));
+
+    List<AgentReport> reports;
+    try (Coordinator coordinator = new Coordinator(port, agents, COORDINATOR_START_DELAY_MS)) {
+      reports = coordinator.run();
+    }
+    Results r = Coordinator.merge(reports, activeTXTypes);
+    LOG.info(SINGLE_LINE);
+    LOG.info("Rate limited reqs/s (all agents): {}", r);
+
+    String outputDirectory = argsLine.getOptionValue("d", "results");
+    FileUtil.makeDirIfNotExists(outputDirectory);
+    ResultWriter rw = new ResultWriter(r, xmlConfig, argsLine);
+
+    String name = StringUtils.join(StringUtils.split(argsLine.getOptionValue("b"), ','), '-');
+    String baseFileName = name + "_" + TimeUtil.getCurrentTimeString();
+
+    String summaryFileName = baseFileName + ".summary.json";
+    try (PrintStream ps = new PrintStream(FileUtil.joinPath(outputDirectory, summaryFileName))) {
+      LOG.info("Output summary data into file: {}", summaryFileName);
+      rw.writeSummary(ps);
+    }
+
+    String agentsFileName = baseFileName + ".agents.csv";
+    try (PrintStream ps = new PrintStream(FileUtil.joinPath(outputDirectory, agentsFileName))) {
+      LOG.info("Output per-agent results into file: {}", agentsFileName);
+      ResultWriter.writeAgents(reports, ps);
+    }
+
+    String configFileName = baseFileName + ".config.xml";
+    try (PrintStream ps = new PrintStream(FileUtil.joinPath(outputDirectory, configFileName))) {
+      LOG.info("Output benchmark config into file: {}", configFileName);
+      rw.writeConfig(ps);
+    }
+
+    writeHistograms(r);
+    return r;
   }
 
   private static void runCreator(BenchmarkModule bench) throws SQLException, IOException {
@@ -773,8 +1643,8 @@ public class DBWorkload {
     bench.loadDatabase();
   }
 
-  private static Results runWorkload(List<BenchmarkModule> benchList, MonitorInfo monitorInfo)
-      throws IOException {
+  private static Results runWorkload(
+      List<BenchmarkModule> benchList, MonitorInfo monitorInfo, Agent agent) throws IOException {
     List<Worker<?>> workers = new ArrayList<>();
     List<WorkloadConfiguration> workConfs = new ArrayList<>();
     for (BenchmarkModule bench : benchList) {
@@ -788,6 +1658,10 @@ public class DBWorkload {
               bench.getBenchmarkName().toUpperCase(), num_phases, (num_phases > 1 ? "s" : "")));
       workConfs.add(bench.getWorkloadConfiguration());
     }
+    if (agent != null) {
+      // Line up the phases of all agents
+      agent.awaitStart();
+    }
     Results r = ThreadBench.runRateLimitedBenchmark(workers, workConfs, monitorInfo);
     LOG.info(SINGLE_LINE);
     LOG.info("Rate limited reqs/s: {}", r);
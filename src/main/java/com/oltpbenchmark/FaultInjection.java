@@ -0,0 +1,359 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import com.oltpbenchmark.api.TransactionType;
+import com.oltpbenchmark.proxy.LatencyProxy;
+import com.oltpbenchmark.types.TransactionStatus;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fault injected into a phase to measure how the database rides through a failover. At a fixed
+ * time into the phase it runs a local command, such as {@code
+ * scripts/interrupt-docker-db-service.sh}, and/or drops every connection of the latency proxy and
+ * refuses new ones for the duration of the fault. After the duration it runs the optional recovery
+ * command.
+ *
+ * <p>The workers count their committed and failed attempts per second of the phase. The baseline
+ * is the mean throughput over the seconds before the injection, from which follow
+ *
+ * <ul>
+ *   <li>the time from the injection until the first failed attempt,
+ *   <li>the unavailability window, the seconds after the injection in which less than 5% of the
+ *       baseline committed,
+ *   <li>the time from the injection until the throughput is back at 95% of the baseline over
+ *       three consecutive seconds.
+ * </ul>
+ *
+ * A transaction that failed for good after the injection is lost. A connection error during the
+ * commit leaves its outcome unknown: if the transaction was then retried and committed, its work
+ * may have been applied twice.
+ */
+public class FaultInjection {
+  private static final Logger LOG = LoggerFactory.getLogger(FaultInjection.class);
+
+  /** Throughput that counts as recovered, relative to the baseline. */
+  static final double RECOVERED = 0.95;
+
+  /** Throughput below which a second counts as unavailable, relative to the baseline. */
+  static final double UNAVAILABLE = 0.05;
+
+  /** Seconds over which the throughput must be back at the baseline. */
+  static final int RECOVERY_WINDOW = 3;
+
+  private static final int LOST = 0;
+  private static final int COMMIT_UNKNOWN = 1;
+  private static final int DUPLICATED = 2;
+
+  private final int phaseId;
+  private final long atNs;
+  private final long durationNs;
+  private final int baselineSeconds;
+  private final String command;
+  private final String recoverCommand;
+  private final LatencyProxy proxy;
+
+  private final LongAdder[] successes;
+  private final LongAdder[] errors;
+  private final AtomicLong firstErrorNs = new AtomicLong(-1);
+  private final Map<String, long[]> outcomes = new TreeMap<>();
+
+  private volatile boolean started = false;
+  private volatile long startNs;
+  private volatile boolean injected = false;
+  private volatile long injectedNs;
+  private boolean recovered = false;
+
+  /**
+   * @param phaseId the phase the fault is injected into
+   * @param phaseSeconds length of the phase including its warmup
+   * @param atSeconds time into the phase at which the fault is injected
+   * @param durationSeconds how long the proxy refuses connections and when the recovery command
+   *     runs
+   * @param baselineSeconds seconds before the injection whose throughput is the baseline
+   * @param command shell command that injects the fault, empty for none
+   * @param recoverCommand shell command run after the duration, empty for none
+   * @param proxy latency proxy whose connections are dropped, null to leave them
+   */
+  public FaultInjection(
+      int phaseId,
+      int phaseSeconds,
+      int atSeconds,
+      int durationSeconds,
+      int baselineSeconds,
+      String command,
+      String recoverCommand,
+      LatencyProxy proxy) {
+    if (command.isEmpty() && proxy == null) {
+      throw new IllegalArgumentException("A fault needs a command or a proxy to disconnect");
+    }
+    if (atSeconds < 1 || atSeconds >= phaseSeconds || durationSeconds < 0 || baselineSeconds < 1) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid fault: at=%ds, duration=%ds, baseline=%ds in a phase of %ds",
+              atSeconds, durationSeconds, baselineSeconds, phaseSeconds));
+    }
+    this.phaseId = phaseId;
+    this.atNs = atSeconds * 1000000000L;
+    this.durationNs = durationSeconds * 1000000000L;
+    this.baselineSeconds = baselineSeconds;
+    this.command = command;
+    this.recoverCommand = recoverCommand;
+    this.proxy = proxy;
+    this.successes = new LongAdder[phaseSeconds];
+    this.errors = new LongAdder[phaseSeconds];
+    for (int i = 0; i < phaseSeconds; i++) {
+      this.successes[i] = new LongAdder();
+      this.errors[i] = new LongAdder();
+    }
+  }
+
+  /** Injects the fault and runs the recovery command when it is time. Called by ThreadBench. */
+  void tick(long phaseStartNs, long now) {
+    if (!started) {
+      startNs = phaseStartNs;
+      started = true;
+    }
+    if (!injected && now - startNs >= atNs) {
+      LOG.warn("Injecting fault into phase {}: {}", phaseId, describe());
+      injectedNs = now;
+      injected = true;
+      if (proxy != null) {
+        proxy.disconnect(durationNs / 1000000L);
+      }
+      if (!command.isEmpty()) {
+        run(command);
+      }
+    }
+    if (injected && !recovered && now - injectedNs >= durationNs) {
+      recovered = true;
+      if (!recoverCommand.isEmpty()) {
+        LOG.info("Recovering from fault in phase {}", phaseId);
+        run(recoverCommand);
+      }
+    }
+  }
+
+  private static void run(String command) {
+    try {
+      Process process = new ProcessBuilder("sh", "-c", command).inheritIO().start();
+      process
+          .onExit()
+          .thenAccept(p -> LOG.info("Fault command '{}' exited with {}", command, p.exitValue()));
+    } catch (IOException ex) {
+      LOG.error("Failed to run fault command '{}'", command, ex);
+    }
+  }
+
+  /** Counts an attempt that committed. */
+  public void recordSuccess(long now) {
+    int second = second(now);
+    if (second >= 0) {
+      successes[second].increment();
+    }
+  }
+
+  /** Counts an attempt that failed, or a connection that could not be opened. */
+  public void recordError(long now) {
+    int second = second(now);
+    if (second >= 0) {
+      errors[second].increment();
+    }
+    if (injected && now - injectedNs >= 0) {
+      firstErrorNs.compareAndSet(-1, now - injectedNs);
+    }
+  }
+
+  private int second(long now) {
+    if (!started) {
+      return -1;
+    }
+    long second = (now - startNs) / 1000000000L;
+    return second >= 0 && second < successes.length ? (int) second : -1;
+  }
+
+  /**
+   * Records how a transaction ended once the fault has been injected.
+   *
+   * @param commitUnknown whether a commit of the transaction failed with a connection error
+   */
+  public void recordOutcome(
+      TransactionType transactionType, TransactionStatus status, boolean commitUnknown) {
+    if (!injected) {
+      return;
+    }
+    int kind;
+    if (status == TransactionStatus.SUCCESS) {
+      if (!commitUnknown) {
+        return;
+      }
+      kind = DUPLICATED;
+    } else if (status == TransactionStatus.USER_ABORTED) {
+      return;
+    } else {
+      kind = commitUnknown ? COMMIT_UNKNOWN : LOST;
+    }
+    synchronized (outcomes) {
+      outcomes.computeIfAbsent(transactionType.getName(), k -> new long[3])[kind]++;
+    }
+  }
+
+  public int getPhaseId() {
+    return phaseId;
+  }
+
+  /** Committed attempts in every second of the phase. */
+  public long[] getSuccesses() {
+    return sum(successes);
+  }
+
+  /** Failed attempts in every second of the phase. */
+  public long[] getErrors() {
+    return sum(errors);
+  }
+
+  private static long[] sum(LongAdder[] adders) {
+    long[] result = new long[adders.length];
+    for (int i = 0; i < adders.length; i++) {
+      result[i] = adders[i].sum();
+    }
+    return result;
+  }
+
+  /** Milliseconds from the start of the phase until the injection, -1 if it never happened. */
+  public long getInjectedMs() {
+    return injected ? (injectedNs - startNs) / 1000000L : -1;
+  }
+
+  /** Milliseconds from the injection until the first failed attempt, -1 if none failed. */
+  public long getTimeToFirstErrorMs() {
+    long ns = firstErrorNs.get();
+    return ns < 0 ? -1 : ns / 1000000L;
+  }
+
+  /** Mean committed attempts per second over the seconds before the injection. */
+  static double baseline(long[] successes, int injectedSecond, int seconds) {
+    int from = Math.max(0, injectedSecond - seconds);
+    if (from >= injectedSecond) {
+      return 0;
+    }
+    long sum = 0;
+    for (int i = from; i < injectedSecond; i++) {
+      sum += successes[i];
+    }
+    return (double) sum / (injectedSecond - from);
+  }
+
+  /** Seconds from {@code injectedSecond} on in which less than 5% of the baseline committed. */
+  static int unavailableSeconds(long[] successes, int injectedSecond, double baseline) {
+    int count = 0;
+    for (int i = injectedSecond; i < successes.length; i++) {
+      if (successes[i] < UNAVAILABLE * baseline) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * The second at which the throughput is back at 95% of the baseline: the start of the first
+   * window of three seconds after the first degraded second whose mean reaches it. The injected
+   * second if the throughput never dropped, -1 if it never recovered.
+   */
+  static int recoverySecond(long[] successes, int injectedSecond, double baseline) {
+    double threshold = RECOVERED * baseline;
+    int degraded = -1;
+    for (int i = injectedSecond; i < successes.length; i++) {
+      if (successes[i] < threshold) {
+        degraded = i;
+        break;
+      }
+    }
+    if (degraded < 0) {
+      return injectedSecond;
+    }
+    for (int i = degraded + 1; i + RECOVERY_WINDOW <= successes.length; i++) {
+      long sum = 0;
+      for (int j = i; j < i + RECOVERY_WINDOW; j++) {
+        sum += successes[j];
+      }
+      if (sum >= threshold * RECOVERY_WINDOW) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private String describe() {
+    StringBuilder sb = new StringBuilder();
+    if (proxy != null) {
+      sb.append("proxy disconnect");
+    }
+    if (!command.isEmpty()) {
+      sb.append(sb.length() > 0 ? ", " : "").append("command '").append(command).append("'");
+    }
+    return sb.toString();
+  }
+
+  public Map<String, Object> toMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("Phase", phaseId);
+    map.put("Fault", describe());
+    long injectedMs = getInjectedMs();
+    map.put("Injected (milliseconds)", injectedMs);
+    if (injectedMs < 0) {
+      return map;
+    }
+    long[] series = getSuccesses();
+    int injectedSecond = (int) (injectedMs / 1000);
+    double baseline = baseline(series, injectedSecond, baselineSeconds);
+    int recovery = recoverySecond(series, injectedSecond, baseline);
+    map.put("Baseline Throughput (requests/second)", baseline);
+    map.put("Time To First Error (milliseconds)", getTimeToFirstErrorMs());
+    map.put("Unavailable (seconds)", unavailableSeconds(series, injectedSecond, baseline));
+    map.put(
+        "Time To Recover (milliseconds)",
+        recovery < 0 ? -1 : Math.max(0, recovery * 1000L - injectedMs));
+    Map<String, Object> types = new LinkedHashMap<>();
+    synchronized (outcomes) {
+      for (Map.Entry<String, long[]> e : outcomes.entrySet()) {
+        Map<String, Object> counts = new LinkedHashMap<>();
+        counts.put("Lost", e.getValue()[LOST]);
+        counts.put("Commit Unknown", e.getValue()[COMMIT_UNKNOWN]);
+        counts.put("Possibly Duplicated", e.getValue()[DUPLICATED]);
+        types.put(e.getKey(), counts);
+      }
+    }
+    map.put("Transactions", types);
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "at=%ds, duration=%ds, baseline=%ds, %s",
+        atNs / 1000000000L, durationNs / 1000000000L, baselineSeconds, describe());
+  }
+}
@@ -26,6 +26,7 @@ public class Phase {
   public enum Arrival {
     REGULAR,
     POISSON,
+    TRACE,
   }
 
   private final Random gen = new Random();
@@ -33,17 +34,24 @@ public class Phase {
   private final int id;
   private final int time;
   private final int warmupTime;
-  private final double rate;
+  private volatile double rate;
   private final Arrival arrival;
 
   private final boolean rateLimited;
   private final boolean disabled;
   private final boolean serial;
   private final boolean timed;
-  private final List<Double> weights;
+  private volatile List<Double> weights;
   private final int weightCount;
-  private final int activeTerminals;
+  private volatile int activeTerminals;
   private int nextSerial;
+  private TraceReplay trace = null;
+  private RateSearch rateSearch = null;
+  private RateSchedule rateSchedule = null;
+  private FaultInjection fault = null;
+  private ConcurrencySweep sweep = null;
+  private SteadyStateDetector warmupDetector = null;
+  private ConfidenceStopRule stopRule = null;
 
   Phase(
       String benchmarkName,
@@ -106,6 +114,11 @@ public class Phase {
     return activeTerminals;
   }
 
+  /** Changes the number of active terminals while the phase runs. Used by {@link WorkloadState}. */
+  void setActiveTerminals(int activeTerminals) {
+    this.activeTerminals = activeTerminals;
+  }
+
   public int getWeightCount() {
     return (this.weightCount);
   }
@@ -126,10 +139,95 @@ public class Phase {
     return rate;
   }
 
+  /** Changes the target rate of this phase while it runs. Used by {@link RateSearch}. */
+  void setRate(double rate) {
+    this.rate = rate;
+  }
+
   public Arrival getArrival() {
     return arrival;
   }
 
+  /**
+   * @return the trace replayed by this phase, or null unless the arrival is {@link Arrival#TRACE}
+   */
+  public TraceReplay getTrace() {
+    return trace;
+  }
+
+  void setTrace(TraceReplay trace) {
+    this.trace = trace;
+  }
+
+  /**
+   * @return the controller searching for this phase's maximum sustainable rate, or null if the
+   *     phase runs at a fixed rate
+   */
+  public RateSearch getRateSearch() {
+    return rateSearch;
+  }
+
+  void setRateSearch(RateSearch rateSearch) {
+    this.rateSearch = rateSearch;
+  }
+
+  /**
+   * @return the schedule the rate of this phase follows, or null if the phase runs at a fixed rate
+   */
+  public RateSchedule getRateSchedule() {
+    return rateSchedule;
+  }
+
+  void setRateSchedule(RateSchedule rateSchedule) {
+    this.rateSchedule = rateSchedule;
+  }
+
+  /**
+   * @return the fault injected into this phase, or null if it runs undisturbed
+   */
+  public FaultInjection getFault() {
+    return fault;
+  }
+
+  void setFault(FaultInjection fault) {
+    this.fault = fault;
+  }
+
+  /**
+   * @return the sweep stepping the active terminals of this phase, or null if they are fixed
+   */
+  public ConcurrencySweep getSweep() {
+    return sweep;
+  }
+
+  void setSweep(ConcurrencySweep sweep) {
+    this.sweep = sweep;
+  }
+
+  /**
+   * @return the detector that ends the warmup once the workload is stable, or null if the warmup
+   *     lasts its full time
+   */
+  public SteadyStateDetector getWarmupDetector() {
+    return warmupDetector;
+  }
+
+  void setWarmupDetector(SteadyStateDetector warmupDetector) {
+    this.warmupDetector = warmupDetector;
+  }
+
+  /**
+   * @return the rule that ends the phase once its results are precise enough, or null if it runs
+   *     its full time
+   */
+  public ConfidenceStopRule getStopRule() {
+    return stopRule;
+  }
+
+  void setStopRule(ConfidenceStopRule stopRule) {
+    this.stopRule = stopRule;
+  }
+
   public List<Double> getWeights() {
     return (this.weights);
   }
@@ -140,6 +238,10 @@ public class Phase {
    * @return The total weight
    */
   public double totalWeight() {
+    return totalWeight(weights);
+  }
+
+  private static double totalWeight(List<Double> weights) {
     double total = 0.0;
     for (Double d : weights) {
       total += d;
@@ -147,6 +249,28 @@ public class Phase {
     return total;
   }
 
+  /**
+   * Changes the transaction mix while the phase runs. Used by {@link RuntimeControl}.
+   *
+   * @throws IllegalArgumentException if there is not one weight per transaction type, or the
+   *     weights are negative or add up to less than 1
+   */
+  void setWeights(List<Double> weights) {
+    if (weights.size() != weightCount) {
+      throw new IllegalArgumentException(
+          String.format("Expected %d weights, got %d", weightCount, weights.size()));
+    }
+    for (Double d : weights) {
+      if (d < 0) {
+        throw new IllegalArgumentException("Weights must not be negative: " + weights);
+      }
+    }
+    if (totalWeight(weights) < 1) {
+      throw new IllegalArgumentException("Weights must add up to at least 1: " + weights);
+    }
+    this.weights = List.copyOf(weights);
+  }
+
   /**
    * This simply computes the next transaction by randomly selecting one based on the weights of
    * this phase.
@@ -190,7 +314,8 @@ public class Phase {
       }
       return ret;
     } else {
-      int randomPercentage = gen.nextInt((int) totalWeight()) + 1;
+      List<Double> weights = this.weights;
+      int randomPercentage = gen.nextInt((int) totalWeight(weights)) + 1;
       double weight = 0.0;
       for (int i = 0; i < this.weightCount; i++) {
         weight += weights.get(i);
@@ -220,6 +345,27 @@ public class Phase {
       inner.add("[WarmupTime=" + warmupTime + "]");
       inner.add("[Rate=" + (isRateLimited() ? rate : "unlimited") + "]");
       inner.add("[Arrival=" + arrival + "]");
+      if (rateSchedule != null) {
+        inner.add("[Schedule=" + rateSchedule + "]");
+      }
+      if (rateSearch != null) {
+        inner.add("[Search=" + rateSearch + "]");
+      }
+      if (fault != null) {
+        inner.add("[Fault=" + fault + "]");
+      }
+      if (sweep != null) {
+        inner.add("[Sweep=" + sweep + "]");
+      }
+      if (warmupDetector != null) {
+        inner.add("[AdaptiveWarmup=" + warmupDetector + "]");
+      }
+      if (stopRule != null) {
+        inner.add("[StopRule=" + stopRule + "]");
+      }
+      if (trace != null) {
+        inner.add("[Trace=" + trace.getPath() + " x" + trace.getSpeedup() + "]");
+      }
       inner.add("[Ratios=" + getWeights() + "]");
       inner.add("[ActiveWorkers=" + getActiveTerminals() + "]");
     }
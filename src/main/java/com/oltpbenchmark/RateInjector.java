@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import com.oltpbenchmark.util.LatencyHistogram;
+import com.oltpbenchmark.util.Timeline;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Precise timing for the rate generator. {@link Thread#sleep(long, int)} has roughly millisecond
+ * granularity, which turns high rates into bursts and distorts Poisson arrivals. The injector parks
+ * until shortly before each deadline and spins for the remainder, and records how late it woke up
+ * (its schedule error) so that client-side pacing problems can be told apart from database
+ * latency.
+ *
+ * <p>Schedule errors are kept in a histogram for the whole run and summarized per second into the
+ * {@link Timeline}.
+ */
+final class RateInjector {
+
+  static final String SCHEDULE_ERROR = "Schedule Error (microseconds)";
+  static final String MAX_SCHEDULE_ERROR = "Max Schedule Error (microseconds)";
+
+  /** Remaining time below which the injector spins instead of parking. */
+  private static final long SPIN_THRESHOLD_NS = 100000;
+
+  private static final long SECOND_NS = 1000000000L;
+
+  private final Timeline timeline;
+  private final LatencyHistogram scheduleError = new LatencyHistogram();
+
+  private long secondStartNs = -1;
+  private long secondCount = 0;
+  private long secondSum = 0;
+  private long secondMax = 0;
+  private volatile double lastSecondError = 0;
+
+  RateInjector(Timeline timeline) {
+    this.timeline = timeline;
+    timeline.define(MAX_SCHEDULE_ERROR, Timeline.Aggregate.MAXIMUM);
+  }
+
+  /**
+   * Blocks until {@code deadlineNs}. Returns immediately if the deadline already passed.
+   *
+   * @return the time the injector woke up
+   */
+  long awaitDeadline(long deadlineNs) {
+    long now = System.nanoTime();
+    long remaining = deadlineNs - now;
+    while (remaining > SPIN_THRESHOLD_NS) {
+      LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NS);
+      now = System.nanoTime();
+      remaining = deadlineNs - now;
+    }
+    while (remaining > 0) {
+      Thread.onSpinWait();
+      now = System.nanoTime();
+      remaining = deadlineNs - now;
+    }
+    record(deadlineNs, now);
+    return now;
+  }
+
+  private void record(long deadlineNs, long now) {
+    long errorUs = (now - deadlineNs) / 1000;
+    scheduleError.record(errorUs);
+
+    if (secondStartNs < 0) {
+      secondStartNs = now;
+    } else if (now - secondStartNs >= SECOND_NS) {
+      flush();
+      secondStartNs = now;
+    }
+    secondCount++;
+    secondSum += errorUs;
+    secondMax = Math.max(secondMax, errorUs);
+  }
+
+  /** Writes the current second to the timeline. Called once more when the run ends. */
+  void flush() {
+    if (secondCount > 0) {
+      lastSecondError = (double) secondSum / secondCount;
+      timeline.record(SCHEDULE_ERROR, secondStartNs, lastSecondError);
+      timeline.record(MAX_SCHEDULE_ERROR, secondStartNs, secondMax);
+    }
+    secondCount = 0;
+    secondSum = 0;
+    secondMax = 0;
+  }
+
+  /** Mean schedule error in microseconds of the last complete second. */
+  double getLastSecondError() {
+    return lastSecondError;
+  }
+
+  /** Schedule errors of every tick in microseconds. */
+  LatencyHistogram getScheduleError() {
+    return scheduleError;
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A target rate that changes over the course of a phase. The rate generator evaluates the schedule
+ * on every tick, so the rate follows it smoothly instead of in per-phase steps. Time is measured in
+ * seconds since the phase started, including its warmup.
+ *
+ * <p>Rates never drop below {@value #MIN_RATE} request/second, which also bounds the length of a
+ * rate generator tick.
+ */
+public final class RateSchedule {
+
+  public static final double MIN_RATE = 1.0;
+
+  public enum Type {
+    /** Linear ramp between two rates over a given duration, constant afterwards. */
+    LINEAR,
+    /** Piecewise constant rates, each holding until the next step. */
+    STEP,
+    /** Sine wave around a base rate. */
+    SINE,
+    /** Piecewise linear interpolation between points read from a CSV file. */
+    CSV,
+  }
+
+  private final Type type;
+  private final double[] times;
+  private final double[] rates;
+  private final double base;
+  private final double amplitude;
+  private final double period;
+
+  private RateSchedule(
+      Type type, double[] times, double[] rates, double base, double amplitude, double period) {
+    for (int i = 1; i < times.length; i++) {
+      if (times[i] < times[i - 1]) {
+        throw new IllegalArgumentException("Rate schedule times must be increasing");
+      }
+    }
+    this.type = type;
+    this.times = times;
+    this.rates = rates;
+    this.base = base;
+    this.amplitude = amplitude;
+    this.period = period;
+  }
+
+  public static RateSchedule linear(double from, double to, double durationSeconds) {
+    if (durationSeconds <= 0) {
+      throw new IllegalArgumentException("Ramp duration must be positive: " + durationSeconds);
+    }
+    return new RateSchedule(
+        Type.LINEAR, new double[] {0, durationSeconds}, new double[] {from, to}, 0, 0, 0);
+  }
+
+  /**
+   * @param times start of each step in seconds, increasing
+   * @param rates rate of each step
+   */
+  public static RateSchedule step(double[] times, double[] rates) {
+    if (times.length == 0 || times.length != rates.length) {
+      throw new IllegalArgumentException("Step schedule needs one rate per step");
+    }
+    return new RateSchedule(Type.STEP, times.clone(), rates.clone(), 0, 0, 0);
+  }
+
+  public static RateSchedule sine(double base, double amplitude, double periodSeconds) {
+    if (periodSeconds <= 0) {
+      throw new IllegalArgumentException("Sine period must be positive: " + periodSeconds);
+    }
+    return new RateSchedule(
+        Type.SINE, new double[0], new double[0], base, amplitude, periodSeconds);
+  }
+
+  /**
+   * Reads a piecewise linear schedule from a file of {@code seconds,rate} lines. Blank lines, lines
+   * starting with '#' and a header line are skipped.
+   */
+  public static RateSchedule csv(String path) throws IOException {
+    List<double[]> points = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+      String line;
+      int lineNo = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNo++;
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] fields = line.split("\\s*,\\s*");
+        try {
+          points.add(new double[] {Double.parseDouble(fields[0]), Double.parseDouble(fields[1])});
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+          if (points.isEmpty() && lineNo == 1) {
+            // Header line
+            continue;
+          }
+          throw new IOException(String.format("%s:%d: expected 'seconds,rate'", path, lineNo), ex);
+        }
+      }
+    }
+    if (points.isEmpty()) {
+      throw new IOException("Rate schedule " + path + " is empty");
+    }
+    double[] times = new double[points.size()];
+    double[] rates = new double[points.size()];
+    for (int i = 0; i < times.length; i++) {
+      times[i] = points.get(i)[0];
+      rates[i] = points.get(i)[1];
+    }
+    return new RateSchedule(Type.CSV, times, rates, 0, 0, 0);
+  }
+
+  /** Returns this schedule with all rates multiplied by {@code factor}. */
+  public RateSchedule scale(double factor) {
+    double[] scaled = new double[rates.length];
+    for (int i = 0; i < rates.length; i++) {
+      scaled[i] = rates[i] * factor;
+    }
+    return new RateSchedule(type, times, scaled, base * factor, amplitude * factor, period);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * @param seconds time since the start of the phase
+   * @return the target rate at that time in requests/second
+   */
+  public double getRate(double seconds) {
+    double rate;
+    switch (type) {
+      case SINE:
+        rate = base + amplitude * Math.sin(2 * Math.PI * seconds / period);
+        break;
+      case STEP:
+        rate = rates[0];
+        for (int i = 1; i < times.length && times[i] <= seconds; i++) {
+          rate = rates[i];
+        }
+        break;
+      default:
+        rate = interpolate(seconds);
+        break;
+    }
+    return Math.max(MIN_RATE, rate);
+  }
+
+  private double interpolate(double seconds) {
+    if (seconds <= times[0]) {
+      return rates[0];
+    }
+    for (int i = 1; i < times.length; i++) {
+      if (seconds < times[i]) {
+        double fraction = (seconds - times[i - 1]) / (times[i] - times[i - 1]);
+        return rates[i - 1] + fraction * (rates[i] - rates[i - 1]);
+      }
+    }
+    return rates[rates.length - 1];
+  }
+
+  @Override
+  public String toString() {
+    switch (type) {
+      case SINE:
+        return String.format("sine(%s+-%s, %ss)", base, amplitude, period);
+      case LINEAR:
+        return String.format("linear(%s->%s, %ss)", rates[0], rates[1], times[1]);
+      default:
+        return String.format("%s(%d points)", type.name().toLowerCase(), times.length);
+    }
+  }
+}
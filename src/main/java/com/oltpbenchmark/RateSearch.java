@@ -0,0 +1,374 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import com.oltpbenchmark.api.TransactionOutcomes;
+import com.oltpbenchmark.api.Worker;
+import com.oltpbenchmark.types.TransactionStatus;
+import com.oltpbenchmark.util.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Closed-loop controller that searches for the highest rate a phase can sustain without breaching
+ * a service level objective. Every interval it compares the p99 latency and the abort rate of the
+ * transactions completed in that interval with the SLO, and raises or lowers the phase's target
+ * rate accordingly. An interval also fails if the workers could not keep up with the target rate,
+ * since queueing delay is not part of the measured latency.
+ *
+ * <ul>
+ *   <li>{@link Algorithm#BINARY} doubles the rate until the first breach, then bisects between the
+ *       highest passing and the lowest failing rate until they are within the tolerance, and holds
+ *       the highest passing rate for the rest of the phase.
+ *   <li>{@link Algorithm#AIMD} adds a fixed increment after every passing interval and multiplies
+ *       the rate by a decrease factor after every failing one, for as long as the phase runs.
+ * </ul>
+ *
+ * The knee is the highest target rate that met the SLO.
+ */
+public class RateSearch {
+  private static final Logger LOG = LoggerFactory.getLogger(RateSearch.class);
+
+  public enum Algorithm {
+    BINARY,
+    AIMD,
+  }
+
+  /** The measurements of one search interval. */
+  public static final class Step {
+    private final long offsetMs;
+    private final double targetRate;
+    private final double achievedRate;
+    private final long p99LatencyUs;
+    private final double abortRate;
+    private final boolean withinSlo;
+
+    Step(
+        long offsetMs,
+        double targetRate,
+        double achievedRate,
+        long p99LatencyUs,
+        double abortRate,
+        boolean withinSlo) {
+      this.offsetMs = offsetMs;
+      this.targetRate = targetRate;
+      this.achievedRate = achievedRate;
+      this.p99LatencyUs = p99LatencyUs;
+      this.abortRate = abortRate;
+      this.withinSlo = withinSlo;
+    }
+
+    public long getOffsetMs() {
+      return offsetMs;
+    }
+
+    public double getTargetRate() {
+      return targetRate;
+    }
+
+    public double getAchievedRate() {
+      return achievedRate;
+    }
+
+    public long getP99LatencyUs() {
+      return p99LatencyUs;
+    }
+
+    public double getAbortRate() {
+      return abortRate;
+    }
+
+    public boolean isWithinSlo() {
+      return withinSlo;
+    }
+
+    public Map<String, Object> toMap() {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("Offset (milliseconds)", offsetMs);
+      map.put("Target Rate (requests/second)", targetRate);
+      map.put("Achieved Rate (requests/second)", achievedRate);
+      map.put("99th Percentile Latency (microseconds)", p99LatencyUs);
+      map.put("Abort Rate", abortRate);
+      map.put("Within SLO", withinSlo);
+      return map;
+    }
+  }
+
+  private final Algorithm algorithm;
+  private final long intervalNs;
+  private final long p99SloUs;
+  private final double abortRateSlo;
+  private final double minRate;
+  private final double maxRate;
+  private final double increase;
+  private final double decrease;
+  private final double tolerance;
+
+  private final List<Step> steps = new ArrayList<>();
+
+  private double highestPassing = 0;
+  private double lowestFailing = Double.MAX_VALUE;
+  private Step knee = null;
+  private boolean converged = false;
+
+  private long searchStart = -1;
+  private volatile long intervalStart = -1;
+  private LatencyHistogram intervalLatencies;
+  private long intervalCompleted;
+  private long intervalAborted;
+
+  /**
+   * @param algorithm search algorithm
+   * @param intervalSeconds length of each measurement interval
+   * @param p99SloMs p99 latency objective in milliseconds, 0 to ignore latency
+   * @param abortRateSlo objective for the fraction of aborted, retried or failed transactions, a
+   *     negative value to ignore aborts
+   * @param minRate lowest rate the search may set
+   * @param maxRate highest rate the search may set
+   * @param increase additive increase of {@link Algorithm#AIMD}
+   * @param decrease multiplicative decrease of {@link Algorithm#AIMD}
+   * @param tolerance relative width at which {@link Algorithm#BINARY} stops, also the fraction of
+   *     the target rate the workers may fall behind
+   */
+  public RateSearch(
+      Algorithm algorithm,
+      int intervalSeconds,
+      double p99SloMs,
+      double abortRateSlo,
+      double minRate,
+      double maxRate,
+      double increase,
+      double decrease,
+      double tolerance) {
+    if (intervalSeconds <= 0) {
+      throw new IllegalArgumentException("Search interval must be positive: " + intervalSeconds);
+    }
+    if (p99SloMs <= 0 && abortRateSlo < 0) {
+      throw new IllegalArgumentException("Search needs a latency or an abort rate objective");
+    }
+    if (minRate <= 0 || maxRate < minRate) {
+      throw new IllegalArgumentException(
+          String.format("Invalid search rate range [%s, %s]", minRate, maxRate));
+    }
+    if (decrease <= 0 || decrease >= 1) {
+      throw new IllegalArgumentException("Search decrease must be in (0, 1): " + decrease);
+    }
+    this.algorithm = algorithm;
+    this.intervalNs = intervalSeconds * 1000000000L;
+    this.p99SloUs = (long) (p99SloMs * 1000);
+    this.abortRateSlo = abortRateSlo;
+    this.minRate = minRate;
+    this.maxRate = maxRate;
+    this.increase = increase;
+    this.decrease = decrease;
+    this.tolerance = tolerance;
+  }
+
+  public Algorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  /** The highest target rate that met the SLO, or 0 if no interval did. */
+  public double getKneeRate() {
+    return highestPassing;
+  }
+
+  /** The measurements at the knee, or null if no interval met the SLO. */
+  public Step getKnee() {
+    return knee;
+  }
+
+  public boolean isConverged() {
+    return converged;
+  }
+
+  public synchronized List<Step> getSteps() {
+    return Collections.unmodifiableList(new ArrayList<>(steps));
+  }
+
+  /**
+   * Whether {@link #tick} has anything to do: the search has not started or an interval ended.
+   * Lets the rate controller skip collecting the workers' statistics in between.
+   */
+  boolean isDue(long now) {
+    long start = intervalStart;
+    return start < 0 || now - start >= intervalNs;
+  }
+
+  /**
+   * Called by the rate controller while the phase is measuring. Evaluates the interval that just
+   * ended, if any, and updates the phase's rate.
+   *
+   * @return true if the rate of the phase changed
+   */
+  synchronized boolean tick(Phase phase, List<? extends Worker<?>> workers, long now) {
+    if (intervalStart < 0) {
+      searchStart = now;
+      beginInterval(workers, now);
+      return false;
+    }
+    if (now - intervalStart < intervalNs) {
+      return false;
+    }
+
+    LatencyHistogram latencies = new LatencyHistogram();
+    long completed = 0;
+    long aborted = 0;
+    for (Worker<?> w : workers) {
+      latencies.add(w.getLatencyHistogram());
+      completed += w.getTransactionOutcomes().getCount(TransactionStatus.SUCCESS);
+      aborted += countAborts(w);
+    }
+    LatencyHistogram delta = latencies.minus(intervalLatencies);
+    completed -= intervalCompleted;
+    aborted -= intervalAborted;
+
+    double seconds = (now - intervalStart) / 1e9;
+    double achieved = delta.getCount() / seconds;
+    long p99 = delta.getValueAtPercentile(0.99);
+    double abortRate = completed + aborted == 0 ? 0 : (double) aborted / (completed + aborted);
+
+    double next = evaluate(phase.getRate(), achieved, p99, abortRate, now);
+    beginInterval(workers, now);
+    if (next != phase.getRate()) {
+      phase.setRate(next);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Records the measurements of an interval run at {@code target} and decides the next rate.
+   *
+   * @return the rate of the next interval
+   */
+  synchronized double evaluate(
+      double target, double achieved, long p99, double abortRate, long now) {
+    if (searchStart < 0) {
+      searchStart = now;
+    }
+    boolean pass = achieved >= target * (1 - tolerance);
+    if (p99SloUs > 0 && p99 > p99SloUs) {
+      pass = false;
+    }
+    if (abortRateSlo >= 0 && abortRate > abortRateSlo) {
+      pass = false;
+    }
+
+    Step step = new Step((now - searchStart) / 1000000, target, achieved, p99, abortRate, pass);
+    steps.add(step);
+    if (pass && target >= highestPassing) {
+      highestPassing = target;
+      knee = step;
+    } else if (!pass) {
+      lowestFailing = Math.min(lowestFailing, target);
+    }
+    LOG.info(
+        "Rate search: target={} achieved={} p99={}us aborts={} -> {}",
+        String.format("%.1f", target),
+        String.format("%.1f", achieved),
+        p99,
+        String.format("%.4f", abortRate),
+        pass ? "within SLO" : "SLO breached");
+
+    return converged ? target : nextRate(target, pass);
+  }
+
+  private double nextRate(double target, boolean pass) {
+    double next;
+    if (algorithm == Algorithm.AIMD) {
+      next = pass ? target + increase : target * decrease;
+    } else if (lowestFailing == Double.MAX_VALUE) {
+      if (target >= maxRate) {
+        converge("maximum search rate reached");
+        return target;
+      }
+      next = target * 2;
+    } else if (lowestFailing - highestPassing <= tolerance * lowestFailing) {
+      converge("search converged");
+      return highestPassing > 0 ? highestPassing : minRate;
+    } else if (highestPassing > 0) {
+      next = (highestPassing + lowestFailing) / 2;
+    } else {
+      next = target / 2;
+    }
+    return Math.max(minRate, Math.min(maxRate, next));
+  }
+
+  private void converge(String reason) {
+    converged = true;
+    LOG.info(
+        "Rate search: {}, knee at {} requests/second",
+        reason,
+        String.format("%.1f", highestPassing));
+  }
+
+  private void beginInterval(List<? extends Worker<?>> workers, long now) {
+    intervalStart = now;
+    intervalLatencies = new LatencyHistogram();
+    intervalCompleted = 0;
+    intervalAborted = 0;
+    for (Worker<?> w : workers) {
+      intervalLatencies.add(w.getLatencyHistogram());
+      intervalCompleted += w.getTransactionOutcomes().getCount(TransactionStatus.SUCCESS);
+      intervalAborted += countAborts(w);
+    }
+  }
+
+  /** User aborts, retried conflicts and unexpected errors all count against the abort SLO. */
+  private static long countAborts(Worker<?> w) {
+    TransactionOutcomes outcomes = w.getTransactionOutcomes();
+    return outcomes.getCount(TransactionStatus.USER_ABORTED)
+        + outcomes.getCount(TransactionStatus.RETRY)
+        + outcomes.getCount(TransactionStatus.RETRY_DIFFERENT)
+        + outcomes.getCount(TransactionStatus.ERROR);
+  }
+
+  public Map<String, Object> toMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("Algorithm", algorithm);
+    map.put("Converged", converged);
+    map.put("Knee Rate (requests/second)", highestPassing);
+    if (knee != null) {
+      map.put("Knee", knee.toMap());
+    }
+    List<Map<String, Object>> stepMaps = new ArrayList<>();
+    for (Step step : getSteps()) {
+      stepMaps.add(step.toMap());
+    }
+    map.put("Steps", stepMaps);
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    List<String> slo = new ArrayList<>();
+    if (p99SloUs > 0) {
+      slo.add("p99<=" + p99SloUs / 1000.0 + "ms");
+    }
+    if (abortRateSlo >= 0) {
+      slo.add("aborts<=" + abortRateSlo);
+    }
+    return algorithm + " " + String.join(",", slo);
+  }
+}
@@ -18,10 +18,19 @@
 package com.oltpbenchmark;
 
 import com.oltpbenchmark.LatencyRecord.Sample;
+import com.oltpbenchmark.api.CircuitBreaker;
+import com.oltpbenchmark.api.ConnectionRotation;
+import com.oltpbenchmark.api.StatementProfiler;
 import com.oltpbenchmark.api.TransactionType;
+import com.oltpbenchmark.proxy.LatencyProxy;
 import com.oltpbenchmark.types.State;
+import com.oltpbenchmark.util.ErrorCounts;
 import com.oltpbenchmark.util.Histogram;
+import com.oltpbenchmark.util.LatencyHistogram;
+import com.oltpbenchmark.util.Timeline;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -32,7 +41,7 @@ public final class Results {
   private final long nanoseconds;
   private final int measuredRequests;
   private final DistributionStatistics distributionStatistics;
-  private final List<LatencyRecord.Sample> latencySamples;
+  private final Iterable<LatencyRecord.Sample> latencySamples;
   private final Histogram<TransactionType> unknown = new Histogram<>(false);
   private final Histogram<TransactionType> success = new Histogram<>(true);
   private final Histogram<TransactionType> abort = new Histogram<>(false);
@@ -40,6 +49,29 @@ public final class Results {
   private final Histogram<TransactionType> error = new Histogram<>(false);
   private final Histogram<TransactionType> retryDifferent = new Histogram<>(false);
   private final Map<TransactionType, Histogram<String>> abortMessages = new HashMap<>();
+  private final LatencyHistogram traceLateness = new LatencyHistogram();
+  private final LatencyHistogram scheduleError = new LatencyHistogram();
+  private long traceInjected = 0;
+  private long traceDropped = 0;
+  private final List<RateSearch> rateSearches = new ArrayList<>();
+  private final List<FaultInjection> faults = new ArrayList<>();
+  private final List<ConcurrencySweep> sweeps = new ArrayList<>();
+  private final List<SteadyStateDetector> warmups = new ArrayList<>();
+  private final List<ConfidenceStopRule> stopRules = new ArrayList<>();
+  private final List<RuntimeControl.Event> controlEvents = new ArrayList<>();
+  private final List<LatencyProxy.ConnectionStats> proxyConnections = new ArrayList<>();
+  private final Map<String, LatencyHistogram> endpointLatencies = new LinkedHashMap<>();
+  private final Map<String, Long> endpointMarkedDown = new LinkedHashMap<>();
+  private final List<ConnectionRotation.Event> connectionRotations = new ArrayList<>();
+  private final LatencyHistogram connectTimes = new LatencyHistogram();
+  private final List<CircuitBreaker.Outage> outages = new ArrayList<>();
+  private final StatementProfiler statementProfile = new StatementProfiler();
+  private final LatencyHistogram commitAttempts = new LatencyHistogram();
+  private final LatencyHistogram backoffs = new LatencyHistogram();
+  private final Histogram<String> retryCauses = new Histogram<>();
+  private final ErrorCounts errorCounts = new ErrorCounts();
+  private Timeline timeline = new Timeline();
+  private ClientMonitor clientMonitor;
 
   public Results(
       State state,
@@ -47,7 +79,7 @@ public final class Results {
       long elapsedNanoseconds,
       int measuredRequests,
       DistributionStatistics distributionStatistics,
-      final List<LatencyRecord.Sample> latencySamples) {
+      final Iterable<LatencyRecord.Sample> latencySamples) {
     this.startTimestampMs = startTimestampMs;
     this.nanoseconds = elapsedNanoseconds;
     this.measuredRequests = measuredRequests;
@@ -56,9 +88,12 @@ public final class Results {
 
     if (distributionStatistics == null) {
       this.latencySamples = null;
-    } else {
+    } else if (latencySamples instanceof List<LatencyRecord.Sample> list) {
       // defensive copy
-      this.latencySamples = List.copyOf(latencySamples);
+      this.latencySamples = List.copyOf(list);
+    } else {
+      // streamed from the spill files, which are not changed after the run
+      this.latencySamples = latencySamples;
     }
   }
 
@@ -98,6 +133,140 @@ public final class Results {
     return abortMessages;
   }
 
+  /** Microseconds the rate generator woke up after each of its scheduled ticks. */
+  public LatencyHistogram getScheduleError() {
+    return scheduleError;
+  }
+
+  /** Microseconds between each replayed trace entry's scheduled time and its execution. */
+  public LatencyHistogram getTraceLateness() {
+    return traceLateness;
+  }
+
+  public long getTraceInjected() {
+    return traceInjected;
+  }
+
+  public void setTraceInjected(long traceInjected) {
+    this.traceInjected = traceInjected;
+  }
+
+  public long getTraceDropped() {
+    return traceDropped;
+  }
+
+  public void setTraceDropped(long traceDropped) {
+    this.traceDropped = traceDropped;
+  }
+
+  /** Whether any phase of this run replayed a trace. */
+  public boolean hasTrace() {
+    return traceInjected > 0 || traceDropped > 0;
+  }
+
+  /** Run-level metrics recorded over time, reported next to the per-window results. */
+  public Timeline getTimeline() {
+    return timeline;
+  }
+
+  public void setTimeline(Timeline timeline) {
+    this.timeline = timeline;
+  }
+
+  /** Load of the benchmark client during the run, null if it was not monitored. */
+  public ClientMonitor getClientMonitor() {
+    return clientMonitor;
+  }
+
+  public void setClientMonitor(ClientMonitor clientMonitor) {
+    this.clientMonitor = clientMonitor;
+  }
+
+  /** The rate searches of all phases that searched for their maximum sustainable rate. */
+  public List<RateSearch> getRateSearches() {
+    return rateSearches;
+  }
+
+  /** Changes made to the running phases through the runtime control, in order. */
+  public List<RuntimeControl.Event> getControlEvents() {
+    return controlEvents;
+  }
+
+  /** The stop rules of all phases that could end once their results were precise enough. */
+  public List<ConfidenceStopRule> getStopRules() {
+    return stopRules;
+  }
+
+  /** The adaptive warmups of all phases that ended their warmup once stable. */
+  public List<SteadyStateDetector> getWarmups() {
+    return warmups;
+  }
+
+  /** The concurrency sweeps of all phases that stepped their active terminals. */
+  public List<ConcurrencySweep> getSweeps() {
+    return sweeps;
+  }
+
+  /** The faults injected into the phases of the run. */
+  public List<FaultInjection> getFaults() {
+    return faults;
+  }
+
+  /** Traffic of the connections through the latency proxy, empty if the run used none. */
+  public List<LatencyProxy.ConnectionStats> getProxyConnections() {
+    return proxyConnections;
+  }
+
+  /** Latencies of the measured transactions by endpoint name, empty without endpoints. */
+  public Map<String, LatencyHistogram> getEndpointLatencies() {
+    return endpointLatencies;
+  }
+
+  /** How often each endpoint was marked down. */
+  public Map<String, Long> getEndpointMarkedDown() {
+    return endpointMarkedDown;
+  }
+
+  /** Microseconds each connection to the database took to open. */
+  public LatencyHistogram getConnectTimes() {
+    return connectTimes;
+  }
+
+  /** Periods in which the circuit breaker found the database unreachable. */
+  public List<CircuitBreaker.Outage> getOutages() {
+    return outages;
+  }
+
+  /** Replacements of worker connections, ordered by time. */
+  public List<ConnectionRotation.Event> getConnectionRotations() {
+    return connectionRotations;
+  }
+
+  /** Attempts of every measured transaction that committed. */
+  public LatencyHistogram getCommitAttempts() {
+    return commitAttempts;
+  }
+
+  /** Microseconds of every backoff before a retry. */
+  public LatencyHistogram getBackoffs() {
+    return backoffs;
+  }
+
+  /** Number of retries by the cause reported by the retry policy. */
+  public Histogram<String> getRetryCauses() {
+    return retryCauses;
+  }
+
+  /** Failed attempts by second of the measurement, SQLSTATE and vendor code. */
+  public ErrorCounts getErrorCounts() {
+    return errorCounts;
+  }
+
+  /** Per-statement latencies of all workers, empty unless statement profiling was enabled. */
+  public StatementProfiler getStatementProfile() {
+    return statementProfile;
+  }
+
   public double requestsPerSecondThroughput() {
     return (double) measuredRequests / (double) nanoseconds * 1e9;
   }
@@ -106,7 +275,8 @@ public final class Results {
     return (double) success.getSampleCount() / (double) nanoseconds * 1e9;
   }
 
-  public List<Sample> getLatencySamples() {
+  /** All measured samples in start order, streamed from the spill files if they were spilled. */
+  public Iterable<Sample> getLatencySamples() {
     return latencySamples;
   }
 
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import com.oltpbenchmark.util.JSONUtil;
+import com.oltpbenchmark.util.Timeline;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local HTTP endpoint to change the target rate, the number of active terminals and the
+ * transaction weights of the running phases, so that a warmed-up database can be explored without
+ * restarting the benchmark:
+ *
+ * <pre>
+ *   curl localhost:8090/status
+ *   curl -X POST 'localhost:8090/rate?value=2000'
+ *   curl -X POST 'localhost:8090/terminals?value=64&amp;workload=tpcc'
+ *   curl -X POST 'localhost:8090/weights?value=45,43,4,4,4'
+ * </pre>
+ *
+ * The {@code workload} parameter names the benchmark to change and may be left out if only one
+ * runs. Requests are applied by ThreadBench between two ticks, which answers with the new status
+ * or the reason the change was rejected. A change lasts until the end of the current phase.
+ *
+ * <p>Every change is kept as an {@link Event}. While the control is enabled the timeline records
+ * the active terminals and the weights next to the target rate, whenever a phase starts or a
+ * change is applied.
+ */
+public final class RuntimeControl implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(RuntimeControl.class);
+
+  public static final String ACTIVE_TERMINALS = "Active Terminals";
+
+  private static final String STATUS = "status";
+  private static final String RATE = "rate";
+  private static final String TERMINALS = "terminals";
+  private static final String WEIGHTS = "weights";
+
+  private static final long RESPONSE_TIMEOUT_MS = 10000;
+
+  /** One change made through the control. */
+  public static final class Event {
+    private final long timeMs;
+    private final String workload;
+    private final int phase;
+    private final String setting;
+    private final String value;
+
+    Event(long timeMs, String workload, int phase, String setting, String value) {
+      this.timeMs = timeMs;
+      this.workload = workload;
+      this.phase = phase;
+      this.setting = setting;
+      this.value = value;
+    }
+
+    /** Milliseconds since the start of the run. */
+    public long getTimeMs() {
+      return timeMs;
+    }
+
+    public String getWorkload() {
+      return workload;
+    }
+
+    public int getPhase() {
+      return phase;
+    }
+
+    /** One of {@code rate}, {@code terminals} and {@code weights}. */
+    public String getSetting() {
+      return setting;
+    }
+
+    public String getValue() {
+      return value;
+    }
+
+    public Map<String, Object> toMap() {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("Time (milliseconds)", timeMs);
+      map.put("Workload", workload);
+      map.put("Phase", phase);
+      map.put("Setting", setting);
+      map.put("Value", value);
+      return map;
+    }
+  }
+
+  private static final class Request {
+    final String setting;
+    final String workload;
+    final String value;
+    final CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+
+    Request(String setting, String workload, String value) {
+      this.setting = setting;
+      this.workload = workload;
+      this.value = value;
+    }
+  }
+
+  private final HttpServer server;
+  private final Queue<Request> pending = new ConcurrentLinkedQueue<>();
+  private final List<Event> events = new ArrayList<>();
+
+  /** The phase of each workload when the settings were last recorded, used by ThreadBench only. */
+  private final Map<WorkloadConfiguration, Phase> recordedPhases = new IdentityHashMap<>();
+
+  private boolean closed = false;
+
+  /**
+   * @param port port to listen on, on the loopback interface only
+   */
+  public RuntimeControl(int port) throws IOException {
+    this.server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    for (String setting : new String[] {STATUS, RATE, TERMINALS, WEIGHTS}) {
+      this.server.createContext("/" + setting, exchange -> handle(exchange, setting));
+    }
+    this.server.start();
+    LOG.info("Runtime control listening on port {}", getPort());
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange, String setting) throws IOException {
+    int code;
+    Map<String, Object> body;
+    if (!setting.equals(STATUS) && !exchange.getRequestMethod().equals("POST")) {
+      code = 405;
+      body = Map.of("Error", "Use POST to change the " + setting);
+    } else {
+      Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+      Request request = new Request(setting, params.get("workload"), params.get("value"));
+      pending.add(request);
+      try {
+        body = request.result.get(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        code = 200;
+      } catch (ExecutionException ex) {
+        code = 400;
+        body = Map.of("Error", ex.getCause().getMessage());
+      } catch (TimeoutException | InterruptedException ex) {
+        pending.remove(request);
+        code = 503;
+        body = Map.of("Error", "No benchmark is running");
+      }
+    }
+    byte[] bytes = JSONUtil.format(JSONUtil.toJSONString(body)).getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(code, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static Map<String, String> parseQuery(String query) {
+    Map<String, String> params = new HashMap<>();
+    if (query == null) {
+      return params;
+    }
+    for (String pair : query.split("&")) {
+      int eq = pair.indexOf('=');
+      if (eq > 0) {
+        params.put(
+            URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+            URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+      }
+    }
+    return params;
+  }
+
+  /**
+   * Applies the pending requests to the current phases. Records the settings in the timeline if a
+   * change was applied or a phase started since the last call. Called by ThreadBench between two
+   * ticks.
+   *
+   * @return whether the target rate of a phase changed
+   */
+  boolean apply(List<WorkloadConfiguration> workConfs, Timeline timeline, long startNs, long now) {
+    boolean rateChanged = false;
+    boolean changed = false;
+    Request request;
+    while ((request = pending.poll()) != null) {
+      try {
+        if (!request.setting.equals(STATUS)) {
+          change(workConfs, request, (now - startNs) / 1000000L);
+          changed = true;
+          rateChanged |= request.setting.equals(RATE);
+        }
+        request.result.complete(status(workConfs));
+      } catch (IllegalArgumentException ex) {
+        request.result.completeExceptionally(ex);
+      }
+    }
+
+    for (WorkloadConfiguration workConf : workConfs) {
+      Phase phase = workConf.getWorkloadState().getCurrentPhase();
+      if (!recordedPhases.containsKey(workConf) || recordedPhases.get(workConf) != phase) {
+        recordedPhases.put(workConf, phase);
+        changed = true;
+      }
+    }
+    if (changed) {
+      record(workConfs, timeline, now);
+    }
+    return rateChanged;
+  }
+
+  private static void record(List<WorkloadConfiguration> workConfs, Timeline timeline, long now) {
+    int active = 0;
+    for (WorkloadConfiguration workConf : workConfs) {
+      Phase phase = workConf.getWorkloadState().getCurrentPhase();
+      if (phase == null || phase.isDisabled()) {
+        continue;
+      }
+      active += phase.getActiveTerminals();
+      List<Double> weights = phase.getWeights();
+      for (int i = 0; i < weights.size(); i++) {
+        timeline.record(
+            "Weight " + workConf.getTransTypes().getType(i + 1).getName(), now, weights.get(i));
+      }
+    }
+    timeline.record(ACTIVE_TERMINALS, now, active);
+  }
+
+  private void change(List<WorkloadConfiguration> workConfs, Request request, long timeMs) {
+    WorkloadConfiguration workConf = find(workConfs, request.workload);
+    Phase phase = workConf.getWorkloadState().getCurrentPhase();
+    if (phase == null || phase.isDisabled() || phase.isSerial()) {
+      throw new IllegalArgumentException("No throughput phase is running");
+    }
+    if (request.value == null) {
+      throw new IllegalArgumentException("Missing value");
+    }
+    try {
+      switch (request.setting) {
+        case RATE -> {
+          if (!phase.isRateLimited() || phase.getArrival() == Phase.Arrival.TRACE) {
+            throw new IllegalArgumentException(
+                String.format("Phase %d has no target rate", phase.getId()));
+          }
+          if (phase.getRateSchedule() != null || phase.getRateSearch() != null) {
+            throw new IllegalArgumentException(
+                String.format(
+                    "The rate of phase %d follows its schedule or search", phase.getId()));
+          }
+          double rate = Double.parseDouble(request.value);
+          if (rate <= 0) {
+            throw new IllegalArgumentException("The rate must be positive");
+          }
+          phase.setRate(rate);
+        }
+        case TERMINALS ->
+            workConf.getWorkloadState().setActiveTerminals(Integer.parseInt(request.value));
+        default -> {
+          List<Double> weights = new ArrayList<>();
+          for (String weight : request.value.split("\\s*,\\s*")) {
+            weights.add(Double.parseDouble(weight));
+          }
+          phase.setWeights(weights);
+        }
+      }
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Invalid " + request.setting + ": " + request.value);
+    }
+    LOG.info(
+        "Runtime control set the {} of {} phase {} to {}",
+        request.setting,
+        workConf.getBenchmarkName(),
+        phase.getId(),
+        request.value);
+    synchronized (events) {
+      events.add(
+          new Event(
+              timeMs, workConf.getBenchmarkName(), phase.getId(), request.setting, request.value));
+    }
+  }
+
+  private static WorkloadConfiguration find(List<WorkloadConfiguration> workConfs, String name) {
+    if (name == null) {
+      if (workConfs.size() > 1) {
+        throw new IllegalArgumentException("Several workloads are running, name one");
+      }
+      return workConfs.get(0);
+    }
+    for (WorkloadConfiguration workConf : workConfs) {
+      if (workConf.getBenchmarkName().equalsIgnoreCase(name)) {
+        return workConf;
+      }
+    }
+    throw new IllegalArgumentException("Unknown workload: " + name);
+  }
+
+  private static Map<String, Object> status(List<WorkloadConfiguration> workConfs) {
+    Map<String, Object> status = new LinkedHashMap<>();
+    for (WorkloadConfiguration workConf : workConfs) {
+      Map<String, Object> map = new LinkedHashMap<>();
+      Phase phase = workConf.getWorkloadState().getCurrentPhase();
+      if (phase != null) {
+        map.put("Phase", phase.getId());
+        map.put("Rate", phase.isRateLimited() ? phase.getRate() : "unlimited");
+        map.put("Active Terminals", phase.getActiveTerminals());
+        map.put("Terminals", workConf.getTerminals());
+        Map<String, Object> weights = new LinkedHashMap<>();
+        List<Double> values = phase.getWeights();
+        for (int i = 0; i < values.size(); i++) {
+          weights.put(workConf.getTransTypes().getType(i + 1).getName(), values.get(i));
+        }
+        map.put("Weights", weights);
+      }
+      status.put(workConf.getBenchmarkName(), map);
+    }
+    return status;
+  }
+
+  /** The changes made so far, in the order they were made. */
+  public List<Event> getEvents() {
+    synchronized (events) {
+      return new ArrayList<>(events);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (!closed) {
+      closed = true;
+      server.stop(0);
+    }
+  }
+}
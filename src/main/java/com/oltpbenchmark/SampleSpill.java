@@ -0,0 +1,268 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Writes the samples of one worker to its own file while the benchmark runs, so that the raw
+ * samples do not have to fit on the heap and the ones written so far survive a crash. Every sample
+ * is a record of 24 bytes in big-endian order:
+ *
+ * <pre>
+ *   long start (nanoseconds, System.nanoTime)
+ *   int  latency (microseconds)
+ *   int  transaction type
+ *   int  worker id
+ *   int  phase id
+ * </pre>
+ *
+ * Records are buffered and written whenever the buffer fills up, once a second and on {@link
+ * #close()}, so a crash loses at most the samples of the last second before the worker's last
+ * transaction. Since a worker runs one transaction at a time, the samples of each file are ordered
+ * by start time, and {@link #merge(List)} streams all files in start order without loading them.
+ * {@link #recover(Path, PrintStream)} turns the files that a crashed run left behind into a raw
+ * sample file.
+ */
+public final class SampleSpill implements AutoCloseable {
+  static final int RECORD_SIZE = 24;
+
+  private static final int BUFFER_SIZE = RECORD_SIZE * 4096;
+
+  static final long FLUSH_INTERVAL_NS = 1000000000L;
+
+  /** The file name suffix of the spill files. */
+  public static final String SUFFIX = ".samples";
+
+  private final Path path;
+  private final FileChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  private long count = 0;
+  private long flushedNs;
+
+  public SampleSpill(Path path) throws IOException {
+    this.path = path;
+    this.channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE);
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  /** The number of samples added so far. */
+  public long size() {
+    return count;
+  }
+
+  public void add(
+      int transType, long startNanosecond, long endNanosecond, int workerId, int phaseId) {
+    if (count == 0) {
+      flushedNs = endNanosecond;
+    }
+    buffer.putLong(startNanosecond);
+    buffer.putInt((int) ((endNanosecond - startNanosecond + 500) / 1000));
+    buffer.putInt(transType);
+    buffer.putInt(workerId);
+    buffer.putInt(phaseId);
+    count++;
+    if (!buffer.hasRemaining() || endNanosecond - flushedNs >= FLUSH_INTERVAL_NS) {
+      flush();
+      flushedNs = endNanosecond;
+    }
+  }
+
+  private void flush() {
+    buffer.flip();
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Failed to spill samples to " + path, ex);
+    }
+    buffer.clear();
+  }
+
+  /** Writes the buffered samples and closes the file. Does nothing if it is already closed. */
+  @Override
+  public void close() {
+    if (!channel.isOpen()) {
+      return;
+    }
+    flush();
+    try {
+      channel.close();
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Failed to close " + path, ex);
+    }
+  }
+
+  /**
+   * All samples of the given files in start order. Every iteration reads the files again, a buffer
+   * at a time, so memory use does not grow with the number of samples. A record cut short by a
+   * crash at the end of a file is ignored.
+   */
+  public static Iterable<LatencyRecord.Sample> merge(List<Path> paths) {
+    List<Path> files = List.copyOf(paths);
+    return () -> new MergeIterator(files);
+  }
+
+  /**
+   * Writes the samples of all spill files in the given directory to {@code out} in start order,
+   * for a run that crashed before it wrote its results. The transaction names and the wall clock
+   * time of the run are not known any more, so the rows have the columns of the raw output without
+   * the name, and the start time is in seconds of the crashed process' {@link System#nanoTime()}.
+   *
+   * @return the number of samples written
+   */
+  public static long recover(Path directory, PrintStream out) throws IOException {
+    List<Path> files;
+    try (Stream<Path> list = Files.list(directory)) {
+      files = list.filter(f -> f.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+    }
+    if (files.isEmpty()) {
+      throw new IllegalArgumentException("No spilled samples in " + directory);
+    }
+    out.println(
+        "Transaction Type Index,Start Time (seconds),Latency (microseconds),"
+            + "Worker Id (start number),Phase Id (index in config file)");
+    long n = 0;
+    for (LatencyRecord.Sample s : merge(files)) {
+      out.printf(
+          "%d,%.6f,%d,%d,%d\n",
+          s.getTransactionType(),
+          s.getStartNanosecond() / 1e9,
+          s.getLatencyMicrosecond(),
+          s.getWorkerId(),
+          s.getPhaseId());
+      n++;
+    }
+    return n;
+  }
+
+  /** Reads the records of one file in order. */
+  static final class Reader implements Iterator<LatencyRecord.Sample> {
+    private final Path path;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long position = 0;
+    private boolean eof = false;
+
+    Reader(Path path) {
+      this.path = path;
+      buffer.flip();
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (buffer.remaining() < RECORD_SIZE && !eof) {
+        fill();
+      }
+      return buffer.remaining() >= RECORD_SIZE;
+    }
+
+    /**
+     * Reads the next buffer. The file is opened for every buffer, so that an iteration that stops
+     * early does not leave it open.
+     */
+    private void fill() {
+      buffer.compact();
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        channel.position(position);
+        int read = 0;
+        while (buffer.hasRemaining() && read >= 0) {
+          read = channel.read(buffer);
+          if (read > 0) {
+            position += read;
+          }
+        }
+        eof = read < 0;
+      } catch (IOException ex) {
+        throw new UncheckedIOException("Failed to read spilled samples from " + path, ex);
+      }
+      buffer.flip();
+    }
+
+    long peekStart() {
+      return buffer.getLong(buffer.position());
+    }
+
+    @Override
+    public LatencyRecord.Sample next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      long start = buffer.getLong();
+      int latency = buffer.getInt();
+      int transType = buffer.getInt();
+      int workerId = buffer.getInt();
+      int phaseId = buffer.getInt();
+      return new LatencyRecord.Sample(transType, start, latency, workerId, phaseId);
+    }
+  }
+
+  /** Merges the readers of all files by the start time of their next record. */
+  private static final class MergeIterator implements Iterator<LatencyRecord.Sample> {
+    private final PriorityQueue<Reader> queue =
+        new PriorityQueue<>(Comparator.comparingLong(Reader::peekStart));
+
+    MergeIterator(List<Path> files) {
+      for (Path file : files) {
+        Reader reader = new Reader(file);
+        if (reader.hasNext()) {
+          queue.add(reader);
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !queue.isEmpty();
+    }
+
+    @Override
+    public LatencyRecord.Sample next() {
+      Reader reader = queue.poll();
+      if (reader == null) {
+        throw new NoSuchElementException();
+      }
+      LatencyRecord.Sample sample = reader.next();
+      if (reader.hasNext()) {
+        queue.add(reader);
+      }
+      return sample;
+    }
+  }
+}
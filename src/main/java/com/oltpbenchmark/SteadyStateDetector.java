@@ -0,0 +1,236 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import com.oltpbenchmark.api.Worker;
+import com.oltpbenchmark.util.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ends the warmup of a phase as soon as the workload is stable instead of after a fixed time. The
+ * warmup is cut into windows of equal length. The workload is stable once, over the last few
+ * windows, both the throughput and the p95 latency
+ *
+ * <ul>
+ *   <li>vary by no more than the tolerance, measured as the coefficient of variation, and
+ *   <li>do not trend, that is the least-squares line through them changes by no more than the
+ *       tolerance relative to their mean from the first to the last window.
+ * </ul>
+ *
+ * The configured warmup of the phase is the upper bound; the warmup also lasts at least the
+ * configured minimum.
+ */
+public class SteadyStateDetector {
+  private static final Logger LOG = LoggerFactory.getLogger(SteadyStateDetector.class);
+
+  private final int phaseId;
+  private final int maxSeconds;
+  private final long minNs;
+  private final long windowNs;
+  private final int windows;
+  private final double tolerance;
+
+  private final List<Double> throughputs = new ArrayList<>();
+  private final List<Long> p95Latencies = new ArrayList<>();
+
+  private long warmupStart = -1;
+  private volatile long windowStart = -1;
+  private LatencyHistogram windowLatencies;
+  private volatile boolean steady = false;
+  private long warmupNs = -1;
+
+  /**
+   * @param phaseId the phase whose warmup is watched
+   * @param maxSeconds the configured warmup of the phase, after which measuring starts regardless
+   * @param minSeconds the shortest warmup
+   * @param windowSeconds length of each window
+   * @param windows number of consecutive windows that must be stable
+   * @param tolerance largest coefficient of variation and relative trend that counts as stable
+   */
+  public SteadyStateDetector(
+      int phaseId,
+      int maxSeconds,
+      int minSeconds,
+      int windowSeconds,
+      int windows,
+      double tolerance) {
+    if (windowSeconds < 1 || windows < 2 || tolerance <= 0) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid adaptive warmup: window=%ds, windows=%d, tolerance=%s",
+              windowSeconds, windows, tolerance));
+    }
+    if (minSeconds < 0 || minSeconds > maxSeconds) {
+      throw new IllegalArgumentException(
+          String.format(
+              "The minimum warmup of %ds must be between 0 and the warmup of %ds",
+              minSeconds, maxSeconds));
+    }
+    this.phaseId = phaseId;
+    this.maxSeconds = maxSeconds;
+    this.minNs = minSeconds * 1000000000L;
+    this.windowNs = windowSeconds * 1000000000L;
+    this.windows = windows;
+    this.tolerance = tolerance;
+  }
+
+  /** Whether {@link #tick} has anything to do: the detector has not started or a window ended. */
+  boolean isDue(long now) {
+    long start = windowStart;
+    return !steady && (start < 0 || now - start >= windowNs);
+  }
+
+  /**
+   * Called by ThreadBench while the phase warms up. Evaluates the window that just ended.
+   *
+   * @return whether the workload is stable and the warmup can end
+   */
+  synchronized boolean tick(List<? extends Worker<?>> workers, long now) {
+    if (steady) {
+      return true;
+    }
+    if (warmupStart < 0) {
+      warmupStart = now;
+      windowStart = now;
+      windowLatencies = collect(workers);
+      return false;
+    }
+    if (now - windowStart < windowNs) {
+      return false;
+    }
+
+    LatencyHistogram latencies = collect(workers);
+    LatencyHistogram delta = latencies.minus(windowLatencies);
+    throughputs.add(delta.getCount() / ((now - windowStart) / 1e9));
+    p95Latencies.add(delta.getValueAtPercentile(0.95));
+    windowStart = now;
+    windowLatencies = latencies;
+
+    if (now - warmupStart < minNs || throughputs.size() < windows) {
+      return false;
+    }
+    int from = throughputs.size() - windows;
+    double[] x = new double[windows];
+    double[] p95 = new double[windows];
+    for (int i = 0; i < windows; i++) {
+      x[i] = throughputs.get(from + i);
+      p95[i] = p95Latencies.get(from + i);
+    }
+    if (isStable(x, tolerance) && isStable(p95, tolerance)) {
+      steady = true;
+      warmupNs = now - warmupStart;
+      LOG.info(
+          "Phase {} is stable after {}s of warmup: throughput={} p95={}us",
+          phaseId,
+          warmupNs / 1000000000L,
+          String.format("%.1f", mean(x)),
+          Math.round(mean(p95)));
+    }
+    return steady;
+  }
+
+  /** Records the length of the warmup when it ends, detected or not. Called by ThreadBench. */
+  synchronized void finish(long now) {
+    if (warmupNs < 0) {
+      warmupNs = warmupStart < 0 ? 0 : now - warmupStart;
+      LOG.warn("Phase {} did not become stable within its warmup of {}s", phaseId, maxSeconds);
+    }
+  }
+
+  private static LatencyHistogram collect(List<? extends Worker<?>> workers) {
+    LatencyHistogram latencies = new LatencyHistogram();
+    for (Worker<?> w : workers) {
+      latencies.add(w.getWarmupHistogram());
+    }
+    return latencies;
+  }
+
+  /**
+   * Whether the values neither vary nor trend by more than the tolerance relative to their mean.
+   */
+  static boolean isStable(double[] values, double tolerance) {
+    double mean = mean(values);
+    if (!(mean > 0)) {
+      return false;
+    }
+    int n = values.length;
+    double variance = 0;
+    double slope = 0;
+    double spread = 0;
+    double center = (n - 1) / 2.0;
+    for (int i = 0; i < n; i++) {
+      variance += (values[i] - mean) * (values[i] - mean);
+      slope += (i - center) * (values[i] - mean);
+      spread += (i - center) * (i - center);
+    }
+    double cv = Math.sqrt(variance / (n - 1)) / mean;
+    double trend = Math.abs(slope / spread) * (n - 1) / mean;
+    return cv <= tolerance && trend <= tolerance;
+  }
+
+  private static double mean(double[] values) {
+    double sum = 0;
+    for (double v : values) {
+      sum += v;
+    }
+    return sum / values.length;
+  }
+
+  public int getPhaseId() {
+    return phaseId;
+  }
+
+  /** Whether the workload became stable before the configured warmup ran out. */
+  public boolean isSteady() {
+    return steady;
+  }
+
+  /** Milliseconds the warmup lasted, -1 if it has not ended. */
+  public synchronized long getWarmupMs() {
+    return warmupNs < 0 ? -1 : warmupNs / 1000000L;
+  }
+
+  public synchronized Map<String, Object> toMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("Phase", phaseId);
+    map.put("Maximum Warmup (seconds)", maxSeconds);
+    map.put("Warmup (milliseconds)", getWarmupMs());
+    map.put("Steady", steady);
+    List<Map<String, Object>> list = new ArrayList<>();
+    for (int i = 0; i < throughputs.size(); i++) {
+      Map<String, Object> window = new LinkedHashMap<>();
+      window.put("Throughput (requests/second)", throughputs.get(i));
+      window.put("95th Percentile Latency (microseconds)", p95Latencies.get(i));
+      list.add(window);
+    }
+    map.put("Windows", list);
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "max=%ds, min=%ds, window=%ds, windows=%d, tolerance=%s",
+        maxSeconds, minNs / 1000000000L, windowNs / 1000000000L, windows, tolerance);
+  }
+}
@@ -26,10 +26,25 @@ package com.oltpbenchmark;
 public class SubmittedProcedure {
   private final int type;
   private final long startTime;
+  private final long scheduledTime;
+  private final String[] parameters;
 
   SubmittedProcedure(int type) {
     this.type = type;
     this.startTime = System.nanoTime();
+    this.scheduledTime = -1;
+    this.parameters = null;
+  }
+
+  /**
+   * Used by trace replay, where each procedure has an intended start time and optionally carries
+   * parameters recorded in the trace.
+   */
+  SubmittedProcedure(int type, long scheduledTime, String[] parameters) {
+    this.type = type;
+    this.startTime = System.nanoTime();
+    this.scheduledTime = scheduledTime;
+    this.parameters = parameters;
   }
 
   public int getType() {
@@ -39,4 +54,19 @@ public class SubmittedProcedure {
   public long getStartTime() {
     return startTime;
   }
+
+  /**
+   * @return the System.nanoTime() at which this procedure was meant to start, or -1 if it was not
+   *     replayed from a trace
+   */
+  public long getScheduledTime() {
+    return scheduledTime;
+  }
+
+  /**
+   * @return the trace parameters for this procedure, or null if there are none
+   */
+  public String[] getParameters() {
+    return parameters;
+  }
 }
@@ -17,13 +17,24 @@ package com.oltpbenchmark;
 
 import com.oltpbenchmark.LatencyRecord.Sample;
 import com.oltpbenchmark.api.BenchmarkModule;
+import com.oltpbenchmark.api.CircuitBreaker;
+import com.oltpbenchmark.api.ConnectionRotation;
+import com.oltpbenchmark.api.EndpointRouter;
+import com.oltpbenchmark.api.TransactionOutcomes;
 import com.oltpbenchmark.api.TransactionType;
 import com.oltpbenchmark.api.Worker;
 import com.oltpbenchmark.api.collectors.monitoring.Monitor;
 import com.oltpbenchmark.api.collectors.monitoring.MonitorGen;
+import com.oltpbenchmark.jfr.MeasurementEvent;
+import com.oltpbenchmark.jfr.PhaseEvent;
 import com.oltpbenchmark.types.State;
+import com.oltpbenchmark.types.TransactionStatus;
+import com.oltpbenchmark.util.ConnectionUtil;
+import com.oltpbenchmark.util.LatencyHistogram;
 import com.oltpbenchmark.util.MonitorInfo;
 import com.oltpbenchmark.util.StringUtil;
+import com.oltpbenchmark.util.Timeline;
+import java.nio.file.Path;
 import java.util.*;
 import org.apache.commons.collections4.map.ListOrderedMap;
 import org.slf4j.Logger;
@@ -41,8 +52,14 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
   private final List<WorkloadConfiguration> workConfs;
   private final ArrayList<LatencyRecord.Sample> samples = new ArrayList<>();
   private final MonitorInfo monitorInfo;
+  private final Timeline timeline = new Timeline();
+  private final RateInjector injector = new RateInjector(timeline);
+  private final ClientMonitor clientMonitor;
+  private final RuntimeControl control;
+  private final Map<WorkloadState, List<Worker<?>>> workersByState = new IdentityHashMap<>();
 
   private Monitor monitor = null;
+  private MeasurementEvent measurement = null;
 
   private ThreadBench(
       List<? extends Worker<? extends BenchmarkModule>> workers,
@@ -53,6 +70,8 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
     this.workerThreads = new ArrayList<>(workers.size());
     this.monitorInfo = monitorInfo;
     this.testState = new BenchmarkState(workers.size() + 1);
+    this.clientMonitor = new ClientMonitor(timeline, workConfs.get(0).getClientLimits());
+    this.control = workConfs.get(0).getRuntimeControl();
   }
 
   public static Results runRateLimitedBenchmark(
@@ -67,7 +86,12 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
 
     for (Worker<?> worker : workers) {
       worker.initializeState();
-      Thread thread = new Thread(worker);
+      Thread thread;
+      if (worker.getWorkloadConfiguration().getVirtualThreads()) {
+        thread = Thread.ofVirtual().unstarted(worker);
+      } else {
+        thread = new Thread(worker);
+      }
       thread.setUncaughtExceptionHandler(this);
       thread.start();
       this.workerThreads.add(thread);
@@ -109,6 +133,17 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
     return requests;
   }
 
+  /** Records the current phase and benchmark state as a {@link PhaseEvent}. */
+  private void phaseEvent(Phase phase) {
+    PhaseEvent event = new PhaseEvent();
+    if (event.shouldCommit()) {
+      event.phase = phase == null ? 0 : phase.getId();
+      event.state = testState.getState().name();
+      event.rate = phase == null ? 0 : phase.getRate();
+      event.commit();
+    }
+  }
+
   private Results runRateLimitedMultiPhase() {
     boolean errorsThrown = false;
     List<WorkloadState> workStates = new ArrayList<>();
@@ -130,6 +165,7 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
       workState.switchToNextPhase();
       phase = workState.getCurrentPhase();
       LOG.info(phase.currentPhaseString());
+      phaseEvent(phase);
       if (phase.getRate() < lowestRate) {
         lowestRate = phase.getRate();
       }
@@ -149,6 +185,7 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
     long warmupStart = System.nanoTime();
     long warmup = warmupStart;
     long measureEnd = -1;
+    long targetRateNs = start;
 
     long intervalNs = getInterval(lowestRate, phase.getArrival());
 
@@ -169,6 +206,8 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
       this.monitor.start();
     }
 
+    clientMonitor.start(injector::getLastSecondError, () -> testState.getState() == State.MEASURE);
+
     // Allow workers to start work.
     testState.blockForStart();
 
@@ -188,22 +227,11 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
       resetQueues = false;
 
       // Wait until the interval expires, which may be "don't wait"
-      long now = System.nanoTime();
       if (phase != null) {
         warmup = warmupStart + phase.getWarmupTime() * 1000000000L;
       }
+      long now = injector.awaitDeadline(nextInterval);
       long diff = nextInterval - now;
-      while (diff > 0) { // this can wake early: sleep multiple times to avoid that
-        long ms = diff / 1000000;
-        diff = diff % 1000000;
-        try {
-          Thread.sleep(ms, (int) diff);
-        } catch (InterruptedException e) {
-          throw new RuntimeException(e);
-        }
-        now = System.nanoTime();
-        diff = nextInterval - now;
-      }
 
       boolean phaseComplete = false;
       if (phase != null) {
@@ -212,8 +240,13 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
         // state to mark completion
         {
           phaseComplete = testState.getState() == State.LATENCY_COMPLETE;
-        } else {
-          phaseComplete = testState.getState() == State.MEASURE && (start + delta <= now);
+        } else if (testState.getState() == State.MEASURE) {
+          phaseComplete = start + delta <= now;
+          if (!phaseComplete && stopRule(workStates, now)) {
+            // Precise enough: the following phases get their full time from now on
+            phaseComplete = true;
+            delta = now - start;
+          }
         }
       }
 
@@ -232,7 +265,8 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
             testState.ackLatencyComplete();
           }
           for (WorkloadState workState : workStates) {
-            synchronized (workState) {
+            workState.lock();
+            try {
               workState.switchToNextPhase();
               lowestRate = Integer.MAX_VALUE;
               phase = workState.getCurrentPhase();
@@ -242,8 +276,13 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
                 lastEntry = true;
                 testState.startCoolDown();
                 measureEnd = now;
+                if (measurement != null) {
+                  measurement.end();
+                  measurement.commit();
+                }
                 LOG.info(
                     "{} :: Waiting for all terminals to finish ..", StringUtil.bold("TERMINATE"));
+                phaseEvent(null);
               } else if (phase != null) {
                 // Reset serial execution parameters.
                 if (phase.isLatencyRun()) {
@@ -251,10 +290,13 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
                   testState.startColdQuery();
                 }
                 LOG.info(phase.currentPhaseString());
+                phaseEvent(phase);
                 if (phase.getRate() < lowestRate) {
                   lowestRate = phase.getRate();
                 }
               }
+            } finally {
+              workState.unlock();
             }
           }
           if (phase != null) {
@@ -268,6 +310,57 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
         }
       }
 
+      // Inject faults, step concurrency sweeps, let rate schedules and closed-loop rate searches
+      // adjust the target rate of their phase, and apply the changes made through the runtime
+      // control
+      if (!lastEntry) {
+        boolean rateChanged = false;
+        for (WorkloadState workState : workStates) {
+          Phase current = workState.getCurrentPhase();
+          if (current == null) {
+            continue;
+          }
+          if (current.getFault() != null) {
+            current.getFault().tick(workState.getCurrentPhaseStartNs(), now);
+          }
+          if (current.getSweep() != null
+              && testState.getState() == State.MEASURE
+              && current.getSweep().isDue(now)) {
+            current.getSweep().tick(workState, workersOf(workState), now);
+          }
+          if (current.getRateSchedule() != null) {
+            double elapsed = (now - workState.getCurrentPhaseStartNs()) / 1e9;
+            double rate = current.getRateSchedule().getRate(elapsed);
+            if (rate != current.getRate()) {
+              current.setRate(rate);
+              rateChanged = true;
+            }
+          } else if (current.getRateSearch() != null
+              && testState.getState() == State.MEASURE
+              && current.getRateSearch().isDue(now)) {
+            rateChanged |= current.getRateSearch().tick(current, workersOf(workState), now);
+          }
+        }
+        if (control != null) {
+          rateChanged |= control.apply(workConfs, timeline, testState.getTestStartNs(), now);
+        }
+        if (rateChanged) {
+          lowestRate = Double.MAX_VALUE;
+          for (WorkloadState workState : workStates) {
+            Phase current = workState.getCurrentPhase();
+            if (current != null && current.getRate() < lowestRate) {
+              lowestRate = current.getRate();
+            }
+          }
+        }
+        // Sampled once per second, and when a phase starts, so schedules that change the rate on
+        // every tick do not grow the timeline without bound
+        if (resetQueues || now - targetRateNs >= 1000000000L) {
+          recordTargetRate(workStates, now);
+          targetRateNs = now;
+        }
+      }
+
       // Compute the next interval
       // and how many messages to deliver
       if (phase != null) {
@@ -282,7 +375,13 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
 
       // Update the test state appropriately
       State state = testState.getState();
-      if (state == State.WARMUP && now >= warmup) {
+      if (state == State.WARMUP && (steadyState(workStates, now) || now >= warmup)) {
+        for (WorkloadState workState : workStates) {
+          Phase current = workState.getCurrentPhase();
+          if (current != null && current.getWarmupDetector() != null) {
+            current.getWarmupDetector().finish(now);
+          }
+        }
         synchronized (testState) {
           if (phase != null && phase.isLatencyRun()) {
             testState.startColdQuery();
@@ -291,8 +390,11 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
           }
           interruptWorkers();
         }
+        measurement = new MeasurementEvent();
+        measurement.begin();
         start = now;
         LOG.info("{} :: Warmup complete, starting measurements.", StringUtil.bold("MEASURE"));
+        phaseEvent(phase);
         // measureEnd = measureStart + measureSeconds * 1000000000L;
 
         // For serial executions, we want to do every query exactly
@@ -309,6 +411,8 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
       }
     }
 
+    clientMonitor.stop();
+
     // Stop the monitoring thread separately from cleanup all the workers so we can ignore errors
     // from these threads (including possible SQLExceptions), but not the others.
     try {
@@ -324,32 +428,55 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
     try {
       int requests = finalizeWorkers(this.workerThreads);
 
-      // Combine all the latencies together in the most disgusting way
-      // possible: sorting!
+      Iterable<LatencyRecord.Sample> allSamples;
+      DistributionStatistics stats;
+      List<Path> spills = new ArrayList<>();
       for (Worker<?> w : workers) {
-        for (LatencyRecord.Sample sample : w.getLatencyRecords()) {
-          samples.add(sample);
+        if (w.getSampleSpill() != null) {
+          w.getSampleSpill().close();
+          spills.add(w.getSampleSpill().getPath());
         }
       }
-      Collections.sort(samples);
+      if (!spills.isEmpty()) {
+        // The samples stay on disk and are merged by start time whenever they are read. The
+        // statistics come from the histograms, which record the same transactions.
+        LatencyHistogram latencies = new LatencyHistogram();
+        for (Worker<?> w : workers) {
+          latencies.add(w.getLatencyHistogram());
+        }
+        allSamples = SampleSpill.merge(spills);
+        stats = latencies.toDistributionStatistics();
+      } else {
+        // Combine all the latencies together in the most disgusting way
+        // possible: sorting!
+        for (Worker<?> w : workers) {
+          for (LatencyRecord.Sample sample : w.getLatencyRecords()) {
+            samples.add(sample);
+          }
+        }
+        Collections.sort(samples);
 
-      // Compute stats on all the latencies
-      int[] latencies = new int[samples.size()];
-      for (int i = 0; i < samples.size(); ++i) {
-        latencies[i] = samples.get(i).getLatencyMicrosecond();
+        // Compute stats on all the latencies
+        int[] latencies = new int[samples.size()];
+        for (int i = 0; i < samples.size(); ++i) {
+          latencies[i] = samples.get(i).getLatencyMicrosecond();
+        }
+        allSamples = samples;
+        stats = DistributionStatistics.computeStatistics(latencies);
       }
-      DistributionStatistics stats = DistributionStatistics.computeStatistics(latencies);
 
       Results results =
           new Results(
               // If any errors were thrown during the execution, proprogate that fact to the
               // final Results state so we can exit non-zero *after* we output the results.
-              errorsThrown ? State.ERROR : testState.getState(),
+              errorsThrown || clientMonitor.shouldFail()
+                  ? State.ERROR
+                  : testState.getState(),
               startTs,
               measureEnd - start,
               requests,
               stats,
-              samples);
+              allSamples);
 
       // Compute transaction histogram
       Set<TransactionType> txnTypes = new HashSet<>();
@@ -366,12 +493,96 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
       results.getRetryDifferent().putAll(txnTypes, 0);
 
       for (Worker<?> w : workers) {
-        results.getUnknown().putHistogram(w.getTransactionUnknownHistogram());
-        results.getSuccess().putHistogram(w.getTransactionSuccessHistogram());
-        results.getRetry().putHistogram(w.getTransactionRetryHistogram());
-        results.getAbort().putHistogram(w.getTransactionAbortHistogram());
-        results.getError().putHistogram(w.getTransactionErrorHistogram());
-        results.getRetryDifferent().putHistogram(w.getTransactionRetryDifferentHistogram());
+        TransactionOutcomes outcomes = w.getTransactionOutcomes();
+        outcomes.addTo(results.getUnknown(), TransactionStatus.UNKNOWN);
+        outcomes.addTo(results.getSuccess(), TransactionStatus.SUCCESS);
+        outcomes.addTo(results.getRetry(), TransactionStatus.RETRY);
+        outcomes.addTo(results.getAbort(), TransactionStatus.USER_ABORTED);
+        outcomes.addTo(results.getError(), TransactionStatus.ERROR);
+        outcomes.addTo(results.getRetryDifferent(), TransactionStatus.RETRY_DIFFERENT);
+        results.getTraceLateness().add(w.getTraceLatenessHistogram());
+        results.getCommitAttempts().add(w.getCommitAttemptsHistogram());
+        results.getBackoffs().add(w.getBackoffHistogram());
+        results.getRetryCauses().putHistogram(w.getRetryCauses());
+        results.getErrorCounts().add(w.getErrorCounts());
+        if (w.getStatementProfiler() != null) {
+          results.getStatementProfile().add(w.getStatementProfiler());
+        }
+        results.getConnectionRotations().addAll(w.getConnectionRotations());
+        EndpointRouter router = w.getWorkloadConfiguration().getEndpointRouter();
+        if (router != null) {
+          LatencyHistogram[] byEndpoint = w.getEndpointLatencyHistograms();
+          for (int i = 0; i < byEndpoint.length; i++) {
+            results
+                .getEndpointLatencies()
+                .computeIfAbsent(router.getName(i), k -> new LatencyHistogram())
+                .add(byEndpoint[i]);
+          }
+        }
+      }
+      results
+          .getConnectionRotations()
+          .sort(Comparator.comparingLong(ConnectionRotation.Event::getTimeMs));
+      results.getConnectTimes().add(ConnectionUtil.getConnectTimes());
+      CircuitBreaker breaker = workConfs.get(0).getCircuitBreaker();
+      if (breaker != null) {
+        results.getOutages().addAll(breaker.getOutages());
+      }
+      if (control != null) {
+        results.getControlEvents().addAll(control.getEvents());
+      }
+      for (WorkloadConfiguration workConf : workConfs) {
+        EndpointRouter router = workConf.getEndpointRouter();
+        if (router != null) {
+          for (int i = 0; i < router.size(); i++) {
+            results
+                .getEndpointMarkedDown()
+                .merge(router.getName(i), router.getMarkedDown(i), Long::sum);
+          }
+        }
+      }
+
+      long traceInjected = 0;
+      long traceDropped = 0;
+      for (WorkloadConfiguration workConf : workConfs) {
+        for (Phase p : workConf.getPhases()) {
+          if (p.getTrace() != null) {
+            traceInjected += p.getTrace().getInjected();
+            traceDropped += p.getTrace().getDropped();
+          }
+        }
+      }
+      injector.flush();
+      results.setTimeline(timeline);
+      results.getScheduleError().add(injector.getScheduleError());
+      results.setClientMonitor(clientMonitor);
+      if (clientMonitor.isSaturated()) {
+        LOG.warn(
+            "The benchmark client exceeded its limits during the measurement; the results may"
+                + " reflect the client rather than the database: {}",
+            clientMonitor.toMap());
+      }
+      results.setTraceInjected(traceInjected);
+      results.setTraceDropped(traceDropped);
+
+      for (WorkloadConfiguration workConf : workConfs) {
+        for (Phase p : workConf.getPhases()) {
+          if (p.getRateSearch() != null) {
+            results.getRateSearches().add(p.getRateSearch());
+          }
+          if (p.getFault() != null) {
+            results.getFaults().add(p.getFault());
+          }
+          if (p.getSweep() != null) {
+            results.getSweeps().add(p.getSweep());
+          }
+          if (p.getWarmupDetector() != null) {
+            results.getWarmups().add(p.getWarmupDetector());
+          }
+          if (p.getStopRule() != null) {
+            results.getStopRules().add(p.getStopRule());
+          }
+        }
       }
 
       return (results);
@@ -380,6 +591,74 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
     }
   }
 
+  /** Records the combined target rate of all rate-limited phases in the timeline. */
+  private void recordTargetRate(List<WorkloadState> workStates, long now) {
+    double rate = Double.NaN;
+    for (WorkloadState workState : workStates) {
+      Phase current = workState.getCurrentPhase();
+      if (current != null
+          && current.isRateLimited()
+          && !current.isDisabled()
+          && current.getArrival() != Phase.Arrival.TRACE) {
+        rate = Double.isNaN(rate) ? current.getRate() : rate + current.getRate();
+      }
+    }
+    timeline.record(Timeline.TARGET_RATE, now, rate);
+  }
+
+  /**
+   * Lets the steady-state detectors of the phases that warm up evaluate the last window.
+   *
+   * @return whether every detector found its workload stable, false if there is none
+   */
+  private boolean steadyState(List<WorkloadState> workStates, long now) {
+    boolean any = false;
+    boolean all = true;
+    for (WorkloadState workState : workStates) {
+      Phase current = workState.getCurrentPhase();
+      if (current != null && current.getWarmupDetector() != null) {
+        SteadyStateDetector detector = current.getWarmupDetector();
+        any = true;
+        all &= detector.isDue(now) ? detector.tick(workersOf(workState), now) : detector.isSteady();
+      }
+    }
+    return any && all;
+  }
+
+  /**
+   * Lets the stop rules of the measuring phases evaluate the last batch.
+   *
+   * @return whether every stop rule allows its phase to end, false if there is none
+   */
+  private boolean stopRule(List<WorkloadState> workStates, long now) {
+    boolean any = false;
+    boolean all = true;
+    for (WorkloadState workState : workStates) {
+      Phase current = workState.getCurrentPhase();
+      if (current != null && current.getStopRule() != null) {
+        ConfidenceStopRule rule = current.getStopRule();
+        any = true;
+        all &= rule.isDue(now) ? rule.tick(workersOf(workState), now) : rule.isStopped();
+      }
+    }
+    return any && all;
+  }
+
+  /** The workers of one workload, computed on first use and reused on every later tick. */
+  private List<Worker<?>> workersOf(WorkloadState workState) {
+    List<Worker<?>> result = workersByState.get(workState);
+    if (result == null) {
+      result = new ArrayList<>();
+      for (Worker<?> w : workers) {
+        if (w.getWorkloadConfiguration().getWorkloadState() == workState) {
+          result.add(w);
+        }
+      }
+      workersByState.put(workState, result);
+    }
+    return result;
+  }
+
   private long getInterval(double lowestRate, Phase.Arrival arrival) {
     // TODO Auto-generated method stub
     if (arrival == Phase.Arrival.POISSON) {
@@ -399,13 +678,16 @@ public class ThreadBench implements Thread.UncaughtExceptionHandler {
     // and partial metrics will be reported (i.e., until failure happened).
     synchronized (testState) {
       for (WorkloadConfiguration workConf : this.workConfs) {
-        synchronized (workConf.getWorkloadState()) {
-          WorkloadState workState = workConf.getWorkloadState();
+        WorkloadState workState = workConf.getWorkloadState();
+        workState.lock();
+        try {
           Phase phase = workState.getCurrentPhase();
           while (phase != null) {
             workState.switchToNextPhase();
             phase = workState.getCurrentPhase();
           }
+        } finally {
+          workState.unlock();
         }
       }
       testState.signalError();
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import com.oltpbenchmark.api.TransactionType;
+import com.oltpbenchmark.api.TransactionTypes;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Open-loop arrival process that replays a recorded trace. Each line of the trace file is
+ *
+ * <pre>
+ *   offset_ms,transaction[,param...]
+ * </pre>
+ *
+ * where {@code offset_ms} is a (possibly fractional) timestamp in milliseconds, {@code transaction}
+ * is either a transaction name from the configuration or its numeric id, and the remaining fields
+ * are optional parameters handed to the worker. Offsets are taken relative to the first entry, so
+ * both relative offsets and absolute epoch timestamps work. Blank lines, lines starting with '#'
+ * and a header line are skipped.
+ *
+ * <p>While its phase is active the replay runs on its own thread and feeds every entry into the
+ * rate-limited {@link WorkloadState} queue at {@code phaseStart + offset / speedup}.
+ */
+public final class TraceReplay implements Runnable {
+  private static final Logger LOG = LoggerFactory.getLogger(TraceReplay.class);
+
+  /** One transaction of the trace. */
+  static final class Entry {
+    final double offsetMs;
+    final int type;
+    final String[] params;
+
+    Entry(double offsetMs, int type, String[] params) {
+      this.offsetMs = offsetMs;
+      this.type = type;
+      this.params = params;
+    }
+  }
+
+  private final String path;
+  private final double speedup;
+  private final Map<String, Integer> typeLookup = new HashMap<>();
+  private final long entries;
+
+  private final AtomicLong injected = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+
+  private WorkloadState workloadState;
+  private Phase phase;
+  private Thread thread;
+  private long phaseStartNs;
+
+  /**
+   * Reads the whole trace once, so that a malformed line fails the configuration instead of the
+   * running phase.
+   *
+   * @throws IllegalArgumentException if the trace cannot be read, has no entries or a line is
+   *     malformed
+   */
+  public TraceReplay(String path, double speedup, TransactionTypes transactionTypes) {
+    if (speedup <= 0) {
+      throw new IllegalArgumentException("Trace speedup must be positive: " + speedup);
+    }
+    if (!Files.isReadable(Paths.get(path))) {
+      throw new IllegalArgumentException("Trace file is not readable: " + path);
+    }
+    this.path = path;
+    this.speedup = speedup;
+
+    // Map names and ids onto the index used by the work queue
+    int idx = 0;
+    for (TransactionType type : transactionTypes) {
+      if (!type.equals(TransactionType.INVALID)) {
+        typeLookup.put(type.getName().toUpperCase(), idx);
+        typeLookup.put(Integer.toString(type.getId()), idx);
+      }
+      idx++;
+    }
+
+    long count = 0;
+    try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+      String line;
+      long lineNo = 0;
+      while ((line = reader.readLine()) != null) {
+        if (parse(line, ++lineNo, count == 0) != null) {
+          count++;
+        }
+      }
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("Failed to read trace " + path + ": " + ex.getMessage());
+    }
+    if (count == 0) {
+      throw new IllegalArgumentException("Trace has no entries: " + path);
+    }
+    this.entries = count;
+  }
+
+  /**
+   * Parses one line of the trace.
+   *
+   * @param first whether no entry precedes the line, in which case it may be a header
+   * @return the entry, or null for a blank line, a comment or the header
+   * @throws IllegalArgumentException if the line is malformed
+   */
+  Entry parse(String line, long lineNo, boolean first) {
+    line = line.trim();
+    if (line.isEmpty() || line.startsWith("#")) {
+      return null;
+    }
+    String[] fields = line.split("\\s*,\\s*");
+    double offsetMs;
+    try {
+      offsetMs = Double.parseDouble(fields[0]);
+    } catch (NumberFormatException ex) {
+      if (first) {
+        // Header line
+        return null;
+      }
+      throw new IllegalArgumentException(
+          String.format("%s:%d: invalid offset '%s'", path, lineNo, fields[0]));
+    }
+    if (!Double.isFinite(offsetMs)) {
+      throw new IllegalArgumentException(
+          String.format("%s:%d: invalid offset '%s'", path, lineNo, fields[0]));
+    }
+    if (fields.length < 2) {
+      throw new IllegalArgumentException(String.format("%s:%d: missing transaction", path, lineNo));
+    }
+    Integer type = typeLookup.get(fields[1].toUpperCase());
+    if (type == null) {
+      throw new IllegalArgumentException(
+          String.format("%s:%d: unknown transaction '%s'", path, lineNo, fields[1]));
+    }
+    String[] params = fields.length > 2 ? Arrays.copyOfRange(fields, 2, fields.length) : null;
+    return new Entry(offsetMs, type, params);
+  }
+
+  /** The time an entry is due, relative to the first entry of the trace. */
+  static long scheduledNs(
+      long phaseStartNs, double offsetMs, double firstOffsetMs, double speedup) {
+    return phaseStartNs + (long) ((offsetMs - firstOffsetMs) * 1e6 / speedup);
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public double getSpeedup() {
+    return speedup;
+  }
+
+  /** Number of entries in the trace. */
+  public long getEntries() {
+    return entries;
+  }
+
+  /** Number of trace entries handed to the work queue. */
+  public long getInjected() {
+    return injected.get();
+  }
+
+  /** Number of trace entries discarded because the work queue was full. */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  /**
+   * Start replaying for the given phase. Called when the phase becomes current. If the replay
+   * fails, the run is aborted rather than left idling until the phase ends.
+   */
+  synchronized void start(WorkloadState workloadState, Phase phase) {
+    this.workloadState = workloadState;
+    this.phase = phase;
+    this.phaseStartNs = System.nanoTime();
+    this.thread = new Thread(this, "TraceReplay-" + phase.getId());
+    this.thread.setDaemon(true);
+    this.thread.setUncaughtExceptionHandler(
+        (t, e) -> {
+          LOG.error("Trace replay of phase {} failed: {}", phase.getId(), e.getMessage(), e);
+          workloadState.signalFailure();
+        });
+    this.thread.start();
+  }
+
+  /** Stop replaying. Called when the phase is no longer current. */
+  synchronized void stop() {
+    if (thread != null) {
+      thread.interrupt();
+      thread = null;
+    }
+  }
+
+  @Override
+  public void run() {
+    LOG.info("Replaying {} entries of trace {} at {}x speed", entries, path, speedup);
+    long lineNo = 0;
+    Double firstOffsetMs = null;
+
+    try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        Entry entry = parse(line, ++lineNo, firstOffsetMs == null);
+        if (entry == null) {
+          continue;
+        }
+        if (firstOffsetMs == null) {
+          firstOffsetMs = entry.offsetMs;
+        }
+        long scheduledNs = scheduledNs(phaseStartNs, entry.offsetMs, firstOffsetMs, speedup);
+
+        long wait;
+        while ((wait = scheduledNs - System.nanoTime()) > 0) {
+          LockSupport.parkNanos(wait);
+          if (Thread.currentThread().isInterrupted()) {
+            return;
+          }
+        }
+        if (Thread.currentThread().isInterrupted()) {
+          return;
+        }
+
+        SubmittedProcedure work = new SubmittedProcedure(entry.type, scheduledNs, entry.params);
+        if (workloadState.addToQueue(phase, work)) {
+          injected.incrementAndGet();
+        } else {
+          dropped.incrementAndGet();
+        }
+      }
+      LOG.info("Trace {} exhausted after {} entries", path, injected.get() + dropped.get());
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Failed to read trace " + path, ex);
+    }
+  }
+}
@@ -15,7 +15,12 @@
 
 package com.oltpbenchmark;
 
+import com.oltpbenchmark.api.CircuitBreaker;
+import com.oltpbenchmark.api.ConnectionRotation;
+import com.oltpbenchmark.api.EndpointRouter;
+import com.oltpbenchmark.api.RetryPolicy;
 import com.oltpbenchmark.api.TransactionTypes;
+import com.oltpbenchmark.distributed.AgentAssignment;
 import com.oltpbenchmark.types.DatabaseType;
 import com.oltpbenchmark.util.ThreadUtil;
 import java.sql.Connection;
@@ -34,6 +39,13 @@ public class WorkloadConfiguration {
   private String driverClass;
   private int batchSize;
   private int maxRetries;
+  private RetryPolicy retryPolicy = new RetryPolicy();
+  private ClientMonitor.Limits clientLimits;
+  private EndpointRouter endpointRouter;
+  private ConnectionRotation connectionRotation;
+  private int connectThreads = 16;
+  private CircuitBreaker circuitBreaker;
+  private RuntimeControl runtimeControl;
   private int randomSeed = -1;
   private double scaleFactor = 1.0;
   private double selectivity = -1.0;
@@ -53,6 +65,20 @@ public class WorkloadConfiguration {
    */
   private boolean newConnectionPerTxn = false;
 
+  /**
+   * If true, run every terminal on a virtual thread instead of a platform thread. Terminals then
+   * cost little more than their connection, so thousands of them can keep that many transactions
+   * in flight while blocking JDBC calls are multiplexed over a few carrier threads, one per core
+   * unless {@code -Djdk.virtualThreadScheduler.parallelism} says otherwise.
+   */
+  private boolean virtualThreads = false;
+
+  /**
+   * Directory in which every worker writes its raw samples to its own file while the run goes on,
+   * instead of keeping them on the heap until the end. Null keeps them in memory.
+   */
+  private String spillDirectory = null;
+
   /**
    * If true, attempt to catch connection closed exceptions and reconnect. This allows the benchmark
    * to recover like a typical application would in the case of a replicated cluster
@@ -60,6 +86,19 @@ public class WorkloadConfiguration {
    */
   private boolean reconnectOnConnectionFailure = false;
 
+  /**
+   * If true, wrap the statements handed out by the procedures to record the execute, fetch, commit
+   * and rollback time of every statement. Adds some overhead to every statement, so it is off by
+   * default.
+   */
+  private boolean profileStatements = false;
+
+  /**
+   * The slice of a distributed run executed by this process, or null if this process runs the
+   * whole workload on its own.
+   */
+  private AgentAssignment agentAssignment = null;
+
   public String getBenchmarkName() {
     return benchmarkName;
   }
@@ -128,6 +167,74 @@ public class WorkloadConfiguration {
     this.maxRetries = maxRetries;
   }
 
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  /** Limits on the load of the benchmark client itself, null if they are not checked. */
+  public ClientMonitor.Limits getClientLimits() {
+    return clientLimits;
+  }
+
+  public void setClientLimits(ClientMonitor.Limits clientLimits) {
+    this.clientLimits = clientLimits;
+  }
+
+  /** The endpoints the workers connect to, or null if they all use {@link #getUrl()}. */
+  public EndpointRouter getEndpointRouter() {
+    return endpointRouter;
+  }
+
+  public void setEndpointRouter(EndpointRouter endpointRouter) {
+    this.endpointRouter = endpointRouter;
+  }
+
+  /** When worker connections are replaced, or null to keep them until they fail. */
+  public ConnectionRotation getConnectionRotation() {
+    return connectionRotation;
+  }
+
+  public void setConnectionRotation(ConnectionRotation connectionRotation) {
+    this.connectionRotation = connectionRotation;
+  }
+
+  /**
+   * The breaker that paces reconnects while the database is unreachable, shared by all workloads
+   * of the process, or null if every worker reconnects on its own.
+   */
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  /**
+   * The endpoint that changes the running phases, shared by all workloads of the process, or null
+   * if the phases run as configured.
+   */
+  public RuntimeControl getRuntimeControl() {
+    return runtimeControl;
+  }
+
+  public void setRuntimeControl(RuntimeControl runtimeControl) {
+    this.runtimeControl = runtimeControl;
+  }
+
+  /** How many worker connections are opened concurrently before the run starts. */
+  public int getConnectThreads() {
+    return connectThreads;
+  }
+
+  public void setConnectThreads(int connectThreads) {
+    this.connectThreads = connectThreads;
+  }
+
   public void setAdvancedMonitoringEnabled(boolean advancedMonitoringEnabled) {
     this.advancedMonitoringEnabled = true;
   }
@@ -153,6 +260,28 @@ public class WorkloadConfiguration {
     this.newConnectionPerTxn = newConnectionPerTxn;
   }
 
+  /**
+   * @return @see virtualThreads member docs for behavior.
+   */
+  public boolean getVirtualThreads() {
+    return virtualThreads;
+  }
+
+  public void setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+  }
+
+  /**
+   * @return @see spillDirectory member docs for behavior.
+   */
+  public String getSpillDirectory() {
+    return spillDirectory;
+  }
+
+  public void setSpillDirectory(String spillDirectory) {
+    this.spillDirectory = spillDirectory;
+  }
+
   /**
    * @return @see reconnectOnConnectionFailure member docs for behavior.
    */
@@ -170,12 +299,20 @@ public class WorkloadConfiguration {
     this.reconnectOnConnectionFailure = reconnectOnConnectionFailure;
   }
 
+  public boolean getProfileStatements() {
+    return profileStatements;
+  }
+
+  public void setProfileStatements(boolean profileStatements) {
+    this.profileStatements = profileStatements;
+  }
+
   /** Initiate a new benchmark and workload state */
   public void initializeState(BenchmarkState benchmarkState) {
     this.workloadState = new WorkloadState(benchmarkState, phases, terminals);
   }
 
-  public void addPhase(
+  public Phase addPhase(
       int id,
       int time,
       int warmup,
@@ -187,7 +324,7 @@ public class WorkloadConfiguration {
       boolean timed,
       int active_terminals,
       Phase.Arrival arrival) {
-    phases.add(
+    Phase phase =
         new Phase(
             benchmarkName,
             id,
@@ -200,7 +337,9 @@ public class WorkloadConfiguration {
             serial,
             timed,
             active_terminals,
-            arrival));
+            arrival);
+    phases.add(phase);
+    return phase;
   }
 
   /**
@@ -313,6 +452,14 @@ public class WorkloadConfiguration {
     this.terminals = terminals;
   }
 
+  public AgentAssignment getAgentAssignment() {
+    return agentAssignment;
+  }
+
+  public void setAgentAssignment(AgentAssignment agentAssignment) {
+    this.agentAssignment = agentAssignment;
+  }
+
   public TransactionTypes getTransTypes() {
     return transTypes;
   }
@@ -21,6 +21,8 @@ import com.oltpbenchmark.types.State;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,6 +30,9 @@ import org.slf4j.LoggerFactory;
  * This class is used to share a state among the workers of a single workload. Worker use it to ask
  * for work and as interface to the global BenchmarkState
  *
+ * <p>Waiting workers block on a {@link ReentrantLock} rather than a monitor, so that workers on
+ * virtual threads release their carrier thread while they wait.
+ *
  * @author alendit
  */
 public class WorkloadState {
@@ -46,7 +51,11 @@ public class WorkloadState {
 
   private int workerNeedSleep;
 
-  private Phase currentPhase = null;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+
+  private volatile Phase currentPhase = null;
+  private volatile long currentPhaseStartNs = -1;
 
   public WorkloadState(BenchmarkState benchmarkState, List<Phase> works, int num_terminals) {
     this.benchmarkState = benchmarkState;
@@ -60,16 +69,19 @@ public class WorkloadState {
   public void addToQueue(int amount, boolean resetQueues) {
     int workAdded = 0;
 
-    synchronized (this) {
+    lock.lock();
+    try {
       if (resetQueues) {
         workQueue.clear();
       }
 
       // Only use the work queue if the phase is enabled and rate limited.
+      // Trace phases feed the queue from their own replay thread.
       if (currentPhase == null
           || currentPhase.isDisabled()
           || !currentPhase.isRateLimited()
-          || currentPhase.isSerial()) {
+          || currentPhase.isSerial()
+          || currentPhase.getArrival() == Phase.Arrival.TRACE) {
         return;
       }
 
@@ -83,30 +95,58 @@ public class WorkloadState {
       // Wake up sleeping workers to deal with the new work.
       int numToWake = Math.min(workAdded, workersWaiting);
       while (numToWake-- > 0) {
-        this.notify();
+        changed.signal();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Add a single, already chosen procedure to the queue on behalf of the given phase.
+   *
+   * @return false if the work was discarded because the phase is no longer current or the queue is
+   *     full
+   */
+  public boolean addToQueue(Phase phase, SubmittedProcedure work) {
+    lock.lock();
+    try {
+      if (currentPhase != phase || workQueue.size() > RATE_QUEUE_LIMIT) {
+        return false;
       }
+      workQueue.add(work);
+      if (workersWaiting > 0) {
+        changed.signal();
+      }
+      return true;
+    } finally {
+      lock.unlock();
     }
   }
 
   public void signalDone() {
     int current = this.benchmarkState.signalDone();
     if (current == 0) {
-      synchronized (this) {
+      lock.lock();
+      try {
         if (workersWaiting > 0) {
-          this.notifyAll();
+          changed.signalAll();
         }
+      } finally {
+        lock.unlock();
       }
     }
   }
 
   /** Called by ThreadPoolThreads when waiting for work. */
   public SubmittedProcedure fetchWork() {
-    synchronized (this) {
+    lock.lock();
+    try {
       if (currentPhase != null && currentPhase.isSerial()) {
         ++workersWaiting;
         while (getGlobalState() == State.LATENCY_COMPLETE) {
           try {
-            this.wait();
+            changed.await();
           } catch (InterruptedException e) {
             throw new RuntimeException(e);
           }
@@ -121,18 +161,25 @@ public class WorkloadState {
         return new SubmittedProcedure(
             currentPhase.chooseTransaction(getGlobalState() == State.COLD_QUERY));
       }
+    } finally {
+      lock.unlock();
     }
 
-    // Unlimited-rate phases don't use the work queue.
-    if (currentPhase != null && !currentPhase.isRateLimited()) {
-      synchronized (this) {
+    // Unlimited-rate phases don't use the work queue. Read the phase once: the rate controller
+    // may switch to the next phase (or none) concurrently.
+    Phase phase = currentPhase;
+    if (phase != null && !phase.isRateLimited()) {
+      lock.lock();
+      try {
         ++workersWorking;
+      } finally {
+        lock.unlock();
       }
-      return new SubmittedProcedure(
-          currentPhase.chooseTransaction(getGlobalState() == State.COLD_QUERY));
+      return new SubmittedProcedure(phase.chooseTransaction(getGlobalState() == State.COLD_QUERY));
     }
 
-    synchronized (this) {
+    lock.lock();
+    try {
       // Sleep until work is available.
       if (workQueue.peek() == null) {
         workersWaiting += 1;
@@ -143,7 +190,7 @@ public class WorkloadState {
           }
 
           try {
-            this.wait();
+            changed.await();
           } catch (InterruptedException e) {
             throw new RuntimeException(e);
           }
@@ -154,12 +201,17 @@ public class WorkloadState {
       ++workersWorking;
 
       return workQueue.remove();
+    } finally {
+      lock.unlock();
     }
   }
 
   public void finishedWork() {
-    synchronized (this) {
+    lock.lock();
+    try {
       --workersWorking;
+    } finally {
+      lock.unlock();
     }
   }
 
@@ -171,30 +223,42 @@ public class WorkloadState {
   }
 
   public Phase getCurrentPhase() {
-    synchronized (benchmarkState) {
-      return currentPhase;
-    }
+    return currentPhase;
   }
 
   /*
    * Called by workers to ask if they should stay awake in this phase
    */
   public void stayAwake() {
-    synchronized (this) {
+    lock.lock();
+    try {
       while (workerNeedSleep > 0) {
         workerNeedSleep--;
         try {
-          this.wait();
+          changed.await();
         } catch (InterruptedException e) {
           LOG.error(e.getMessage(), e);
         }
       }
+    } finally {
+      lock.unlock();
     }
   }
 
+  /** Aborts the run, see {@link BenchmarkState#signalFailure()}. */
+  void signalFailure() {
+    benchmarkState.signalFailure();
+  }
+
   public void switchToNextPhase() {
-    synchronized (this) {
+    lock.lock();
+    try {
+      if (this.currentPhase != null && this.currentPhase.getTrace() != null) {
+        this.currentPhase.getTrace().stop();
+      }
+
       this.currentPhase = this.getNextPhase();
+      this.currentPhaseStartNs = System.nanoTime();
 
       // Clear the work from the previous phase.
       workQueue.clear();
@@ -215,13 +279,67 @@ public class WorkloadState {
         // Phase running---activate the appropriate # of terminals
         {
           workerNeedSleep = this.num_terminals - this.currentPhase.getActiveTerminals();
+
+          if (this.currentPhase.getTrace() != null) {
+            this.currentPhase.getTrace().start(this, this.currentPhase);
+          }
         }
       }
 
-      this.notifyAll();
+      changed.signalAll();
+    } finally {
+      lock.unlock();
     }
   }
 
+  /**
+   * Keeps the workers from fetching work or waking up until {@link #unlock()}, so that ThreadBench
+   * can switch phases and interrupt the workers as one step.
+   */
+  void lock() {
+    lock.lock();
+  }
+
+  void unlock() {
+    lock.unlock();
+  }
+
+  /**
+   * Changes the number of terminals executing the current phase. The surplus terminals go to sleep
+   * once they finish their current transaction; sleeping terminals are woken if more are needed.
+   *
+   * @throws IllegalArgumentException unless there is a running phase and {@code 1 <= terminals <=
+   *     num_terminals}
+   */
+  public void setActiveTerminals(int terminals) {
+    lock.lock();
+    try {
+      if (currentPhase == null || currentPhase.isDisabled()) {
+        throw new IllegalArgumentException("No phase is running");
+      }
+      if (terminals < 1 || terminals > num_terminals) {
+        throw new IllegalArgumentException(
+            String.format("Active terminals must be between 1 and %d", num_terminals));
+      }
+      currentPhase.setActiveTerminals(terminals);
+      // sleeping workers wake up and go back to sleep until enough of them sleep
+      workerNeedSleep = num_terminals - terminals;
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** System.nanoTime() at which the current phase started, including its warmup. */
+  public long getCurrentPhaseStartNs() {
+    return currentPhaseStartNs;
+  }
+
+  /** System.nanoTime() at which the measurement started, -1 before that. */
+  public long getMeasureStartNs() {
+    return benchmarkState.getMeasureStartNs();
+  }
+
   /** Delegates pre-start blocking to the global state handler */
   public void blockForStart() {
     benchmarkState.blockForStart();
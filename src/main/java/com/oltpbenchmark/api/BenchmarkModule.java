@@ -21,6 +21,7 @@ import com.oltpbenchmark.types.DatabaseType;
 import com.oltpbenchmark.util.ClassUtil;
 import com.oltpbenchmark.util.ConnectionUtil;
 import com.oltpbenchmark.util.IAMUtil;
+import com.oltpbenchmark.util.LatencyHistogram;
 import com.oltpbenchmark.util.SQLUtil;
 import com.oltpbenchmark.util.ScriptRunner;
 import com.oltpbenchmark.util.ThreadUtil;
@@ -36,6 +37,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -86,6 +92,11 @@ public abstract class BenchmarkModule {
   // --------------------------------------------------------------------------
 
   public final Connection makeConnection() throws SQLException {
+    return makeConnection(workConf.getUrl());
+  }
+
+  /** Connects to one of the endpoints of the database, with the configured credentials. */
+  public final Connection makeConnection(String url) throws SQLException {
 
     /** For DSQL, generate password token using IAM auth if one isn't provided. */
     if (StringUtils.isEmpty(workConf.getPassword())
@@ -93,16 +104,13 @@ public abstract class BenchmarkModule {
       String username =
           StringUtils.isEmpty(workConf.getUsername()) ? "admin" : workConf.getUsername();
       return DriverManager.getConnection(
-          workConf.getUrl(),
-          username,
-          IAMUtil.generateAuroraDsqlPasswordToken(workConf.getUrl(), username));
+          url, username, IAMUtil.generateAuroraDsqlPasswordToken(url, username));
     }
 
     if (StringUtils.isEmpty(workConf.getUsername())) {
-      return DriverManager.getConnection(workConf.getUrl());
+      return DriverManager.getConnection(url);
     } else {
-      return DriverManager.getConnection(
-          workConf.getUrl(), workConf.getUsername(), workConf.getPassword());
+      return DriverManager.getConnection(url, workConf.getUsername(), workConf.getPassword());
     }
   }
 
@@ -204,7 +212,73 @@ public abstract class BenchmarkModule {
   }
 
   public final List<Worker<? extends BenchmarkModule>> makeWorkers() throws IOException {
-    return (this.makeWorkersImpl());
+    List<Worker<? extends BenchmarkModule>> workers = this.makeWorkersImpl();
+    connectWorkers(workers);
+    return workers;
+  }
+
+  /**
+   * Opens the connections of the workers on a bounded pool of threads, at the pace of the
+   * connection ramp, instead of one after the other as each worker is constructed.
+   */
+  private void connectWorkers(List<Worker<? extends BenchmarkModule>> workers) {
+    if (workers.isEmpty() || workConf.getNewConnectionPerTxn()) {
+      return;
+    }
+    int threads = Math.max(1, Math.min(workConf.getConnectThreads(), workers.size()));
+    LOG.info("Connecting {} terminals on {} threads...", workers.size(), threads);
+    ExecutorService service =
+        Executors.newFixedThreadPool(
+            threads,
+            r -> {
+              Thread t = new Thread(r, "connect");
+              t.setDaemon(true);
+              return t;
+            });
+    LatencyHistogram before = ConnectionUtil.getConnectTimes();
+    long start = System.nanoTime();
+    AtomicInteger connected = new AtomicInteger();
+    int step = Math.max(1, workers.size() / 10);
+    List<Future<?>> futures = new ArrayList<>();
+    for (Worker<? extends BenchmarkModule> worker : workers) {
+      futures.add(
+          service.submit(
+              () -> {
+                worker.openConnection();
+                int n = connected.incrementAndGet();
+                if (n % step == 0 && n < workers.size()) {
+                  LOG.info(
+                      "Connected {}/{} terminals [time={}s]",
+                      n,
+                      workers.size(),
+                      String.format("%.1f", (System.nanoTime() - start) / 1e9));
+                }
+              }));
+    }
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new RuntimeException("Failed to connect to database", ex.getCause());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while connecting to database", ex);
+    } finally {
+      service.shutdownNow();
+    }
+    LatencyHistogram times = ConnectionUtil.getConnectTimes().minus(before);
+    LOG.info(
+        String.format(
+            "Connected %d terminals [time=%.1fs, connect median=%.1fms, p99=%.1fms, max=%.1fms]",
+            workers.size(),
+            (System.nanoTime() - start) / 1e9,
+            times.getValueAtPercentile(0.5) / 1e3,
+            times.getValueAtPercentile(0.99) / 1e3,
+            times.getMaximum() / 1e3));
   }
 
   public final void refreshCatalog() throws SQLException {
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.api;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connection health shared by all workers of the process. After {@code failureThreshold}
+ * consecutive connection failures the breaker opens: workers that lost their connection wait for
+ * it instead of each reconnecting on its own schedule. Once the cooldown has passed, the breaker is
+ * half-open and lets a few workers probe the database; the first probe that connects closes it and
+ * releases the others, a failed probe opens it again for twice the cooldown.
+ *
+ * <p>Every trip is recorded as an {@link Outage}, from the first failure until the breaker closed
+ * again and until every worker that failed during the outage had reconnected.
+ *
+ * <p>Workers wait on a {@link ReentrantLock} rather than a monitor, so that workers on virtual
+ * threads release their carrier thread while the breaker is open.
+ */
+public final class CircuitBreaker {
+  private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN,
+  }
+
+  /** One period in which the database could not be reached. */
+  public static final class Outage {
+    private final long startMs;
+    private final long startNs;
+    private long closedNs = -1;
+    private long recoveredNs = -1;
+    private int failures = 0;
+    private int failedProbes = 0;
+
+    private Outage(long startNs, long now) {
+      this.startMs = System.currentTimeMillis() - (now - startNs) / 1000000L;
+      this.startNs = startNs;
+    }
+
+    /** Wall clock time of the first failure, in milliseconds since the epoch. */
+    public long getStartMs() {
+      return startMs;
+    }
+
+    /** Milliseconds from the first failure until a probe connected, -1 if none did. */
+    public long getOutageMs() {
+      return closedNs < 0 ? -1 : (closedNs - startNs) / 1000000L;
+    }
+
+    /**
+     * Milliseconds from the first failure until all workers that failed had reconnected, -1 if some
+     * never did.
+     */
+    public long getRecoveryMs() {
+      return recoveredNs < 0 ? -1 : (recoveredNs - startNs) / 1000000L;
+    }
+
+    public int getFailures() {
+      return failures;
+    }
+
+    public int getFailedProbes() {
+      return failedProbes;
+    }
+
+    public Map<String, Object> toMap() {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("Start (milliseconds)", startMs);
+      map.put("Outage (milliseconds)", getOutageMs());
+      map.put("Recovery (milliseconds)", getRecoveryMs());
+      map.put("Failures", failures);
+      map.put("Failed Probes", failedProbes);
+      return map;
+    }
+  }
+
+  private final int failureThreshold;
+  private final long cooldownNs;
+  private final long maxCooldownNs;
+  private final int probes;
+  private final LongSupplier clock;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition closed = lock.newCondition();
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures = 0;
+  private long firstFailureNs;
+  private long openUntilNs;
+  private long currentCooldownNs;
+  private final Set<Integer> probing = new HashSet<>();
+  private final Set<Integer> affected = new HashSet<>();
+  private Outage current = null;
+  private final List<Outage> outages = new ArrayList<>();
+
+  /**
+   * @param failureThreshold consecutive connection failures that open the breaker
+   * @param cooldownMs time the breaker stays open before the first probe
+   * @param maxCooldownMs upper bound of the cooldown as it doubles after failed probes
+   * @param probes number of workers that may probe at the same time
+   */
+  public CircuitBreaker(int failureThreshold, long cooldownMs, long maxCooldownMs, int probes) {
+    this(failureThreshold, cooldownMs, maxCooldownMs, probes, System::nanoTime);
+  }
+
+  /** @param clock source of {@link System#nanoTime()} values, replaced by tests */
+  CircuitBreaker(
+      int failureThreshold, long cooldownMs, long maxCooldownMs, int probes, LongSupplier clock) {
+    if (failureThreshold < 1 || cooldownMs < 0 || maxCooldownMs < cooldownMs || probes < 1) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid circuit breaker: failures=%d, cooldown=%dms, maxCooldown=%dms, probes=%d",
+              failureThreshold, cooldownMs, maxCooldownMs, probes));
+    }
+    this.failureThreshold = failureThreshold;
+    this.cooldownNs = cooldownMs * 1000000L;
+    this.maxCooldownNs = maxCooldownMs * 1000000L;
+    this.probes = probes;
+    this.clock = clock;
+  }
+
+  public State getState() {
+    lock.lock();
+    try {
+      return state;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until the worker may try to connect: immediately while the breaker is closed, otherwise
+   * until it closes or the worker is let through as a probe.
+   *
+   * @return false if the timeout passed first, so the caller can check whether the run has ended
+   */
+  public boolean await(int worker, long timeoutMs) {
+    long deadline = clock.getAsLong() + timeoutMs * 1000000L;
+    lock.lock();
+    try {
+      return awaitLocked(worker, deadline);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean awaitLocked(int worker, long deadline) {
+    while (true) {
+      long now = clock.getAsLong();
+      if (state == State.OPEN && now - openUntilNs >= 0) {
+        state = State.HALF_OPEN;
+      }
+      if (state == State.CLOSED) {
+        return true;
+      }
+      if (state == State.HALF_OPEN && (probing.contains(worker) || probing.size() < probes)) {
+        probing.add(worker);
+        return true;
+      }
+      long waitNs = deadline - now;
+      if (waitNs <= 0) {
+        return false;
+      }
+      if (state == State.OPEN) {
+        waitNs = Math.min(waitNs, openUntilNs - now);
+      }
+      try {
+        closed.await(waitNs, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException ex) {
+        return false;
+      }
+    }
+  }
+
+  /** Records that the worker connected. */
+  public void recordSuccess(int worker) {
+    lock.lock();
+    try {
+      recordSuccessLocked(worker);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void recordSuccessLocked(int worker) {
+    long now = clock.getAsLong();
+    consecutiveFailures = 0;
+    probing.remove(worker);
+    if (state != State.CLOSED) {
+      state = State.CLOSED;
+      // probes still in flight are ordinary connection attempts now
+      probing.clear();
+      current.closedNs = now;
+      LOG.info(
+          "Circuit breaker closed, the database was unreachable for {} ms",
+          current.getOutageMs());
+      closed.signalAll();
+    }
+    affected.remove(worker);
+    if (current != null && current.closedNs >= 0 && affected.isEmpty()) {
+      current.recoveredNs = now;
+      LOG.info("All workers reconnected {} ms after the outage began", current.getRecoveryMs());
+      current = null;
+    }
+  }
+
+  /** Records that the worker failed to connect or lost its connection. */
+  public void recordFailure(int worker) {
+    lock.lock();
+    try {
+      recordFailureLocked(worker);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void recordFailureLocked(int worker) {
+    long now = clock.getAsLong();
+    affected.add(worker);
+    if (current != null) {
+      current.failures++;
+    }
+    if (probing.remove(worker) && state == State.HALF_OPEN) {
+      current.failedProbes++;
+      currentCooldownNs = Math.min(currentCooldownNs * 2, maxCooldownNs);
+      open(now);
+      return;
+    }
+    if (state != State.CLOSED) {
+      return;
+    }
+    if (consecutiveFailures++ == 0) {
+      firstFailureNs = now;
+    }
+    if (consecutiveFailures >= failureThreshold) {
+      if (current == null) {
+        current = new Outage(firstFailureNs, now);
+        current.failures = consecutiveFailures;
+        outages.add(current);
+      }
+      currentCooldownNs = cooldownNs;
+      open(now);
+      LOG.warn(
+          "Circuit breaker opened after {} consecutive connection failures", consecutiveFailures);
+    }
+  }
+
+  private void open(long now) {
+    state = State.OPEN;
+    probing.clear();
+    openUntilNs = now + currentCooldownNs;
+  }
+
+  public List<Outage> getOutages() {
+    lock.lock();
+    try {
+      return new ArrayList<>(outages);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "failures=%d, cooldown=%dms, maxCooldown=%dms, probes=%d",
+        failureThreshold, cooldownNs / 1000000L, maxCooldownNs / 1000000L, probes);
+  }
+}
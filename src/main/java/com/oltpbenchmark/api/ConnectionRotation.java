@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.api;
+
+import java.util.Random;
+
+/**
+ * Replaces worker connections before the database closes them for their age, as Aurora DSQL does
+ * after an hour. Each connection gets its own deadline between {@code (1 - jitter) * maxAge} and
+ * {@code maxAge} after it was opened, so connections opened together at the start of the run are
+ * not all replaced at once. The replacement is opened in the background some time ahead of the
+ * deadline, and the worker switches to it between two transactions, so that no transaction waits
+ * for a connection.
+ */
+public final class ConnectionRotation {
+
+  /** One replacement of a worker's connection. */
+  public static final class Event {
+    private final long timeMs;
+    private final int worker;
+    private final String endpoint;
+    private final long ageMs;
+    private final long connectUs;
+    private final boolean success;
+
+    Event(long timeMs, int worker, String endpoint, long ageMs, long connectUs, boolean success) {
+      this.timeMs = timeMs;
+      this.worker = worker;
+      this.endpoint = endpoint;
+      this.ageMs = ageMs;
+      this.connectUs = connectUs;
+      this.success = success;
+    }
+
+    /** Milliseconds since the start of the run. */
+    public long getTimeMs() {
+      return timeMs;
+    }
+
+    public int getWorker() {
+      return worker;
+    }
+
+    /** The endpoint of the replacement, empty without {@link EndpointRouter}. */
+    public String getEndpoint() {
+      return endpoint;
+    }
+
+    /** Age of the replaced connection. */
+    public long getAgeMs() {
+      return ageMs;
+    }
+
+    /** How long opening the replacement took. */
+    public long getConnectUs() {
+      return connectUs;
+    }
+
+    /** False if the replacement could not be opened and the old connection was kept. */
+    public boolean isSuccess() {
+      return success;
+    }
+  }
+
+  /** Shortest wait before opening a replacement again after one failed to open. */
+  static final long MIN_RETRY_BACKOFF_NS = 1000000000L;
+
+  private final long maxAgeNs;
+  private final double jitter;
+  private final long leadNs;
+
+  /**
+   * @param maxAgeMs age after which a connection is replaced at the latest
+   * @param jitter fraction of the maximum age by which the deadlines are spread
+   * @param leadMs how long before its deadline the replacement is opened
+   */
+  public ConnectionRotation(long maxAgeMs, double jitter, long leadMs) {
+    if (maxAgeMs <= 0 || jitter < 0 || jitter > 1 || leadMs < 0) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid connection rotation: maxAge=%dms, jitter=%s, lead=%dms",
+              maxAgeMs, jitter, leadMs));
+    }
+    this.maxAgeNs = maxAgeMs * 1000000L;
+    this.jitter = jitter;
+    this.leadNs = leadMs * 1000000L;
+  }
+
+  /** The time at which a connection opened at {@code openedNs} should be replaced. */
+  public long getDeadline(long openedNs, Random rng) {
+    return openedNs + (long) (maxAgeNs * (1 - jitter * rng.nextDouble()));
+  }
+
+  /** Whether to start opening the replacement of a connection that is due at {@code deadlineNs}. */
+  public boolean shouldOpen(long deadlineNs, long now) {
+    return now - (deadlineNs - leadNs) >= 0;
+  }
+
+  /**
+   * The deadline to use after opening a replacement failed at {@code failedNs}: the next attempt
+   * starts after waiting the lead time, but at least {@link #MIN_RETRY_BACKOFF_NS}.
+   */
+  public long getRetryDeadline(long failedNs) {
+    return failedNs + Math.max(leadNs, MIN_RETRY_BACKOFF_NS) + leadNs;
+  }
+
+  public long getLeadNs() {
+    return leadNs;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "maxAge=%dms, jitter=%s, lead=%dms", maxAgeNs / 1000000L, jitter, leadNs / 1000000L);
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads the workers of a benchmark over several database endpoints, such as the regional
+ * endpoints of an Aurora DSQL multi-region cluster, and moves them away from endpoints that fail.
+ *
+ * <p>Every worker has a home endpoint chosen by the {@link Policy}. An endpoint that refuses a
+ * connection or breaks an open one is marked down for the cooldown period; its workers reconnect
+ * to one of the remaining endpoints, chosen at random weighted by the inverse of their recent
+ * latency, and return home once the cooldown has passed. With a degradation factor, an endpoint
+ * whose average latency exceeds that of the fastest endpoint by the factor is marked down as well.
+ *
+ * <p>The health state is shared by all workers and updated without locks; the latency averages
+ * may lose an occasional concurrent update, which does not matter for routing.
+ */
+public final class EndpointRouter {
+  private static final Logger LOG = LoggerFactory.getLogger(EndpointRouter.class);
+
+  /** Weight of a new latency sample in the moving average. */
+  private static final double ALPHA = 0.05;
+
+  /** Samples needed after a reset before the average of an endpoint is trusted. */
+  static final int MIN_SAMPLES = 100;
+
+  public enum Policy {
+    /** Worker i uses endpoint i modulo the number of endpoints. */
+    ROUND_ROBIN,
+    /**
+     * The workers' partitions, e.g. TPC-C warehouses, are split into contiguous ranges, one per
+     * endpoint, so that each endpoint serves the same part of the data.
+     */
+    AFFINITY,
+    /** Workers have no home and pick an endpoint weighted by inverse latency on every connect. */
+    LATENCY,
+  }
+
+  private static final class Endpoint {
+    private final String name;
+    private final String url;
+    private volatile long downUntilNs = System.nanoTime();
+    private volatile double averageUs = 0;
+    private volatile long samples = 0;
+    private final AtomicLong markedDown = new AtomicLong();
+
+    private Endpoint(String name, String url) {
+      this.name = name;
+      this.url = url;
+    }
+  }
+
+  private final Policy policy;
+  private final List<Endpoint> endpoints = new ArrayList<>();
+  private final long cooldownNs;
+  private final double degradeFactor;
+
+  /**
+   * @param cooldownMs how long an endpoint stays marked down
+   * @param degradeFactor latency relative to the fastest endpoint above which an endpoint is marked
+   *     down, zero to only mark endpoints down on connection failures
+   */
+  public EndpointRouter(Policy policy, long cooldownMs, double degradeFactor) {
+    this.policy = policy;
+    this.cooldownNs = cooldownMs * 1000000L;
+    this.degradeFactor = degradeFactor;
+  }
+
+  public void addEndpoint(String name, String url) {
+    endpoints.add(new Endpoint(name, url));
+  }
+
+  public Policy getPolicy() {
+    return policy;
+  }
+
+  public int size() {
+    return endpoints.size();
+  }
+
+  public String getName(int endpoint) {
+    return endpoints.get(endpoint).name;
+  }
+
+  public String getUrl(int endpoint) {
+    return endpoints.get(endpoint).url;
+  }
+
+  /** How often the endpoint was marked down. */
+  public long getMarkedDown(int endpoint) {
+    return endpoints.get(endpoint).markedDown.get();
+  }
+
+  /**
+   * The endpoint a worker prefers.
+   *
+   * @param workerId id of the worker
+   * @param partition partition of the data the worker accesses, between 0 and {@code partitions}
+   * @return the home endpoint, or -1 if the policy does not assign one
+   */
+  public int getHome(int workerId, int partition, int partitions) {
+    return switch (policy) {
+      case ROUND_ROBIN -> workerId % endpoints.size();
+      case AFFINITY -> (int) ((long) partition * endpoints.size() / Math.max(partitions, 1));
+      case LATENCY -> -1;
+    };
+  }
+
+  public boolean isUp(int endpoint) {
+    return System.nanoTime() - endpoints.get(endpoint).downUntilNs >= 0;
+  }
+
+  /** Whether a worker connected to {@code endpoint} should close its connection and reconnect. */
+  public boolean shouldMove(int endpoint, int home) {
+    return !isUp(endpoint) || (home >= 0 && endpoint != home && isUp(home));
+  }
+
+  /**
+   * Chooses the endpoint to connect to: the home endpoint if it is up, otherwise one of the
+   * endpoints that are up at random, weighted by the inverse of their average latency. If all
+   * endpoints are down, the one that comes back first.
+   */
+  public int select(int home, Random rng) {
+    if (home >= 0 && isUp(home)) {
+      return home;
+    }
+    double[] weights = new double[endpoints.size()];
+    double total = 0;
+    double fastest = Double.MAX_VALUE;
+    for (int i = 0; i < weights.length; i++) {
+      Endpoint e = endpoints.get(i);
+      if (isUp(i) && e.samples >= MIN_SAMPLES) {
+        fastest = Math.min(fastest, e.averageUs);
+      }
+    }
+    for (int i = 0; i < weights.length; i++) {
+      Endpoint e = endpoints.get(i);
+      if (!isUp(i)) {
+        continue;
+      }
+      // endpoints without a reliable average are weighted like the fastest one
+      double latency = e.samples >= MIN_SAMPLES ? e.averageUs : fastest;
+      weights[i] = fastest == Double.MAX_VALUE ? 1 : 1 / Math.max(latency, 1);
+      total += weights[i];
+    }
+    if (total == 0) {
+      int first = 0;
+      for (int i = 1; i < weights.length; i++) {
+        if (endpoints.get(i).downUntilNs - endpoints.get(first).downUntilNs < 0) {
+          first = i;
+        }
+      }
+      return first;
+    }
+    double r = rng.nextDouble() * total;
+    for (int i = 0; i < weights.length; i++) {
+      r -= weights[i];
+      if (weights[i] > 0 && r < 0) {
+        return i;
+      }
+    }
+    return weights.length - 1;
+  }
+
+  /** Marks the endpoint down for the cooldown period, after a connection to it failed. */
+  public void markDown(int endpoint, String reason) {
+    Endpoint e = endpoints.get(endpoint);
+    long now = System.nanoTime();
+    if (now - e.downUntilNs < 0) {
+      return;
+    }
+    e.downUntilNs = now + cooldownNs;
+    // measure the endpoint afresh once it is back
+    e.samples = 0;
+    e.averageUs = 0;
+    e.markedDown.incrementAndGet();
+    LOG.warn("Endpoint {} marked down for {} ms: {}", e.name, cooldownNs / 1000000L, reason);
+  }
+
+  /** Records the latency of a transaction attempt that committed on the endpoint. */
+  public void recordLatency(int endpoint, long latencyUs) {
+    Endpoint e = endpoints.get(endpoint);
+    long samples = e.samples;
+    double average = samples == 0 ? latencyUs : e.averageUs + ALPHA * (latencyUs - e.averageUs);
+    e.averageUs = average;
+    e.samples = samples + 1;
+    if (degradeFactor <= 0 || samples + 1 < MIN_SAMPLES || endpoints.size() < 2) {
+      return;
+    }
+    double fastest = Double.MAX_VALUE;
+    for (int i = 0; i < endpoints.size(); i++) {
+      Endpoint other = endpoints.get(i);
+      if (i != endpoint && isUp(i) && other.samples >= MIN_SAMPLES) {
+        fastest = Math.min(fastest, other.averageUs);
+      }
+    }
+    if (fastest != Double.MAX_VALUE && average > degradeFactor * fastest) {
+      markDown(
+          endpoint,
+          String.format(
+              "average latency %.0fus exceeds %.1fx %.0fus", average, degradeFactor, fastest));
+    }
+  }
+
+  @Override
+  public String toString() {
+    List<String> names = new ArrayList<>();
+    for (Endpoint e : endpoints) {
+      names.add(e.name);
+    }
+    return String.format(
+        "%s%s[cooldown=%dms, degradeFactor=%s]",
+        policy, names, cooldownNs / 1000000L, degradeFactor);
+  }
+}
@@ -21,10 +21,12 @@ import com.oltpbenchmark.WorkloadConfiguration;
 import com.oltpbenchmark.catalog.AbstractCatalog;
 import com.oltpbenchmark.catalog.Column;
 import com.oltpbenchmark.catalog.Table;
+import com.oltpbenchmark.jfr.LoaderBatchEvent;
 import com.oltpbenchmark.types.DatabaseType;
 import com.oltpbenchmark.util.Histogram;
 import com.oltpbenchmark.util.SQLUtil;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
@@ -70,6 +72,23 @@ public abstract class Loader<T extends BenchmarkModule> {
     this.tableSizes.put(tableName, delta);
   }
 
+  /**
+   * Executes a batch of inserts into a table. Loaders should use this instead of {@link
+   * PreparedStatement#executeBatch()} so that each batch shows up as a {@link LoaderBatchEvent}.
+   */
+  protected static int[] executeBatch(PreparedStatement stmt, String tableName)
+      throws SQLException {
+    LoaderBatchEvent event = new LoaderBatchEvent();
+    event.begin();
+    int[] result = stmt.executeBatch();
+    if (event.shouldCommit()) {
+      event.table = tableName;
+      event.rows = result.length;
+      event.commit();
+    }
+    return result;
+  }
+
   public Histogram<String> getTableCounts() {
     return (this.tableSizes);
   }
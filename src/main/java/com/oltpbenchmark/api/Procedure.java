@@ -18,6 +18,7 @@
 package com.oltpbenchmark.api;
 
 import com.oltpbenchmark.jdbc.AutoIncrementPreparedStatement;
+import com.oltpbenchmark.jdbc.ProfiledStatements;
 import com.oltpbenchmark.types.DatabaseType;
 import com.oltpbenchmark.util.MonitoringUtil;
 import java.lang.reflect.Field;
@@ -28,6 +29,7 @@ import java.sql.SQLException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +46,11 @@ public abstract class Procedure {
 
   private Map<String, SQLStmt> name_stmt_xref;
 
+  /** Set by the worker when per-statement profiling is enabled, null otherwise. */
+  private StatementProfiler profiler;
+
+  private Map<SQLStmt, String> stmt_name_xref;
+
   /** Constructor */
   protected Procedure() {
     this.procName = this.getClass().getSimpleName();
@@ -70,6 +77,18 @@ public abstract class Procedure {
     return ((T) this);
   }
 
+  /**
+   * Wrap every PreparedStatement handed out by this Procedure so that its execute and fetch times
+   * are recorded in the given profiler.
+   */
+  final void setStatementProfiler(StatementProfiler profiler) {
+    this.profiler = profiler;
+    this.stmt_name_xref = new IdentityHashMap<>();
+    for (Map.Entry<String, SQLStmt> e : this.name_stmt_xref.entrySet()) {
+      this.stmt_name_xref.put(e.getValue(), e.getKey());
+    }
+  }
+
   /** Return the name of this Procedure */
   protected final String getProcedureName() {
     return (this.procName);
@@ -128,6 +147,12 @@ public abstract class Procedure {
       pStmt = conn.prepareStatement(stmt.getSQL());
     }
 
+    if (this.profiler != null) {
+      // Statements created on the fly are not fields of the Procedure
+      String stmtName = this.stmt_name_xref.getOrDefault(stmt, "<unnamed>");
+      pStmt = ProfiledStatements.wrap(pStmt, this.profiler, this.procName, stmtName);
+    }
+
     return (pStmt);
   }
 
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.api;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Decides which failed transactions a worker retries, how often, and how long it waits before
+ * each retry. The default policy retries serialization failures, deadlocks, lock timeouts and
+ * Aurora DSQL's optimistic concurrency conflicts, immediately and up to {@code <retries>} attempts
+ * per transaction.
+ *
+ * <p>With a base backoff, retries wait for a random time between zero and {@code base * 2^(retry
+ * - 1)}, capped at the maximum backoff ("full jitter"), so that transactions that conflicted on the
+ * same rows do not collide again on their next attempt.
+ *
+ * <p>Other policies can be plugged in by subclassing and overriding {@link
+ * #classify(SQLException)}; the class is named in the {@code policy} attribute of {@code <retry>}.
+ */
+public class RetryPolicy {
+
+  /** Aurora DSQL: a concurrent transaction changed the same rows. */
+  public static final String DSQL_CONFLICT = "OC000";
+
+  /** Aurora DSQL: a concurrent transaction changed the schema. */
+  public static final String DSQL_SCHEMA_CONFLICT = "OC001";
+
+  private long baseBackoffNanos = 0;
+  private long maxBackoffNanos = 1000000000L;
+  private boolean rerandomize = true;
+  private final Map<String, Integer> budgets = new HashMap<>();
+
+  /**
+   * Classifies a failed attempt.
+   *
+   * @return a short name of the cause if the transaction should be retried, null otherwise
+   */
+  public String classify(SQLException ex) {
+    String sqlState = ex.getSQLState();
+    int errorCode = ex.getErrorCode();
+
+    if (sqlState == null) {
+      return null;
+    }
+
+    if (ex instanceof SQLRecoverableException) {
+      return "recoverable";
+    }
+
+    // ------------------
+    // SqlServer: "SELECT TOP 10 * FROM sys.messages"
+    // ------------------
+    if (errorCode == 12222 && sqlState.equals("S0051")) {
+      // Lock request time out period exceeded.
+      return "lock timeout";
+    } else if (errorCode == 0 && sqlState.equals("HY008")) {
+      // The query has timed out.
+      return "query timeout";
+    }
+
+    // ------------------
+    // MYSQL:
+    // https://dev.mysql.com/doc/connector-j/8.0/en/connector-j-reference-error-sqlstates.html
+    // ------------------
+    if (errorCode == 1213 && sqlState.equals("40001")) {
+      // MySQL ER_LOCK_DEADLOCK
+      return "deadlock";
+    } else if (errorCode == 1205 && sqlState.equals("40001")) {
+      // MySQL ER_LOCK_WAIT_TIMEOUT
+      return "lock timeout";
+    }
+
+    // ------------------
+    // AURORA DSQL: optimistic concurrency control aborts at commit time, the error code is only
+    // part of the message
+    // ------------------
+    String message = ex.getMessage();
+    if (message != null && message.contains(DSQL_CONFLICT)) {
+      return DSQL_CONFLICT;
+    } else if (message != null && message.contains(DSQL_SCHEMA_CONFLICT)) {
+      return DSQL_SCHEMA_CONFLICT;
+    }
+
+    // ------------------
+    // POSTGRES: https://www.postgresql.org/docs/current/errcodes-appendix.html
+    // ------------------
+    // Postgres serialization_failure
+    if (errorCode == 0 && sqlState.equals("40001")) {
+      return "serialization failure";
+    }
+    return null;
+  }
+
+  /**
+   * @param retry number of the retry that is about to start, 1 for the first one
+   * @return the time to wait before the retry in nanoseconds
+   */
+  public long getBackoffNanos(int retry, Random rng) {
+    if (baseBackoffNanos <= 0) {
+      return 0;
+    }
+    long cap = maxBackoffNanos;
+    if (retry <= 62 && baseBackoffNanos <= maxBackoffNanos >> (retry - 1)) {
+      cap = baseBackoffNanos << (retry - 1);
+    }
+    return (long) (rng.nextDouble() * cap);
+  }
+
+  /** The maximum number of attempts of a transaction type, {@code defaultBudget} if not set. */
+  public int getBudget(TransactionType type, int defaultBudget) {
+    return budgets.getOrDefault(type.getName(), defaultBudget);
+  }
+
+  public void setBudget(String txnName, int attempts) {
+    if (attempts < 1) {
+      throw new IllegalArgumentException(
+          String.format("Retry budget of %s must be at least 1: %d", txnName, attempts));
+    }
+    budgets.put(txnName, attempts);
+  }
+
+  public void setBackoff(long baseBackoffMs, long maxBackoffMs) {
+    if (baseBackoffMs < 0 || maxBackoffMs < baseBackoffMs) {
+      throw new IllegalArgumentException(
+          String.format("Invalid retry backoff [%d, %d] ms", baseBackoffMs, maxBackoffMs));
+    }
+    this.baseBackoffNanos = baseBackoffMs * 1000000L;
+    this.maxBackoffNanos = maxBackoffMs * 1000000L;
+  }
+
+  /**
+   * Whether a retry draws new parameters. If false, workers that support it replay the parameters
+   * of the first attempt, see {@link Worker#setRetrySeed(long)}.
+   */
+  public boolean isRerandomize() {
+    return rerandomize;
+  }
+
+  public void setRerandomize(boolean rerandomize) {
+    this.rerandomize = rerandomize;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s[backoff=%d-%dms, rerandomize=%s, budgets=%s]",
+        getClass().getSimpleName(),
+        baseBackoffNanos / 1000000,
+        maxBackoffNanos / 1000000,
+        rerandomize,
+        budgets);
+  }
+}
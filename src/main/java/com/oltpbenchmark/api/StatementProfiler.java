@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.api;
+
+import com.oltpbenchmark.util.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-statement latency breakdown of the transactions executed by a worker. Every {@link SQLStmt}
+ * of a {@link Procedure} gets a histogram of the time spent executing it and of the time spent
+ * fetching its result rows; commits and rollbacks are kept per procedure under the {@link
+ * #COMMIT} and {@link #ROLLBACK} pseudo-statements. Values are in microseconds.
+ *
+ * <p>Like {@link LatencyHistogram}, a profiler has a single writer: only the owning worker records
+ * into it, and the profilers of all workers are merged with {@link #add(StatementProfiler)} once
+ * the run is over.
+ */
+public final class StatementProfiler {
+
+  public static final String COMMIT = "COMMIT";
+  public static final String ROLLBACK = "ROLLBACK";
+
+  public enum Operation {
+    /** From the call to execute until it returned. */
+    EXECUTE,
+    /** Total time spent in {@code ResultSet.next()} for one execution. */
+    FETCH,
+    COMMIT,
+    ROLLBACK,
+  }
+
+  /** Procedure name -> statement name -> histogram per operation. */
+  private final Map<String, Map<String, Map<Operation, LatencyHistogram>>> histograms =
+      new TreeMap<>();
+
+  private volatile boolean recording = false;
+
+  /** Only transactions that are measured are recorded. Set by the worker before each one. */
+  void setRecording(boolean recording) {
+    this.recording = recording;
+  }
+
+  public void record(String procedure, String statement, Operation operation, long nanos) {
+    if (!recording) {
+      return;
+    }
+    histograms
+        .computeIfAbsent(procedure, k -> new TreeMap<>())
+        .computeIfAbsent(statement, k -> new EnumMap<>(Operation.class))
+        .computeIfAbsent(operation, k -> new LatencyHistogram())
+        .record(nanos / 1000);
+  }
+
+  /** Adds all the values recorded by another profiler into this one. */
+  public synchronized void add(StatementProfiler other) {
+    for (String procedure : other.getProcedures()) {
+      for (String statement : other.getStatements(procedure)) {
+        for (Map.Entry<Operation, LatencyHistogram> e :
+            other.histograms.get(procedure).get(statement).entrySet()) {
+          histograms
+              .computeIfAbsent(procedure, k -> new TreeMap<>())
+              .computeIfAbsent(statement, k -> new EnumMap<>(Operation.class))
+              .computeIfAbsent(e.getKey(), k -> new LatencyHistogram())
+              .add(e.getValue());
+        }
+      }
+    }
+  }
+
+  public synchronized boolean isEmpty() {
+    return histograms.isEmpty();
+  }
+
+  /** The procedures that recorded anything, sorted by name. */
+  public synchronized List<String> getProcedures() {
+    return new ArrayList<>(histograms.keySet());
+  }
+
+  /** The statements of a procedure that recorded anything, sorted by name. */
+  public synchronized List<String> getStatements(String procedure) {
+    Map<String, Map<Operation, LatencyHistogram>> statements = histograms.get(procedure);
+    return statements == null ? new ArrayList<>() : new ArrayList<>(statements.keySet());
+  }
+
+  /**
+   * @return the histogram of an operation of a statement, or null if nothing was recorded
+   */
+  public synchronized LatencyHistogram getHistogram(
+      String procedure, String statement, Operation operation) {
+    Map<String, Map<Operation, LatencyHistogram>> statements = histograms.get(procedure);
+    if (statements == null || !statements.containsKey(statement)) {
+      return null;
+    }
+    return statements.get(statement).get(operation);
+  }
+}
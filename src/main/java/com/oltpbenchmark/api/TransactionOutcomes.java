@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.api;
+
+import com.oltpbenchmark.types.TransactionStatus;
+import com.oltpbenchmark.util.Histogram;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Number of finished attempts of a worker per transaction type and {@link TransactionStatus}, kept
+ * in one flat array indexed by the position of the type and the status.
+ *
+ * <p>Positions are assigned when the counters are created. The ids of the configured transaction
+ * types are small and dense and map to positions through an array; supplemental procedures use
+ * their class's hash code as id, so ids outside the dense range map through an identity map.
+ *
+ * <p>Like {@link com.oltpbenchmark.util.LatencyHistogram}, the counters have a single writer that
+ * updates them with ordered stores instead of locks, so recording an outcome neither synchronizes
+ * nor allocates. Other threads may read the counters at any time; they are converted into {@link
+ * Histogram}s only when the results are assembled.
+ */
+public final class TransactionOutcomes {
+
+  private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+
+  /** Transaction types by position, {@link TransactionType#INVALID} first. */
+  private final TransactionType[] types;
+
+  /** Positions by id for ids in the dense range, -1 for unused ids. */
+  private final int[] positionsById;
+
+  /** Positions of the types whose id is outside the dense range. */
+  private final Map<TransactionType, Integer> sparsePositions = new IdentityHashMap<>();
+
+  private final AtomicLongArray counts;
+
+  public TransactionOutcomes(Collection<TransactionType> transactionTypes) {
+    List<TransactionType> positions = new ArrayList<>();
+    positions.add(TransactionType.INVALID);
+    this.positionsById = new int[transactionTypes.size() + 1];
+    Arrays.fill(positionsById, -1);
+    positionsById[TransactionType.INVALID_ID] = 0;
+    for (TransactionType type : transactionTypes) {
+      int id = type.getId();
+      if (id == TransactionType.INVALID_ID) {
+        continue;
+      }
+      if (id > 0 && id < positionsById.length) {
+        positionsById[id] = positions.size();
+      } else {
+        sparsePositions.put(type, positions.size());
+      }
+      positions.add(type);
+    }
+    this.types = positions.toArray(new TransactionType[0]);
+    this.counts = new AtomicLongArray(types.length * STATUSES.length);
+  }
+
+  private int position(TransactionType type) {
+    int id = type.getId();
+    if (id >= 0 && id < positionsById.length && positionsById[id] >= 0) {
+      return positionsById[id];
+    }
+    Integer position = sparsePositions.get(type);
+    if (position == null) {
+      throw new IllegalArgumentException("Unknown transaction type " + type);
+    }
+    return position;
+  }
+
+  /** Counts one finished attempt. Only the owning worker may call this. */
+  public void record(TransactionType type, TransactionStatus status) {
+    int idx = position(type) * STATUSES.length + status.ordinal();
+    counts.lazySet(idx, counts.get(idx) + 1);
+  }
+
+  public long get(TransactionType type, TransactionStatus status) {
+    return counts.get(position(type) * STATUSES.length + status.ordinal());
+  }
+
+  /** The number of attempts of all transaction types that finished with the given status. */
+  public long getCount(TransactionStatus status) {
+    long count = 0;
+    for (int position = 0; position < types.length; position++) {
+      count += counts.get(position * STATUSES.length + status.ordinal());
+    }
+    return count;
+  }
+
+  /** Adds the counts of one status to a histogram of transaction types. */
+  public void addTo(Histogram<TransactionType> histogram, TransactionStatus status) {
+    for (int position = 0; position < types.length; position++) {
+      long count = counts.get(position * STATUSES.length + status.ordinal());
+      if (count > 0) {
+        histogram.put(types[position], (int) count);
+      }
+    }
+  }
+}
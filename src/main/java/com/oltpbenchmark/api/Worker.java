@@ -19,27 +19,39 @@ package com.oltpbenchmark.api;
 
 import static com.oltpbenchmark.types.State.MEASURE;
 
+import com.oltpbenchmark.FaultInjection;
 import com.oltpbenchmark.LatencyRecord;
 import com.oltpbenchmark.Phase;
+import com.oltpbenchmark.SampleSpill;
 import com.oltpbenchmark.SubmittedProcedure;
 import com.oltpbenchmark.WorkloadConfiguration;
 import com.oltpbenchmark.WorkloadState;
 import com.oltpbenchmark.api.Procedure.UserAbortException;
+import com.oltpbenchmark.jfr.TransactionEvent;
 import com.oltpbenchmark.types.DatabaseType;
 import com.oltpbenchmark.types.State;
 import com.oltpbenchmark.types.TransactionStatus;
 import com.oltpbenchmark.util.ConnectionUtil;
+import com.oltpbenchmark.util.ErrorCounts;
 import com.oltpbenchmark.util.Histogram;
+import com.oltpbenchmark.util.LatencyHistogram;
 import com.oltpbenchmark.util.SQLUtil;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.SQLRecoverableException;
 import java.sql.Statement;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,8 +61,15 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
   private static final Logger ABORT_LOG =
       LoggerFactory.getLogger("com.oltpbenchmark.api.ABORT_LOG");
 
+  /** Opens and closes rotated connections off the worker thread. */
+  private static final Executor ROTATION_EXECUTOR =
+      task -> Thread.ofVirtual().name("connection-rotation").start(task);
+
   private WorkloadState workloadState;
   private LatencyRecord latencies;
+
+  /** File the samples are written to instead of {@link #latencies}, null to keep them in memory */
+  private SampleSpill spill;
   private final Statement currStatement;
 
   // Interval requests used by the monitor
@@ -65,38 +84,113 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
   protected final Map<String, Procedure> name_procedures = new HashMap<>();
   protected final Map<Class<? extends Procedure>, Procedure> class_procedures = new HashMap<>();
 
-  private final Histogram<TransactionType> txnUnknown = new Histogram<>();
-  private final Histogram<TransactionType> txnSuccess = new Histogram<>();
-  private final Histogram<TransactionType> txnAbort = new Histogram<>();
-  private final Histogram<TransactionType> txnRetry = new Histogram<>();
-  private final Histogram<TransactionType> txnErrors = new Histogram<>();
-  private final Histogram<TransactionType> txtRetryDifferent = new Histogram<>();
+  /** Finished attempts by transaction type and status */
+  private final TransactionOutcomes outcomes;
+
+  /** Latency in microseconds of every measured transaction, readable while the worker runs */
+  private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+  /** Latency in microseconds of every transaction completed during the warmup */
+  private final LatencyHistogram warmupHistogram = new LatencyHistogram();
+
+  /** Microseconds between a trace entry's scheduled time and the start of its execution */
+  private final LatencyHistogram traceLateness = new LatencyHistogram();
+
+  /** Per-statement latency breakdown, null unless statement profiling is enabled. */
+  private final StatementProfiler profiler;
+
+  private final RetryPolicy retryPolicy;
+
+  /** Attempts of every measured transaction that committed. */
+  private final LatencyHistogram commitAttempts = new LatencyHistogram();
+
+  /** Microseconds of every backoff before a measured retry. */
+  private final LatencyHistogram backoffs = new LatencyHistogram();
+
+  private final Histogram<String> retryCauses = new Histogram<>();
+
+  /** Failed attempts of measured transactions by second, SQLSTATE and vendor code. */
+  private final ErrorCounts errorCounts = new ErrorCounts();
+
+  /** Whether the transaction being executed started while measuring. */
+  private boolean measuring = false;
+
+  private SubmittedProcedure currentWork = null;
 
   private boolean seenDone = false;
 
+  /** Routes the connections over several endpoints, null if there is only the configured URL. */
+  private final EndpointRouter router;
+
+  /** The endpoint this worker prefers, -1 if it has none. */
+  private final int homeEndpoint;
+
+  /** The endpoint of the current connection. */
+  private int endpoint = -1;
+
+  /** Latency in microseconds of every measured transaction, by endpoint. */
+  private final LatencyHistogram[] endpointLatencies;
+
+  /** Replaces the connection before the database closes it for its age, null if disabled. */
+  private final ConnectionRotation rotation;
+
+  /** Paces reconnects of all workers while the database is unreachable, null if disabled. */
+  private final CircuitBreaker breaker;
+
+  /** The fault injected into the current phase, null if there is none. */
+  private FaultInjection fault = null;
+
+  private long connOpenedNs;
+  private long rotateAtNs;
+
+  /** The connection being opened in the background to replace the current one. */
+  private CompletableFuture<Replacement> replacement = null;
+
+  private int replacementEndpoint = -1;
+
+  private final List<ConnectionRotation.Event> rotations = new ArrayList<>();
+
+  private static final class Replacement {
+    private final Connection conn;
+    private final long connectNs;
+
+    private Replacement(Connection conn, long connectNs) {
+      this.conn = conn;
+      this.connectNs = connectNs;
+    }
+  }
+
   public Worker(T benchmark, int id) {
+    this(benchmark, id, id, benchmark.getWorkloadConfiguration().getTerminals());
+  }
+
+  /**
+   * @param partition the part of the data this worker mostly accesses, e.g. its TPC-C warehouse
+   *     minus one, which decides its endpoint under {@link EndpointRouter.Policy#AFFINITY}
+   * @param partitions the number of parts
+   */
+  public Worker(T benchmark, int id, int partition, int partitions) {
     this.id = id;
     this.benchmark = benchmark;
     this.configuration = this.benchmark.getWorkloadConfiguration();
     this.workloadState = this.configuration.getWorkloadState();
     this.currStatement = null;
     this.transactionTypes = this.configuration.getTransTypes();
-
-    if (!this.configuration.getNewConnectionPerTxn()) {
-      try {
-        this.conn = ConnectionUtil.makeConnectionWithRetry(this.benchmark);
-        this.conn.setAutoCommit(false);
-        // Aurora DSQL only supports REPEATABLE READ isolation level
-        if (this.configuration.getDatabaseType() != DatabaseType.AURORADSQL
-            || (this.configuration.getDatabaseType() == DatabaseType.AURORADSQL
-                && this.configuration.getIsolationMode()
-                    == Connection.TRANSACTION_REPEATABLE_READ)) {
-          this.conn.setTransactionIsolation(this.configuration.getIsolationMode());
-        }
-      } catch (SQLException ex) {
-        throw new RuntimeException("Failed to connect to database", ex);
+    this.outcomes = new TransactionOutcomes(this.transactionTypes);
+    this.retryPolicy = this.configuration.getRetryPolicy();
+    this.router = this.configuration.getEndpointRouter();
+    if (this.router != null) {
+      this.homeEndpoint = this.router.getHome(id, partition, partitions);
+      this.endpointLatencies = new LatencyHistogram[this.router.size()];
+      for (int i = 0; i < this.endpointLatencies.length; i++) {
+        this.endpointLatencies[i] = new LatencyHistogram();
       }
+    } else {
+      this.homeEndpoint = -1;
+      this.endpointLatencies = null;
     }
+    this.rotation = this.configuration.getConnectionRotation();
+    this.breaker = this.router == null ? this.configuration.getCircuitBreaker() : null;
 
     // Generate all the Procedures that we're going to need
     this.procedures.putAll(this.benchmark.getProcedures());
@@ -105,6 +199,33 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
       this.name_procedures.put(e.getKey().getName(), proc);
       this.class_procedures.put(proc.getClass(), proc);
     }
+
+    if (this.configuration.getProfileStatements()) {
+      this.profiler = new StatementProfiler();
+      for (Procedure proc : this.procedures.values()) {
+        proc.setStatementProfiler(this.profiler);
+      }
+    } else {
+      this.profiler = null;
+    }
+  }
+
+  /**
+   * Opens the connection the worker keeps for the run, unless it opens a new one per transaction.
+   * {@link BenchmarkModule#makeWorkers()} calls this for all workers in parallel once they are
+   * constructed.
+   */
+  final void openConnection() {
+    if (this.configuration.getNewConnectionPerTxn()) {
+      return;
+    }
+    try {
+      this.conn = connect(true);
+      prepareConnection(this.conn);
+      connectionOpened(System.nanoTime());
+    } catch (SQLException ex) {
+      throw new RuntimeException("Failed to connect to database", ex);
+    }
   }
 
   /** Get the BenchmarkModule managing this Worker */
@@ -131,7 +252,7 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
   }
 
   public final int getRequests() {
-    return latencies.size();
+    return spill != null ? (int) spill.size() : latencies.size();
   }
 
   public final int getAndResetIntervalRequests() {
@@ -142,42 +263,82 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
     return latencies;
   }
 
-  public final Procedure getProcedure(TransactionType type) {
-    return (this.procedures.get(type));
+  /**
+   * @return the file this worker spills its samples to, or null if they are kept in memory
+   */
+  public final SampleSpill getSampleSpill() {
+    return spill;
   }
 
-  @Deprecated
-  public final Procedure getProcedure(String name) {
-    return (this.name_procedures.get(name));
+  public final LatencyHistogram getLatencyHistogram() {
+    return latencyHistogram;
   }
 
-  @SuppressWarnings("unchecked")
-  public final <P extends Procedure> P getProcedure(Class<P> procClass) {
-    return (P) (this.class_procedures.get(procClass));
+  public final LatencyHistogram getWarmupHistogram() {
+    return warmupHistogram;
   }
 
-  public final Histogram<TransactionType> getTransactionSuccessHistogram() {
-    return (this.txnSuccess);
+  public final LatencyHistogram getTraceLatenessHistogram() {
+    return traceLateness;
   }
 
-  public final Histogram<TransactionType> getTransactionUnknownHistogram() {
-    return (this.txnUnknown);
+  public final LatencyHistogram getCommitAttemptsHistogram() {
+    return commitAttempts;
   }
 
-  public final Histogram<TransactionType> getTransactionRetryHistogram() {
-    return (this.txnRetry);
+  public final LatencyHistogram getBackoffHistogram() {
+    return backoffs;
   }
 
-  public final Histogram<TransactionType> getTransactionAbortHistogram() {
-    return (this.txnAbort);
+  public final Histogram<String> getRetryCauses() {
+    return retryCauses;
   }
 
-  public final Histogram<TransactionType> getTransactionErrorHistogram() {
-    return (this.txnErrors);
+  public final ErrorCounts getErrorCounts() {
+    return errorCounts;
   }
 
-  public final Histogram<TransactionType> getTransactionRetryDifferentHistogram() {
-    return (this.txtRetryDifferent);
+  /**
+   * Latencies of the measured transactions by endpoint, in the order of the {@link
+   * EndpointRouter}, or null if no endpoints are configured.
+   */
+  public final LatencyHistogram[] getEndpointLatencyHistograms() {
+    return endpointLatencies;
+  }
+
+  public final List<ConnectionRotation.Event> getConnectionRotations() {
+    return rotations;
+  }
+
+  /** The per-statement latency breakdown, or null if statement profiling is disabled. */
+  public final StatementProfiler getStatementProfiler() {
+    return profiler;
+  }
+
+  /**
+   * Returns the parameters recorded in the trace for the transaction currently being executed, or
+   * null if the current phase does not replay a trace or the entry had no parameters.
+   */
+  protected final String[] getTraceParameters() {
+    return currentWork == null ? null : currentWork.getParameters();
+  }
+
+  public final Procedure getProcedure(TransactionType type) {
+    return (this.procedures.get(type));
+  }
+
+  @Deprecated
+  public final Procedure getProcedure(String name) {
+    return (this.name_procedures.get(name));
+  }
+
+  @SuppressWarnings("unchecked")
+  public final <P extends Procedure> P getProcedure(Class<P> procClass) {
+    return (P) (this.class_procedures.get(procClass));
+  }
+
+  public final TransactionOutcomes getTransactionOutcomes() {
+    return (this.outcomes);
   }
 
   /** Stop executing the current statement. */
@@ -198,6 +359,14 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
 
     // In case of reuse reset the measurements
     latencies = new LatencyRecord(workloadState.getTestStartNs());
+    if (configuration.getSpillDirectory() != null) {
+      String file = configuration.getBenchmarkName() + "-" + this.id + SampleSpill.SUFFIX;
+      try {
+        spill = new SampleSpill(Paths.get(configuration.getSpillDirectory(), file));
+      } catch (IOException ex) {
+        throw new RuntimeException("Unexpected error when opening the sample spill of " + this, ex);
+      }
+    }
 
     // Invoke initialize callback
     try {
@@ -241,6 +410,7 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
       // waited.
 
       SubmittedProcedure pieceOfWork = workloadState.fetchWork();
+      currentWork = pieceOfWork;
 
       prePhase = workloadState.getCurrentPhase();
       if (prePhase == null) {
@@ -288,6 +458,12 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
           }
         }
 
+        measuring = preState == MEASURE;
+        fault = prePhase.getFault();
+        if (profiler != null) {
+          profiler.setRecording(measuring);
+        }
+
         long start = System.nanoTime();
 
         doWork(configuration.getDatabaseType(), transactionType);
@@ -318,13 +494,31 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
               break;
             }
             if (preState == MEASURE && postPhase.getId() == prePhase.getId()) {
-              latencies.addLatency(transactionType.getId(), start, end, this.id, prePhase.getId());
+              if (spill != null) {
+                spill.add(transactionType.getId(), start, end, this.id, prePhase.getId());
+              } else {
+                latencies.addLatency(
+                    transactionType.getId(), start, end, this.id, prePhase.getId());
+              }
               intervalRequests.incrementAndGet();
+              latencyHistogram.record((end - start) / 1000);
+              if (endpointLatencies != null && endpoint >= 0) {
+                endpointLatencies[endpoint].record((end - start) / 1000);
+              }
+              if (pieceOfWork != null && pieceOfWork.getScheduledTime() >= 0) {
+                traceLateness.record((start - pieceOfWork.getScheduledTime()) / 1000);
+              }
             }
             if (prePhase.isLatencyRun()) {
               workloadState.startColdQuery();
             }
             break;
+          case WARMUP:
+            // Not measured, but watched to detect when the workload is stable
+            if (preState == State.WARMUP) {
+              warmupHistogram.record((end - start) / 1000);
+            }
+            break;
           case COLD_QUERY:
             // No recording for cold runs, but next time we will since
             // it'll be a hot run.
@@ -356,6 +550,10 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
       workloadState.finishedWork();
     }
 
+    if (spill != null) {
+      spill.close();
+    }
+
     LOG.debug("worker calling teardown");
 
     tearDown();
@@ -401,17 +599,44 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
    */
   protected final void doWork(DatabaseType databaseType, TransactionType transactionType) {
 
+    rotateConnection();
+
     try {
       int retryCount = 0;
-      int maxRetryCount = configuration.getMaxRetries();
+      int maxRetryCount = retryPolicy.getBudget(transactionType, configuration.getMaxRetries());
+      long retrySeed = ThreadLocalRandom.current().nextLong();
+      TransactionStatus outcome = TransactionStatus.UNKNOWN;
+      boolean commitUnknown = false;
 
       while (retryCount < maxRetryCount && this.workloadState.getGlobalState() != State.DONE) {
 
         TransactionStatus status = TransactionStatus.UNKNOWN;
+        SQLException error = null;
+
+        if (!retryPolicy.isRerandomize()) {
+          setRetrySeed(retrySeed);
+        }
+
+        if (this.router != null
+            && this.conn != null
+            && this.router.shouldMove(this.endpoint, this.homeEndpoint)) {
+          LOG.info("{} leaving endpoint {}.", this, this.router.getName(this.endpoint));
+          try {
+            this.conn.close();
+          } catch (SQLException ex) {
+            LOG.warn("Failed to close connection to endpoint.", ex);
+          }
+          this.conn = null;
+        }
 
         if (this.conn == null) {
           try {
-            if (!this.configuration.getNewConnectionPerTxn()) {
+            if (this.breaker != null) {
+              if (!this.breaker.await(this.id, 1000)) {
+                // still open, check whether the run has ended
+                continue;
+              }
+            } else if (!this.configuration.getNewConnectionPerTxn()) {
               if (retryCount > 0) {
                 Duration delay = Duration.ofSeconds(Math.min(retryCount, 5));
                 LOG.info("Backing off {} seconds before reconnecting.", delay.toSeconds());
@@ -424,10 +649,27 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
                 LOG.info("(Re)connecting to database.");
               }
             }
-            this.conn = ConnectionUtil.makeConnectionWithRetry(this.benchmark);
-            this.conn.setAutoCommit(false);
-            this.conn.setTransactionIsolation(this.configuration.getIsolationMode());
+            Connection c = connect(this.breaker == null);
+            try {
+              c.setAutoCommit(false);
+              c.setTransactionIsolation(this.configuration.getIsolationMode());
+            } catch (SQLException ex) {
+              closeQuietly(c);
+              throw ex;
+            }
+            // Only a fully configured connection counts as a success for the circuit breaker
+            this.conn = c;
+            if (this.breaker != null) {
+              this.breaker.recordSuccess(this.id);
+            }
+            connectionOpened(System.nanoTime());
           } catch (SQLException ex) {
+            if (this.breaker != null && this.conn == null) {
+              this.breaker.recordFailure(this.id);
+            }
+            if (this.fault != null) {
+              this.fault.recordError(System.nanoTime());
+            }
             if (LOG.isDebugEnabled()) {
               LOG.debug(String.format("%s failed to open a connection...", this));
             }
@@ -436,6 +678,12 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
           }
         }
 
+        int attempt = retryCount + 1;
+        TransactionEvent event = new TransactionEvent();
+        event.begin();
+        long attemptStart = System.nanoTime();
+        boolean committing = false;
+
         try {
 
           if (LOG.isDebugEnabled()) {
@@ -454,13 +702,18 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
             LOG.debug(String.format("%s %s committing...", this, transactionType));
           }
 
-          conn.commit();
+          committing = true;
+          commit(transactionType);
+
+          if (this.router != null) {
+            this.router.recordLatency(this.endpoint, (System.nanoTime() - attemptStart) / 1000);
+          }
 
           break;
 
         } catch (UserAbortException ex) {
           try {
-            conn.rollback();
+            rollback(transactionType);
           } catch (SQLException ex2) {
             LOG.error("SQLException caught while rolling back transaction.", ex2);
             // force a reconnection
@@ -474,9 +727,19 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
           break;
 
         } catch (SQLException ex) {
+          error = ex;
+
+          // null if the transaction should not be retried
+          String cause = retryPolicy.classify(ex);
+
           // check if we should attempt to ignore connection errors and reconnect
           boolean isConnectionErrorException = SQLUtil.isConnectionErrorException(ex);
 
+          // the database may or may not have committed before the connection was lost
+          if (committing && isConnectionErrorException) {
+            commitUnknown = true;
+          }
+
           if (indicatesReadOnly(ex)) {
             if (SQLUtil.isConnectionOK(conn)) {
               conn.setReadOnly(true);
@@ -518,7 +781,7 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
                       ex.getErrorCode()),
                   ex);
               try {
-                conn.rollback();
+                rollback(transactionType);
               } catch (SQLException ex2) {
                 LOG.error("SQLException caught while attempting to rollback transaction.", ex2);
                 // force a reconnection
@@ -551,7 +814,7 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
                       ex.getErrorCode()),
                   ex);
               try {
-                conn.rollback();
+                rollback(transactionType);
               } catch (SQLException ex2) {
                 LOG.error("SQLException caught while attempting to rollback transaction.", ex2);
                 // force a reconnection
@@ -573,6 +836,13 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
                     ex.getErrorCode()),
                 ex);
 
+            if (this.router != null) {
+              this.router.markDown(this.endpoint, ex.getMessage());
+            }
+            if (this.breaker != null) {
+              this.breaker.recordFailure(this.id);
+            }
+
             // force a reconnection
             try {
               if (conn != null) {
@@ -587,7 +857,7 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
             status = TransactionStatus.RETRY_DIFFERENT;
 
             retryCount++;
-          } else if (isRetryable(ex)) {
+          } else if (cause != null) {
             LOG.debug(
                 String.format(
                     "Retryable SQLException occurred during [%s]... current retry attempt [%d], max retry attempts [%d], sql state [%s], error code [%d].",
@@ -601,6 +871,12 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
             status = TransactionStatus.RETRY;
 
             retryCount++;
+            if (measuring) {
+              retryCauses.put(cause);
+            }
+            if (retryCount < maxRetryCount) {
+              backoff(retryCount);
+            }
           } else {
             LOG.warn(
                 String.format(
@@ -624,16 +900,35 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
             LOG.warn("Connection error detected.");
           }
 
-          switch (status) {
-            case UNKNOWN -> this.txnUnknown.put(transactionType);
-            case SUCCESS -> this.txnSuccess.put(transactionType);
-            case USER_ABORTED -> this.txnAbort.put(transactionType);
-            case RETRY -> this.txnRetry.put(transactionType);
-            case RETRY_DIFFERENT -> this.txtRetryDifferent.put(transactionType);
-            case ERROR -> this.txnErrors.put(transactionType);
+          if (error != null && measuring) {
+            countError(transactionType, status, error);
+          }
+
+          this.outcomes.record(transactionType, status);
+          outcome = status;
+          if (this.fault != null) {
+            if (status == TransactionStatus.SUCCESS) {
+              this.fault.recordSuccess(System.nanoTime());
+            } else if (error != null) {
+              this.fault.recordError(System.nanoTime());
+            }
+          }
+          if (event.shouldCommit()) {
+            event.transactionType = transactionType.getName();
+            event.attempt = attempt;
+            event.status = status.name();
+            event.worker = this.id;
+            event.commit();
+          }
+          if (status == TransactionStatus.SUCCESS && measuring) {
+            commitAttempts.record(attempt);
           }
         }
       }
+
+      if (this.fault != null && this.workloadState.getGlobalState() != State.DONE) {
+        this.fault.recordOutcome(transactionType, outcome, commitUnknown);
+      }
     } catch (SQLException ex) {
       String msg =
           String.format(
@@ -645,44 +940,204 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
   }
 
   /**
-   * Checks to see if the exception indicates that the current connection is read-only.
+   * Opens a connection to the configured URL or, with several endpoints, to the endpoint chosen by
+   * the router, trying the others in turn while endpoints refuse the connection.
    *
-   * @param ex
-   * @return
+   * @param retry whether to retry a single URL with backoff, false if the circuit breaker paces
+   *     the attempts instead
    */
-  private boolean indicatesReadOnly(SQLException ex) {
-    String sqlState = ex.getSQLState();
-    int errorCode = ex.getErrorCode();
+  private Connection connect(boolean retry) throws SQLException {
+    if (this.router == null) {
+      if (!retry) {
+        return ConnectionUtil.makeConnection(this.benchmark, this.configuration.getUrl());
+      }
+      return ConnectionUtil.makeConnectionWithRetry(this.benchmark);
+    }
+    SQLException last = null;
+    for (int i = 0; i < this.router.size(); i++) {
+      this.endpoint = this.router.select(this.homeEndpoint, ThreadLocalRandom.current());
+      try {
+        return ConnectionUtil.makeConnection(this.benchmark, this.router.getUrl(this.endpoint));
+      } catch (SQLException ex) {
+        this.router.markDown(this.endpoint, ex.getMessage());
+        last = ex;
+      }
+    }
+    throw last;
+  }
 
-    LOG.debug("sql state [{}] and error code [{}]", sqlState, errorCode);
+  /** Applies the configured transaction settings to a new connection. */
+  private void prepareConnection(Connection c) throws SQLException {
+    c.setAutoCommit(false);
+    // Aurora DSQL only supports REPEATABLE READ isolation level
+    if (this.configuration.getDatabaseType() != DatabaseType.AURORADSQL
+        || (this.configuration.getDatabaseType() == DatabaseType.AURORADSQL
+            && this.configuration.getIsolationMode() == Connection.TRANSACTION_REPEATABLE_READ)) {
+      c.setTransactionIsolation(this.configuration.getIsolationMode());
+    }
+  }
 
-    if (sqlState == null) {
-      return false;
+  private void connectionOpened(long now) {
+    this.connOpenedNs = now;
+    if (this.rotation != null) {
+      this.rotateAtNs = this.rotation.getDeadline(now, ThreadLocalRandom.current());
     }
+  }
 
-    // ------------------
-    // SqlServer: "SELECT TOP 10 * FROM sys.messages"
-    // ------------------
-    if (errorCode == 3906 && sqlState.equals("S0002")) {
-      return true;
+  /**
+   * Starts opening a replacement once the current connection nears its deadline, and switches to
+   * the replacement once it is open. Called between transactions.
+   */
+  private void rotateConnection() {
+    if (this.rotation == null || this.conn == null || this.configuration.getNewConnectionPerTxn()) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (this.replacement == null) {
+      if (this.rotation.shouldOpen(this.rotateAtNs, now)) {
+        int target =
+            this.router == null
+                ? -1
+                : this.router.select(this.homeEndpoint, ThreadLocalRandom.current());
+        this.replacementEndpoint = target;
+        this.replacement =
+            CompletableFuture.supplyAsync(() -> openReplacement(target), ROTATION_EXECUTOR);
+      }
+      return;
+    }
+    if (!this.replacement.isDone()) {
+      return;
     }
 
-    // ------------------
-    // MYSQL:
-    // https://dev.mysql.com/doc/connector-j/8.0/en/connector-j-reference-error-sqlstates.html
-    // ------------------
-    // TODO
+    Replacement next = null;
+    try {
+      next = this.replacement.join();
+    } catch (CompletionException ex) {
+      LOG.warn("{} failed to open a replacement connection, keeping the current one.", this, ex);
+    }
+    this.replacement = null;
+    String endpointName =
+        this.replacementEndpoint < 0 ? "" : this.router.getName(this.replacementEndpoint);
+    long timeMs = (now - this.workloadState.getTestStartNs()) / 1000000L;
+    long ageMs = (now - this.connOpenedNs) / 1000000L;
+    if (next == null) {
+      this.rotations.add(
+          new ConnectionRotation.Event(timeMs, this.id, endpointName, ageMs, 0, false));
+      // try again later, the current connection may still have some time left
+      this.rotateAtNs = this.rotation.getRetryDeadline(now);
+      return;
+    }
 
-    // ------------------
-    // POSTGRES: https://www.postgresql.org/docs/current/errcodes-appendix.html
-    // ------------------
-    // TODO
+    Connection old = this.conn;
+    ROTATION_EXECUTOR.execute(() -> closeQuietly(old));
+    this.conn = next.conn;
+    if (this.replacementEndpoint >= 0) {
+      this.endpoint = this.replacementEndpoint;
+    }
+    this.rotations.add(
+        new ConnectionRotation.Event(
+            timeMs, this.id, endpointName, ageMs, next.connectNs / 1000, true));
+    connectionOpened(now);
+  }
 
-    return false;
+  /** Opens a replacement connection; runs on a background thread. */
+  private Replacement openReplacement(int target) {
+    long start = System.nanoTime();
+    try {
+      Connection c =
+          target < 0
+              ? ConnectionUtil.makeConnectionWithRetry(this.benchmark)
+              : ConnectionUtil.makeConnection(this.benchmark, this.router.getUrl(target));
+      try {
+        prepareConnection(c);
+      } catch (SQLException ex) {
+        closeQuietly(c);
+        throw ex;
+      }
+      return new Replacement(c, System.nanoTime() - start);
+    } catch (SQLException ex) {
+      if (target >= 0) {
+        this.router.markDown(target, ex.getMessage());
+      }
+      throw new CompletionException(ex);
+    }
   }
 
-  private boolean isRetryable(SQLException ex) {
+  private static void closeQuietly(Connection c) {
+    try {
+      c.close();
+    } catch (SQLException ex) {
+      LOG.warn("Failed to close connection.", ex);
+    }
+  }
 
+  private void countError(TransactionType type, TransactionStatus status, SQLException ex) {
+    long measureStart = workloadState.getMeasureStartNs();
+    if (measureStart < 0) {
+      return;
+    }
+    int second = (int) ((System.nanoTime() - measureStart) / 1000000000L);
+    errorCounts.record(second, type, status, ex.getSQLState(), ex.getErrorCode());
+  }
+
+  private void backoff(int retry) {
+    long nanos = retryPolicy.getBackoffNanos(retry, ThreadLocalRandom.current());
+    if (nanos <= 0) {
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      Thread.sleep(Duration.ofNanos(nanos));
+    } catch (InterruptedException ex) {
+      // pass
+    }
+    // interruptWorkers() cuts the sleep short at phase changes, so record what was slept
+    if (measuring) {
+      backoffs.record((System.nanoTime() - start) / 1000);
+    }
+  }
+
+  private void commit(TransactionType transactionType) throws SQLException {
+    if (profiler == null) {
+      conn.commit();
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      conn.commit();
+    } finally {
+      profiler.record(
+          transactionType.getName(),
+          StatementProfiler.COMMIT,
+          StatementProfiler.Operation.COMMIT,
+          System.nanoTime() - start);
+    }
+  }
+
+  private void rollback(TransactionType transactionType) throws SQLException {
+    if (profiler == null) {
+      conn.rollback();
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      conn.rollback();
+    } finally {
+      profiler.record(
+          transactionType.getName(),
+          StatementProfiler.ROLLBACK,
+          StatementProfiler.Operation.ROLLBACK,
+          System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Checks to see if the exception indicates that the current connection is read-only.
+   *
+   * @param ex
+   * @return
+   */
+  private boolean indicatesReadOnly(SQLException ex) {
     String sqlState = ex.getSQLState();
     int errorCode = ex.getErrorCode();
 
@@ -692,18 +1147,10 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
       return false;
     }
 
-    if (ex instanceof SQLRecoverableException) {
-      return true;
-    }
-
     // ------------------
     // SqlServer: "SELECT TOP 10 * FROM sys.messages"
     // ------------------
-    if (errorCode == 12222 && sqlState.equals("S0051")) {
-      // Lock request time out period exceeded.
-      return true;
-    } else if (errorCode == 0 && sqlState.equals("HY008")) {
-      // The query has timed out.
+    if (errorCode == 3906 && sqlState.equals("S0002")) {
       return true;
     }
 
@@ -711,19 +1158,24 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
     // MYSQL:
     // https://dev.mysql.com/doc/connector-j/8.0/en/connector-j-reference-error-sqlstates.html
     // ------------------
-    if (errorCode == 1213 && sqlState.equals("40001")) {
-      // MySQL ER_LOCK_DEADLOCK
-      return true;
-    } else if (errorCode == 1205 && sqlState.equals("40001")) {
-      // MySQL ER_LOCK_WAIT_TIMEOUT
-      return true;
-    }
+    // TODO
 
     // ------------------
     // POSTGRES: https://www.postgresql.org/docs/current/errcodes-appendix.html
     // ------------------
-    // Postgres serialization_failure
-    return errorCode == 0 && sqlState.equals("40001");
+    // TODO
+
+    return false;
+  }
+
+  /**
+   * Called before every attempt of a transaction when the retry policy does not re-randomize
+   * parameters, with the same seed for all attempts of one transaction. Workers that draw their
+   * parameters from their own {@link Random} should reseed it here, so that a retry repeats the
+   * parameters of the attempt that failed. The default does nothing.
+   */
+  protected void setRetrySeed(long seed) {
+    // The default is to do nothing
   }
 
   /**
@@ -755,6 +1207,10 @@ public abstract class Worker<T extends BenchmarkModule> implements Runnable {
         LOG.error("Connection couldn't be closed.", e);
       }
     }
+    if (this.replacement != null) {
+      this.replacement.thenAccept(r -> closeQuietly(r.conn));
+      this.replacement = null;
+    }
   }
 
   public void initializeState() {
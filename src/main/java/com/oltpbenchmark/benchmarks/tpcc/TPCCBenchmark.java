@@ -23,6 +23,7 @@ import com.oltpbenchmark.api.Loader;
 import com.oltpbenchmark.api.Worker;
 import com.oltpbenchmark.benchmarks.tpcc.custom.auroradsql.DSQLTPCCLoader;
 import com.oltpbenchmark.benchmarks.tpcc.procedures.NewOrder;
+import com.oltpbenchmark.distributed.AgentAssignment;
 import com.oltpbenchmark.types.DatabaseType;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -76,20 +77,33 @@ public final class TPCCBenchmark extends BenchmarkModule {
 
     int numTerminals = workConf.getTerminals();
 
+    // In a distributed run this agent only drives its own range of warehouses
+    int firstWarehouse = 0;
+    int localWarehouses = numWarehouses;
+    AgentAssignment agent = workConf.getAgentAssignment();
+    if (agent != null) {
+      firstWarehouse = agent.getFirst(numWarehouses);
+      localWarehouses = agent.getCount(numWarehouses);
+      if (localWarehouses <= 0) {
+        throw new IllegalArgumentException(
+            String.format("%s has no warehouses out of %d", agent, numWarehouses));
+      }
+    }
+
     // We distribute terminals evenly across the warehouses
     // Eg. if there are 10 terminals across 7 warehouses, they
     // are distributed as
     // 1, 1, 2, 1, 2, 1, 2
-    final double terminalsPerWarehouse = (double) numTerminals / numWarehouses;
+    final double terminalsPerWarehouse = (double) numTerminals / localWarehouses;
     int workerId = 0;
 
-    for (int w = 0; w < numWarehouses; w++) {
+    for (int w = 0; w < localWarehouses; w++) {
       // Compute the number of terminals in *this* warehouse
       int lowerTerminalId = (int) (w * terminalsPerWarehouse);
       int upperTerminalId = (int) ((w + 1) * terminalsPerWarehouse);
       // protect against double rounding errors
-      int w_id = w + 1;
-      if (w_id == numWarehouses) {
+      int w_id = firstWarehouse + w + 1;
+      if (w + 1 == localWarehouses) {
         upperTerminalId = numTerminals;
       }
       int numWarehouseTerminals = upperTerminalId - lowerTerminalId;
@@ -187,14 +187,14 @@ public final class TPCCLoader extends Loader<TPCCBenchmark> {
         batchSize++;
 
         if (batchSize == workConf.getBatchSize()) {
-          itemPrepStmt.executeBatch();
+          executeBatch(itemPrepStmt, TPCCConstants.TABLENAME_ITEM);
           itemPrepStmt.clearBatch();
           batchSize = 0;
         }
       }
 
       if (batchSize > 0) {
-        itemPrepStmt.executeBatch();
+        executeBatch(itemPrepStmt, TPCCConstants.TABLENAME_ITEM);
         itemPrepStmt.clearBatch();
       }
 
@@ -294,12 +294,12 @@ public final class TPCCLoader extends Loader<TPCCBenchmark> {
         k++;
 
         if (k != 0 && (k % workConf.getBatchSize()) == 0) {
-          stockPreparedStatement.executeBatch();
+          executeBatch(stockPreparedStatement, TPCCConstants.TABLENAME_STOCK);
           stockPreparedStatement.clearBatch();
         }
       }
 
-      stockPreparedStatement.executeBatch();
+      executeBatch(stockPreparedStatement, TPCCConstants.TABLENAME_STOCK);
       stockPreparedStatement.clearBatch();
 
     } catch (SQLException se) {
@@ -425,13 +425,13 @@ public final class TPCCLoader extends Loader<TPCCBenchmark> {
           k++;
 
           if (k != 0 && (k % workConf.getBatchSize()) == 0) {
-            custPrepStmt.executeBatch();
+            executeBatch(custPrepStmt, TPCCConstants.TABLENAME_CUSTOMER);
             custPrepStmt.clearBatch();
           }
         }
       }
 
-      custPrepStmt.executeBatch();
+      executeBatch(custPrepStmt, TPCCConstants.TABLENAME_CUSTOMER);
       custPrepStmt.clearBatch();
 
     } catch (SQLException se) {
@@ -475,13 +475,13 @@ public final class TPCCLoader extends Loader<TPCCBenchmark> {
           k++;
 
           if (k != 0 && (k % workConf.getBatchSize()) == 0) {
-            histPrepStmt.executeBatch();
+            executeBatch(histPrepStmt, TPCCConstants.TABLENAME_HISTORY);
             histPrepStmt.clearBatch();
           }
         }
       }
 
-      histPrepStmt.executeBatch();
+      executeBatch(histPrepStmt, TPCCConstants.TABLENAME_HISTORY);
       histPrepStmt.clearBatch();
 
     } catch (SQLException se) {
@@ -550,13 +550,13 @@ public final class TPCCLoader extends Loader<TPCCBenchmark> {
           k++;
 
           if (k != 0 && (k % workConf.getBatchSize()) == 0) {
-            openOrderStatement.executeBatch();
+            executeBatch(openOrderStatement, TPCCConstants.TABLENAME_OPENORDER);
             openOrderStatement.clearBatch();
           }
         }
       }
 
-      openOrderStatement.executeBatch();
+      executeBatch(openOrderStatement, TPCCConstants.TABLENAME_OPENORDER);
       openOrderStatement.clearBatch();
 
     } catch (SQLException se) {
@@ -606,13 +606,13 @@ public final class TPCCLoader extends Loader<TPCCBenchmark> {
           }
 
           if (k != 0 && (k % workConf.getBatchSize()) == 0) {
-            newOrderStatement.executeBatch();
+            executeBatch(newOrderStatement, TPCCConstants.TABLENAME_NEWORDER);
             newOrderStatement.clearBatch();
           }
         }
       }
 
-      newOrderStatement.executeBatch();
+      executeBatch(newOrderStatement, TPCCConstants.TABLENAME_NEWORDER);
       newOrderStatement.clearBatch();
 
     } catch (SQLException se) {
@@ -675,14 +675,14 @@ public final class TPCCLoader extends Loader<TPCCBenchmark> {
             k++;
 
             if (k != 0 && (k % workConf.getBatchSize()) == 0) {
-              orderLineStatement.executeBatch();
+              executeBatch(orderLineStatement, TPCCConstants.TABLENAME_ORDERLINE);
               orderLineStatement.clearBatch();
             }
           }
         }
       }
 
-      orderLineStatement.executeBatch();
+      executeBatch(orderLineStatement, TPCCConstants.TABLENAME_ORDERLINE);
       orderLineStatement.clearBatch();
 
     } catch (SQLException se) {
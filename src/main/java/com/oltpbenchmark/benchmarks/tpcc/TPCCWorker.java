@@ -49,7 +49,7 @@ public final class TPCCWorker extends Worker<TPCCBenchmark> {
       int terminalDistrictLowerID,
       int terminalDistrictUpperID,
       int numWarehouses) {
-    super(benchmarkModule, id);
+    super(benchmarkModule, id, terminalWarehouseID - 1, numWarehouses);
 
     this.terminalWarehouseID = terminalWarehouseID;
     this.terminalDistrictLowerID = terminalDistrictLowerID;
@@ -58,6 +58,11 @@ public final class TPCCWorker extends Worker<TPCCBenchmark> {
     this.numWarehouses = numWarehouses;
   }
 
+  @Override
+  protected void setRetrySeed(long seed) {
+    gen.setSeed(seed);
+  }
+
   /** Executes a single TPCC transaction of type transactionType. */
   @Override
   protected TransactionStatus executeWork(Connection conn, TransactionType nextTransaction)
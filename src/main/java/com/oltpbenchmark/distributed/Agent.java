@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.distributed;
+
+import com.oltpbenchmark.Results;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Socket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** The agent side of a distributed run, see {@link Coordinator} for the protocol. */
+public class Agent implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(Agent.class);
+
+  private static final int CONNECT_ATTEMPTS = 60;
+
+  private final Socket socket;
+  private final DataInputStream in;
+  private final DataOutputStream out;
+  private final AgentAssignment assignment;
+
+  /**
+   * Connects to the coordinator and receives this agent's assignment. Since agents may be started
+   * before the coordinator, connecting is retried for about a minute.
+   */
+  public Agent(String host, int port) throws IOException {
+    Socket s = null;
+    for (int attempt = 1; s == null; attempt++) {
+      try {
+        s = new Socket(host, port);
+      } catch (ConnectException ex) {
+        if (attempt >= CONNECT_ATTEMPTS) {
+          throw ex;
+        }
+        LOG.info("Coordinator {}:{} is not available yet, retrying...", host, port);
+        try {
+          Thread.sleep(1000);
+        } catch (InterruptedException ie) {
+          throw new IOException("Interrupted while connecting to the coordinator", ie);
+        }
+      }
+    }
+    this.socket = s;
+    this.socket.setTcpNoDelay(true);
+    this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+    out.writeByte(Coordinator.MSG_HELLO);
+    out.writeInt(Coordinator.MAGIC);
+    out.flush();
+
+    expect(Coordinator.MSG_ASSIGN);
+    this.assignment = new AgentAssignment(in.readInt(), in.readInt());
+    LOG.info("Connected to coordinator {}:{} as {}", host, port, assignment);
+  }
+
+  public AgentAssignment getAssignment() {
+    return assignment;
+  }
+
+  /**
+   * Tells the coordinator that this agent is ready and blocks until the common start time.
+   *
+   * @return the start time in milliseconds since the epoch
+   */
+  public long awaitStart() throws IOException {
+    out.writeByte(Coordinator.MSG_READY);
+    out.flush();
+
+    expect(Coordinator.MSG_START);
+    long startEpochMs = in.readLong();
+    long waitMs = startEpochMs - System.currentTimeMillis();
+    LOG.info("{} starting in {} ms", assignment, Math.max(waitMs, 0));
+    if (waitMs > 0) {
+      try {
+        Thread.sleep(waitMs);
+      } catch (InterruptedException ex) {
+        throw new IOException("Interrupted while waiting for the start time", ex);
+      }
+    }
+    return startEpochMs;
+  }
+
+  /** Sends the results of this agent to the coordinator. */
+  public void sendReport(Results r) throws IOException {
+    out.writeByte(Coordinator.MSG_REPORT);
+    AgentReport.fromResults(assignment.getAgentId(), r).writeTo(out);
+    out.flush();
+  }
+
+  private void expect(byte message) throws IOException {
+    byte received = in.readByte();
+    if (received != message) {
+      throw new IOException(
+          String.format("Coordinator sent message %d, expected %d", received, message));
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.distributed;
+
+/**
+ * The slice of a distributed run handed to a single agent by the {@link Coordinator}. Terminals and
+ * warehouses (or any other scale factor unit) are split into contiguous, non-overlapping ranges so
+ * that the agents together drive exactly the configured workload.
+ */
+public final class AgentAssignment {
+
+  private final int agentId;
+  private final int agentCount;
+
+  public AgentAssignment(int agentId, int agentCount) {
+    if (agentCount <= 0 || agentId < 0 || agentId >= agentCount) {
+      throw new IllegalArgumentException(
+          String.format("Invalid agent %d of %d", agentId, agentCount));
+    }
+    this.agentId = agentId;
+    this.agentCount = agentCount;
+  }
+
+  public int getAgentId() {
+    return agentId;
+  }
+
+  public int getAgentCount() {
+    return agentCount;
+  }
+
+  /** Index of the first of {@code total} items owned by this agent. */
+  public int getFirst(int total) {
+    return (int) ((long) total * agentId / agentCount);
+  }
+
+  /** Number of the {@code total} items owned by this agent. */
+  public int getCount(int total) {
+    return (int) ((long) total * (agentId + 1) / agentCount) - getFirst(total);
+  }
+
+  /** Fraction of the terminals owned by this agent, used to scale phase rates. */
+  public double getShare(int totalTerminals) {
+    return totalTerminals == 0 ? 0 : (double) getCount(totalTerminals) / totalTerminals;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Agent[%d/%d]", agentId, agentCount);
+  }
+}
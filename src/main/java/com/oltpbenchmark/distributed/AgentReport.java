@@ -0,0 +1,176 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.distributed;
+
+import com.oltpbenchmark.LatencyRecord;
+import com.oltpbenchmark.Results;
+import com.oltpbenchmark.api.TransactionType;
+import com.oltpbenchmark.types.State;
+import com.oltpbenchmark.util.Histogram;
+import com.oltpbenchmark.util.LatencyHistogram;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The results of a single agent, reduced to what the {@link Coordinator} needs to merge them: the
+ * latency histogram instead of the raw samples, and the outcome histograms keyed by transaction
+ * name.
+ */
+public final class AgentReport {
+
+  /** Outcome histograms of {@link Results}, in the order they are sent over the wire. */
+  static final Map<String, Function<Results, Histogram<TransactionType>>> OUTCOMES =
+      new LinkedHashMap<>();
+
+  static {
+    OUTCOMES.put("success", Results::getSuccess);
+    OUTCOMES.put("abort", Results::getAbort);
+    OUTCOMES.put("retry", Results::getRetry);
+    OUTCOMES.put("error", Results::getError);
+    OUTCOMES.put("retryDifferent", Results::getRetryDifferent);
+    OUTCOMES.put("unknown", Results::getUnknown);
+  }
+
+  private final int agentId;
+  private final State state;
+  private final long startTimestampMs;
+  private final long nanoseconds;
+  private final int measuredRequests;
+  private final LatencyHistogram latencies;
+  private final Map<String, Map<String, Integer>> outcomes;
+
+  AgentReport(
+      int agentId,
+      State state,
+      long startTimestampMs,
+      long nanoseconds,
+      int measuredRequests,
+      LatencyHistogram latencies,
+      Map<String, Map<String, Integer>> outcomes) {
+    this.agentId = agentId;
+    this.state = state;
+    this.startTimestampMs = startTimestampMs;
+    this.nanoseconds = nanoseconds;
+    this.measuredRequests = measuredRequests;
+    this.latencies = latencies;
+    this.outcomes = outcomes;
+  }
+
+  public static AgentReport fromResults(int agentId, Results r) {
+    LatencyHistogram latencies = new LatencyHistogram();
+    if (r.getLatencySamples() != null) {
+      for (LatencyRecord.Sample sample : r.getLatencySamples()) {
+        latencies.record(sample.getLatencyMicrosecond());
+      }
+    }
+    Map<String, Map<String, Integer>> outcomes = new LinkedHashMap<>();
+    for (Map.Entry<String, Function<Results, Histogram<TransactionType>>> e : OUTCOMES.entrySet()) {
+      Histogram<TransactionType> h = e.getValue().apply(r);
+      Map<String, Integer> counts = new LinkedHashMap<>();
+      for (TransactionType type : h.values()) {
+        counts.put(type.getName(), h.get(type, 0));
+      }
+      outcomes.put(e.getKey(), counts);
+    }
+    return new AgentReport(
+        agentId,
+        r.getState(),
+        r.getStartTimestampMs(),
+        r.getNanoseconds(),
+        r.getMeasuredRequests(),
+        latencies,
+        outcomes);
+  }
+
+  public int getAgentId() {
+    return agentId;
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public long getStartTimestampMs() {
+    return startTimestampMs;
+  }
+
+  public long getNanoseconds() {
+    return nanoseconds;
+  }
+
+  public int getMeasuredRequests() {
+    return measuredRequests;
+  }
+
+  public LatencyHistogram getLatencies() {
+    return latencies;
+  }
+
+  /** Count per transaction name for the given outcome (e.g. "success"). */
+  public Map<String, Integer> getOutcome(String outcome) {
+    return outcomes.getOrDefault(outcome, Map.of());
+  }
+
+  public double requestsPerSecondThroughput() {
+    return nanoseconds == 0 ? 0 : (double) measuredRequests / nanoseconds * 1e9;
+  }
+
+  void writeTo(DataOutput out) throws IOException {
+    out.writeInt(agentId);
+    out.writeUTF(state.name());
+    out.writeLong(startTimestampMs);
+    out.writeLong(nanoseconds);
+    out.writeInt(measuredRequests);
+    latencies.writeTo(out);
+    out.writeInt(outcomes.size());
+    for (Map.Entry<String, Map<String, Integer>> e : outcomes.entrySet()) {
+      out.writeUTF(e.getKey());
+      out.writeInt(e.getValue().size());
+      for (Map.Entry<String, Integer> c : e.getValue().entrySet()) {
+        out.writeUTF(c.getKey());
+        out.writeInt(c.getValue());
+      }
+    }
+  }
+
+  static AgentReport readFrom(DataInput in) throws IOException {
+    int agentId = in.readInt();
+    State state = State.valueOf(in.readUTF());
+    long startTimestampMs = in.readLong();
+    long nanoseconds = in.readLong();
+    int measuredRequests = in.readInt();
+    LatencyHistogram latencies = LatencyHistogram.readFrom(in);
+    Map<String, Map<String, Integer>> outcomes = new LinkedHashMap<>();
+    int numOutcomes = in.readInt();
+    for (int i = 0; i < numOutcomes; i++) {
+      String outcome = in.readUTF();
+      Map<String, Integer> counts = new LinkedHashMap<>();
+      int numTypes = in.readInt();
+      for (int j = 0; j < numTypes; j++) {
+        counts.put(in.readUTF(), in.readInt());
+      }
+      outcomes.put(outcome, counts);
+    }
+    return new AgentReport(
+        agentId, state, startTimestampMs, nanoseconds, measuredRequests, latencies, outcomes);
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.distributed;
+
+import com.oltpbenchmark.Results;
+import com.oltpbenchmark.api.TransactionType;
+import com.oltpbenchmark.types.State;
+import com.oltpbenchmark.util.Histogram;
+import com.oltpbenchmark.util.LatencyHistogram;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coordinates a benchmark run driven by several {@link Agent} processes, possibly on different
+ * hosts. All processes use the same configuration file; the coordinator hands every agent its
+ * {@link AgentAssignment}, waits until all agents have built their workers, broadcasts a common
+ * start time so that the phase transitions line up, and finally collects and merges the agents'
+ * {@link AgentReport}s.
+ *
+ * <p>The wire protocol is a handful of fixed messages on one TCP connection per agent:
+ *
+ * <pre>
+ *   agent -> coordinator  HELLO
+ *   coordinator -> agent  ASSIGN  agentId, agentCount
+ *   agent -> coordinator  READY
+ *   coordinator -> agent  START   startEpochMs
+ *   agent -> coordinator  REPORT  report
+ * </pre>
+ */
+public class Coordinator implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(Coordinator.class);
+
+  static final int MAGIC = 0x42424331;
+  static final byte MSG_HELLO = 1;
+  static final byte MSG_ASSIGN = 2;
+  static final byte MSG_READY = 3;
+  static final byte MSG_START = 4;
+  static final byte MSG_REPORT = 5;
+
+  private final ServerSocket server;
+  private final int agentCount;
+  private final long startDelayMs;
+
+  /**
+   * @param port port to listen on, 0 for an ephemeral port
+   * @param agentCount number of agents taking part in the run
+   * @param startDelayMs delay between the last agent becoming ready and the common start time
+   */
+  public Coordinator(int port, int agentCount, long startDelayMs) throws IOException {
+    if (agentCount <= 0) {
+      throw new IllegalArgumentException("Number of agents must be positive: " + agentCount);
+    }
+    this.server = new ServerSocket(port);
+    this.agentCount = agentCount;
+    this.startDelayMs = startDelayMs;
+  }
+
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  public int getAgentCount() {
+    return agentCount;
+  }
+
+  /** Runs the whole protocol and returns the reports of all agents, ordered by agent id. */
+  public List<AgentReport> run() throws IOException {
+    List<Socket> sockets = new ArrayList<>();
+    List<DataInputStream> ins = new ArrayList<>();
+    List<DataOutputStream> outs = new ArrayList<>();
+    try {
+      LOG.info("Waiting for {} agents on port {}", agentCount, getPort());
+      for (int agentId = 0; agentId < agentCount; agentId++) {
+        Socket socket = server.accept();
+        socket.setTcpNoDelay(true);
+        sockets.add(socket);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        ins.add(in);
+        outs.add(out);
+
+        expect(in, MSG_HELLO, agentId);
+        if (in.readInt() != MAGIC) {
+          throw new IOException("Agent " + socket.getRemoteSocketAddress() + " is incompatible");
+        }
+        out.writeByte(MSG_ASSIGN);
+        out.writeInt(agentId);
+        out.writeInt(agentCount);
+        out.flush();
+        LOG.info(
+            "Agent {} connected from {}",
+            new AgentAssignment(agentId, agentCount),
+            socket.getRemoteSocketAddress());
+      }
+
+      for (int agentId = 0; agentId < agentCount; agentId++) {
+        expect(ins.get(agentId), MSG_READY, agentId);
+      }
+
+      long startEpochMs = System.currentTimeMillis() + startDelayMs;
+      LOG.info("All agents ready, starting in {} ms", startDelayMs);
+      for (DataOutputStream out : outs) {
+        out.writeByte(MSG_START);
+        out.writeLong(startEpochMs);
+        out.flush();
+      }
+
+      List<AgentReport> reports = new ArrayList<>();
+      for (int agentId = 0; agentId < agentCount; agentId++) {
+        expect(ins.get(agentId), MSG_REPORT, agentId);
+        AgentReport report = AgentReport.readFrom(ins.get(agentId));
+        LOG.info(
+            "Agent {} finished: {} requests, {} requests/sec",
+            agentId,
+            report.getMeasuredRequests(),
+            String.format("%.2f", report.requestsPerSecondThroughput()));
+        reports.add(report);
+      }
+      return reports;
+    } finally {
+      for (Socket socket : sockets) {
+        socket.close();
+      }
+    }
+  }
+
+  /**
+   * Merges the reports of all agents into a single {@link Results}. The merged results have no
+   * individual latency samples; their latency distribution comes from the merged histograms.
+   *
+   * @param reports the agents' reports
+   * @param transactionTypes the transaction types of the run, used to key the outcome histograms
+   */
+  public static Results merge(
+      List<AgentReport> reports, Collection<TransactionType> transactionTypes) {
+    State state = State.DONE;
+    long startTs = Long.MAX_VALUE;
+    long elapsed = 0;
+    int requests = 0;
+    LatencyHistogram latencies = new LatencyHistogram();
+    for (AgentReport report : reports) {
+      if (report.getState() == State.ERROR) {
+        state = State.ERROR;
+      } else if (state != State.ERROR) {
+        state = report.getState();
+      }
+      startTs = Math.min(startTs, report.getStartTimestampMs());
+      elapsed = Math.max(elapsed, report.getNanoseconds());
+      requests += report.getMeasuredRequests();
+      latencies.add(report.getLatencies());
+    }
+
+    Results results =
+        new Results(
+            state, startTs, elapsed, requests, latencies.toDistributionStatistics(), List.of());
+
+    Map<String, TransactionType> byName = new HashMap<>();
+    List<TransactionType> types = new ArrayList<>();
+    for (TransactionType type : transactionTypes) {
+      if (!type.equals(TransactionType.INVALID)) {
+        byName.put(type.getName(), type);
+        types.add(type);
+      }
+    }
+    for (String outcome : AgentReport.OUTCOMES.keySet()) {
+      Histogram<TransactionType> h = AgentReport.OUTCOMES.get(outcome).apply(results);
+      h.putAll(types, 0);
+      for (AgentReport report : reports) {
+        for (Map.Entry<String, Integer> e : report.getOutcome(outcome).entrySet()) {
+          TransactionType type = byName.get(e.getKey());
+          if (type == null) {
+            LOG.warn("Agent {} reported unknown transaction {}", report.getAgentId(), e.getKey());
+          } else if (e.getValue() > 0) {
+            h.put(type, e.getValue());
+          }
+        }
+      }
+    }
+    return results;
+  }
+
+  private static void expect(DataInputStream in, byte message, int agentId) throws IOException {
+    byte received = in.readByte();
+    if (received != message) {
+      throw new IOException(
+          String.format("Agent %d sent message %d, expected %d", agentId, received, message));
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.close();
+  }
+}
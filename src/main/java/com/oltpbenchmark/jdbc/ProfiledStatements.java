@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.jdbc;
+
+import com.oltpbenchmark.api.StatementProfiler;
+import com.oltpbenchmark.api.StatementProfiler.Operation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * Wraps {@link PreparedStatement}s so that the time spent executing them and fetching their rows
+ * is recorded in a {@link StatementProfiler}. Every {@code execute*} call is timed as {@link
+ * Operation#EXECUTE}. The time spent in {@link ResultSet#next()} of the result sets it returns is
+ * summed up and recorded as one {@link Operation#FETCH} value when the result set, or the
+ * statement, is closed.
+ */
+public final class ProfiledStatements {
+
+  private ProfiledStatements() {}
+
+  public static PreparedStatement wrap(
+      PreparedStatement stmt, StatementProfiler profiler, String procedure, String statement) {
+    return (PreparedStatement)
+        Proxy.newProxyInstance(
+            ProfiledStatements.class.getClassLoader(),
+            new Class<?>[] {PreparedStatement.class},
+            new StatementHandler(stmt, profiler, procedure, statement));
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException ex) {
+      throw ex.getCause();
+    }
+  }
+
+  private static final class StatementHandler implements InvocationHandler {
+    private final PreparedStatement stmt;
+    private final StatementProfiler profiler;
+    private final String procedure;
+    private final String statement;
+
+    /** The last result set handed out, flushed when the statement is closed. */
+    private ResultSetHandler openResultSet;
+
+    StatementHandler(
+        PreparedStatement stmt, StatementProfiler profiler, String procedure, String statement) {
+      this.stmt = stmt;
+      this.profiler = profiler;
+      this.procedure = procedure;
+      this.statement = statement;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      Object result;
+      if (name.startsWith("execute")) {
+        long start = System.nanoTime();
+        try {
+          result = ProfiledStatements.invoke(stmt, method, args);
+        } finally {
+          profiler.record(procedure, statement, Operation.EXECUTE, System.nanoTime() - start);
+        }
+      } else {
+        if (name.equals("close")) {
+          flushResultSet();
+        }
+        result = ProfiledStatements.invoke(stmt, method, args);
+      }
+      if (result instanceof ResultSet) {
+        flushResultSet();
+        openResultSet = new ResultSetHandler((ResultSet) result, this);
+        return Proxy.newProxyInstance(
+            ProfiledStatements.class.getClassLoader(),
+            new Class<?>[] {ResultSet.class},
+            openResultSet);
+      }
+      return result;
+    }
+
+    private void flushResultSet() {
+      if (openResultSet != null) {
+        openResultSet.flush();
+        openResultSet = null;
+      }
+    }
+  }
+
+  private static final class ResultSetHandler implements InvocationHandler {
+    private final ResultSet rs;
+    private final StatementHandler owner;
+    private long fetchNanos = 0;
+    private boolean flushed = false;
+
+    ResultSetHandler(ResultSet rs, StatementHandler owner) {
+      this.rs = rs;
+      this.owner = owner;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if (name.equals("next")) {
+        long start = System.nanoTime();
+        try {
+          return ProfiledStatements.invoke(rs, method, args);
+        } finally {
+          fetchNanos += System.nanoTime() - start;
+        }
+      }
+      if (name.equals("close")) {
+        flush();
+      }
+      return ProfiledStatements.invoke(rs, method, args);
+    }
+
+    void flush() {
+      if (!flushed) {
+        flushed = true;
+        owner.profiler.record(owner.procedure, owner.statement, Operation.FETCH, fetchNanos);
+      }
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.jfr;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+
+/**
+ * Java Flight Recorder events of the benchmark. All events are disabled by default, so they cost
+ * next to nothing unless a recording enables them, either one started by {@link #startRecording()}
+ * or one started externally with {@code -XX:StartFlightRecording} and a settings file that enables
+ * the {@code com.oltpbenchmark.*} events.
+ */
+public final class Events {
+
+  private static final List<Class<? extends Event>> EVENTS =
+      List.of(
+          TransactionEvent.class,
+          PhaseEvent.class,
+          MeasurementEvent.class,
+          ConnectEvent.class,
+          LoaderBatchEvent.class);
+
+  private Events() {}
+
+  /**
+   * Starts a recording with the JDK's default settings plus all benchmark events. The caller stops
+   * it and writes it out with {@link #stopRecording(Recording, Path)}.
+   */
+  public static Recording startRecording() throws IOException, ParseException {
+    Recording recording = new Recording(Configuration.getConfiguration("default"));
+    recording.setName("BenchBase");
+    for (Class<? extends Event> event : EVENTS) {
+      recording.enable(event).withoutThreshold();
+    }
+    recording.start();
+    return recording;
+  }
+
+  public static void stopRecording(Recording recording, Path path) throws IOException {
+    recording.stop();
+    recording.dump(path);
+    recording.close();
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A phase or benchmark state change of the rate controller. */
+@Name("com.oltpbenchmark.Phase")
+@Label("Phase Change")
+@Category("BenchBase")
+@Description("The benchmark entered a new phase or state")
+@Enabled(false)
+@StackTrace(false)
+public class PhaseEvent extends Event {
+
+  @Label("Phase")
+  @Description("Id of the current phase, 0 once all phases are done")
+  public int phase;
+
+  @Label("State")
+  public String state;
+
+  @Label("Target Rate")
+  public double rate;
+}
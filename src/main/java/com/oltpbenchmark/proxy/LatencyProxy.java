@@ -0,0 +1,553 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.oltpbenchmark.proxy;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local TCP proxy between the workers and the database that delays the traffic in each
+ * direction, to emulate the round-trip time of a distant database on a nearby one. Each direction
+ * is a {@link Link} with its own delay distribution and bandwidth; the round-trip time is the sum
+ * of both delays.
+ *
+ * <p>Data keeps its order within a direction: a chunk is never released before the chunk read
+ * before it, and a bandwidth cap adds the transmission time of every chunk. All connections are
+ * served by one thread with a {@link Selector}. Delays shorter than a millisecond are waited for
+ * by polling the sockets in a tight loop, so they are met within tens of microseconds.
+ *
+ * <p>For every connection the proxy counts the bytes in both directions and the round trips, that
+ * is the number of times the server answered after the client had sent something.
+ */
+public final class LatencyProxy implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(LatencyProxy.class);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** A direction stops reading once this many bytes wait to be released. */
+  private static final int MAX_QUEUED_BYTES = 4 * 1024 * 1024;
+
+  /** Below this the selector's millisecond timeout is too coarse to wait for a release. */
+  private static final long SELECT_THRESHOLD_NS = TimeUnit.MILLISECONDS.toNanos(2);
+
+  /** Below this even parking overshoots, so the proxy spins. */
+  private static final long PARK_THRESHOLD_NS = 100000;
+
+  private static final long PARK_NS = 50000;
+
+  private static final Pattern URL_AUTHORITY = Pattern.compile("//([^/:?;,]+)(?::(\\d+))?");
+
+  /** How the delay of a chunk is drawn. */
+  public enum Distribution {
+    /** Always the base delay. */
+    CONSTANT,
+    /** Uniform within the base delay plus or minus the jitter. */
+    UNIFORM,
+    /** Normal around the base delay with the jitter as standard deviation. */
+    NORMAL,
+    /** The base delay plus an exponential tail whose mean is the jitter. */
+    EXPONENTIAL,
+  }
+
+  /** The characteristics of one direction. */
+  public static final class Link {
+    /** A link without delay or bandwidth cap. */
+    public static final Link NONE = new Link(0, 0, Distribution.CONSTANT, 0);
+
+    private final long delayNs;
+    private final long jitterNs;
+    private final Distribution distribution;
+    private final double bytesPerNs;
+
+    /**
+     * @param delayMs base one-way delay in milliseconds
+     * @param jitterMs spread of the delay in milliseconds, its meaning depends on the distribution
+     * @param distribution how the delay of a chunk is drawn
+     * @param megabitsPerSecond bandwidth cap, 0 for none
+     */
+    public Link(
+        double delayMs, double jitterMs, Distribution distribution, double megabitsPerSecond) {
+      if (delayMs < 0 || jitterMs < 0 || megabitsPerSecond < 0) {
+        throw new IllegalArgumentException("Delay, jitter and bandwidth must not be negative");
+      }
+      this.delayNs = (long) (delayMs * 1000000);
+      this.jitterNs = (long) (jitterMs * 1000000);
+      this.distribution = distribution;
+      this.bytesPerNs = megabitsPerSecond * 1e6 / 8 / 1e9;
+    }
+
+    long sampleDelayNs(Random rng) {
+      double delay;
+      switch (distribution) {
+        case UNIFORM:
+          delay = delayNs + (2 * rng.nextDouble() - 1) * jitterNs;
+          break;
+        case NORMAL:
+          delay = delayNs + rng.nextGaussian() * jitterNs;
+          break;
+        case EXPONENTIAL:
+          delay = delayNs - Math.log(1 - rng.nextDouble()) * jitterNs;
+          break;
+        default:
+          delay = delayNs;
+          break;
+      }
+      return Math.max(0, (long) delay);
+    }
+
+    long transmissionNs(int bytes) {
+      return bytesPerNs > 0 ? (long) (bytes / bytesPerNs) : 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s[delay=%.3fms, jitter=%.3fms, bandwidth=%s]",
+          distribution.name().toLowerCase(Locale.ROOT),
+          delayNs / 1e6,
+          jitterNs / 1e6,
+          bytesPerNs > 0 ? String.format("%.1fMbit/s", bytesPerNs * 8 * 1e3) : "unlimited");
+    }
+  }
+
+  /** Traffic of one proxied connection. */
+  public static final class ConnectionStats {
+    private final int id;
+    private final long openedMs;
+    private volatile long bytesUp;
+    private volatile long bytesDown;
+    private volatile long roundTrips;
+
+    ConnectionStats(int id, long openedMs) {
+      this.id = id;
+      this.openedMs = openedMs;
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    /** Wall-clock time the connection was accepted, in milliseconds since the epoch. */
+    public long getOpenedMs() {
+      return openedMs;
+    }
+
+    /** Bytes sent from the client to the server. */
+    public long getBytesUp() {
+      return bytesUp;
+    }
+
+    /** Bytes sent from the server to the client. */
+    public long getBytesDown() {
+      return bytesDown;
+    }
+
+    public long getRoundTrips() {
+      return roundTrips;
+    }
+  }
+
+  /** A chunk of data waiting for its release time. */
+  private static final class Chunk {
+    final ByteBuffer data;
+    final long releaseNs;
+
+    Chunk(ByteBuffer data, long releaseNs) {
+      this.data = data;
+      this.releaseNs = releaseNs;
+    }
+  }
+
+  /** One direction of a connection. */
+  private final class Pipe {
+    final Link link;
+    final boolean up;
+    final ArrayDeque<Chunk> queue = new ArrayDeque<>();
+    Endpoint source;
+    Endpoint sink;
+    int queuedBytes = 0;
+    long lastReleaseNs = 0;
+    boolean eof = false;
+
+    Pipe(Link link, boolean up) {
+      this.link = link;
+      this.up = up;
+    }
+
+    boolean isReadable() {
+      return !eof && queuedBytes < MAX_QUEUED_BYTES;
+    }
+
+    /** Reads what the source has and queues it for release after the delay of the link. */
+    void read(Connection conn, long now) throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      int n = source.channel.read(buffer);
+      if (n < 0) {
+        eof = true;
+        return;
+      }
+      if (n == 0) {
+        return;
+      }
+      buffer.flip();
+      long release = Math.max(now + link.sampleDelayNs(rng), lastReleaseNs);
+      release += link.transmissionNs(n);
+      lastReleaseNs = release;
+      queue.add(new Chunk(buffer, release));
+      queuedBytes += n;
+
+      ConnectionStats stats = conn.stats;
+      if (up) {
+        stats.bytesUp += n;
+      } else {
+        stats.bytesDown += n;
+        if (conn.lastReadUp) {
+          stats.roundTrips++;
+        }
+      }
+      conn.lastReadUp = up;
+    }
+
+    /**
+     * Writes the chunks that are due. Returns the release time of the next chunk, or
+     * Long.MAX_VALUE if none is waiting or the sink cannot take more data right now.
+     */
+    long write(long now) throws IOException {
+      while (!queue.isEmpty() && sink.connected) {
+        Chunk chunk = queue.peek();
+        if (chunk.releaseNs > now) {
+          return chunk.releaseNs;
+        }
+        int n = sink.channel.write(chunk.data);
+        queuedBytes -= n;
+        if (chunk.data.hasRemaining()) {
+          sink.waitingForWrite = true;
+          return Long.MAX_VALUE;
+        }
+        queue.poll();
+      }
+      if (queue.isEmpty() && eof && sink.connected && !sink.outputShutdown) {
+        sink.channel.shutdownOutput();
+        sink.outputShutdown = true;
+      }
+      return Long.MAX_VALUE;
+    }
+
+    boolean isDone() {
+      return eof && queue.isEmpty();
+    }
+  }
+
+  /** One of the two sockets of a connection. */
+  private static final class Endpoint {
+    final SocketChannel channel;
+    final Connection conn;
+    Pipe in;
+    boolean connected;
+    boolean waitingForWrite = false;
+    boolean outputShutdown = false;
+    SelectionKey key;
+
+    Endpoint(SocketChannel channel, Connection conn, boolean connected) {
+      this.channel = channel;
+      this.conn = conn;
+      this.connected = connected;
+    }
+  }
+
+  /** A proxied connection: the client socket, the server socket and a pipe in each direction. */
+  private final class Connection {
+    final ConnectionStats stats;
+    final Endpoint client;
+    final Endpoint server;
+    final Pipe upPipe = new Pipe(upstream, true);
+    final Pipe downPipe = new Pipe(downstream, false);
+    boolean lastReadUp = false;
+
+    Connection(SocketChannel clientChannel, SocketChannel serverChannel) {
+      this.stats = new ConnectionStats(connections.size(), System.currentTimeMillis());
+      this.client = new Endpoint(clientChannel, this, true);
+      this.server = new Endpoint(serverChannel, this, false);
+      upPipe.source = client;
+      upPipe.sink = server;
+      downPipe.source = server;
+      downPipe.sink = client;
+      client.in = upPipe;
+      server.in = downPipe;
+    }
+
+    void close() {
+      for (Endpoint endpoint : new Endpoint[] {client, server}) {
+        try {
+          endpoint.channel.close();
+        } catch (IOException ex) {
+          LOG.debug("Failed to close proxied socket", ex);
+        }
+      }
+      open.remove(this);
+    }
+  }
+
+  private final InetSocketAddress target;
+  private final Link upstream;
+  private final Link downstream;
+  private final Selector selector;
+  private final ServerSocketChannel server;
+  private final Random rng = new Random();
+  private final List<ConnectionStats> connections = new ArrayList<>();
+  private final List<Connection> open = new ArrayList<>();
+  private final Thread thread;
+  private volatile boolean running = true;
+  private volatile boolean disconnecting = false;
+  private volatile long refuseUntilNs = System.nanoTime();
+
+  /**
+   * @param port port to listen on, 0 for an ephemeral port
+   * @param target address of the database
+   * @param upstream the direction from the client to the database
+   * @param downstream the direction from the database to the client
+   */
+  public LatencyProxy(int port, InetSocketAddress target, Link upstream, Link downstream)
+      throws IOException {
+    this.target = target;
+    this.upstream = upstream;
+    this.downstream = downstream;
+    this.selector = Selector.open();
+    this.server = ServerSocketChannel.open();
+    this.server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+    this.server.configureBlocking(false);
+    this.server.register(selector, SelectionKey.OP_ACCEPT);
+    this.thread = new Thread(this::run, "latency-proxy");
+    this.thread.setDaemon(true);
+    this.thread.start();
+    LOG.info(
+        "Latency proxy listening on port {} for {}: upstream {}, downstream {}",
+        getPort(),
+        target,
+        upstream,
+        downstream);
+  }
+
+  public int getPort() {
+    return server.socket().getLocalPort();
+  }
+
+  /**
+   * The address of the database a JDBC URL points at, its first host if it names several.
+   *
+   * @throws IllegalArgumentException if the URL names no host and port
+   */
+  public static InetSocketAddress targetOf(String url) {
+    Matcher m = URL_AUTHORITY.matcher(url);
+    if (!m.find() || m.group(2) == null) {
+      throw new IllegalArgumentException("Cannot find the host and port of the URL " + url);
+    }
+    return InetSocketAddress.createUnresolved(m.group(1), Integer.parseInt(m.group(2)));
+  }
+
+  /** Points a JDBC URL at this proxy instead of the database. */
+  public String proxyUrl(String url) {
+    Matcher m = URL_AUTHORITY.matcher(url);
+    if (!m.find()) {
+      throw new IllegalArgumentException("Cannot find the host of the URL " + url);
+    }
+    return url.substring(0, m.start())
+        + "//"
+        + server.socket().getInetAddress().getHostAddress()
+        + ":"
+        + getPort()
+        + url.substring(m.end());
+  }
+
+  /** Traffic of every connection accepted so far, in the order they were accepted. */
+  public List<ConnectionStats> getConnections() {
+    synchronized (connections) {
+      return new ArrayList<>(connections);
+    }
+  }
+
+  /**
+   * Drops every open connection, as a failing database would, and refuses new connections for the
+   * given time.
+   */
+  public void disconnect(long refuseMs) {
+    refuseUntilNs = System.nanoTime() + refuseMs * 1000000L;
+    disconnecting = true;
+    selector.wakeup();
+  }
+
+  @Override
+  public void close() throws IOException {
+    running = false;
+    selector.wakeup();
+    try {
+      thread.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    server.close();
+    selector.close();
+  }
+
+  private void run() {
+    long nextRelease = Long.MAX_VALUE;
+    while (running) {
+      try {
+        long wait = nextRelease - System.nanoTime();
+        if (nextRelease == Long.MAX_VALUE) {
+          selector.select();
+        } else if (wait >= SELECT_THRESHOLD_NS) {
+          selector.select(TimeUnit.NANOSECONDS.toMillis(wait) - 1);
+        } else if (selector.selectNow() == 0 && wait > PARK_THRESHOLD_NS) {
+          LockSupport.parkNanos(PARK_NS);
+        } else if (wait > 0) {
+          Thread.onSpinWait();
+        }
+        if (disconnecting) {
+          disconnecting = false;
+          LOG.info("Latency proxy dropping {} connections", open.size());
+          for (Connection conn : new ArrayList<>(open)) {
+            conn.close();
+          }
+        }
+        long now = System.nanoTime();
+        for (SelectionKey key : selector.selectedKeys()) {
+          handle(key, now);
+        }
+        selector.selectedKeys().clear();
+        nextRelease = flush(System.nanoTime());
+      } catch (IOException ex) {
+        LOG.warn("Latency proxy failed", ex);
+      }
+    }
+    for (Connection conn : new ArrayList<>(open)) {
+      conn.close();
+    }
+  }
+
+  private void handle(SelectionKey key, long now) throws IOException {
+    if (key.isValid() && key.isAcceptable()) {
+      accept();
+      return;
+    }
+    Endpoint endpoint = (Endpoint) key.attachment();
+    Connection conn = endpoint.conn;
+    try {
+      if (key.isValid() && key.isConnectable() && endpoint.channel.finishConnect()) {
+        endpoint.connected = true;
+      }
+      if (key.isValid() && key.isWritable()) {
+        endpoint.waitingForWrite = false;
+      }
+      if (key.isValid() && key.isReadable()) {
+        endpoint.in.read(conn, now);
+      }
+    } catch (IOException ex) {
+      LOG.debug("Proxied connection {} failed", conn.stats.id, ex);
+      conn.close();
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel client = server.accept();
+    if (client == null) {
+      return;
+    }
+    if (System.nanoTime() - refuseUntilNs < 0) {
+      client.close();
+      return;
+    }
+    SocketChannel upstreamChannel = SocketChannel.open();
+    try {
+      client.configureBlocking(false);
+      client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      upstreamChannel.configureBlocking(false);
+      upstreamChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      upstreamChannel.connect(new InetSocketAddress(target.getHostString(), target.getPort()));
+    } catch (IOException ex) {
+      LOG.warn("Failed to connect to {}", target, ex);
+      client.close();
+      upstreamChannel.close();
+      return;
+    }
+    Connection conn = new Connection(client, upstreamChannel);
+    synchronized (connections) {
+      connections.add(conn.stats);
+    }
+    open.add(conn);
+    conn.client.key = client.register(selector, SelectionKey.OP_READ, conn.client);
+    conn.server.key = upstreamChannel.register(selector, SelectionKey.OP_CONNECT, conn.server);
+  }
+
+  /**
+   * Writes everything that is due, updates the interest of every socket and closes finished
+   * connections. Returns the time the next chunk is due.
+   */
+  private long flush(long now) throws IOException {
+    long next = Long.MAX_VALUE;
+    for (Connection conn : new ArrayList<>(open)) {
+      try {
+        next = Math.min(next, conn.upPipe.write(now));
+        next = Math.min(next, conn.downPipe.write(now));
+      } catch (IOException ex) {
+        LOG.debug("Proxied connection {} failed", conn.stats.id, ex);
+        conn.close();
+        continue;
+      }
+      if (conn.upPipe.isDone() && conn.downPipe.isDone()) {
+        conn.close();
+        continue;
+      }
+      interest(conn.client);
+      interest(conn.server);
+    }
+    return next;
+  }
+
+  private static void interest(Endpoint endpoint) {
+    int ops;
+    if (!endpoint.connected) {
+      ops = SelectionKey.OP_CONNECT;
+    } else {
+      ops = endpoint.in.isReadable() ? SelectionKey.OP_READ : 0;
+      if (endpoint.waitingForWrite) {
+        ops |= SelectionKey.OP_WRITE;
+      }
+    }
+    if (endpoint.key.isValid() && endpoint.key.interestOps() != ops) {
+      endpoint.key.interestOps(ops);
+    }
+  }
+}
@@ -0,0 +1,597 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.oltpbenchmark.stub;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-process server that speaks just enough of the PostgreSQL frontend/backend protocol (version
+ * 3) for the PostgreSQL JDBC driver to connect and run statements, and answers every statement
+ * with a canned response. Running a benchmark against it measures the ceiling of the client
+ * itself: how many transactions, terminals and connections BenchBase can drive when the server
+ * costs nothing, or a fixed, configurable amount of time per statement.
+ *
+ * <p>Supported are the startup handshake (SSL and GSS encryption requests are declined), trust and
+ * cleartext password authentication (the latter is what Aurora DSQL uses for its IAM tokens; any
+ * password is accepted), the simple query protocol and the extended query protocol (Parse, Bind,
+ * Describe, Execute, Close, Flush and Sync). The canned responses are:
+ *
+ * <ul>
+ *   <li>queries on {@code pg_catalog} or {@code information_schema}: no rows, so the catalog of
+ *       the database looks empty;
+ *   <li>{@code SHOW}: one text row, {@code read committed} for the transaction isolation level;
+ *   <li>other queries: one row with the integer column {@code ?column?} set to 1;
+ *   <li>{@code INSERT}, {@code UPDATE} and {@code DELETE}: one affected row;
+ *   <li>everything else: success.
+ * </ul>
+ *
+ * Benchmarks that read the columns of their results by name therefore only work as far as they
+ * tolerate these answers; the noop benchmark works unchanged.
+ */
+public final class PgStubServer implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(PgStubServer.class);
+
+  static final int PROTOCOL_VERSION = 196608;
+  static final int SSL_REQUEST = 80877103;
+  static final int GSS_REQUEST = 80877104;
+  static final int CANCEL_REQUEST = 80877102;
+
+  static final int INT4_OID = 23;
+  static final int TEXT_OID = 25;
+
+  /** How clients authenticate. */
+  public enum Auth {
+    /** No password is requested. */
+    TRUST,
+    /** A cleartext password is requested and ignored. */
+    PASSWORD,
+  }
+
+  private final ServerSocket server;
+  private final Auth auth;
+  private final long serverTimeNs;
+  private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+  private final AtomicLong connectionCount = new AtomicLong();
+  private final AtomicLong statementCount = new AtomicLong();
+  private final Thread acceptor;
+
+  /**
+   * @param port port to listen on, 0 for an ephemeral port
+   * @param auth how clients authenticate
+   * @param serverTimeUs time the server spends on every statement in microseconds
+   */
+  public PgStubServer(int port, Auth auth, long serverTimeUs) throws IOException {
+    if (serverTimeUs < 0) {
+      throw new IllegalArgumentException("Server time must not be negative: " + serverTimeUs);
+    }
+    this.server = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+    this.auth = auth;
+    this.serverTimeNs = serverTimeUs * 1000;
+    this.acceptor = new Thread(this::accept, "pg-stub-acceptor");
+    this.acceptor.setDaemon(true);
+    this.acceptor.start();
+    LOG.info(
+        "PostgreSQL stub server listening on port {} ({} auth, {}us per statement)",
+        getPort(),
+        auth.name().toLowerCase(Locale.ROOT),
+        serverTimeUs);
+  }
+
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  /** A JDBC URL for the PostgreSQL driver that connects to this server. */
+  public String getUrl() {
+    return String.format(
+        "jdbc:postgresql://%s:%d/benchbase?sslmode=disable",
+        server.getInetAddress().getHostAddress(), getPort());
+  }
+
+  /** Number of connections accepted so far. */
+  public long getConnectionCount() {
+    return connectionCount.get();
+  }
+
+  /** Number of statements executed so far, over both query protocols. */
+  public long getStatementCount() {
+    return statementCount.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.close();
+    connections.shutdownNow();
+  }
+
+  private void accept() {
+    while (!server.isClosed()) {
+      try {
+        Socket socket = server.accept();
+        socket.setTcpNoDelay(true);
+        connectionCount.incrementAndGet();
+        connections.execute(() -> serve(socket));
+      } catch (IOException ex) {
+        if (!server.isClosed()) {
+          LOG.warn("Failed to accept a connection", ex);
+        }
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try (socket) {
+      new Session(socket).run();
+    } catch (EOFException ex) {
+      // The client went away without a Terminate message
+    } catch (IOException ex) {
+      if (!server.isClosed()) {
+        LOG.debug("Stub connection from {} failed", socket.getRemoteSocketAddress(), ex);
+      }
+    }
+  }
+
+  /** A statement created by Parse. */
+  private static final class Statement {
+    final String sql;
+    final int[] paramTypes;
+
+    Statement(String sql, int[] paramTypes) {
+      this.sql = sql;
+      this.paramTypes = paramTypes;
+    }
+  }
+
+  /** A portal created by Bind. */
+  private static final class Portal {
+    final String sql;
+    final boolean binary;
+
+    Portal(String sql, boolean binary) {
+      this.sql = sql;
+      this.binary = binary;
+    }
+  }
+
+  /** The state of one client connection. */
+  private final class Session {
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Map<String, Statement> statements = new HashMap<>();
+    private final Map<String, Portal> portals = new HashMap<>();
+    private byte transactionStatus = 'I';
+
+    Session(Socket socket) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    void run() throws IOException {
+      if (!startup()) {
+        return;
+      }
+      while (true) {
+        byte type = in.readByte();
+        Message msg = new Message(readBody(in.readInt()));
+        switch (type) {
+          case 'Q':
+            simpleQuery(msg.readString());
+            break;
+          case 'P':
+            parse(msg);
+            break;
+          case 'B':
+            bind(msg);
+            break;
+          case 'D':
+            describe(msg);
+            break;
+          case 'E':
+            execute(portals.get(msg.readString()));
+            break;
+          case 'C':
+            if (msg.readByte() == 'S') {
+              statements.remove(msg.readString());
+            } else {
+              portals.remove(msg.readString());
+            }
+            writeHeader('3', 0);
+            break;
+          case 'H':
+            out.flush();
+            break;
+          case 'S':
+            readyForQuery();
+            break;
+          case 'X':
+            return;
+          default:
+            error("0A000", "Unsupported message type '" + (char) type + "'");
+            readyForQuery();
+            return;
+        }
+      }
+    }
+
+    /** Runs the startup handshake. Returns false if the connection carried a cancel request. */
+    private boolean startup() throws IOException {
+      Map<String, String> params = new HashMap<>();
+      while (true) {
+        int length = in.readInt();
+        int code = in.readInt();
+        if (code == SSL_REQUEST || code == GSS_REQUEST) {
+          out.writeByte('N');
+          out.flush();
+          continue;
+        }
+        Message msg = new Message(readBody(length - 4));
+        if (code == CANCEL_REQUEST) {
+          return false;
+        }
+        if (code != PROTOCOL_VERSION) {
+          error("08P01", "Unsupported protocol version " + code);
+          out.flush();
+          return false;
+        }
+        for (String key = msg.readString(); !key.isEmpty(); key = msg.readString()) {
+          params.put(key, msg.readString());
+        }
+        break;
+      }
+
+      if (auth == Auth.PASSWORD) {
+        writeHeader('R', 4);
+        out.writeInt(3);
+        out.flush();
+        if (in.readByte() != 'p') {
+          throw new IOException("Expected a password message");
+        }
+        readBody(in.readInt());
+      }
+      writeHeader('R', 4);
+      out.writeInt(0);
+      parameterStatus("server_version", "16.0");
+      parameterStatus("server_encoding", "UTF8");
+      parameterStatus("client_encoding", "UTF8");
+      parameterStatus("DateStyle", "ISO, MDY");
+      parameterStatus("TimeZone", "UTC");
+      parameterStatus("integer_datetimes", "on");
+      parameterStatus("standard_conforming_strings", "on");
+      parameterStatus("is_superuser", "off");
+      parameterStatus("session_authorization", params.getOrDefault("user", "benchbase"));
+      writeHeader('K', 8);
+      out.writeInt((int) connectionCount.get());
+      out.writeInt(0);
+      readyForQuery();
+      return true;
+    }
+
+    private void simpleQuery(String sql) throws IOException {
+      boolean any = false;
+      for (String stmt : sql.split(";")) {
+        if (!stmt.isBlank()) {
+          any = true;
+          respond(stmt, false, true);
+        }
+      }
+      if (!any) {
+        writeHeader('I', 0);
+      }
+      readyForQuery();
+    }
+
+    private void parse(Message msg) throws IOException {
+      String name = msg.readString();
+      String sql = msg.readString();
+      int[] declared = new int[msg.readShort()];
+      for (int i = 0; i < declared.length; i++) {
+        declared[i] = msg.readInt();
+      }
+      int[] paramTypes = new int[Math.max(declared.length, countParameters(sql))];
+      for (int i = 0; i < paramTypes.length; i++) {
+        paramTypes[i] = i < declared.length && declared[i] != 0 ? declared[i] : TEXT_OID;
+      }
+      statements.put(name, new Statement(sql, paramTypes));
+      writeHeader('1', 0);
+    }
+
+    private void bind(Message msg) throws IOException {
+      String portal = msg.readString();
+      Statement stmt = statements.get(msg.readString());
+      msg.skip(2 * msg.readShort());
+      for (int i = msg.readShort(); i > 0; i--) {
+        int length = msg.readInt();
+        msg.skip(Math.max(0, length));
+      }
+      int resultFormats = msg.readShort();
+      boolean binary = resultFormats > 0 && msg.readShort() == 1;
+      portals.put(portal, new Portal(stmt == null ? "" : stmt.sql, binary));
+      writeHeader('2', 0);
+    }
+
+    private void describe(Message msg) throws IOException {
+      if (msg.readByte() == 'S') {
+        Statement stmt = statements.get(msg.readString());
+        int[] paramTypes = stmt == null ? new int[0] : stmt.paramTypes;
+        writeHeader('t', 2 + 4 * paramTypes.length);
+        out.writeShort(paramTypes.length);
+        for (int type : paramTypes) {
+          out.writeInt(type);
+        }
+        rowDescription(stmt == null ? "" : stmt.sql, false);
+      } else {
+        Portal portal = portals.get(msg.readString());
+        rowDescription(portal == null ? "" : portal.sql, portal != null && portal.binary);
+      }
+    }
+
+    private void execute(Portal portal) throws IOException {
+      if (portal == null || portal.sql.isBlank()) {
+        writeHeader('I', 0);
+        return;
+      }
+      respond(portal.sql, portal.binary, false);
+    }
+
+    /** Writes the canned response to one statement. */
+    private void respond(String sql, boolean binary, boolean describe) throws IOException {
+      statementCount.incrementAndGet();
+      if (serverTimeNs > 0) {
+        LockSupport.parkNanos(serverTimeNs);
+      }
+      String keyword = firstKeyword(sql);
+      switch (keyword) {
+        case "BEGIN":
+        case "START":
+          transactionStatus = 'T';
+          break;
+        case "COMMIT":
+        case "END":
+        case "ROLLBACK":
+        case "ABORT":
+          transactionStatus = 'I';
+          break;
+        default:
+          break;
+      }
+      String tag;
+      switch (shape(sql)) {
+        case CATALOG:
+          if (describe) {
+            rowDescription(sql, binary);
+          }
+          tag = "SELECT 0";
+          break;
+        case INT:
+          if (describe) {
+            rowDescription(sql, binary);
+          }
+          if (binary) {
+            dataRow(new byte[] {0, 0, 0, 1});
+          } else {
+            dataRow("1".getBytes(StandardCharsets.UTF_8));
+          }
+          tag = "SELECT 1";
+          break;
+        case TEXT:
+          if (describe) {
+            rowDescription(sql, binary);
+          }
+          boolean isolation = sql.toLowerCase(Locale.ROOT).contains("isolation");
+          dataRow((isolation ? "read committed" : "").getBytes(StandardCharsets.UTF_8));
+          tag = "SHOW";
+          break;
+        default:
+          if (keyword.equals("INSERT")) {
+            tag = "INSERT 0 1";
+          } else if (keyword.equals("UPDATE") || keyword.equals("DELETE")) {
+            tag = keyword + " 1";
+          } else {
+            tag = keyword;
+          }
+          break;
+      }
+      byte[] bytes = tag.getBytes(StandardCharsets.UTF_8);
+      writeHeader('C', bytes.length + 1);
+      out.write(bytes);
+      out.writeByte(0);
+    }
+
+    private void rowDescription(String sql, boolean binary) throws IOException {
+      Shape shape = shape(sql);
+      if (shape == Shape.NONE) {
+        writeHeader('n', 0);
+        return;
+      }
+      if (shape == Shape.CATALOG) {
+        writeHeader('T', 2);
+        out.writeShort(0);
+        return;
+      }
+      byte[] name = (shape == Shape.TEXT ? "setting" : "?column?").getBytes(StandardCharsets.UTF_8);
+      writeHeader('T', 2 + name.length + 1 + 18);
+      out.writeShort(1);
+      out.write(name);
+      out.writeByte(0);
+      out.writeInt(0); // table
+      out.writeShort(0); // column
+      out.writeInt(shape == Shape.TEXT ? TEXT_OID : INT4_OID);
+      out.writeShort(shape == Shape.TEXT ? -1 : 4);
+      out.writeInt(-1); // type modifier
+      out.writeShort(binary ? 1 : 0);
+    }
+
+    private void dataRow(byte[] value) throws IOException {
+      writeHeader('D', 2 + 4 + value.length);
+      out.writeShort(1);
+      out.writeInt(value.length);
+      out.write(value);
+    }
+
+    private void parameterStatus(String name, String value) throws IOException {
+      byte[] n = name.getBytes(StandardCharsets.UTF_8);
+      byte[] v = value.getBytes(StandardCharsets.UTF_8);
+      writeHeader('S', n.length + 1 + v.length + 1);
+      out.write(n);
+      out.writeByte(0);
+      out.write(v);
+      out.writeByte(0);
+    }
+
+    private void readyForQuery() throws IOException {
+      writeHeader('Z', 1);
+      out.writeByte(transactionStatus);
+      out.flush();
+    }
+
+    private void error(String sqlState, String message) throws IOException {
+      byte[] state = sqlState.getBytes(StandardCharsets.UTF_8);
+      byte[] msg = message.getBytes(StandardCharsets.UTF_8);
+      writeHeader('E', 1 + 6 + 1 + state.length + 1 + 1 + msg.length + 1 + 1);
+      out.writeByte('S');
+      out.write("ERROR".getBytes(StandardCharsets.UTF_8));
+      out.writeByte(0);
+      out.writeByte('C');
+      out.write(state);
+      out.writeByte(0);
+      out.writeByte('M');
+      out.write(msg);
+      out.writeByte(0);
+      out.writeByte(0);
+    }
+
+    /** Writes the type and length of a message whose body has {@code bodyLength} bytes. */
+    private void writeHeader(char type, int bodyLength) throws IOException {
+      out.writeByte(type);
+      out.writeInt(bodyLength + 4);
+    }
+
+    private byte[] readBody(int length) throws IOException {
+      byte[] body = new byte[length - 4];
+      in.readFully(body);
+      return body;
+    }
+  }
+
+  /** The kinds of canned results. */
+  enum Shape {
+    NONE,
+    CATALOG,
+    INT,
+    TEXT,
+  }
+
+  static Shape shape(String sql) {
+    String keyword = firstKeyword(sql);
+    if (keyword.equals("SHOW")) {
+      return Shape.TEXT;
+    }
+    if (!keyword.equals("SELECT") && !keyword.equals("WITH") && !keyword.equals("VALUES")) {
+      return Shape.NONE;
+    }
+    String lower = sql.toLowerCase(Locale.ROOT);
+    if (lower.contains("pg_catalog") || lower.contains("information_schema")) {
+      return Shape.CATALOG;
+    }
+    return Shape.INT;
+  }
+
+  static String firstKeyword(String sql) {
+    String trimmed = sql.strip();
+    int end = 0;
+    while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) {
+      end++;
+    }
+    return trimmed.substring(0, end).toUpperCase(Locale.ROOT);
+  }
+
+  /** The highest $n placeholder in a statement. */
+  static int countParameters(String sql) {
+    int max = 0;
+    for (int i = sql.indexOf('$'); i >= 0; i = sql.indexOf('$', i + 1)) {
+      int n = 0;
+      int j = i + 1;
+      while (j < sql.length() && Character.isDigit(sql.charAt(j))) {
+        n = n * 10 + (sql.charAt(j++) - '0');
+      }
+      max = Math.max(max, n);
+    }
+    return max;
+  }
+
+  /** Reads the fields of one message body. */
+  private static final class Message {
+    private final byte[] body;
+    private int pos = 0;
+
+    Message(byte[] body) {
+      this.body = body;
+    }
+
+    byte readByte() {
+      return body[pos++];
+    }
+
+    int readShort() {
+      int value = ((body[pos] & 0xff) << 8) | (body[pos + 1] & 0xff);
+      pos += 2;
+      return value;
+    }
+
+    int readInt() {
+      int value =
+          ((body[pos] & 0xff) << 24)
+              | ((body[pos + 1] & 0xff) << 16)
+              | ((body[pos + 2] & 0xff) << 8)
+              | (body[pos + 3] & 0xff);
+      pos += 4;
+      return value;
+    }
+
+    void skip(int n) {
+      pos += n;
+    }
+
+    String readString() {
+      int end = pos;
+      while (body[end] != 0) {
+        end++;
+      }
+      String value = new String(body, pos, end - pos, StandardCharsets.UTF_8);
+      pos = end + 1;
+      return value;
+    }
+  }
+}
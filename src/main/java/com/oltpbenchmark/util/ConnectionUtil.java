@@ -1,26 +1,62 @@
 package com.oltpbenchmark.util;
 
 import com.google.common.util.concurrent.RateLimiter;
+import com.oltpbenchmark.RateSchedule;
 import com.oltpbenchmark.api.BenchmarkModule;
+import com.oltpbenchmark.jfr.ConnectEvent;
 import java.sql.Connection;
+import java.sql.SQLException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class ConnectionUtil {
-  private static final double DEFAULT_CONNECTION_RATE_LIMIT = 10.0;
+  public static final double DEFAULT_CONNECTION_RATE_LIMIT = 10.0;
 
   private static final Logger LOG = LoggerFactory.getLogger(ConnectionUtil.class);
 
   private static RateLimiter rateLimiter = null;
 
+  /** Rate of new connections over time, null for no limit; the default limit applies if unset. */
+  private static RateSchedule ramp = null;
+
+  private static boolean rampConfigured = false;
+  private static long rampStartNs = -1;
+
+  /** Microseconds every successful connect took, not counting the wait for the rate limit. */
+  private static final LatencyHistogram CONNECT_TIMES = new LatencyHistogram();
+
+  /**
+   * Replaces the default limit of {@value #DEFAULT_CONNECTION_RATE_LIMIT} connections per second
+   * with a schedule, evaluated in seconds since the first connection, or with no limit if null.
+   */
+  public static synchronized void setRamp(RateSchedule schedule) {
+    ramp = schedule;
+    rampConfigured = true;
+    rampStartNs = -1;
+    rateLimiter = null;
+  }
+
+  /** A copy of the connect times recorded so far. */
+  public static LatencyHistogram getConnectTimes() {
+    synchronized (CONNECT_TIMES) {
+      return CONNECT_TIMES.copy();
+    }
+  }
+
   public static Connection makeConnectionWithRetry(BenchmarkModule benchmark) {
     int attempts = 0;
     while (attempts <= benchmark.getWorkloadConfiguration().getMaxRetries()) {
+      ConnectEvent event = new ConnectEvent();
+      event.begin();
       try {
-        getRateLimiter().acquire();
+        acquirePermit();
+        long start = System.nanoTime();
         Connection newConnection = benchmark.makeConnection();
+        recordConnectTime(start);
+        commitEvent(event, attempts, true);
         return newConnection;
       } catch (Exception e) {
+        commitEvent(event, attempts, false);
         attempts++;
         if (attempts >= benchmark.getWorkloadConfiguration().getMaxRetries()) {
           throw new RuntimeException("Connection establishment attempts exhausted", e);
@@ -42,6 +78,36 @@ public class ConnectionUtil {
     return null;
   }
 
+  /**
+   * Makes a single attempt to connect to the given endpoint, subject to the same rate limit as
+   * {@link #makeConnectionWithRetry(BenchmarkModule)}. Retrying, possibly on another endpoint, is
+   * left to the caller.
+   */
+  public static Connection makeConnection(BenchmarkModule benchmark, String url)
+      throws SQLException {
+    ConnectEvent event = new ConnectEvent();
+    event.begin();
+    acquirePermit();
+    try {
+      long start = System.nanoTime();
+      Connection newConnection = benchmark.makeConnection(url);
+      recordConnectTime(start);
+      commitEvent(event, 0, true);
+      return newConnection;
+    } catch (SQLException e) {
+      commitEvent(event, 0, false);
+      throw e;
+    }
+  }
+
+  private static void commitEvent(ConnectEvent event, int attempts, boolean success) {
+    if (event.shouldCommit()) {
+      event.attempt = attempts + 1;
+      event.success = success;
+      event.commit();
+    }
+  }
+
   private static long calExpDelay(int attempts) {
     long baseDelay = 1000; // in milliseconds
     double jitterFactor = 1.0;
@@ -53,9 +119,38 @@ public class ConnectionUtil {
     return delay;
   }
 
+  private static void recordConnectTime(long startNs) {
+    synchronized (CONNECT_TIMES) {
+      CONNECT_TIMES.record((System.nanoTime() - startNs) / 1000);
+    }
+  }
+
+  private static void acquirePermit() {
+    RateLimiter limiter = getRateLimiter();
+    if (limiter != null) {
+      limiter.acquire();
+    }
+  }
+
   private static synchronized RateLimiter getRateLimiter() {
+    if (!rampConfigured) {
+      if (rateLimiter == null) {
+        rateLimiter = RateLimiter.create(DEFAULT_CONNECTION_RATE_LIMIT);
+      }
+      return rateLimiter;
+    }
+    if (ramp == null) {
+      return null;
+    }
+    long now = System.nanoTime();
+    if (rampStartNs < 0) {
+      rampStartNs = now;
+    }
+    double rate = ramp.getRate((now - rampStartNs) / 1e9);
     if (rateLimiter == null) {
-      rateLimiter = RateLimiter.create(DEFAULT_CONNECTION_RATE_LIMIT);
+      rateLimiter = RateLimiter.create(rate);
+    } else if (rateLimiter.getRate() != rate) {
+      rateLimiter.setRate(rate);
     }
     return rateLimiter;
   }
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.util;
+
+import com.oltpbenchmark.api.TransactionType;
+import com.oltpbenchmark.types.TransactionStatus;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Counts of failed transaction attempts per second of the measurement, transaction type, outcome
+ * and (SQLSTATE, vendor error code). Each worker counts into its own instance without locking; the
+ * instances are merged with {@link #add(ErrorCounts)} once the workers are done.
+ *
+ * <p>Errors come in bursts, so recording one must not allocate. Every instance numbers the
+ * transaction types and the (SQLSTATE, vendor code) pairs it has seen, and packs the second, the
+ * number of the type, the status and the number of the error into one {@code long} key of an
+ * open-addressing map. {@link Entry} objects are only built when the counts are read or merged.
+ */
+public final class ErrorCounts {
+
+  /** One row of the error time series. */
+  public static final class Entry {
+    private final int second;
+    private final TransactionType type;
+    private final TransactionStatus status;
+    private final String sqlState;
+    private final int errorCode;
+
+    Entry(
+        int second,
+        TransactionType type,
+        TransactionStatus status,
+        String sqlState,
+        int errorCode) {
+      this.second = second;
+      this.type = type;
+      this.status = status;
+      this.sqlState = sqlState;
+      this.errorCode = errorCode;
+    }
+
+    /** Seconds since the measurement started. */
+    public int getSecond() {
+      return second;
+    }
+
+    public TransactionType getType() {
+      return type;
+    }
+
+    public TransactionStatus getStatus() {
+      return status;
+    }
+
+    /** The SQLSTATE of the error, an empty string if the driver did not report one. */
+    public String getSqlState() {
+      return sqlState;
+    }
+
+    public int getErrorCode() {
+      return errorCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry that = (Entry) o;
+      return second == that.second
+          && errorCode == that.errorCode
+          && status == that.status
+          && type.equals(that.type)
+          && sqlState.equals(that.sqlState);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(second, type, status, sqlState, errorCode);
+    }
+  }
+
+  private static final Comparator<Entry> ORDER =
+      Comparator.comparingInt(Entry::getSecond)
+          .thenComparing(Entry::getType)
+          .thenComparing(Entry::getStatus)
+          .thenComparing(Entry::getSqlState)
+          .thenComparingInt(Entry::getErrorCode);
+
+  private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+
+  /** Bits of the key: 32 for the second, 12 for the type, 4 for the status, 16 for the error. */
+  private static final int TYPE_SHIFT = 20;
+
+  private static final int STATUS_SHIFT = 16;
+  private static final int MAX_TYPES = 1 << 12;
+  private static final int MAX_ERRORS = 1 << 16;
+
+  /** Marks a free slot; keys are never negative because the second is not. */
+  private static final long FREE = -1L;
+
+  /** The transaction types seen so far, numbered by their index. */
+  private final List<TransactionType> types = new ArrayList<>();
+
+  /** The (SQLSTATE, vendor code) pairs seen so far, numbered by their index. */
+  private String[] sqlStates = new String[8];
+
+  private int[] errorCodes = new int[8];
+  private int errors = 0;
+
+  private long[] keys = freeKeys(64);
+  private long[] counts = new long[64];
+  private int size = 0;
+
+  /** Counts one failed attempt. Only the owning worker may call this. */
+  public void record(
+      int second, TransactionType type, TransactionStatus status, String sqlState, int errorCode) {
+    if (second < 0) {
+      throw new IllegalArgumentException("Negative second " + second);
+    }
+    String state = sqlState == null ? "" : sqlState;
+    increment(key(second, typeNumber(type), status, errorNumber(state, errorCode)), 1);
+  }
+
+  private static long key(int second, int type, TransactionStatus status, int error) {
+    return ((long) second << 32)
+        | ((long) type << TYPE_SHIFT)
+        | ((long) status.ordinal() << STATUS_SHIFT)
+        | error;
+  }
+
+  /** A worker runs a handful of transaction types, so they are found by a linear scan. */
+  private int findType(TransactionType type) {
+    for (int i = 0; i < types.size(); i++) {
+      if (types.get(i).equals(type)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int typeNumber(TransactionType type) {
+    int number = findType(type);
+    if (number >= 0) {
+      return number;
+    }
+    if (types.size() == MAX_TYPES) {
+      throw new IllegalStateException("More than " + MAX_TYPES + " transaction types");
+    }
+    types.add(type);
+    return types.size() - 1;
+  }
+
+  /** Only a few distinct errors occur in a run, so they are found by a linear scan. */
+  private int findError(String sqlState, int errorCode) {
+    for (int i = 0; i < errors; i++) {
+      if (errorCodes[i] == errorCode && sqlStates[i].equals(sqlState)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int errorNumber(String sqlState, int errorCode) {
+    int number = findError(sqlState, errorCode);
+    if (number >= 0) {
+      return number;
+    }
+    if (errors == MAX_ERRORS) {
+      throw new IllegalStateException("More than " + MAX_ERRORS + " distinct errors");
+    }
+    if (errors == sqlStates.length) {
+      sqlStates = Arrays.copyOf(sqlStates, errors * 2);
+      errorCodes = Arrays.copyOf(errorCodes, errors * 2);
+    }
+    sqlStates[errors] = sqlState;
+    errorCodes[errors] = errorCode;
+    return errors++;
+  }
+
+  private static long[] freeKeys(int length) {
+    long[] keys = new long[length];
+    Arrays.fill(keys, FREE);
+    return keys;
+  }
+
+  /** The slot that holds the key, or the free slot where it belongs. */
+  private int slot(long key) {
+    int mask = keys.length - 1;
+    long hash = key * 0x9E3779B97F4A7C15L;
+    int slot = (int) (hash ^ (hash >>> 32)) & mask;
+    while (keys[slot] != FREE && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void increment(long key, long count) {
+    int slot = slot(key);
+    if (keys[slot] == FREE) {
+      if (2 * (size + 1) > keys.length) {
+        grow();
+        slot = slot(key);
+      }
+      keys[slot] = key;
+      size++;
+    }
+    counts[slot] += count;
+  }
+
+  private void grow() {
+    long[] oldKeys = keys;
+    long[] oldCounts = counts;
+    keys = freeKeys(oldKeys.length * 2);
+    counts = new long[oldKeys.length * 2];
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != FREE) {
+        int slot = slot(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        counts[slot] = oldCounts[i];
+      }
+    }
+  }
+
+  private Entry entry(long key) {
+    int error = (int) key & (MAX_ERRORS - 1);
+    return new Entry(
+        (int) (key >>> 32),
+        types.get((int) (key >>> TYPE_SHIFT) & (MAX_TYPES - 1)),
+        STATUSES[(int) (key >>> STATUS_SHIFT) & 0xF],
+        sqlStates[error],
+        errorCodes[error]);
+  }
+
+  /** Adds the counts of another instance, which must no longer be written to. */
+  public synchronized void add(ErrorCounts other) {
+    for (int i = 0; i < other.keys.length; i++) {
+      if (other.keys[i] != FREE) {
+        Entry e = other.entry(other.keys[i]);
+        int type = typeNumber(e.type);
+        int error = errorNumber(e.sqlState, e.errorCode);
+        increment(key(e.second, type, e.status, error), other.counts[i]);
+      }
+    }
+  }
+
+  public synchronized boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** The rows ordered by time, transaction type, outcome and error. */
+  public synchronized List<Entry> getEntries() {
+    List<Entry> entries = new ArrayList<>(size);
+    for (long key : keys) {
+      if (key != FREE) {
+        entries.add(entry(key));
+      }
+    }
+    entries.sort(ORDER);
+    return entries;
+  }
+
+  public synchronized long getCount(Entry entry) {
+    int type = findType(entry.type);
+    int error = findError(entry.sqlState, entry.errorCode);
+    if (type < 0 || error < 0) {
+      return 0;
+    }
+    int slot = slot(key(entry.second, type, entry.status, error));
+    return keys[slot] == FREE ? 0 : counts[slot];
+  }
+}
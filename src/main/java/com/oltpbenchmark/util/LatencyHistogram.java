@@ -0,0 +1,243 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.util;
+
+import com.oltpbenchmark.DistributionStatistics;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size log-linear histogram of non-negative values (usually microseconds).
+ *
+ * <p>Each power of two is split into {@value #HALF_SUB_BUCKETS} linear sub-buckets, so reported
+ * percentiles are within ~3% of the recorded value. Values larger than {@link Integer#MAX_VALUE}
+ * are clamped into the last bucket.
+ *
+ * <p>A histogram has a single writer: {@link #record(long)} uses ordered stores instead of CAS or
+ * locks, so it must only be called from the owning thread. Any other thread may read it at any
+ * time, typically through {@link #copy()} and {@link #minus(LatencyHistogram)} to compute interval
+ * deltas without resetting the writer's counters.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+  private static final long MAX_TRACKABLE_VALUE = Integer.MAX_VALUE;
+
+  private static final int BUCKET_COUNT = bucketIndex(MAX_TRACKABLE_VALUE) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /** Record a single value. Only the owning thread may call this. */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    } else if (value > MAX_TRACKABLE_VALUE) {
+      value = MAX_TRACKABLE_VALUE;
+    }
+    int idx = bucketIndex(value);
+    counts.lazySet(idx, counts.get(idx) + 1);
+    sum.lazySet(sum.get() + value);
+    if (value > max.get()) {
+      max.lazySet(value);
+    }
+    count.lazySet(count.get() + 1);
+  }
+
+  /** Adds all the values of another histogram into this one. */
+  public synchronized void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long c = other.counts.get(i);
+      if (c != 0) {
+        counts.addAndGet(i, c);
+      }
+    }
+    sum.addAndGet(other.sum.get());
+    count.addAndGet(other.count.get());
+    max.accumulateAndGet(other.max.get(), Math::max);
+  }
+
+  /** Returns a point-in-time copy of this histogram. */
+  public LatencyHistogram copy() {
+    LatencyHistogram snapshot = new LatencyHistogram();
+    snapshot.add(this);
+    return snapshot;
+  }
+
+  /**
+   * Returns the values recorded in this histogram but not in {@code prior}, which must be an
+   * earlier {@link #copy()} of this histogram. The maximum is approximated by the upper bound of
+   * the highest non-empty bucket.
+   */
+  public LatencyHistogram minus(LatencyHistogram prior) {
+    LatencyHistogram delta = new LatencyHistogram();
+    long highest = -1;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long c = counts.get(i) - prior.counts.get(i);
+      if (c > 0) {
+        delta.counts.set(i, c);
+        highest = i;
+      }
+    }
+    delta.sum.set(sum.get() - prior.sum.get());
+    delta.count.set(count.get() - prior.count.get());
+    if (highest >= 0) {
+      delta.max.set(Math.min(max.get(), bucketUpperBound((int) highest)));
+    }
+    return delta;
+  }
+
+  /** Writes the non-empty buckets of this histogram so it can be merged in another process. */
+  public synchronized void writeTo(DataOutput out) throws IOException {
+    int nonEmpty = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      if (counts.get(i) != 0) {
+        nonEmpty++;
+      }
+    }
+    out.writeLong(count.get());
+    out.writeLong(sum.get());
+    out.writeLong(max.get());
+    out.writeInt(nonEmpty);
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long c = counts.get(i);
+      if (c != 0) {
+        out.writeInt(i);
+        out.writeLong(c);
+      }
+    }
+  }
+
+  /** Reads a histogram written by {@link #writeTo(DataOutput)}. */
+  public static LatencyHistogram readFrom(DataInput in) throws IOException {
+    LatencyHistogram h = new LatencyHistogram();
+    h.count.set(in.readLong());
+    h.sum.set(in.readLong());
+    h.max.set(in.readLong());
+    int nonEmpty = in.readInt();
+    for (int n = 0; n < nonEmpty; n++) {
+      int idx = in.readInt();
+      if (idx < 0 || idx >= BUCKET_COUNT) {
+        throw new IOException("Invalid histogram bucket " + idx);
+      }
+      h.counts.set(idx, in.readLong());
+    }
+    return h;
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public double getMean() {
+    long n = count.get();
+    return n == 0 ? 0 : (double) sum.get() / n;
+  }
+
+  public long getMaximum() {
+    return max.get();
+  }
+
+  /**
+   * Returns the value at the given percentile.
+   *
+   * @param percentile a fraction between 0.0 and 1.0
+   * @return the lower bound of the bucket holding that percentile, or 0 if empty
+   */
+  public long getValueAtPercentile(double percentile) {
+    long n = count.get();
+    if (n == 0) {
+      return 0;
+    }
+    // Same "closest rank" selection as DistributionStatistics
+    long rank = Math.min((long) (percentile * n), n - 1);
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts.get(i);
+      if (seen > rank) {
+        return Math.min(bucketLowerBound(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /** Converts this histogram into the format used for the result summaries. */
+  public DistributionStatistics toDistributionStatistics() {
+    long n = count.get();
+    if (n == 0) {
+      return DistributionStatistics.computeStatistics(new int[0]);
+    }
+    double mean = getMean();
+    double sumDiffsSquared = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long c = counts.get(i);
+      if (c != 0) {
+        double v = (bucketLowerBound(i) + bucketUpperBound(i)) / 2.0 - mean;
+        sumDiffsSquared += v * v * c;
+      }
+    }
+    long[] percentiles = {
+      getValueAtPercentile(0.0),
+      getValueAtPercentile(0.25),
+      getValueAtPercentile(0.5),
+      getValueAtPercentile(0.75),
+      getValueAtPercentile(0.9),
+      getValueAtPercentile(0.95),
+      getValueAtPercentile(0.99),
+      getMaximum()
+    };
+    double stddev = n > 1 ? Math.sqrt(sumDiffsSquared / (n - 1)) : 0;
+    return new DistributionStatistics(
+        (int) Math.min(n, Integer.MAX_VALUE), percentiles, mean, stddev);
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+    return SUB_BUCKETS
+        + (shift - 1) * HALF_SUB_BUCKETS
+        + (int) ((value >> shift) - HALF_SUB_BUCKETS);
+  }
+
+  static long bucketLowerBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+    long mantissa = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+    return mantissa << shift;
+  }
+
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+    long mantissa = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+    return ((mantissa + 1) << shift) - 1;
+  }
+}
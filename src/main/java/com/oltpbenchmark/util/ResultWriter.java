@@ -17,13 +17,24 @@
 
 package com.oltpbenchmark.util;
 
+import com.oltpbenchmark.ConcurrencySweep;
+import com.oltpbenchmark.ConfidenceStopRule;
 import com.oltpbenchmark.DistributionStatistics;
+import com.oltpbenchmark.FaultInjection;
 import com.oltpbenchmark.LatencyRecord;
+import com.oltpbenchmark.RateSearch;
 import com.oltpbenchmark.Results;
+import com.oltpbenchmark.RuntimeControl;
+import com.oltpbenchmark.SteadyStateDetector;
 import com.oltpbenchmark.ThreadBench;
+import com.oltpbenchmark.api.CircuitBreaker;
+import com.oltpbenchmark.api.ConnectionRotation;
+import com.oltpbenchmark.api.StatementProfiler;
 import com.oltpbenchmark.api.TransactionType;
 import com.oltpbenchmark.api.collectors.DBParameterCollector;
 import com.oltpbenchmark.api.collectors.DBParameterCollectorGen;
+import com.oltpbenchmark.distributed.AgentReport;
+import com.oltpbenchmark.proxy.LatencyProxy;
 import com.oltpbenchmark.types.DatabaseType;
 import java.io.PrintStream;
 import java.util.*;
@@ -101,9 +112,360 @@ public class ResultWriter {
     summaryMap.put("Latency Distribution", results.getDistributionStatistics().toMap());
     summaryMap.put("Throughput (requests/second)", results.requestsPerSecondThroughput());
     summaryMap.put("Goodput (requests/second)", results.requestsPerSecondGoodput());
+    LatencyHistogram scheduleError = results.getScheduleError();
+    if (scheduleError.getCount() > 0) {
+      Map<String, Object> injectorMap = new LinkedHashMap<>();
+      injectorMap.put("Ticks", scheduleError.getCount());
+      injectorMap.put("Average Schedule Error (microseconds)", scheduleError.getMean());
+      injectorMap.put(
+          "99th Percentile Schedule Error (microseconds)",
+          scheduleError.getValueAtPercentile(0.99));
+      injectorMap.put("Maximum Schedule Error (microseconds)", scheduleError.getMaximum());
+      summaryMap.put("Rate Injector", injectorMap);
+    }
+    LatencyHistogram attempts = results.getCommitAttempts();
+    if (attempts.getMaximum() > 1 || results.getBackoffs().getCount() > 0) {
+      Map<String, Object> retryMap = new LinkedHashMap<>();
+      retryMap.put("Average Attempts per Commit", attempts.getMean());
+      retryMap.put("99th Percentile Attempts per Commit", attempts.getValueAtPercentile(0.99));
+      retryMap.put("Maximum Attempts per Commit", attempts.getMaximum());
+      Map<String, Integer> causes = new TreeMap<>();
+      for (String cause : results.getRetryCauses().values()) {
+        causes.put(cause, results.getRetryCauses().get(cause));
+      }
+      retryMap.put("Retries by Cause", causes);
+      LatencyHistogram backoffs = results.getBackoffs();
+      retryMap.put("Backoffs", backoffs.getCount());
+      retryMap.put(
+          "Total Backoff Time (milliseconds)",
+          backoffs.getMean() * backoffs.getCount() / MILLISECONDS_FACTOR);
+      retryMap.put("Maximum Backoff (milliseconds)", backoffs.getMaximum() / MILLISECONDS_FACTOR);
+      summaryMap.put("Retries", retryMap);
+    }
+    if (results.hasTrace()) {
+      LatencyHistogram lateness = results.getTraceLateness();
+      Map<String, Object> traceMap = new LinkedHashMap<>();
+      traceMap.put("Injected Requests", results.getTraceInjected());
+      traceMap.put("Dropped Requests", results.getTraceDropped());
+      traceMap.put("Average Lateness (microseconds)", lateness.getMean());
+      traceMap.put("Median Lateness (microseconds)", lateness.getValueAtPercentile(0.5));
+      traceMap.put("95th Percentile Lateness (microseconds)", lateness.getValueAtPercentile(0.95));
+      traceMap.put("99th Percentile Lateness (microseconds)", lateness.getValueAtPercentile(0.99));
+      traceMap.put("Maximum Lateness (microseconds)", lateness.getMaximum());
+      summaryMap.put("Trace Replay", traceMap);
+    }
+    if (!results.getProxyConnections().isEmpty()) {
+      long bytesUp = 0;
+      long bytesDown = 0;
+      long roundTrips = 0;
+      for (LatencyProxy.ConnectionStats conn : results.getProxyConnections()) {
+        bytesUp += conn.getBytesUp();
+        bytesDown += conn.getBytesDown();
+        roundTrips += conn.getRoundTrips();
+      }
+      Map<String, Object> proxyMap = new LinkedHashMap<>();
+      proxyMap.put("Connections", results.getProxyConnections().size());
+      proxyMap.put("Bytes Sent", bytesUp);
+      proxyMap.put("Bytes Received", bytesDown);
+      proxyMap.put("Round Trips", roundTrips);
+      summaryMap.put("Latency Proxy", proxyMap);
+    }
+    if (!results.getEndpointLatencies().isEmpty()) {
+      double seconds = results.getNanoseconds() / 1e9;
+      Map<String, Object> endpointsMap = new LinkedHashMap<>();
+      for (Map.Entry<String, LatencyHistogram> e : results.getEndpointLatencies().entrySet()) {
+        LatencyHistogram latencies = e.getValue();
+        Map<String, Object> endpointMap = new LinkedHashMap<>();
+        endpointMap.put("Measured Requests", latencies.getCount());
+        endpointMap.put("Throughput (requests/second)", latencies.getCount() / seconds);
+        endpointMap.put("Average Latency (microseconds)", latencies.getMean());
+        endpointMap.put(
+            "99th Percentile Latency (microseconds)", latencies.getValueAtPercentile(0.99));
+        endpointMap.put(
+            "Times Marked Down", results.getEndpointMarkedDown().getOrDefault(e.getKey(), 0L));
+        endpointsMap.put(e.getKey(), endpointMap);
+      }
+      summaryMap.put("Endpoints", endpointsMap);
+    }
+    if (results.getConnectTimes().getCount() > 0) {
+      LatencyHistogram connectTimes = results.getConnectTimes();
+      Map<String, Object> connectMap = new LinkedHashMap<>();
+      connectMap.put("Opened", connectTimes.getCount());
+      connectMap.put(
+          "Median Connect Time (milliseconds)",
+          connectTimes.getValueAtPercentile(0.5) / MILLISECONDS_FACTOR);
+      connectMap.put(
+          "99th Percentile Connect Time (milliseconds)",
+          connectTimes.getValueAtPercentile(0.99) / MILLISECONDS_FACTOR);
+      connectMap.put(
+          "Maximum Connect Time (milliseconds)", connectTimes.getMaximum() / MILLISECONDS_FACTOR);
+      summaryMap.put("Connections", connectMap);
+    }
+    if (!results.getOutages().isEmpty()) {
+      List<Map<String, Object>> outages = new ArrayList<>();
+      for (CircuitBreaker.Outage outage : results.getOutages()) {
+        outages.add(outage.toMap());
+      }
+      summaryMap.put("Outages", outages);
+    }
+    if (!results.getConnectionRotations().isEmpty()) {
+      LatencyHistogram connectTimes = new LatencyHistogram();
+      int failed = 0;
+      for (ConnectionRotation.Event rotation : results.getConnectionRotations()) {
+        if (rotation.isSuccess()) {
+          connectTimes.record(rotation.getConnectUs());
+        } else {
+          failed++;
+        }
+      }
+      Map<String, Object> rotationMap = new LinkedHashMap<>();
+      rotationMap.put("Rotations", connectTimes.getCount());
+      rotationMap.put("Failed Replacements", failed);
+      rotationMap.put(
+          "Average Replacement Connect Time (milliseconds)",
+          connectTimes.getMean() / MILLISECONDS_FACTOR);
+      rotationMap.put(
+          "Maximum Replacement Connect Time (milliseconds)",
+          connectTimes.getMaximum() / MILLISECONDS_FACTOR);
+      summaryMap.put("Connection Rotation", rotationMap);
+    }
+    if (results.getClientMonitor() != null) {
+      summaryMap.put("Client", results.getClientMonitor().toMap());
+    }
+    if (!results.getRateSearches().isEmpty()) {
+      List<Map<String, Object>> searches = new ArrayList<>();
+      for (RateSearch search : results.getRateSearches()) {
+        searches.add(search.toMap());
+      }
+      summaryMap.put("Rate Search", searches);
+    }
+    if (!results.getStopRules().isEmpty()) {
+      List<Map<String, Object>> stopRules = new ArrayList<>();
+      for (ConfidenceStopRule stopRule : results.getStopRules()) {
+        stopRules.add(stopRule.toMap());
+      }
+      summaryMap.put("Stop Rule", stopRules);
+    }
+    if (!results.getWarmups().isEmpty()) {
+      List<Map<String, Object>> warmups = new ArrayList<>();
+      for (SteadyStateDetector warmup : results.getWarmups()) {
+        warmups.add(warmup.toMap());
+      }
+      summaryMap.put("Adaptive Warmup", warmups);
+    }
+    if (!results.getSweeps().isEmpty()) {
+      List<Map<String, Object>> sweeps = new ArrayList<>();
+      for (ConcurrencySweep sweep : results.getSweeps()) {
+        sweeps.add(sweep.toMap());
+      }
+      summaryMap.put("Concurrency Sweep", sweeps);
+    }
+    if (!results.getControlEvents().isEmpty()) {
+      List<Map<String, Object>> events = new ArrayList<>();
+      for (RuntimeControl.Event event : results.getControlEvents()) {
+        events.add(event.toMap());
+      }
+      summaryMap.put("Runtime Control", events);
+    }
+    if (!results.getFaults().isEmpty()) {
+      List<Map<String, Object>> faults = new ArrayList<>();
+      for (FaultInjection fault : results.getFaults()) {
+        faults.add(fault.toMap());
+      }
+      summaryMap.put("Fault Injection", faults);
+    }
     os.println(JSONUtil.format(JSONUtil.toJSONString(summaryMap)));
   }
 
+  /** Writes one line per agent of a distributed run. */
+  public static void writeAgents(List<AgentReport> reports, PrintStream out) {
+    String[] header = {
+      "Agent",
+      "Final State",
+      "Measured Requests",
+      "Throughput (requests/second)",
+      "Average Latency (millisecond)",
+      "Median Latency (millisecond)",
+      "99th Percentile Latency (millisecond)",
+      "Maximum Latency (millisecond)"
+    };
+    out.println(StringUtil.join(",", header));
+    for (AgentReport report : reports) {
+      LatencyHistogram latencies = report.getLatencies();
+      out.printf(
+          "%d,%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f\n",
+          report.getAgentId(),
+          report.getState(),
+          report.getMeasuredRequests(),
+          report.requestsPerSecondThroughput(),
+          latencies.getMean() / MILLISECONDS_FACTOR,
+          latencies.getValueAtPercentile(0.5) / MILLISECONDS_FACTOR,
+          latencies.getValueAtPercentile(0.99) / MILLISECONDS_FACTOR,
+          latencies.getMaximum() / MILLISECONDS_FACTOR);
+    }
+  }
+
+  /**
+   * Writes the failed attempts per window, transaction type, outcome and error, with the same
+   * windows as {@link #writeResults(int, PrintStream)}.
+   */
+  public void writeErrors(int windowSizeSeconds, PrintStream out) {
+    String[] header = {
+      "Time (seconds)", "Transaction Type", "Status", "SQLSTATE", "Vendor Code", "Count"
+    };
+    out.println(StringUtil.join(",", header));
+    ErrorCounts errors = results.getErrorCounts();
+    Map<String, Long> window = new TreeMap<>();
+    int windowStart = -1;
+    for (ErrorCounts.Entry e : errors.getEntries()) {
+      int start = e.getSecond() / windowSizeSeconds * windowSizeSeconds;
+      if (start != windowStart) {
+        writeErrorWindow(windowStart, window, out);
+        windowStart = start;
+      }
+      String key =
+          String.join(
+              ",",
+              e.getType().getName(),
+              e.getStatus().name(),
+              e.getSqlState(),
+              Integer.toString(e.getErrorCode()));
+      window.merge(key, errors.getCount(e), Long::sum);
+    }
+    writeErrorWindow(windowStart, window, out);
+  }
+
+  private static void writeErrorWindow(int start, Map<String, Long> window, PrintStream out) {
+    for (Map.Entry<String, Long> e : window.entrySet()) {
+      out.printf("%d,%s,%d\n", start, e.getKey(), e.getValue());
+    }
+    window.clear();
+  }
+
+  /** Writes one line per connection through the latency proxy. */
+  public void writeProxyConnections(PrintStream out) {
+    String[] header = {
+      "Connection", "Opened (millisecond)", "Bytes Sent", "Bytes Received", "Round Trips"
+    };
+    out.println(StringUtil.join(",", header));
+    for (LatencyProxy.ConnectionStats conn : results.getProxyConnections()) {
+      out.printf(
+          "%d,%d,%d,%d,%d\n",
+          conn.getId(),
+          conn.getOpenedMs(),
+          conn.getBytesUp(),
+          conn.getBytesDown(),
+          conn.getRoundTrips());
+    }
+  }
+
+  /** Writes one line per replacement of a worker connection. */
+  public void writeConnectionRotations(PrintStream out) {
+    String[] header = {
+      "Time (millisecond)",
+      "Worker",
+      "Endpoint",
+      "Age (millisecond)",
+      "Connect Time (microseconds)",
+      "Success"
+    };
+    out.println(StringUtil.join(",", header));
+    for (ConnectionRotation.Event rotation : results.getConnectionRotations()) {
+      out.printf(
+          "%d,%d,%s,%d,%d,%b\n",
+          rotation.getTimeMs(),
+          rotation.getWorker(),
+          rotation.getEndpoint(),
+          rotation.getAgeMs(),
+          rotation.getConnectUs(),
+          rotation.isSuccess());
+    }
+  }
+
+  /** Writes one line per step of every concurrency sweep. */
+  public void writeSweeps(PrintStream out) {
+    String[] header = {
+      "Terminals",
+      "Throughput (requests/second)",
+      "Average Latency (millisecond)",
+      "Median Latency (millisecond)",
+      "95th Percentile Latency (millisecond)",
+      "99th Percentile Latency (millisecond)",
+      "Maximum Latency (millisecond)",
+      "Model Throughput (requests/second)"
+    };
+    out.println(StringUtil.join(",", header));
+    for (ConcurrencySweep sweep : results.getSweeps()) {
+      UniversalScalabilityLaw model = sweep.getModel();
+      for (ConcurrencySweep.Step step : sweep.getSteps()) {
+        LatencyHistogram latencies = step.getLatencies();
+        out.printf(
+            "%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%s\n",
+            step.getTerminals(),
+            step.getThroughput(),
+            latencies.getMean() / MILLISECONDS_FACTOR,
+            latencies.getValueAtPercentile(0.5) / MILLISECONDS_FACTOR,
+            latencies.getValueAtPercentile(0.95) / MILLISECONDS_FACTOR,
+            latencies.getValueAtPercentile(0.99) / MILLISECONDS_FACTOR,
+            latencies.getMaximum() / MILLISECONDS_FACTOR,
+            model == null ? "" : String.format("%.3f", model.predict(step.getTerminals())));
+      }
+    }
+  }
+
+  /** Writes the committed and failed attempts in every second of each phase with a fault. */
+  public void writeFaults(PrintStream out) {
+    String[] header = {"Phase", "Second", "Successes", "Errors"};
+    out.println(StringUtil.join(",", header));
+    for (FaultInjection fault : results.getFaults()) {
+      long[] successes = fault.getSuccesses();
+      long[] errors = fault.getErrors();
+      for (int i = 0; i < successes.length; i++) {
+        out.printf("%d,%d,%d,%d\n", fault.getPhaseId(), i, successes[i], errors[i]);
+      }
+    }
+  }
+
+  /** Writes one line per operation of every profiled statement, grouped by procedure. */
+  public void writeStatements(PrintStream out) {
+    String[] header = {
+      "Procedure",
+      "Statement",
+      "Operation",
+      "Count",
+      "Total Time (millisecond)",
+      "Average Latency (millisecond)",
+      "Median Latency (millisecond)",
+      "95th Percentile Latency (millisecond)",
+      "99th Percentile Latency (millisecond)",
+      "Maximum Latency (millisecond)"
+    };
+    out.println(StringUtil.join(",", header));
+    StatementProfiler profile = results.getStatementProfile();
+    for (String procedure : profile.getProcedures()) {
+      for (String statement : profile.getStatements(procedure)) {
+        for (StatementProfiler.Operation operation : StatementProfiler.Operation.values()) {
+          LatencyHistogram h = profile.getHistogram(procedure, statement, operation);
+          if (h == null) {
+            continue;
+          }
+          out.printf(
+              "%s,%s,%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f\n",
+              procedure,
+              statement,
+              operation.name().toLowerCase(),
+              h.getCount(),
+              h.getMean() * h.getCount() / MILLISECONDS_FACTOR,
+              h.getMean() / MILLISECONDS_FACTOR,
+              h.getValueAtPercentile(0.5) / MILLISECONDS_FACTOR,
+              h.getValueAtPercentile(0.95) / MILLISECONDS_FACTOR,
+              h.getValueAtPercentile(0.99) / MILLISECONDS_FACTOR,
+              h.getMaximum() / MILLISECONDS_FACTOR);
+        }
+      }
+    }
+  }
+
   public void writeResults(int windowSizeSeconds, PrintStream out) {
     writeResults(windowSizeSeconds, out, TransactionType.INVALID);
   }
@@ -123,13 +485,20 @@ public class ResultWriter {
       "Maximum Latency (millisecond)",
       "tp (req/s) scaled"
     };
-    out.println(StringUtil.join(",", header));
+    // Timeline metrics are appended as extra columns, aggregated over each window
+    Timeline timeline = results.getTimeline();
+    List<String> metrics = timeline.getMetrics();
+    List<String> columns = new ArrayList<>(Arrays.asList(header));
+    columns.addAll(metrics);
+    out.println(StringUtil.join(",", columns));
+    Iterator<LatencyRecord.Sample> first = results.getLatencySamples().iterator();
+    long firstStartNs = first.hasNext() ? first.next().getStartNanosecond() : 0;
     int i = 0;
     for (DistributionStatistics s :
         new ThreadBench.TimeBucketIterable(
             results.getLatencySamples(), windowSizeSeconds, txType)) {
       out.printf(
-          "%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f\n",
+          "%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f",
           i * windowSizeSeconds,
           (double) s.getCount() / windowSizeSeconds,
           s.getAverage() / MILLISECONDS_FACTOR,
@@ -142,6 +511,13 @@ public class ResultWriter {
           s.get99thPercentile() / MILLISECONDS_FACTOR,
           s.getMaximum() / MILLISECONDS_FACTOR,
           MILLISECONDS_FACTOR / s.getAverage());
+      long windowStartNs = firstStartNs + i * windowSizeSeconds * 1000000000L;
+      long windowEndNs = windowStartNs + windowSizeSeconds * 1000000000L;
+      for (String metric : metrics) {
+        double value = timeline.aggregate(metric, windowStartNs, windowEndNs);
+        out.print(Double.isNaN(value) ? "," : String.format(",%.3f", value));
+      }
+      out.println();
       i += 1;
     }
   }
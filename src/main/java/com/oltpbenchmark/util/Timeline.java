@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time series of run-level metrics (for example the target rate) recorded while a benchmark runs,
+ * so they can be reported next to the per-window latency results. Each metric is a step function:
+ * a recorded value holds until the next value of the same metric. Timestamps are {@link
+ * System#nanoTime()} values, like the start times of the latency samples.
+ */
+public final class Timeline {
+
+  public static final String TARGET_RATE = "Target Rate (requests/second)";
+
+  /** How the values of a metric are combined over a reporting window. */
+  public enum Aggregate {
+    /** Time-weighted average. */
+    AVERAGE,
+    /** Largest value in effect during the window. */
+    MAXIMUM,
+  }
+
+  private final Map<String, List<long[]>> series = new LinkedHashMap<>();
+  private final Map<String, Aggregate> aggregates = new HashMap<>();
+
+  /** Sets how a metric is combined over a window, {@link Aggregate#AVERAGE} by default. */
+  public synchronized void define(String metric, Aggregate aggregate) {
+    aggregates.put(metric, aggregate);
+  }
+
+  /** Records a new value of a metric. Repeated identical values are not stored. */
+  public synchronized void record(String metric, long nanoTime, double value) {
+    List<long[]> points = series.computeIfAbsent(metric, k -> new ArrayList<>());
+    long bits = Double.doubleToLongBits(value);
+    if (!points.isEmpty() && points.get(points.size() - 1)[1] == bits) {
+      return;
+    }
+    points.add(new long[] {nanoTime, bits});
+  }
+
+  /** The recorded metrics, in the order they were first recorded. */
+  public synchronized List<String> getMetrics() {
+    return new ArrayList<>(series.keySet());
+  }
+
+  public synchronized boolean isEmpty() {
+    return series.isEmpty();
+  }
+
+  /** Combines the values of a metric over {@code [startNs, endNs)} as defined for the metric. */
+  public synchronized double aggregate(String metric, long startNs, long endNs) {
+    if (aggregates.getOrDefault(metric, Aggregate.AVERAGE) == Aggregate.MAXIMUM) {
+      return maximum(metric, startNs, endNs);
+    }
+    return average(metric, startNs, endNs);
+  }
+
+  /**
+   * Returns the largest value of a metric in effect during {@code [startNs, endNs)}, ignoring NaN.
+   *
+   * @return the maximum, or NaN if the metric has no value in the window
+   */
+  public synchronized double maximum(String metric, long startNs, long endNs) {
+    List<long[]> points = series.get(metric);
+    if (points == null) {
+      return Double.NaN;
+    }
+    double max = Double.NaN;
+    for (int i = firstInWindow(points, startNs); i < points.size(); i++) {
+      if (points.get(i)[0] >= endNs) {
+        break;
+      }
+      long from = Math.max(points.get(i)[0], startNs);
+      long to = i + 1 < points.size() ? Math.min(points.get(i + 1)[0], endNs) : endNs;
+      double value = Double.longBitsToDouble(points.get(i)[1]);
+      if (to > from && !Double.isNaN(value) && (Double.isNaN(max) || value > max)) {
+        max = value;
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Returns the time-weighted average of a metric over {@code [startNs, endNs)}. Time before the
+   * first recorded value and NaN values do not count.
+   *
+   * @return the average, or NaN if the metric has no value in the window
+   */
+  public synchronized double average(String metric, long startNs, long endNs) {
+    List<long[]> points = series.get(metric);
+    if (points == null) {
+      return Double.NaN;
+    }
+    double weighted = 0;
+    long covered = 0;
+    for (int i = firstInWindow(points, startNs); i < points.size(); i++) {
+      if (points.get(i)[0] >= endNs) {
+        break;
+      }
+      long from = Math.max(points.get(i)[0], startNs);
+      long to = i + 1 < points.size() ? Math.min(points.get(i + 1)[0], endNs) : endNs;
+      double value = Double.longBitsToDouble(points.get(i)[1]);
+      if (to > from && !Double.isNaN(value)) {
+        weighted += value * (to - from);
+        covered += to - from;
+      }
+    }
+    return covered == 0 ? Double.NaN : weighted / covered;
+  }
+
+  /**
+   * Returns the index of the value in effect at {@code startNs}, or of the first value if there is
+   * none yet. Points are in recording order, so windows are aggregated in logarithmic time plus the
+   * points inside them.
+   */
+  private static int firstInWindow(List<long[]> points, long startNs) {
+    int low = 0;
+    int high = points.size() - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (points.get(mid)[0] - startNs <= 0) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Gunther's Universal Scalability Law, the throughput at concurrency {@code N}:
+ *
+ * <pre>
+ *   X(N) = lambda * N / (1 + sigma * (N - 1) + kappa * N * (N - 1))
+ * </pre>
+ *
+ * where {@code lambda} is the throughput of a single client, {@code sigma} the contention (the
+ * serialized fraction of the work) and {@code kappa} the coherency delay (the cost of keeping
+ * shared data consistent, which makes throughput fall beyond the peak).
+ *
+ * <p>The model is fitted by least squares on {@code N / X(N)}, which is linear in {@code 1 /
+ * lambda}, {@code sigma / lambda} and {@code kappa / lambda}. A coefficient that comes out negative
+ * is fixed at zero and the others are fitted again.
+ */
+public final class UniversalScalabilityLaw {
+  private final double lambda;
+  private final double sigma;
+  private final double kappa;
+  private final double rSquared;
+
+  private UniversalScalabilityLaw(double lambda, double sigma, double kappa, double rSquared) {
+    this.lambda = lambda;
+    this.sigma = sigma;
+    this.kappa = kappa;
+    this.rSquared = rSquared;
+  }
+
+  /**
+   * Fits the model to measured throughputs.
+   *
+   * @param concurrency the concurrency of each measurement
+   * @param throughput the throughput of each measurement
+   * @throws IllegalArgumentException with fewer than three distinct concurrencies or a throughput
+   *     that is not positive
+   */
+  public static UniversalScalabilityLaw fit(double[] concurrency, double[] throughput) {
+    if (concurrency.length != throughput.length) {
+      throw new IllegalArgumentException("Concurrency and throughput differ in length");
+    }
+    long distinct = Arrays.stream(concurrency).distinct().count();
+    if (distinct < 3) {
+      throw new IllegalArgumentException("Fitting needs at least three distinct concurrencies");
+    }
+    for (double x : throughput) {
+      if (!(x > 0)) {
+        throw new IllegalArgumentException("Fitting needs a positive throughput at every step");
+      }
+    }
+
+    double[] c = solve(concurrency, throughput, true, true);
+    if (c == null || c[2] < 0) {
+      c = solve(concurrency, throughput, true, false);
+    }
+    if (c == null || c[1] < 0) {
+      c = solve(concurrency, throughput, false, true);
+      if (c == null || c[2] < 0) {
+        c = solve(concurrency, throughput, false, false);
+      }
+    }
+    if (c == null || c[0] <= 0) {
+      throw new IllegalArgumentException("The throughput does not fit the model");
+    }
+    double lambda = 1 / c[0];
+    double sigma = c[1] / c[0];
+    double kappa = c[2] / c[0];
+
+    double mean = 0;
+    for (double x : throughput) {
+      mean += x;
+    }
+    mean /= throughput.length;
+    double residual = 0;
+    double total = 0;
+    for (int i = 0; i < throughput.length; i++) {
+      double predicted = predict(lambda, sigma, kappa, concurrency[i]);
+      residual += (throughput[i] - predicted) * (throughput[i] - predicted);
+      total += (throughput[i] - mean) * (throughput[i] - mean);
+    }
+    double rSquared = total == 0 ? 1 : 1 - residual / total;
+    return new UniversalScalabilityLaw(lambda, sigma, kappa, rSquared);
+  }
+
+  /**
+   * Least squares of {@code N / X = c0 + c1 * (N - 1) + c2 * N * (N - 1)} with the chosen terms.
+   *
+   * @return {@code {c0, c1, c2}} with the unused terms zero, or null if the system is singular
+   */
+  private static double[] solve(double[] n, double[] x, boolean contention, boolean coherency) {
+    int terms = 1 + (contention ? 1 : 0) + (coherency ? 1 : 0);
+    double[][] a = new double[terms][terms + 1];
+    for (int i = 0; i < n.length; i++) {
+      double[] row = new double[terms];
+      int k = 0;
+      row[k++] = 1;
+      if (contention) {
+        row[k++] = n[i] - 1;
+      }
+      if (coherency) {
+        row[k] = n[i] * (n[i] - 1);
+      }
+      double y = n[i] / x[i];
+      for (int r = 0; r < terms; r++) {
+        for (int s = 0; s < terms; s++) {
+          a[r][s] += row[r] * row[s];
+        }
+        a[r][terms] += row[r] * y;
+      }
+    }
+
+    // Gaussian elimination with partial pivoting
+    for (int col = 0; col < terms; col++) {
+      int pivot = col;
+      for (int r = col + 1; r < terms; r++) {
+        if (Math.abs(a[r][col]) > Math.abs(a[pivot][col])) {
+          pivot = r;
+        }
+      }
+      if (Math.abs(a[pivot][col]) < 1e-300) {
+        return null;
+      }
+      double[] tmp = a[col];
+      a[col] = a[pivot];
+      a[pivot] = tmp;
+      for (int r = 0; r < terms; r++) {
+        if (r != col) {
+          double f = a[r][col] / a[col][col];
+          for (int s = col; s <= terms; s++) {
+            a[r][s] -= f * a[col][s];
+          }
+        }
+      }
+    }
+
+    double[] result = new double[3];
+    int k = 0;
+    result[0] = a[k][terms] / a[k][k];
+    k++;
+    if (contention) {
+      result[1] = a[k][terms] / a[k][k];
+      k++;
+    }
+    if (coherency) {
+      result[2] = a[k][terms] / a[k][k];
+    }
+    return result;
+  }
+
+  private static double predict(double lambda, double sigma, double kappa, double n) {
+    return lambda * n / (1 + sigma * (n - 1) + kappa * n * (n - 1));
+  }
+
+  /** The throughput the model predicts at concurrency {@code n}. */
+  public double predict(double n) {
+    return predict(lambda, sigma, kappa, n);
+  }
+
+  /** Throughput of a single client. */
+  public double getLambda() {
+    return lambda;
+  }
+
+  /** The contention coefficient. */
+  public double getSigma() {
+    return sigma;
+  }
+
+  /** The coherency coefficient. */
+  public double getKappa() {
+    return kappa;
+  }
+
+  /** Fraction of the variance of the throughput the model explains. */
+  public double getRSquared() {
+    return rSquared;
+  }
+
+  /**
+   * The concurrency at which the throughput peaks, {@code sqrt((1 - sigma) / kappa)}.
+   *
+   * @return the peak, or infinity if the throughput never falls
+   */
+  public double getPeakConcurrency() {
+    if (kappa <= 0 || sigma >= 1) {
+      return sigma >= 1 ? 1 : Double.POSITIVE_INFINITY;
+    }
+    return Math.sqrt((1 - sigma) / kappa);
+  }
+
+  public Map<String, Object> toMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    double peak = getPeakConcurrency();
+    map.put("Lambda (requests/second)", lambda);
+    map.put("Contention (sigma)", sigma);
+    map.put("Coherency (kappa)", kappa);
+    map.put("R Squared", rSquared);
+    if (Double.isInfinite(peak)) {
+      map.put("Peak Concurrency", "unbounded");
+    } else {
+      map.put("Peak Concurrency", peak);
+      map.put("Peak Throughput (requests/second)", predict(peak));
+    }
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "lambda=%.2f, sigma=%.5f, kappa=%.6f, peak=%.1f",
+        lambda, sigma, kappa, getPeakConcurrency());
+  }
+}
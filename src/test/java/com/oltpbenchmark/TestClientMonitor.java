@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.oltpbenchmark.util.Timeline;
+import org.junit.Test;
+
+public class TestClientMonitor {
+
+  private static final long SECOND_NS = 1000000000L;
+
+  @Test
+  public void testSamplesOncePerSecond() {
+    Timeline timeline = new Timeline();
+    ClientMonitor monitor = new ClientMonitor(timeline, null);
+    monitor.sample(0, 0, true);
+    monitor.sample(SECOND_NS / 2, 0, true);
+    assertTrue(timeline.isEmpty());
+
+    monitor.sample(SECOND_NS, 0, true);
+    assertTrue(timeline.getMetrics().contains(ClientMonitor.CPU));
+    // Threads are only counted when there is a limit on them
+    assertFalse(timeline.getMetrics().contains(ClientMonitor.RUNNABLE_THREADS));
+    assertEquals(1, monitor.toMap().get("Samples"));
+    assertFalse(monitor.isSaturated());
+    assertFalse(monitor.shouldFail());
+  }
+
+  @Test
+  public void testLimits() {
+    ClientMonitor.Limits limits =
+        new ClientMonitor.Limits(ClientMonitor.Limits.Action.FAIL, 0, 0, 500, 0);
+    ClientMonitor monitor = new ClientMonitor(new Timeline(), limits);
+    monitor.sample(0, 1000, true);
+    monitor.sample(SECOND_NS, 100, true);
+    assertFalse(monitor.isSaturated());
+
+    // Seconds outside the measurement are recorded but not checked
+    monitor.sample(2 * SECOND_NS, 1000, false);
+    assertFalse(monitor.isSaturated());
+
+    monitor.sample(3 * SECOND_NS, 1000, true);
+    assertTrue(monitor.isSaturated());
+    assertTrue(monitor.shouldFail());
+    assertEquals(1, monitor.toMap().get("Saturated Seconds"));
+  }
+
+  @Test
+  public void testCountsThreadsOnlyWithLimit() {
+    Timeline timeline = new Timeline();
+    ClientMonitor.Limits limits =
+        new ClientMonitor.Limits(ClientMonitor.Limits.Action.WARN, 0, 0, 0, 100000);
+    ClientMonitor monitor = new ClientMonitor(timeline, limits);
+    monitor.sample(0, 0, true);
+    monitor.sample(SECOND_NS, 0, true);
+    assertTrue(timeline.getMetrics().contains(ClientMonitor.RUNNABLE_THREADS));
+    assertTrue(((Integer) monitor.toMap().get("Maximum Runnable Threads")) > 0);
+  }
+
+  @Test
+  public void testSamplesOnOwnThread() throws InterruptedException {
+    Timeline timeline = new Timeline();
+    ClientMonitor monitor = new ClientMonitor(timeline, null);
+    monitor.start(() -> 0, () -> true);
+    Thread.sleep(1500);
+    monitor.stop();
+    assertTrue(timeline.getMetrics().contains(ClientMonitor.CPU));
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TestConfidenceStopRule {
+
+  @Test
+  public void testQuantiles() {
+    assertEquals(1.95996, ConfidenceStopRule.normalQuantile(0.975), 1e-4);
+    assertEquals(-2.32635, ConfidenceStopRule.normalQuantile(0.01), 1e-4);
+    assertEquals(2.57058, ConfidenceStopRule.tQuantile(0.975, 5), 2e-3);
+    assertEquals(2.26216, ConfidenceStopRule.tQuantile(0.975, 9), 1e-3);
+    assertEquals(2.04523, ConfidenceStopRule.tQuantile(0.975, 29), 1e-4);
+  }
+
+  @Test
+  public void testInterval() {
+    double[] values = {98, 102, 99, 101, 100, 97, 103, 100, 99, 101};
+    ConfidenceStopRule.Interval interval = ConfidenceStopRule.interval(values, 0.95);
+    assertEquals(100, interval.getMean(), 1e-9);
+    // stddev = sqrt(30 / 9), t(0.975, 9) = 2.262
+    assertEquals(2.26216 * Math.sqrt(30.0 / 9 / 10), interval.getHalfWidth(), 1e-3);
+    assertEquals(interval.getHalfWidth() / 100, interval.getRelativeError(), 1e-12);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooFewBatches() {
+    new ConfidenceStopRule(1, 0.02, 0.95, 30, 2, new double[] {0.99});
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TestFaultInjection {
+
+  @Test
+  public void testRecovery() {
+    // 100/s until the fault at second 5, nothing for three seconds, then a slow climb back
+    long[] successes = {100, 100, 100, 100, 100, 60, 0, 0, 0, 40, 85, 96, 100, 98, 100, 100};
+    double baseline = FaultInjection.baseline(successes, 5, 3);
+    assertEquals(100, baseline, 0.001);
+    assertEquals(3, FaultInjection.unavailableSeconds(successes, 5, baseline));
+    // 85 + 96 + 100 still falls short, 96 + 100 + 98 does not
+    assertEquals(11, FaultInjection.recoverySecond(successes, 5, baseline));
+  }
+
+  @Test
+  public void testNoRecovery() {
+    long[] successes = {50, 50, 50, 0, 0, 10, 45, 40};
+    double baseline = FaultInjection.baseline(successes, 3, 10);
+    assertEquals(50, baseline, 0.001);
+    assertEquals(-1, FaultInjection.recoverySecond(successes, 3, baseline));
+  }
+
+  @Test
+  public void testUndisturbed() {
+    long[] successes = {50, 50, 50, 49, 50, 51};
+    double baseline = FaultInjection.baseline(successes, 3, 3);
+    assertEquals(0, FaultInjection.unavailableSeconds(successes, 3, baseline));
+    assertEquals(3, FaultInjection.recoverySecond(successes, 3, baseline));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNothingToInject() {
+    new FaultInjection(1, 60, 30, 10, 10, "", "", null);
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import org.junit.Test;
+
+public class TestPhase {
+
+  private static Phase phase() {
+    return new Phase(
+        "test",
+        1,
+        60,
+        0,
+        100,
+        List.of(50.0, 50.0),
+        true,
+        false,
+        false,
+        true,
+        4,
+        Phase.Arrival.REGULAR);
+  }
+
+  @Test
+  public void testSetWeights() {
+    Phase phase = phase();
+    phase.setWeights(List.of(0.0, 100.0));
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(2, phase.chooseTransaction());
+    }
+    assertEquals(100, phase.totalWeight(), 0.001);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongWeightCount() {
+    phase().setWeights(List.of(100.0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeWeight() {
+    phase().setWeights(List.of(-10.0, 110.0));
+  }
+}
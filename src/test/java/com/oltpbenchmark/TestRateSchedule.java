@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.oltpbenchmark.util.Timeline;
+import org.junit.Test;
+
+public class TestRateSchedule {
+
+  @Test
+  public void testLinear() {
+    RateSchedule s = RateSchedule.linear(100, 1000, 90);
+    assertEquals(100, s.getRate(0), 0.001);
+    assertEquals(550, s.getRate(45), 0.001);
+    assertEquals(1000, s.getRate(90), 0.001);
+    assertEquals(1000, s.getRate(500), 0.001);
+    assertEquals(275, s.scale(0.5).getRate(45), 0.001);
+  }
+
+  @Test
+  public void testStep() {
+    RateSchedule s = RateSchedule.step(new double[] {0, 60, 120}, new double[] {100, 200, 400});
+    assertEquals(100, s.getRate(59.9), 0.001);
+    assertEquals(200, s.getRate(60), 0.001);
+    assertEquals(400, s.getRate(1000), 0.001);
+  }
+
+  @Test
+  public void testSineNeverBelowMinimum() {
+    RateSchedule s = RateSchedule.sine(100, 200, 60);
+    assertEquals(100, s.getRate(0), 0.001);
+    assertEquals(300, s.getRate(15), 0.001);
+    assertEquals(RateSchedule.MIN_RATE, s.getRate(45), 0.001);
+  }
+
+  @Test
+  public void testTimelineAverage() {
+    Timeline t = new Timeline();
+    t.record(Timeline.TARGET_RATE, 0, 100);
+    t.record(Timeline.TARGET_RATE, 10, 100);
+    t.record(Timeline.TARGET_RATE, 50, 300);
+    assertEquals(200, t.average(Timeline.TARGET_RATE, 0, 100), 0.001);
+    assertEquals(300, t.average(Timeline.TARGET_RATE, 60, 80), 0.001);
+    assertTrue(Double.isNaN(t.average("unknown", 0, 100)));
+  }
+}
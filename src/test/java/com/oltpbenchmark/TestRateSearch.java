@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+public class TestRateSearch {
+
+  private static final double CAPACITY = 1000;
+  private static final long INTERVAL_NS = 1000000000L;
+
+  /**
+   * Runs one interval against a system that serves up to {@link #CAPACITY} requests per second
+   * with a 5 ms p99 and queues beyond it, pushing the p99 to 200 ms.
+   */
+  private static double interval(RateSearch search, double target, int i) {
+    double achieved = Math.min(target, CAPACITY);
+    long p99 = target > CAPACITY ? 200000 : 5000;
+    return search.evaluate(target, achieved, p99, 0, i * INTERVAL_NS);
+  }
+
+  @Test
+  public void testBinaryConverges() {
+    RateSearch search =
+        new RateSearch(RateSearch.Algorithm.BINARY, 1, 50, -1, 100, 100000, 0, 0.5, 0.02);
+    double rate = 100;
+    int i = 0;
+    while (!search.isConverged() && i < 50) {
+      rate = interval(search, rate, i++);
+    }
+    assertTrue(search.isConverged());
+    assertTrue(search.getKneeRate() <= CAPACITY);
+    assertTrue(search.getKneeRate() >= CAPACITY * 0.98);
+    assertEquals(search.getKneeRate(), rate, 1e-9);
+    assertEquals(i, search.getSteps().size());
+
+    // once converged the search holds the knee
+    assertEquals(rate, interval(search, rate, i), 1e-9);
+  }
+
+  @Test
+  public void testAimdOscillatesAroundCapacity() {
+    RateSearch search =
+        new RateSearch(RateSearch.Algorithm.AIMD, 1, 50, -1, 100, 100000, 50, 0.5, 0.02);
+    double rate = 100;
+    for (int i = 0; i < 200; i++) {
+      rate = interval(search, rate, i);
+      if (i >= 20) {
+        assertTrue("rate " + rate, rate >= CAPACITY * 0.5 && rate <= CAPACITY + 50);
+      }
+    }
+    assertFalse(search.isConverged());
+    assertTrue(search.getKneeRate() > CAPACITY - 50);
+    assertTrue(search.getKneeRate() <= CAPACITY);
+  }
+
+  @Test
+  public void testDueAtIntervalBoundaries() {
+    RateSearch search =
+        new RateSearch(RateSearch.Algorithm.BINARY, 1, 50, -1, 100, 1000, 0, 0.5, 0.02);
+    assertTrue(search.isDue(0));
+    Phase phase =
+        new Phase(
+            "test",
+            1,
+            60,
+            0,
+            100,
+            List.of(100.0),
+            true,
+            false,
+            false,
+            true,
+            4,
+            Phase.Arrival.REGULAR);
+    search.tick(phase, List.of(), 0);
+    assertFalse(search.isDue(INTERVAL_NS - 1));
+    assertTrue(search.isDue(INTERVAL_NS));
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.oltpbenchmark.api.TransactionType;
+import com.oltpbenchmark.api.TransactionTypes;
+import com.oltpbenchmark.benchmarks.noop.procedures.NoOp;
+import com.oltpbenchmark.util.Timeline;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class TestRuntimeControl {
+
+  private static WorkloadConfiguration workload(int terminals, int active) {
+    WorkloadConfiguration conf = new WorkloadConfiguration();
+    conf.setBenchmarkName("noop");
+    conf.setTerminals(terminals);
+    TransactionType noop = new TransactionType(NoOp.class, 1, false, 0, 0) {};
+    conf.setTransTypes(
+        new TransactionTypes(new ArrayList<>(List.of(TransactionType.INVALID, noop))));
+    conf.addPhase(
+        1, 60, 0, 100, List.of(100.0), true, false, false, true, active, Phase.Arrival.REGULAR);
+    conf.initializeState(new BenchmarkState(terminals + 1));
+    conf.getWorkloadState().switchToNextPhase();
+    return conf;
+  }
+
+  private static HttpResponse<String> send(HttpClient client, int port, String method, String path)
+      throws Exception {
+    HttpRequest request =
+        HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path))
+            .method(method, HttpRequest.BodyPublishers.noBody())
+            .build();
+    return client.send(request, HttpResponse.BodyHandlers.ofString());
+  }
+
+  @Test
+  public void testEndpoint() throws Exception {
+    WorkloadConfiguration conf = workload(4, 4);
+    Phase phase = conf.getWorkloadState().getCurrentPhase();
+    Timeline timeline = new Timeline();
+    AtomicBoolean running = new AtomicBoolean(true);
+    try (RuntimeControl control = new RuntimeControl(0)) {
+      // stands in for the ThreadBench ticks
+      Thread ticks =
+          new Thread(
+              () -> {
+                while (running.get()) {
+                  control.apply(List.of(conf), timeline, 0, System.nanoTime());
+                  try {
+                    Thread.sleep(5);
+                  } catch (InterruptedException ex) {
+                    return;
+                  }
+                }
+              });
+      ticks.start();
+      try {
+        HttpClient client = HttpClient.newHttpClient();
+        int port = control.getPort();
+
+        HttpResponse<String> status = send(client, port, "GET", "/status");
+        assertEquals(200, status.statusCode());
+        assertTrue(status.body(), status.body().contains("\"Active Terminals\": 4"));
+
+        assertEquals(405, send(client, port, "GET", "/rate?value=200").statusCode());
+
+        HttpResponse<String> invalid = send(client, port, "POST", "/rate?value=fast");
+        assertEquals(400, invalid.statusCode());
+        assertTrue(invalid.body(), invalid.body().contains("Invalid rate"));
+
+        assertEquals(200, send(client, port, "POST", "/rate?value=250").statusCode());
+        assertEquals(250, phase.getRate(), 1e-9);
+
+        assertEquals(200, send(client, port, "POST", "/terminals?value=2").statusCode());
+        assertEquals(2, phase.getActiveTerminals());
+
+        assertEquals(400, send(client, port, "POST", "/terminals?value=5").statusCode());
+        assertEquals(400, send(client, port, "POST", "/rate?workload=tpcc&value=1").statusCode());
+      } finally {
+        running.set(false);
+        ticks.join();
+      }
+
+      List<RuntimeControl.Event> events = control.getEvents();
+      assertEquals(2, events.size());
+      assertEquals("rate", events.get(0).getSetting());
+      assertEquals("250", events.get(0).getValue());
+      assertEquals("terminals", events.get(1).getSetting());
+      assertTrue(timeline.getMetrics().contains("Weight NoOp"));
+      assertEquals(
+          2,
+          timeline.aggregate(
+              RuntimeControl.ACTIVE_TERMINALS, System.nanoTime(), System.nanoTime() + 1),
+          1e-9);
+    }
+  }
+
+  private static void awaitCount(AtomicInteger count, int expected) throws InterruptedException {
+    for (int i = 0; i < 500 && count.get() < expected; i++) {
+      Thread.sleep(10);
+    }
+    // give terminals that should keep sleeping the chance to wake up wrongly
+    Thread.sleep(100);
+    assertEquals(expected, count.get());
+  }
+
+  private static List<Thread> terminals(WorkloadState state, int n, AtomicInteger awake) {
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      Thread t =
+          new Thread(
+              () -> {
+                state.stayAwake();
+                awake.incrementAndGet();
+              });
+      t.setDaemon(true);
+      t.start();
+      threads.add(t);
+    }
+    return threads;
+  }
+
+  @Test
+  public void testSetActiveTerminals() throws Exception {
+    WorkloadConfiguration conf = workload(4, 2);
+    WorkloadState state = conf.getWorkloadState();
+
+    // two of the four terminals sleep at the start of the phase
+    AtomicInteger awake = new AtomicInteger();
+    List<Thread> threads = terminals(state, 4, awake);
+    awaitCount(awake, 2);
+
+    // scaling up wakes the sleeping terminals
+    state.setActiveTerminals(4);
+    awaitCount(awake, 4);
+    for (Thread t : threads) {
+      t.join(5000);
+    }
+
+    // scaling down puts the surplus terminals to sleep as they come back for work
+    state.setActiveTerminals(1);
+    assertEquals(1, state.getCurrentPhase().getActiveTerminals());
+    awake.set(0);
+    terminals(state, 4, awake);
+    awaitCount(awake, 1);
+
+    state.setActiveTerminals(3);
+    awaitCount(awake, 3);
+    state.setActiveTerminals(4);
+    awaitCount(awake, 4);
+
+    try {
+      state.setActiveTerminals(5);
+      fail();
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+    try {
+      state.setActiveTerminals(0);
+      fail();
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+  }
+}
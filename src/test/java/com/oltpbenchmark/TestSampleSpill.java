@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSampleSpill {
+
+  private Path folder;
+
+  @Before
+  public void setUp() throws Exception {
+    folder = Files.createTempDirectory("spill");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.deleteDirectory(folder.toFile());
+  }
+
+  /** Files of several workers are merged in start order, across buffer boundaries */
+  @Test
+  public void testMerge() throws Exception {
+    Path a = folder.resolve("a.samples");
+    Path b = folder.resolve("b.samples");
+    int count = 10000;
+    try (SampleSpill spillA = new SampleSpill(a);
+        SampleSpill spillB = new SampleSpill(b)) {
+      for (int i = 0; i < count; i++) {
+        spillA.add(1, 2L * i * 1000, 2L * i * 1000 + 5000, 0, 1);
+        spillB.add(2, (2L * i + 1) * 1000, (2L * i + 1) * 1000 + 7000, 1, 1);
+      }
+      assertEquals(count, spillA.size());
+    }
+
+    long last = -1;
+    int n = 0;
+    for (LatencyRecord.Sample s : SampleSpill.merge(List.of(a, b))) {
+      assertTrue(s.getStartNanosecond() > last);
+      assertEquals(s.getWorkerId() == 0 ? 5 : 7, s.getLatencyMicrosecond());
+      assertEquals(s.getWorkerId() + 1, s.getTransactionType());
+      last = s.getStartNanosecond();
+      n++;
+    }
+    assertEquals(2 * count, n);
+  }
+
+  /** A record cut short by a crash is dropped, the ones before it survive */
+  @Test
+  public void testTruncated() throws Exception {
+    Path a = folder.resolve("a.samples");
+    try (SampleSpill spill = new SampleSpill(a)) {
+      spill.add(1, 1000, 2000, 0, 1);
+      spill.add(1, 3000, 4000, 0, 1);
+    }
+    Files.write(a, new byte[SampleSpill.RECORD_SIZE / 2], StandardOpenOption.APPEND);
+
+    int n = 0;
+    for (LatencyRecord.Sample s : SampleSpill.merge(List.of(a))) {
+      n++;
+    }
+    assertEquals(2, n);
+  }
+
+  /** Samples reach the file once a second, before the buffer is full */
+  @Test
+  public void testFlushOnTime() throws Exception {
+    Path a = folder.resolve("a.samples");
+    try (SampleSpill spill = new SampleSpill(a)) {
+      spill.add(1, 0, 1000, 0, 1);
+      spill.add(1, 1000, 2000, 0, 1);
+      assertEquals(0, Files.size(a));
+
+      spill.add(1, SampleSpill.FLUSH_INTERVAL_NS, SampleSpill.FLUSH_INTERVAL_NS + 1000, 0, 1);
+      assertEquals(3 * SampleSpill.RECORD_SIZE, Files.size(a));
+
+      spill.add(1, 2 * SampleSpill.FLUSH_INTERVAL_NS, 2 * SampleSpill.FLUSH_INTERVAL_NS, 0, 1);
+      assertEquals(3 * SampleSpill.RECORD_SIZE, Files.size(a));
+    }
+    assertEquals(4 * SampleSpill.RECORD_SIZE, Files.size(a));
+  }
+
+  /** The samples that a crashed run flushed are recovered from its spill directory */
+  @Test
+  public void testRecover() throws Exception {
+    long second = SampleSpill.FLUSH_INTERVAL_NS;
+    try (SampleSpill closed = new SampleSpill(folder.resolve("tpcc-0.samples"))) {
+      closed.add(1, second, second + 2000, 0, 1);
+      closed.add(2, 3 * second, 3 * second + 4000, 0, 1);
+    }
+    // never closed, as after a crash: the sample after the last flush is lost
+    SampleSpill crashed = new SampleSpill(folder.resolve("tpcc-1.samples"));
+    crashed.add(1, 0, 3000, 1, 1);
+    crashed.add(1, 2 * second, 2 * second + 3000, 1, 1);
+    crashed.add(1, 2 * second + second / 2, 2 * second + second / 2 + 3000, 1, 1);
+    Files.writeString(folder.resolve("readme.txt"), "not a spill file");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8)) {
+      assertEquals(4, SampleSpill.recover(folder, out));
+    }
+    String[] lines = bytes.toString(StandardCharsets.UTF_8).split("\n");
+    assertEquals(5, lines.length);
+    assertTrue(lines[0], lines[0].startsWith("Transaction Type Index,Start Time (seconds),"));
+    assertEquals("1,0.000000,3,1,1", lines[1]);
+    assertEquals("1,1.000000,2,0,1", lines[2]);
+    assertEquals("1,2.000000,3,1,1", lines[3]);
+    assertEquals("2,3.000000,4,0,1", lines[4]);
+    crashed.close();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRecoverEmpty() throws Exception {
+    SampleSpill.recover(folder, new PrintStream(new ByteArrayOutputStream()));
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestSteadyStateDetector {
+
+  @Test
+  public void testStable() {
+    assertTrue(SteadyStateDetector.isStable(new double[] {1000, 1010, 990, 1005, 995, 1000}, 0.05));
+  }
+
+  /** Noise beyond the tolerance is not stable */
+  @Test
+  public void testNoisy() {
+    double[] throughput = {1000, 1200, 800, 1150, 850, 1000};
+    assertFalse(SteadyStateDetector.isStable(throughput, 0.05));
+  }
+
+  /** A slow climb is not stable even if each window is close to the previous one */
+  @Test
+  public void testTrend() {
+    assertFalse(SteadyStateDetector.isStable(new double[] {950, 970, 990, 1010, 1030, 1050}, 0.05));
+  }
+
+  @Test
+  public void testIdle() {
+    assertFalse(SteadyStateDetector.isStable(new double[] {0, 0, 0, 0}, 0.05));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMinimumAboveMaximum() {
+    new SteadyStateDetector(1, 60, 120, 10, 6, 0.05);
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.oltpbenchmark.api.Procedure;
+import com.oltpbenchmark.api.TransactionType;
+import com.oltpbenchmark.api.TransactionTypes;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestTraceReplay {
+
+  public static class NewOrder extends Procedure {}
+
+  public static class Payment extends Procedure {}
+
+  private Path folder;
+
+  @Before
+  public void setUp() throws Exception {
+    folder = Files.createTempDirectory("trace");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.deleteDirectory(folder.toFile());
+  }
+
+  private static TransactionTypes types() {
+    List<TransactionType> types = new ArrayList<>();
+    types.add(TransactionType.INVALID);
+    types.add(new TransactionType(NewOrder.class, 1, false, 0, 0) {});
+    types.add(new TransactionType(Payment.class, 2, false, 0, 0) {});
+    return new TransactionTypes(types);
+  }
+
+  private TraceReplay replay(String... lines) throws Exception {
+    Path trace = folder.resolve("trace.csv");
+    Files.write(trace, List.of(lines));
+    return new TraceReplay(trace.toString(), 1.0, types());
+  }
+
+  @Test
+  public void testParse() throws Exception {
+    TraceReplay replay = replay("offset_ms,txn", "# comment", "", "0,NewOrder,7,x", "1.5,2");
+    assertEquals(2, replay.getEntries());
+
+    // header and comments are skipped, names and ids map onto the work queue index
+    assertNull(replay.parse("offset_ms,txn", 1, true));
+    TraceReplay.Entry byName = replay.parse("0, neworder ,7,x", 4, false);
+    assertEquals(1, byName.type);
+    assertArrayEquals(new String[] {"7", "x"}, byName.params);
+    TraceReplay.Entry byId = replay.parse("1.5,2", 5, false);
+    assertEquals(1.5, byId.offsetMs, 0);
+    assertEquals(2, byId.type);
+    assertNull(byId.params);
+  }
+
+  /** Offsets count from the first entry and shrink with the speedup */
+  @Test
+  public void testTiming() {
+    long start = 1_000_000_000L;
+    double epochMs = 1_700_000_000_000.0;
+    assertEquals(start, TraceReplay.scheduledNs(start, epochMs, epochMs, 1));
+    assertEquals(start + 250_000_000L, TraceReplay.scheduledNs(start, epochMs + 250, epochMs, 1));
+    assertEquals(start + 125_000_000L, TraceReplay.scheduledNs(start, epochMs + 250, epochMs, 2));
+    assertEquals(start + 500_000L, TraceReplay.scheduledNs(start, 1.5, 0.5, 2));
+  }
+
+  /** A malformed line fails the configuration and names the line */
+  @Test
+  public void testMalformedLine() throws Exception {
+    String[][] traces = {
+      {"0,NewOrder", "abc,Payment"},
+      {"0,NewOrder", "5"},
+      {"0,NewOrder", "5,Delivery"},
+      {"# only a comment"},
+    };
+    for (String[] trace : traces) {
+      try {
+        replay(trace);
+        fail("accepted " + String.join("|", trace));
+      } catch (IllegalArgumentException ex) {
+        assertTrue(ex.getMessage(), trace.length == 1 || ex.getMessage().contains(":2:"));
+      }
+    }
+  }
+}
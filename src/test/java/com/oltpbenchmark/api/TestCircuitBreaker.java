@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class TestCircuitBreaker {
+
+  private static final long MS = 1000000L;
+
+  @Test
+  public void testOutage() {
+    AtomicLong clock = new AtomicLong();
+    CircuitBreaker breaker = new CircuitBreaker(3, 200, 1000, 1, clock::get);
+    assertTrue(breaker.await(0, 0));
+
+    breaker.recordFailure(0);
+    breaker.recordFailure(1);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    breaker.recordFailure(2);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+    // nobody gets through while open
+    clock.set(199 * MS);
+    assertFalse(breaker.await(0, 0));
+
+    // after the cooldown a single worker probes, the others keep waiting
+    clock.set(200 * MS);
+    assertTrue(breaker.await(1, 0));
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertFalse(breaker.await(2, 0));
+
+    // a failed probe opens the breaker again for twice the cooldown
+    breaker.recordFailure(1);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    clock.set(599 * MS);
+    assertFalse(breaker.await(2, 0));
+    clock.set(600 * MS);
+    assertTrue(breaker.await(2, 0));
+    clock.set(650 * MS);
+    breaker.recordSuccess(2);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    assertTrue(breaker.await(0, 0));
+
+    CircuitBreaker.Outage outage = breaker.getOutages().get(0);
+    assertEquals(1, outage.getFailedProbes());
+    assertEquals(4, outage.getFailures());
+    assertEquals(650, outage.getOutageMs());
+    // workers 0 and 1 have not reconnected yet
+    assertEquals(-1, outage.getRecoveryMs());
+    clock.set(700 * MS);
+    breaker.recordSuccess(0);
+    breaker.recordSuccess(1);
+    assertEquals(700, outage.getRecoveryMs());
+  }
+
+  @Test
+  public void testCooldownIsCapped() {
+    AtomicLong clock = new AtomicLong();
+    CircuitBreaker breaker = new CircuitBreaker(1, 300, 500, 1, clock::get);
+    breaker.recordFailure(0);
+    clock.addAndGet(300 * MS);
+    assertTrue(breaker.await(0, 0));
+    breaker.recordFailure(0);
+    clock.addAndGet(499 * MS);
+    assertFalse(breaker.await(0, 0));
+    clock.addAndGet(MS);
+    assertTrue(breaker.await(0, 0));
+  }
+
+  /** A probe that fails after another one closed the breaker is an ordinary failure */
+  @Test
+  public void testLateProbeFailure() {
+    AtomicLong clock = new AtomicLong();
+    CircuitBreaker breaker = new CircuitBreaker(2, 200, 1000, 2, clock::get);
+    breaker.recordFailure(0);
+    breaker.recordFailure(0);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+    clock.set(200 * MS);
+    assertTrue(breaker.await(1, 0));
+    assertTrue(breaker.await(2, 0));
+    clock.set(250 * MS);
+    breaker.recordSuccess(1);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+    // the breaker stays closed until the failure threshold is reached again
+    clock.set(260 * MS);
+    breaker.recordFailure(2);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    assertEquals(0, breaker.getOutages().get(0).getFailedProbes());
+    clock.set(270 * MS);
+    breaker.recordFailure(3);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+    // and opens for the configured cooldown, not twice of it
+    clock.set(469 * MS);
+    assertFalse(breaker.await(0, 0));
+    clock.set(470 * MS);
+    assertTrue(breaker.await(0, 0));
+  }
+
+  @Test
+  public void testSuccessResetsFailures() {
+    CircuitBreaker breaker = new CircuitBreaker(2, 20, 1000, 1);
+    breaker.recordFailure(0);
+    breaker.recordSuccess(0);
+    breaker.recordFailure(1);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    assertTrue(breaker.getOutages().isEmpty());
+  }
+}
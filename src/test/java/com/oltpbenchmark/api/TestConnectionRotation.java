@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class TestConnectionRotation {
+
+  @Test
+  public void testDeadlinesAreSpread() {
+    ConnectionRotation rotation = new ConnectionRotation(3600000, 0.2, 10000);
+    Random rng = new Random(1);
+    long opened = 1000000000L;
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    for (int i = 0; i < 1000; i++) {
+      long deadline = rotation.getDeadline(opened, rng) - opened;
+      min = Math.min(min, deadline);
+      max = Math.max(max, deadline);
+    }
+    assertTrue(min >= 2880000000000L);
+    assertTrue(max <= 3600000000000L);
+    // 1000 connections opened together are replaced over most of the jitter window
+    assertTrue(max - min > 600000000000L);
+    assertEquals(10000000000L, rotation.getLeadNs());
+  }
+
+  @Test
+  public void testWithoutJitter() {
+    ConnectionRotation rotation = new ConnectionRotation(60000, 0, 0);
+    assertEquals(60000000000L, rotation.getDeadline(0, new Random(1)));
+  }
+
+  @Test
+  public void testRetryAfterFailure() {
+    // A lead longer than the minimum backoff: the retry waits for the lead time
+    ConnectionRotation rotation = new ConnectionRotation(3600000, 0.2, 10000);
+    long failed = 5000000000000L;
+    long deadline = rotation.getRetryDeadline(failed);
+    assertFalse(rotation.shouldOpen(deadline, failed));
+    assertFalse(rotation.shouldOpen(deadline, failed + 9999999999L));
+    assertTrue(rotation.shouldOpen(deadline, failed + 10000000000L));
+
+    // Without a lead the retry still waits for the minimum backoff
+    rotation = new ConnectionRotation(3600000, 0.2, 0);
+    deadline = rotation.getRetryDeadline(failed);
+    assertFalse(rotation.shouldOpen(deadline, failed));
+    assertTrue(rotation.shouldOpen(deadline, failed + ConnectionRotation.MIN_RETRY_BACKOFF_NS));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalid() {
+    new ConnectionRotation(60000, 1.5, 0);
+  }
+}
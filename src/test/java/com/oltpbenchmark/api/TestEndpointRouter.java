@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class TestEndpointRouter {
+
+  private static EndpointRouter router(EndpointRouter.Policy policy, double degradeFactor) {
+    EndpointRouter router = new EndpointRouter(policy, 60000, degradeFactor);
+    router.addEndpoint("a", "jdbc:test://a");
+    router.addEndpoint("b", "jdbc:test://b");
+    router.addEndpoint("c", "jdbc:test://c");
+    return router;
+  }
+
+  @Test
+  public void testHome() {
+    EndpointRouter roundRobin = router(EndpointRouter.Policy.ROUND_ROBIN, 0);
+    assertEquals(0, roundRobin.getHome(0, 0, 12));
+    assertEquals(1, roundRobin.getHome(4, 0, 12));
+    assertEquals(2, roundRobin.getHome(5, 0, 12));
+
+    EndpointRouter affinity = router(EndpointRouter.Policy.AFFINITY, 0);
+    assertEquals(0, affinity.getHome(7, 0, 12));
+    assertEquals(0, affinity.getHome(7, 3, 12));
+    assertEquals(1, affinity.getHome(7, 4, 12));
+    assertEquals(2, affinity.getHome(7, 11, 12));
+
+    EndpointRouter latency = router(EndpointRouter.Policy.LATENCY, 0);
+    assertEquals(-1, latency.getHome(7, 4, 12));
+  }
+
+  @Test
+  public void testFailover() {
+    EndpointRouter router = router(EndpointRouter.Policy.ROUND_ROBIN, 0);
+    Random rng = new Random(1);
+    assertEquals(1, router.select(1, rng));
+    assertFalse(router.shouldMove(1, 1));
+
+    router.markDown(1, "connection refused");
+    assertFalse(router.isUp(1));
+    assertTrue(router.shouldMove(1, 1));
+    assertEquals(1, router.getMarkedDown(1));
+    for (int i = 0; i < 100; i++) {
+      assertNotEquals(1, router.select(1, rng));
+    }
+
+    // a worker that failed over stays until its home is back
+    assertFalse(router.shouldMove(2, 1));
+
+    router.markDown(0, "connection refused");
+    router.markDown(2, "connection refused");
+    assertEquals(1, router.select(1, rng));
+  }
+
+  @Test
+  public void testDegraded() {
+    EndpointRouter router = router(EndpointRouter.Policy.LATENCY, 3);
+    for (int i = 0; i < EndpointRouter.MIN_SAMPLES; i++) {
+      router.recordLatency(0, 1000);
+      router.recordLatency(1, 1200);
+    }
+    for (int i = 0; i < EndpointRouter.MIN_SAMPLES - 1; i++) {
+      router.recordLatency(2, 10000);
+    }
+    assertTrue(router.isUp(2));
+    router.recordLatency(2, 10000);
+    assertFalse(router.isUp(2));
+    assertTrue(router.isUp(1));
+
+    // the faster endpoint gets more of the connections
+    Random rng = new Random(1);
+    int[] selected = new int[3];
+    for (int i = 0; i < 10000; i++) {
+      selected[router.select(-1, rng)]++;
+    }
+    assertEquals(0, selected[2]);
+    assertTrue(selected[0] > selected[1]);
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.util.Random;
+import org.junit.Test;
+
+public class TestRetryPolicy {
+
+  @Test
+  public void testClassify() {
+    RetryPolicy policy = new RetryPolicy();
+    assertEquals(
+        RetryPolicy.DSQL_CONFLICT,
+        policy.classify(
+            new SQLException("change conflicts with another transaction (OC000)", "40001")));
+    assertEquals(
+        RetryPolicy.DSQL_SCHEMA_CONFLICT,
+        policy.classify(new SQLException("schema has been updated (OC001)", "40001")));
+    assertEquals("deadlock", policy.classify(new SQLException("deadlock", "40001", 1213)));
+    assertEquals("serialization failure", policy.classify(new SQLException("conflict", "40001")));
+    assertNull(policy.classify(new SQLException("duplicate key", "23505")));
+    assertNull(policy.classify(new SQLException("no state")));
+  }
+
+  @Test
+  public void testBackoff() {
+    RetryPolicy policy = new RetryPolicy();
+    Random rng = new Random(1);
+    assertEquals(0, policy.getBackoffNanos(1, rng));
+
+    policy.setBackoff(10, 50);
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(policy.getBackoffNanos(1, rng) < 10000000L);
+      assertTrue(policy.getBackoffNanos(2, rng) < 20000000L);
+      assertTrue(policy.getBackoffNanos(100, rng) < 50000000L);
+    }
+  }
+}
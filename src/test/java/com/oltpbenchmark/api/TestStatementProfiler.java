@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.oltpbenchmark.api.StatementProfiler.Operation;
+import com.oltpbenchmark.jdbc.ProfiledStatements;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class TestStatementProfiler {
+
+  /** A statement whose query returns a result set with {@code rows} rows. */
+  private static PreparedStatement fakeStatement(int rows) {
+    int[] remaining = {rows};
+    ResultSet rs =
+        (ResultSet)
+            Proxy.newProxyInstance(
+                ResultSet.class.getClassLoader(),
+                new Class<?>[] {ResultSet.class},
+                (proxy, method, args) ->
+                    method.getName().equals("next") ? remaining[0]-- > 0 : null);
+    return (PreparedStatement)
+        Proxy.newProxyInstance(
+            PreparedStatement.class.getClassLoader(),
+            new Class<?>[] {PreparedStatement.class},
+            (proxy, method, args) ->
+                switch (method.getName()) {
+                  case "executeQuery" -> rs;
+                  case "executeUpdate" -> 1;
+                  default -> null;
+                });
+  }
+
+  @Test
+  public void testExecuteAndFetch() throws Exception {
+    StatementProfiler profiler = new StatementProfiler();
+    profiler.setRecording(true);
+
+    PreparedStatement stmt = ProfiledStatements.wrap(fakeStatement(3), profiler, "Proc", "query");
+    int rows = 0;
+    try (ResultSet rs = stmt.executeQuery()) {
+      while (rs.next()) {
+        rows++;
+      }
+    }
+    assertEquals(3, rows);
+
+    // The fetch time of a result set that is never closed is recorded with the statement
+    PreparedStatement update =
+        ProfiledStatements.wrap(fakeStatement(0), profiler, "Proc", "update");
+    assertEquals(1, update.executeUpdate());
+    update.executeQuery().next();
+    update.close();
+
+    assertEquals(Arrays.asList("query", "update"), profiler.getStatements("Proc"));
+    assertEquals(1, profiler.getHistogram("Proc", "query", Operation.EXECUTE).getCount());
+    assertEquals(1, profiler.getHistogram("Proc", "query", Operation.FETCH).getCount());
+    assertEquals(2, profiler.getHistogram("Proc", "update", Operation.EXECUTE).getCount());
+    assertEquals(1, profiler.getHistogram("Proc", "update", Operation.FETCH).getCount());
+    assertNull(profiler.getHistogram("Proc", "query", Operation.COMMIT));
+  }
+
+  @Test
+  public void testRecordingAndMerge() {
+    StatementProfiler a = new StatementProfiler();
+    a.record("Proc", StatementProfiler.COMMIT, Operation.COMMIT, 5000);
+    assertTrue(a.isEmpty());
+
+    a.setRecording(true);
+    a.record("Proc", StatementProfiler.COMMIT, Operation.COMMIT, 5000);
+    StatementProfiler b = new StatementProfiler();
+    b.setRecording(true);
+    b.record("Proc", StatementProfiler.COMMIT, Operation.COMMIT, 7000);
+    b.record("Other", StatementProfiler.ROLLBACK, Operation.ROLLBACK, 1000);
+
+    StatementProfiler merged = new StatementProfiler();
+    merged.add(a);
+    merged.add(b);
+    assertEquals(Arrays.asList("Other", "Proc"), merged.getProcedures());
+    assertEquals(
+        2, merged.getHistogram("Proc", StatementProfiler.COMMIT, Operation.COMMIT).getCount());
+    assertEquals(
+        7, merged.getHistogram("Proc", StatementProfiler.COMMIT, Operation.COMMIT).getMaximum());
+  }
+}
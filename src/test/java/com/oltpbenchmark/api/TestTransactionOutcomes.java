@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.oltpbenchmark.types.TransactionStatus;
+import com.oltpbenchmark.util.Histogram;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class TestTransactionOutcomes {
+
+  public static class ProcA extends Procedure {}
+
+  public static class ProcB extends Procedure {}
+
+  public static class ProcC extends Procedure {}
+
+  @Test
+  public void testRecordAndMerge() {
+    TransactionType a = new TransactionType(ProcA.class, 1, false, 0, 0);
+    TransactionType b = new TransactionType(ProcB.class, 3, false, 0, 0);
+    TransactionOutcomes outcomes = new TransactionOutcomes(Arrays.asList(a, b));
+
+    outcomes.record(a, TransactionStatus.SUCCESS);
+    outcomes.record(a, TransactionStatus.SUCCESS);
+    outcomes.record(b, TransactionStatus.SUCCESS);
+    outcomes.record(b, TransactionStatus.RETRY);
+    outcomes.record(TransactionType.INVALID, TransactionStatus.UNKNOWN);
+
+    assertEquals(2, outcomes.get(a, TransactionStatus.SUCCESS));
+    assertEquals(3, outcomes.getCount(TransactionStatus.SUCCESS));
+    assertEquals(1, outcomes.getCount(TransactionStatus.RETRY));
+    assertEquals(0, outcomes.getCount(TransactionStatus.ERROR));
+
+    Histogram<TransactionType> success = new Histogram<>();
+    outcomes.addTo(success, TransactionStatus.SUCCESS);
+    outcomes.addTo(success, TransactionStatus.SUCCESS);
+    assertEquals(4, success.get(a).intValue());
+    assertEquals(2, success.get(b).intValue());
+    assertFalse(success.contains(TransactionType.INVALID));
+  }
+
+  @Test
+  public void testSupplementalProcedure() {
+    // Supplemental procedures use the hash code of their class as id, like
+    // BenchmarkModule.getProcedures does
+    TransactionType a = new TransactionType(ProcA.class, 1, false, 0, 0);
+    TransactionType supplemental =
+        new TransactionType(ProcB.class, Integer.MAX_VALUE - 7, true, 0, 0);
+    TransactionType negative = new TransactionType(ProcC.class, -42, true, 0, 0);
+    TransactionOutcomes outcomes =
+        new TransactionOutcomes(Arrays.asList(a, supplemental, negative));
+
+    outcomes.record(a, TransactionStatus.SUCCESS);
+    outcomes.record(supplemental, TransactionStatus.SUCCESS);
+    outcomes.record(negative, TransactionStatus.ERROR);
+
+    assertEquals(1, outcomes.get(supplemental, TransactionStatus.SUCCESS));
+    assertEquals(1, outcomes.get(negative, TransactionStatus.ERROR));
+    assertEquals(2, outcomes.getCount(TransactionStatus.SUCCESS));
+
+    Histogram<TransactionType> success = new Histogram<>();
+    outcomes.addTo(success, TransactionStatus.SUCCESS);
+    assertEquals(1, success.get(supplemental).intValue());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownType() {
+    TransactionType a = new TransactionType(ProcA.class, 1, false, 0, 0);
+    TransactionOutcomes outcomes = new TransactionOutcomes(Arrays.asList(a));
+    outcomes.record(new TransactionType(ProcB.class, 99, false, 0, 0), TransactionStatus.SUCCESS);
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.distributed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.oltpbenchmark.DistributionStatistics;
+import com.oltpbenchmark.LatencyRecord;
+import com.oltpbenchmark.Results;
+import com.oltpbenchmark.api.Procedure;
+import com.oltpbenchmark.api.TransactionType;
+import com.oltpbenchmark.types.State;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class TestCoordinator {
+
+  private static final int NUM_AGENTS = 3;
+
+  public static class Dummy extends Procedure {}
+
+  private static final TransactionType DUMMY = new TransactionType(Dummy.class, 1, false, 0, 0) {};
+
+  /** Terminal and warehouse ranges must cover everything exactly once */
+  @Test
+  public void testAssignmentRanges() {
+    for (int total : new int[] {1, 7, 10, 100}) {
+      for (int agents = 1; agents <= 5; agents++) {
+        int next = 0;
+        for (int agentId = 0; agentId < agents; agentId++) {
+          AgentAssignment a = new AgentAssignment(agentId, agents);
+          assertEquals(next, a.getFirst(total));
+          next += a.getCount(total);
+        }
+        assertEquals(total, next);
+      }
+    }
+  }
+
+  /** Runs a coordinator and several agents on localhost and merges their results */
+  @Test
+  public void testLocalAgents() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_AGENTS + 1);
+    try (Coordinator coordinator = new Coordinator(0, NUM_AGENTS, 100)) {
+      Future<List<AgentReport>> reports = executor.submit(coordinator::run);
+
+      List<Future<Long>> starts = new ArrayList<>();
+      List<Integer> agentIds = Collections.synchronizedList(new ArrayList<>());
+      for (int i = 0; i < NUM_AGENTS; i++) {
+        starts.add(
+            executor.submit(
+                () -> {
+                  try (Agent agent = new Agent("localhost", coordinator.getPort())) {
+                    int agentId = agent.getAssignment().getAgentId();
+                    agentIds.add(agentId);
+                    long start = agent.awaitStart();
+                    assertTrue(System.currentTimeMillis() >= start);
+                    agent.sendReport(makeResults(agentId));
+                    return start;
+                  }
+                }));
+      }
+
+      Set<Long> startTimes = new HashSet<>();
+      for (Future<Long> start : starts) {
+        startTimes.add(start.get());
+      }
+      assertEquals("agents must share one start time", 1, startTimes.size());
+      assertEquals(Set.of(0, 1, 2), new HashSet<>(agentIds));
+
+      List<AgentReport> agentReports = reports.get();
+      assertEquals(NUM_AGENTS, agentReports.size());
+
+      Results merged = Coordinator.merge(agentReports, List.of(TransactionType.INVALID, DUMMY));
+      // Agent i measured 10 * (i + 1) requests
+      assertEquals(60, merged.getMeasuredRequests());
+      assertEquals(60, merged.getDistributionStatistics().getCount());
+      assertEquals(60, (int) merged.getSuccess().get(DUMMY));
+      assertEquals(3, (int) merged.getAbort().get(DUMMY));
+      assertEquals(State.DONE, merged.getState());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static Results makeResults(int agentId) {
+    List<LatencyRecord.Sample> samples = new ArrayList<>();
+    int requests = 10 * (agentId + 1);
+    for (int i = 0; i < requests; i++) {
+      samples.add(new LatencyRecord.Sample(DUMMY.getId(), i, 1000 * (agentId + 1), agentId, 0));
+    }
+    DistributionStatistics stats = DistributionStatistics.computeStatistics(new int[] {1});
+    Results r = new Results(State.DONE, 1000, 1_000_000_000L, requests, stats, samples);
+    r.getSuccess().put(DUMMY, requests);
+    r.getAbort().put(DUMMY, 1);
+    return r;
+  }
+}
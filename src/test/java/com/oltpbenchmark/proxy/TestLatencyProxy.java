@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.oltpbenchmark.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class TestLatencyProxy {
+
+  @Test
+  public void testUrls() throws IOException {
+    String url = "jdbc:postgresql://db.example.com:5432/benchbase?sslmode=require";
+    InetSocketAddress target = LatencyProxy.targetOf(url);
+    assertEquals("db.example.com", target.getHostString());
+    assertEquals(5432, target.getPort());
+
+    try (LatencyProxy proxy =
+        new LatencyProxy(0, target, LatencyProxy.Link.NONE, LatencyProxy.Link.NONE)) {
+      assertEquals(
+          "jdbc:postgresql://127.0.0.1:" + proxy.getPort() + "/benchbase?sslmode=require",
+          proxy.proxyUrl(url));
+    }
+  }
+
+  @Test
+  public void testDelayAndCounters() throws Exception {
+    try (ServerSocket echo = new ServerSocket(0)) {
+      Thread server =
+          new Thread(
+              () -> {
+                try (Socket s = echo.accept()) {
+                  InputStream in = s.getInputStream();
+                  OutputStream out = s.getOutputStream();
+                  byte[] buffer = new byte[1024];
+                  for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                    out.write(buffer, 0, n);
+                  }
+                } catch (IOException ex) {
+                  throw new RuntimeException(ex);
+                }
+              });
+      server.start();
+
+      LatencyProxy.Link link = new LatencyProxy.Link(5, 0, LatencyProxy.Distribution.CONSTANT, 0);
+      InetSocketAddress target = new InetSocketAddress("127.0.0.1", echo.getLocalPort());
+      try (LatencyProxy proxy = new LatencyProxy(0, target, link, link);
+          Socket client = new Socket("127.0.0.1", proxy.getPort())) {
+        client.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        byte[] ping = "ping".getBytes();
+        for (int i = 0; i < 3; i++) {
+          long start = System.nanoTime();
+          client.getOutputStream().write(ping);
+          byte[] pong = new byte[ping.length];
+          in.readFully(pong);
+          assertEquals("ping", new String(pong));
+          assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(10));
+        }
+
+        LatencyProxy.ConnectionStats stats = proxy.getConnections().get(0);
+        assertEquals(12, stats.getBytesUp());
+        assertEquals(12, stats.getBytesDown());
+        assertEquals(3, stats.getRoundTrips());
+      }
+      server.join(5000);
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.oltpbenchmark.stub;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPgStubServer {
+
+  private PgStubServer server;
+  private Socket socket;
+  private DataInputStream in;
+  private DataOutputStream out;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new PgStubServer(0, PgStubServer.Auth.PASSWORD, 0);
+    socket = new Socket("127.0.0.1", server.getPort());
+    in = new DataInputStream(socket.getInputStream());
+    out = new DataOutputStream(socket.getOutputStream());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    socket.close();
+    server.close();
+  }
+
+  @Test
+  public void testStartupAndSimpleQuery() throws IOException {
+    startup();
+
+    send('Q', cstring("BEGIN; SELECT 1; UPDATE t SET a = 1"));
+    List<byte[]> responses = readUntilReady();
+    assertEquals("CTDCCZ", types(responses));
+    assertEquals("UPDATE 1", new String(responses.get(4), 5, 8, StandardCharsets.UTF_8));
+    // The transaction is still open
+    assertEquals('T', responses.get(5)[5]);
+    assertEquals(3, server.getStatementCount());
+  }
+
+  @Test
+  public void testExtendedQuery() throws IOException {
+    startup();
+
+    ByteArrayOutputStream parse = new ByteArrayOutputStream();
+    parse.write(cstring("s1"));
+    parse.write(cstring("SELECT x FROM t WHERE a = $1 AND b = $2"));
+    parse.write(new byte[] {0, 1, 0, 0, 0, 23});
+    send('P', parse.toByteArray());
+
+    ByteArrayOutputStream bind = new ByteArrayOutputStream();
+    bind.write(cstring(""));
+    bind.write(cstring("s1"));
+    bind.write(new byte[] {0, 0, 0, 2});
+    bind.write(new byte[] {0, 0, 0, 1, '7', 0, 0, 0, 1, 'x'});
+    bind.write(new byte[] {0, 1, 0, 1});
+    send('B', bind.toByteArray());
+
+    send('D', concat(new byte[] {'S'}, cstring("s1")));
+    send('D', concat(new byte[] {'P'}, cstring("")));
+    send('E', concat(cstring(""), new byte[4]));
+    send('S', new byte[0]);
+
+    List<byte[]> responses = readUntilReady();
+    assertEquals("12tTTDCZ", types(responses));
+    // Two parameters, the undeclared one is text
+    byte[] params = responses.get(2);
+    assertEquals(2, params[6]);
+    assertEquals(23, params[10]);
+    assertEquals(25, params[14]);
+    // The row is sent in the requested binary format
+    byte[] row = responses.get(5);
+    assertEquals(4, row[10]);
+    assertEquals(1, row[14]);
+    assertEquals(1, server.getStatementCount());
+  }
+
+  private void startup() throws IOException {
+    // SSL is declined
+    out.writeInt(8);
+    out.writeInt(PgStubServer.SSL_REQUEST);
+    assertEquals('N', in.readByte());
+
+    byte[] params = concat(cstring("user"), cstring("admin"), cstring(""));
+    out.writeInt(8 + params.length);
+    out.writeInt(PgStubServer.PROTOCOL_VERSION);
+    out.write(params);
+
+    // A cleartext password is requested, as DSQL does for its IAM tokens
+    byte[] auth = readMessage();
+    assertEquals('R', auth[0]);
+    assertEquals(3, auth[8]);
+    send('p', cstring("token"));
+
+    List<byte[]> responses = readUntilReady();
+    assertEquals('R', responses.get(0)[0]);
+    assertEquals(0, responses.get(0)[8]);
+    assertEquals('K', responses.get(responses.size() - 2)[0]);
+    assertEquals('I', responses.get(responses.size() - 1)[5]);
+  }
+
+  private void send(char type, byte[] body) throws IOException {
+    out.writeByte(type);
+    out.writeInt(body.length + 4);
+    out.write(body);
+    out.flush();
+  }
+
+  /** Reads one message, including its type and length. */
+  private byte[] readMessage() throws IOException {
+    byte type = in.readByte();
+    int length = in.readInt();
+    byte[] message = new byte[length + 1];
+    message[0] = type;
+    message[1] = (byte) (length >>> 24);
+    message[2] = (byte) (length >>> 16);
+    message[3] = (byte) (length >>> 8);
+    message[4] = (byte) length;
+    in.readFully(message, 5, length - 4);
+    return message;
+  }
+
+  private List<byte[]> readUntilReady() throws IOException {
+    List<byte[]> messages = new ArrayList<>();
+    byte[] message;
+    do {
+      message = readMessage();
+      messages.add(message);
+    } while (message[0] != 'Z');
+    return messages;
+  }
+
+  private static String types(List<byte[]> messages) {
+    StringBuilder sb = new StringBuilder();
+    for (byte[] message : messages) {
+      sb.append((char) message[0]);
+    }
+    return sb.toString();
+  }
+
+  private static byte[] cstring(String s) {
+    return concat(s.getBytes(StandardCharsets.UTF_8), new byte[1]);
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    for (byte[] part : parts) {
+      bytes.writeBytes(part);
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.oltpbenchmark.api.TransactionType;
+import com.oltpbenchmark.benchmarks.tpcc.procedures.NewOrder;
+import com.oltpbenchmark.benchmarks.tpcc.procedures.Payment;
+import com.oltpbenchmark.types.TransactionStatus;
+import java.util.List;
+import org.junit.Test;
+
+public class TestErrorCounts {
+
+  private static final TransactionType NEW_ORDER =
+      new TransactionType(NewOrder.class, 1, false, 0, 0) {};
+  private static final TransactionType PAYMENT =
+      new TransactionType(Payment.class, 2, false, 0, 0) {};
+
+  @Test
+  public void testRecord() {
+    ErrorCounts counts = new ErrorCounts();
+    assertTrue(counts.isEmpty());
+    for (int i = 0; i < 3; i++) {
+      counts.record(1, PAYMENT, TransactionStatus.RETRY, "40001", 0);
+    }
+    counts.record(1, NEW_ORDER, TransactionStatus.RETRY, "40001", 0);
+    counts.record(0, NEW_ORDER, TransactionStatus.ERROR, null, 17);
+
+    List<ErrorCounts.Entry> entries = counts.getEntries();
+    assertEquals(3, entries.size());
+    assertEquals(0, entries.get(0).getSecond());
+    assertEquals("", entries.get(0).getSqlState());
+    assertEquals(17, entries.get(0).getErrorCode());
+    assertEquals(TransactionStatus.ERROR, entries.get(0).getStatus());
+    assertEquals(NEW_ORDER, entries.get(1).getType());
+    assertEquals(1, counts.getCount(entries.get(1)));
+    assertEquals(PAYMENT, entries.get(2).getType());
+    assertEquals(3, counts.getCount(entries.get(2)));
+  }
+
+  /** Instances number types and errors in the order they see them, merging maps between them */
+  @Test
+  public void testAdd() {
+    ErrorCounts a = new ErrorCounts();
+    a.record(5, NEW_ORDER, TransactionStatus.RETRY, "40001", 0);
+    a.record(5, PAYMENT, TransactionStatus.ERROR, "08006", 0);
+    ErrorCounts b = new ErrorCounts();
+    b.record(5, PAYMENT, TransactionStatus.ERROR, "08006", 0);
+    b.record(5, NEW_ORDER, TransactionStatus.RETRY, "40001", 0);
+    b.record(6, NEW_ORDER, TransactionStatus.RETRY, "40001", 0);
+
+    ErrorCounts total = new ErrorCounts();
+    total.add(a);
+    total.add(b);
+    List<ErrorCounts.Entry> entries = total.getEntries();
+    assertEquals(3, entries.size());
+    assertEquals(NEW_ORDER, entries.get(0).getType());
+    assertEquals(2, total.getCount(entries.get(0)));
+    assertEquals("08006", entries.get(1).getSqlState());
+    assertEquals(2, total.getCount(entries.get(1)));
+    assertEquals(6, entries.get(2).getSecond());
+    assertEquals(1, total.getCount(entries.get(2)));
+  }
+
+  /** The map grows past its initial capacity without losing counts */
+  @Test
+  public void testManyKeys() {
+    ErrorCounts counts = new ErrorCounts();
+    for (int second = 0; second < 1000; second++) {
+      for (int code = 0; code < 5; code++) {
+        counts.record(second, PAYMENT, TransactionStatus.RETRY, "40001", code);
+        counts.record(second, PAYMENT, TransactionStatus.RETRY, "40001", code);
+      }
+    }
+    List<ErrorCounts.Entry> entries = counts.getEntries();
+    assertEquals(5000, entries.size());
+    for (ErrorCounts.Entry e : entries) {
+      assertEquals(2, counts.getCount(e));
+    }
+    assertEquals(999, entries.get(entries.size() - 1).getSecond());
+    assertEquals(4, entries.get(entries.size() - 1).getErrorCode());
+  }
+}
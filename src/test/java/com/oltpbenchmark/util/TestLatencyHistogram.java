@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.oltpbenchmark.DistributionStatistics;
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+  /** Every value must fall inside the bounds of the bucket it maps to */
+  @Test
+  public void testBucketBounds() {
+    long[] values = {0, 1, 63, 64, 65, 127, 128, 1000, 123456, Integer.MAX_VALUE};
+    for (long value : values) {
+      int idx = LatencyHistogram.bucketIndex(value);
+      assertTrue(value + " below bucket", LatencyHistogram.bucketLowerBound(idx) <= value);
+      assertTrue(value + " above bucket", LatencyHistogram.bucketUpperBound(idx) >= value);
+    }
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram h = new LatencyHistogram();
+    for (int i = 1; i <= 10000; i++) {
+      h.record(i);
+    }
+    assertEquals(10000, h.getCount());
+    assertEquals(5000.5, h.getMean(), 0.001);
+    assertEquals(10000, h.getMaximum());
+
+    // Relative error is bounded by the sub-bucket resolution
+    assertEquals(5000, h.getValueAtPercentile(0.5), 5000 * 0.04);
+    assertEquals(9900, h.getValueAtPercentile(0.99), 9900 * 0.04);
+
+    DistributionStatistics stats = h.toDistributionStatistics();
+    assertEquals(10000, stats.getCount());
+    assertEquals(1, stats.getMinimum(), 0.001);
+    assertEquals(10000, stats.getMaximum(), 0.001);
+  }
+
+  @Test
+  public void testMinus() {
+    LatencyHistogram h = new LatencyHistogram();
+    for (int i = 0; i < 100; i++) {
+      h.record(10);
+    }
+    LatencyHistogram prior = h.copy();
+    for (int i = 0; i < 50; i++) {
+      h.record(1000);
+    }
+    LatencyHistogram delta = h.minus(prior);
+    assertEquals(50, delta.getCount());
+    assertEquals(1000, delta.getMean(), 0.001);
+    assertEquals(1000, delta.getValueAtPercentile(0.0), 1000 * 0.04);
+  }
+
+  @Test
+  public void testAdd() {
+    LatencyHistogram a = new LatencyHistogram();
+    LatencyHistogram b = new LatencyHistogram();
+    a.record(5);
+    b.record(7);
+    b.record(-3);
+    a.add(b);
+    assertEquals(3, a.getCount());
+    assertEquals(7, a.getMaximum());
+    assertEquals(0, a.getValueAtPercentile(0.0));
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestTimeline {
+
+  @Test
+  public void testAverage() {
+    Timeline timeline = new Timeline();
+    timeline.record("rate", 100, 10);
+    timeline.record("rate", 200, 20);
+    timeline.record("rate", 300, 40);
+
+    assertTrue(Double.isNaN(timeline.average("rate", 0, 100)));
+    assertEquals(10, timeline.average("rate", 0, 200), 1e-9);
+    assertEquals(15, timeline.average("rate", 150, 250), 1e-9);
+    assertEquals(30, timeline.average("rate", 250, 350), 1e-9);
+    assertEquals(40, timeline.average("rate", 1000, 2000), 1e-9);
+  }
+
+  @Test
+  public void testMaximum() {
+    Timeline timeline = new Timeline();
+    timeline.define("error", Timeline.Aggregate.MAXIMUM);
+    for (int i = 0; i < 1000; i++) {
+      timeline.record("error", i * 10L, i % 100);
+    }
+    assertEquals(99, timeline.aggregate("error", 0, 10000), 1e-9);
+    assertEquals(12, timeline.aggregate("error", 105, 125), 1e-9);
+    assertEquals(50, timeline.aggregate("error", 1500, 1501), 1e-9);
+  }
+}
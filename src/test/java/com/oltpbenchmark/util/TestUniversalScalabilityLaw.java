@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 by OLTPBenchmark Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.oltpbenchmark.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestUniversalScalabilityLaw {
+
+  private static double usl(double lambda, double sigma, double kappa, double n) {
+    return lambda * n / (1 + sigma * (n - 1) + kappa * n * (n - 1));
+  }
+
+  /** The coefficients of noise-free data must be recovered exactly */
+  @Test
+  public void testFit() {
+    double[] n = {1, 2, 4, 8, 16, 32, 64};
+    double[] x = new double[n.length];
+    for (int i = 0; i < n.length; i++) {
+      x[i] = usl(1000, 0.05, 0.0002, n[i]);
+    }
+    UniversalScalabilityLaw model = UniversalScalabilityLaw.fit(n, x);
+    assertEquals(1000, model.getLambda(), 0.01);
+    assertEquals(0.05, model.getSigma(), 1e-6);
+    assertEquals(0.0002, model.getKappa(), 1e-8);
+    assertEquals(1, model.getRSquared(), 1e-9);
+    assertEquals(Math.sqrt(0.95 / 0.0002), model.getPeakConcurrency(), 0.01);
+    assertEquals(x[3], model.predict(8), 0.01);
+  }
+
+  /** Without a coherency cost the throughput levels off instead of falling */
+  @Test
+  public void testNoCoherency() {
+    double[] n = {1, 2, 4, 8, 16};
+    double[] x = new double[n.length];
+    for (int i = 0; i < n.length; i++) {
+      x[i] = usl(100, 0.1, 0, n[i]);
+    }
+    UniversalScalabilityLaw model = UniversalScalabilityLaw.fit(n, x);
+    assertEquals(0.1, model.getSigma(), 1e-6);
+    assertEquals(0, model.getKappa(), 1e-9);
+    assertTrue(model.getPeakConcurrency() > 1000);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooFewSteps() {
+    UniversalScalabilityLaw.fit(new double[] {1, 2, 2}, new double[] {100, 190, 191});
+  }
+}